@@ -0,0 +1,395 @@
+package communication;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+
+import model.data.ConfigID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Envelope;
+import model.messages.Message;
+
+/**
+ * Receives envelopes from a ZeroMQ socket in a background thread. Every envelope consists of
+ * a namespace frame and a message frame that is decoded with {@link MessageCodec}, so
+ * messages in every {@link WireFormat} are accepted. Responses should be encoded in the
+ * format of the request, see {@link #respond(ZMQ.Socket, Message, WireFormat)}.
+ *
+ * SUB sockets connect to the given address and only receive envelopes of the filterID (if
+ * set), all other socket types bind to it.
+ *
+ * ROUTER sockets answer requests of REQ and DEALER sockets like REP sockets, but do not have
+ * to answer a request before the next one is received. When receiving with a
+ * {@link ReceiverReactor}, their requests are therefore interpreted in parallel.
+ */
+public abstract class AbstractEnvelopeReceiver {
+
+	private static Logger logger = Logger.getLogger(AbstractEnvelopeReceiver.class.getName());
+
+	/**
+	 * Time in milliseconds a blocked receive waits before checking whether reception was
+	 * stopped
+	 */
+	private static final int RECEIVE_TIMEOUT = 100;
+
+	private final String address;
+	private final int port;
+	private final int type;
+
+	protected KeygroupID filterID = null;
+
+	private final AtomicInteger numberOfReceivedMessages = new AtomicInteger();
+
+	/**
+	 * The peer that sent a request to a ROUTER socket. Peers using REQ sockets delimit their
+	 * frames with an empty frame, which must also be part of the response.
+	 */
+	static class Route {
+		private final byte[] identity;
+		private final boolean delimited;
+
+		private Route(byte[] identity, boolean delimited) {
+			this.identity = identity;
+			this.delimited = delimited;
+		}
+	}
+
+	/**
+	 * The route of the request that is interpreted by the current thread
+	 */
+	private static final ThreadLocal<Route> currentRoute = new ThreadLocal<>();
+
+	private ExecutorService executor = null;
+	private volatile ReceiverReactor reactor = null;
+	private Future<?> runningTask = null;
+	private volatile boolean receiving = false;
+
+	public AbstractEnvelopeReceiver(String address, int port, int type) {
+		this.address = address;
+		this.port = port;
+		this.type = type;
+	}
+
+	/**
+	 * Interprets a received envelope. The envelope's message is still encrypted.
+	 *
+	 * @param envelope - the received envelope
+	 * @param format - the format the message was received in
+	 * @param responseSocket - the socket the envelope was received with
+	 */
+	protected abstract void interpreteReceivedEnvelope(Envelope envelope, WireFormat format,
+			ZMQ.Socket responseSocket);
+
+	/**
+	 * Called once after the socket was connected or bound, before the first envelope is
+	 * received. By default, SUB sockets subscribe to the filterID or to all envelopes if no
+	 * filterID is set.
+	 *
+	 * @param socket - the socket of the receiver
+	 */
+	protected void configureSocket(ZMQ.Socket socket) {
+		if (type == ZMQ.SUB) {
+			socket.subscribe(filterID == null ? "" : filterID.getID());
+		}
+	}
+
+	/**
+	 * Called by the receiving thread before every receive, so at least every 100
+	 * milliseconds. This is the only place besides
+	 * {@link #interpreteReceivedEnvelope(Envelope, WireFormat, ZMQ.Socket)} where the socket
+	 * may be used.
+	 *
+	 * @param socket - the socket of the receiver
+	 */
+	protected void beforeReceive(ZMQ.Socket socket) {
+
+	}
+
+	/**
+	 * Sends a response in the given format. Must be called by the thread that interpretes the
+	 * request, so that responses of ROUTER sockets reach the requesting peer.
+	 *
+	 * @param responseSocket - the socket the request was received with
+	 * @param response - the response message
+	 * @param format - the format of the request
+	 */
+	protected void respond(ZMQ.Socket responseSocket, Message response, WireFormat format) {
+		byte[] frame = MessageCodec.encode(response, format);
+		Route route = currentRoute.get();
+		if (type == ZMQ.ROUTER && route == null) {
+			logger.error("Cannot route response, it was not sent while interpreting a request");
+			return;
+		}
+		if (reactor != null) {
+			// the socket belongs to the event loop of the reactor
+			reactor.reply(this, route, frame);
+		} else {
+			send(responseSocket, route, frame);
+		}
+	}
+
+	/**
+	 * Returns a function which sends the response to the request that is currently interpreted
+	 * once it is available. It may be called from any thread, but this only works while
+	 * receiving with a {@link ReceiverReactor}, because the socket belongs to its event loop.
+	 * 
+	 * @param format - the wire format of the response
+	 * @return the function, or null if responses cannot be deferred
+	 */
+	protected Consumer<Message> respondLater(WireFormat format) {
+		ReceiverReactor reactor = this.reactor;
+		Route route = currentRoute.get();
+		if (reactor == null || type != ZMQ.ROUTER || route == null) {
+			return null;
+		}
+		return response -> reactor.reply(this, route, MessageCodec.encode(response, format));
+	}
+
+	/**
+	 * Sends a response frame, prefixed with the identity of the peer if a route is given.
+	 *
+	 * @param socket - the socket
+	 * @param route - the route of the request, or null
+	 * @param frame - the encoded response
+	 */
+	static void send(ZMQ.Socket socket, Route route, byte[] frame) {
+		if (route != null) {
+			socket.sendMore(route.identity);
+			if (route.delimited) {
+				socket.sendMore(new byte[0]);
+			}
+		}
+		socket.send(frame);
+	}
+
+	/**
+	 * Starts receiving envelopes in a background thread.
+	 *
+	 * @return the future of the background thread
+	 */
+	public synchronized Future<?> startReceiving() {
+		if (runningTask != null) {
+			return runningTask;
+		}
+		executor = Executors.newSingleThreadExecutor();
+		receiving = true;
+		runningTask = executor.submit(this::receive);
+		return runningTask;
+	}
+
+	/**
+	 * Starts receiving envelopes with the event loop of the given reactor, so that no thread
+	 * is used while no envelopes arrive.
+	 *
+	 * @param reactor - the reactor
+	 * @return a future that completes once the reception was stopped
+	 */
+	public synchronized Future<?> startReceiving(ReceiverReactor reactor) {
+		if (runningTask != null) {
+			return runningTask;
+		}
+		this.reactor = reactor;
+		receiving = true;
+		runningTask = reactor.register(this);
+		return runningTask;
+	}
+
+	/**
+	 * Stops receiving envelopes and closes the socket.
+	 */
+	public synchronized void stopReception() {
+		if (runningTask == null) {
+			return;
+		}
+		receiving = false;
+		if (reactor != null) {
+			reactor.unregister(this);
+			reactor = null;
+			runningTask = null;
+			return;
+		}
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		runningTask = null;
+		executor = null;
+	}
+
+	public boolean isReceiving() {
+		ReceiverReactor reactor = this.reactor;
+		return receiving && (reactor == null || !reactor.isShutdown());
+	}
+
+	public int getNumberOfReceivedMessages() {
+		return numberOfReceivedMessages.get();
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Creates the socket of the receiver and connects or binds it.
+	 *
+	 * @param context - the context used to create the socket
+	 * @return the socket
+	 */
+	ZMQ.Socket openSocket(ZMQ.Context context) {
+		ZMQ.Socket socket = context.socket(type);
+		socket.setReceiveTimeOut(RECEIVE_TIMEOUT);
+		socket.setLinger(0);
+		if (type == ZMQ.SUB) {
+			socket.connect(address + ":" + port);
+		} else {
+			socket.bind(address + ":" + port);
+		}
+		configureSocket(socket);
+		logger.debug("Receiving envelopes on " + address + ":" + port);
+		return socket;
+	}
+
+	/**
+	 * @return true, if every received envelope must be answered before the next one can be
+	 *         received
+	 */
+	boolean expectsReply() {
+		return type == ZMQ.REP;
+	}
+
+	/**
+	 * @return true, if received envelopes are requests that must be answered
+	 */
+	boolean answersRequests() {
+		return type == ZMQ.REP || type == ZMQ.ROUTER;
+	}
+
+	/**
+	 * @return true, if received envelopes can be interpreted in any order
+	 */
+	boolean isConcurrent() {
+		return type == ZMQ.ROUTER;
+	}
+
+	/**
+	 * Reads the remaining frames of an envelope from the socket. The returned task decodes
+	 * and interpretes the envelope and can be run by any thread.
+	 *
+	 * @param firstFrame - the first frame of the envelope
+	 * @param socket - the socket the frame was received with
+	 * @return the task that interpretes the envelope
+	 */
+	Runnable readEnvelope(byte[] firstFrame, ZMQ.Socket socket) {
+		Route route = null;
+		byte[] namespace = firstFrame;
+		if (type == ZMQ.ROUTER) {
+			// the identity frame is added by the socket
+			byte[] next = socket.hasReceiveMore() ? socket.recv() : new byte[0];
+			boolean delimited = next.length == 0 && socket.hasReceiveMore();
+			route = new Route(firstFrame, delimited);
+			namespace = delimited ? socket.recv() : next;
+		}
+		byte[] frame = socket.hasReceiveMore() ? socket.recv() : null;
+		while (socket.hasReceiveMore()) {
+			socket.recv();
+		}
+		Route r = route;
+		byte[] ns = namespace;
+		return () -> received(r, ns, frame, socket);
+	}
+
+	/**
+	 * Decodes and interpretes the frames of a received envelope.
+	 *
+	 * @param route - the route of the request for ROUTER sockets, otherwise null
+	 * @param namespace - the namespace frame
+	 * @param frame - the message frame, or null if missing
+	 * @param socket - the socket the frames were received with
+	 */
+	void received(Route route, byte[] namespace, byte[] frame, ZMQ.Socket socket) {
+		currentRoute.set(route);
+		try {
+			handleEnvelope(new String(namespace, StandardCharsets.UTF_8), frame, socket);
+		} catch (RuntimeException e) {
+			logger.error("Could not interprete envelope received on " + address + ":" + port, e);
+			if (answersRequests()) {
+				// request-reply sockets must answer every request
+				Message response = new Message();
+				response.setTextualInfo("Error, " + e.getMessage());
+				respond(socket, response,
+						frame == null ? WireFormat.JSON : MessageCodec.detect(frame));
+			}
+		} finally {
+			currentRoute.remove();
+		}
+	}
+
+	private void receive() {
+		ZMQ.Context context = ZMQ.context(1);
+		ZMQ.Socket socket = openSocket(context);
+
+		try {
+			while (receiving && !Thread.currentThread().isInterrupted()) {
+				beforeReceive(socket);
+				byte[] firstFrame = socket.recv();
+				if (firstFrame == null) {
+					continue;
+				}
+				readEnvelope(firstFrame, socket).run();
+			}
+		} finally {
+			receiving = false;
+			socket.close();
+			context.term();
+		}
+	}
+
+	private void handleEnvelope(String namespace, byte[] frame, ZMQ.Socket socket) {
+		// subscriptions match prefixes, only accept the exact keygroup
+		if (type == ZMQ.SUB && filterID != null && !filterID.getID().equals(namespace)) {
+			return;
+		}
+		Message message;
+		WireFormat format = frame == null ? WireFormat.JSON : MessageCodec.detect(frame);
+		try {
+			if (frame == null) {
+				throw new IllegalArgumentException("Envelope does not contain a message");
+			}
+			message = MessageCodec.decode(frame);
+		} catch (IllegalArgumentException e) {
+			logger.warn("Could not decode message with namespace " + namespace + ", "
+					+ e.getMessage());
+			if (type != ZMQ.SUB) {
+				// request-reply sockets must answer every request
+				Message response = new Message();
+				response.setTextualInfo("Error, " + e.getMessage());
+				respond(socket, response, format);
+			}
+			return;
+		}
+		ConfigID configID = KeygroupID.createFromString(namespace);
+		if (configID == null) {
+			configID = new NodeID(namespace);
+		}
+		numberOfReceivedMessages.incrementAndGet();
+		interpreteReceivedEnvelope(new Envelope(configID, message), format, socket);
+	}
+
+}
@@ -0,0 +1,269 @@
+package communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+
+/**
+ * Sends requests with a DEALER socket without waiting for the responses of earlier requests,
+ * so many requests can be outstanding at the same time.
+ *
+ * Every request is prefixed with a correlation id and an empty delimiter frame. REP and
+ * ROUTER sockets return these frames with the response, so responses can be matched to their
+ * requests in any order. Requests that are not answered before their deadline fail with a
+ * {@link TimeoutException}, late responses are dropped.
+ *
+ * The socket is only used by the thread of the client, all methods can be called from any
+ * thread. New requests wake up the thread through a pipe, so it only waits for responses,
+ * new requests or the next deadline.
+ */
+public class AsyncRequestClient {
+
+	private static Logger logger = Logger.getLogger(AsyncRequestClient.class.getName());
+
+	/**
+	 * Maximum time in milliseconds the client waits for responses or new requests, before it
+	 * checks whether it is still running
+	 */
+	private static final long IDLE_POLL_TIMEOUT = 1000;
+
+	private static class Request {
+		private final long correlationID;
+		private final byte[] namespace;
+		private final byte[] frame;
+		private final long deadline;
+		private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+		private Request(long correlationID, byte[] namespace, byte[] frame, long deadline) {
+			this.correlationID = correlationID;
+			this.namespace = namespace;
+			this.frame = frame;
+			this.deadline = deadline;
+		}
+	}
+
+	private final String name;
+	private final ZMQ.Context context;
+	private final ZMQ.Socket socket;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * Written to by {@link #wakeUp()}, the source is polled together with the socket
+	 */
+	private final Pipe wakeUpPipe;
+	private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+	private final AtomicLong nextCorrelationID = new AtomicLong();
+	private final Queue<Request> queued = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Only modified by the thread of the client
+	 */
+	private final Map<Long, Request> outstanding = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates the client and starts its thread. The socket must not be used by other threads
+	 * afterwards.
+	 *
+	 * @param name - used to name the thread of the client
+	 * @param context - the context of the socket
+	 * @param socket - a connected DEALER socket
+	 */
+	public AsyncRequestClient(String name, ZMQ.Context context, ZMQ.Socket socket) {
+		this.name = name;
+		this.context = context;
+		this.socket = socket;
+		try {
+			this.wakeUpPipe = Pipe.open();
+			wakeUpPipe.source().configureBlocking(false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not open wake up pipe", e);
+		}
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Sends a request.
+	 *
+	 * @param namespace - the namespace frame
+	 * @param frame - the message frame
+	 * @param timeout - the time in milliseconds to wait for the response
+	 * @return a future that completes with the response frame
+	 */
+	public CompletableFuture<byte[]> request(byte[] namespace, byte[] frame, long timeout) {
+		Request request = new Request(nextCorrelationID.incrementAndGet(), namespace, frame,
+				System.currentTimeMillis() + timeout);
+		queued.offer(request);
+		wakeUp();
+		if (!running) {
+			// the thread might not send the request anymore
+			failQueued();
+		}
+		return request.future;
+	}
+
+	/**
+	 * @return the number of requests that were sent but not answered yet
+	 */
+	public int getNumberOfOutstandingRequests() {
+		return outstanding.size() + queued.size();
+	}
+
+	/**
+	 * Stops the thread of the client, outstanding requests fail. The socket is not closed.
+	 */
+	public void shutdown() {
+		running = false;
+		wakeUp();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isShutdown() {
+		return !running;
+	}
+
+	/**
+	 * Interrupts the poll of the thread of the client, so that it sends queued requests. Only
+	 * one wake up is pending at a time.
+	 */
+	private void wakeUp() {
+		if (Thread.currentThread() == thread || !wakeUpPending.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			wakeUpPipe.sink().write(ByteBuffer.allocate(1));
+		} catch (IOException e) {
+			logger.warn("Could not wake up request client " + name, e);
+		}
+	}
+
+	private void drainWakeUps() throws IOException {
+		wakeUpPending.set(false);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		while (wakeUpPipe.source().read(buffer) > 0) {
+			buffer.clear();
+		}
+	}
+
+	private void run() {
+		ZMQ.Poller poller = context.poller(2);
+		poller.register(wakeUpPipe.source(), ZMQ.Poller.POLLIN);
+		poller.register(socket, ZMQ.Poller.POLLIN);
+		try {
+			while (running) {
+				sendQueued();
+				if (poller.poll(getPollTimeout(System.currentTimeMillis())) > 0) {
+					if (poller.pollin(0)) {
+						drainWakeUps();
+					}
+					if (poller.pollin(1)) {
+						receiveResponses();
+					}
+				}
+				expire(System.currentTimeMillis());
+			}
+		} catch (RuntimeException | IOException e) {
+			logger.fatal("Request client " + name + " failed", e);
+		} finally {
+			running = false;
+			poller.unregister(socket);
+			try {
+				wakeUpPipe.sink().close();
+				wakeUpPipe.source().close();
+			} catch (IOException e) {
+				logger.warn("Could not close wake up pipe of " + name, e);
+			}
+			IllegalStateException shutdown =
+					new IllegalStateException("Request client " + name + " is shut down");
+			outstanding.values().forEach(r -> r.future.completeExceptionally(shutdown));
+			outstanding.clear();
+			failQueued();
+		}
+	}
+
+	private void sendQueued() {
+		Request request;
+		while ((request = queued.poll()) != null) {
+			socket.sendMore(ByteBuffer.allocate(Long.BYTES).putLong(request.correlationID)
+					.array());
+			socket.sendMore(new byte[0]);
+			socket.sendMore(request.namespace);
+			socket.send(request.frame);
+			outstanding.put(request.correlationID, request);
+		}
+	}
+
+	private void receiveResponses() {
+		byte[] correlationID;
+		while ((correlationID = socket.recv(ZMQ.DONTWAIT)) != null) {
+			// the response is the last frame, after the empty delimiter
+			byte[] response = null;
+			while (socket.hasReceiveMore()) {
+				response = socket.recv();
+			}
+			if (correlationID.length != Long.BYTES || response == null) {
+				logger.warn("Dropping malformed response received by " + name);
+				continue;
+			}
+			Request request = outstanding.remove(ByteBuffer.wrap(correlationID).getLong());
+			if (request == null) {
+				logger.debug("Dropping response of a request that already timed out");
+				continue;
+			}
+			request.future.complete(response);
+		}
+	}
+
+	/**
+	 * @param now - the current time
+	 * @return the time in milliseconds until the next deadline, at most
+	 *         {@link #IDLE_POLL_TIMEOUT}
+	 */
+	private long getPollTimeout(long now) {
+		long timeout = IDLE_POLL_TIMEOUT;
+		for (Request request : outstanding.values()) {
+			timeout = Math.min(timeout, request.deadline - now);
+		}
+		return Math.max(0, timeout);
+	}
+
+	private void expire(long now) {
+		Iterator<Request> iterator = outstanding.values().iterator();
+		while (iterator.hasNext()) {
+			Request request = iterator.next();
+			if (now >= request.deadline) {
+				iterator.remove();
+				request.future.completeExceptionally(
+						new TimeoutException("No response within the deadline"));
+			}
+		}
+	}
+
+	private void failQueued() {
+		Request request;
+		while ((request = queued.poll()) != null) {
+			request.future.completeExceptionally(
+					new IllegalStateException("Request client " + name + " is shut down"));
+		}
+	}
+
+}
@@ -1,18 +1,28 @@
 package communication;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Socket;
 
+import communication.DirectMessageSessions.Session;
 import control.FBase;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import de.hasenburg.fbase.model.GetMissedMessageResponse;
+import de.hasenburg.fbase.model.GetMissedMessagesResponse;
+import de.hasenburg.fbase.model.MessageIDRange;
 import exceptions.FBaseEncryptionException;
 import exceptions.FBaseException;
+import exceptions.FBaseStorageConnectorException;
 import model.JSONable;
 import model.config.NodeConfig;
 import model.data.DataIdentifier;
@@ -21,21 +31,34 @@ import model.data.MessageID;
 import model.messages.Command;
 import model.messages.Envelope;
 import model.messages.Message;
+import storageconnector.AbstractDBConnector;
 
-public class DirectMessageReceiver extends AbstractReceiver {
+public class DirectMessageReceiver extends AbstractEnvelopeReceiver {
 
 	private static Logger logger = Logger.getLogger(DirectMessageReceiver.class.getName());
 
+	/**
+	 * The textual info of {@link Command#GET_DATA_FOR_MESSAGEID} requests whose content is a
+	 * {@link MessageIDRange} instead of a single {@link MessageID}
+	 */
+	public static final String RANGE_REQUEST = "MessageIDRange";
+
+	/**
+	 * Maximum number of messages returned in response to a single range request
+	 */
+	public static final int MAX_RANGE_RESPONSE_SIZE = 100;
+
 	private FBase fBase = null;
 
 	public DirectMessageReceiver(String address, int port, FBase fBase) {
-		super(address, port, ZMQ.REP);
+		super(address, port, ZMQ.ROUTER);
 		this.fBase = fBase;
 		logger.debug("DirectMessageReceiver ready to receive messages.");
 	}
 
 	@Override
-	protected void interpreteReceivedEnvelope(Envelope envelope, Socket responseSocket) {
+	protected void interpreteReceivedEnvelope(Envelope envelope, WireFormat format,
+			Socket responseSocket) {
 		logger.debug("Received a request with command " + envelope.getMessage().getCommand()
 				+ " from node " + envelope.getNodeID());
 
@@ -46,30 +69,70 @@ public class DirectMessageReceiver extends AbstractReceiver {
 		}
 
 		Message responseMessage = new Message();
+		Session session = null;
+		Message request = envelope.getMessage();
+		NodeConfig requestingNode = null;
 
 		try {
-			// decrypt and verify message
-			NodeConfig requestingNode =
-					fBase.configAccessHelper.nodeConfig_get(envelope.getNodeID());
+			if (DirectMessageSessions.isSealed(request)) {
+				// the session was authenticated during the handshake
+				session = fBase.directMessageSessions.getIncoming(envelope.getNodeID(),
+						request.getTextualInfo());
+				if (session == null) {
+					logger.debug("Unknown session of node " + envelope.getNodeID());
+					responseMessage.setTextualInfo(DirectMessageSessions.UNKNOWN_SESSION);
+					respond(responseSocket, responseMessage, format);
+					return;
+				}
+				request = session.open(request, true);
+			} else {
+				// decrypt and verify message
+				requestingNode = fBase.configAccessHelper.nodeConfig_get(envelope.getNodeID());
 
-			if (requestingNode == null) {
-				throw new FBaseException("No config for nodeID " + envelope.getConfigID().getID());
-			}
+				if (requestingNode == null) {
+					throw new FBaseException(
+							"No config for nodeID " + envelope.getConfigID().getID());
+				}
 
-			envelope.getMessage().decryptFields(fBase.configuration.getPrivateKey(),
-					EncryptionAlgorithm.RSA);
-			if (!envelope.getMessage().verifyMessage(requestingNode.getPublicKey(),
-					EncryptionAlgorithm.RSA)) {
-				throw new FBaseEncryptionException("The message was not signed correctly");
+				request.decryptFields(fBase.configuration.getPrivateKey(),
+						EncryptionAlgorithm.RSA);
+				if (!request.verifyMessage(requestingNode.getPublicKey(),
+						EncryptionAlgorithm.RSA)) {
+					throw new FBaseEncryptionException("The message was not signed correctly");
+				}
 			}
 
 			// INTERPRET MESSAGE
 			// if slow, it might be wise to create another task which executes the processing
 
-			if (Command.GET_DATA_FOR_MESSAGEID.equals(envelope.getMessage().getCommand())) {
+			// handshakes are recognized by their marker before the command is dispatched
+			if (DirectMessageSessions.HANDSHAKE.equals(request.getTextualInfo())) {
+				if (session != null) {
+					throw new FBaseEncryptionException("Sessions must be offered with RSA");
+				}
+				if (!DirectMessageSessions.HANDSHAKE_COMMAND.equals(request.getCommand())) {
+					throw new FBaseException(
+							"Unexpected handshake command " + request.getCommand());
+				}
+				fBase.directMessageSessions.accept(envelope.getNodeID(), request.getContent());
+				// the session id is signed, so the requesting node knows we accepted it
+				responseMessage.setContent(request.getContent().split(":")[0]);
+				responseMessage.setTextualInfo("Success");
+			} else if (Command.GET_DATA_FOR_MESSAGEID.equals(request.getCommand())
+					&& RANGE_REQUEST.equals(request.getTextualInfo())) {
+				try {
+					MessageIDRange range =
+							JSONable.fromJSON(request.getContent(), MessageIDRange.class);
+					responseMessage.setContent(
+							JSONable.toJSON(getMissedMessages(fBase.connector, range)));
+					responseMessage.setTextualInfo("Success");
+				} catch (NullPointerException | IllegalArgumentException e) {
+					responseMessage.setTextualInfo("Required messageID range not parseable");
+				}
+			} else if (Command.GET_DATA_FOR_MESSAGEID.equals(request.getCommand())) {
 				MessageID messageID = new MessageID();
 				try {
-					messageID.setMessageIDString(envelope.getMessage().getContent());
+					messageID.setMessageIDString(request.getContent());
 					DataIdentifier dataID = fBase.connector.messageHistory_get(messageID);
 					DataRecord record = fBase.connector.dataRecords_get(dataID);
 					responseMessage.setContent(
@@ -81,40 +144,140 @@ public class DirectMessageReceiver extends AbstractReceiver {
 				} catch (FBaseException e) {
 					responseMessage.setTextualInfo("Required messageID not parseable");
 				}
-			} else if (Command.ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE.equals(envelope.getMessage().getCommand())) { 
-				responseMessage.setContent("true");
+			} else if (Command.ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE.equals(request.getCommand())) {
+				Consumer<Message> responder = respondLater(format);
+				if (responder != null) {
+					// announcing can take a while, so we reply once the task finished instead of
+					// blocking a worker that is shared with all other requests
+					Command command = request.getCommand();
+					Session announceSession = session;
+					NodeConfig announceNode = requestingNode;
+					fBase.taskmanager.runAnnounceUpdateOfOwnNodeConfigurationTask(
+							(status, error) -> responder.accept(secureResponse(
+									createAnnounceResponse(status, error), command,
+									announceSession, announceNode)));
+					return;
+				}
+				Boolean status = null;
+				Throwable error = null;
 				try {
-					boolean status = fBase.taskmanager.runAnnounceUpdateOfOwnNodeConfigurationTask().get(5, TimeUnit.SECONDS);
-					if (status == false) {
-						responseMessage.setContent("Announcing failed, check log of target machine");
-					}
+					status = fBase.taskmanager.runAnnounceUpdateOfOwnNodeConfigurationTask()
+							.get(5, TimeUnit.SECONDS);
 				} catch (InterruptedException | ExecutionException | TimeoutException e) {
-					responseMessage.setContent(e.getMessage());
+					error = e;
 				}
-				
+				responseMessage = createAnnounceResponse(status, error);
 			} else {
-				responseMessage.setTextualInfo(
-						"Unknown command " + envelope.getMessage().getCommand().toString());
+				responseMessage.setTextualInfo("Unknown command " + request.getCommand());
 			}
 
 			// END INTERPRETATION
 
-			// sign and encrypt responseMessage
 			logger.debug("Result: " + responseMessage.getTextualInfo());
-			if (responseMessage.getContent() != null) {
-				// we can only sign if content != null
-				responseMessage.signMessage(fBase.configuration.getPrivateKey(),
-					EncryptionAlgorithm.RSA);
-			}
-			responseMessage.encryptFields(requestingNode.getPublicKey(), EncryptionAlgorithm.RSA);
+			responseMessage =
+					secureResponse(responseMessage, request.getCommand(), session, requestingNode);
 		} catch (FBaseException e) {
 			logger.error("Could not process message from " + envelope.getNodeID(), e);
-			responseMessage.setTextualInfo("Error, " + e.getMessage());
-			logger.debug("Result: " + responseMessage.getTextualInfo());
+			Message errorMessage = new Message();
+			errorMessage.setTextualInfo("Error, " + e.getMessage());
+			logger.debug("Result: " + errorMessage.getTextualInfo());
+			// unsealed responses are not authenticated, so the requesting node ignores them
+			responseMessage = secureResponse(errorMessage, request.getCommand(), session, null);
+		}
+
+		respond(responseSocket, responseMessage, format);
+
+	}
+
+	/**
+	 * Seals the response with the session of the request or, if the request was not sent
+	 * within a session, signs it and encrypts it with the public key of the requesting node.
+	 * 
+	 * @param response - the response
+	 * @param command - the command of the request
+	 * @param session - the session of the request, or null
+	 * @param requestingNode - the node config of the requesting node, or null if the response
+	 *            should not be encrypted with RSA
+	 * @return the secured response, or an unencrypted error response if securing failed
+	 */
+	private Message secureResponse(Message response, Command command, Session session,
+			NodeConfig requestingNode) {
+		try {
+			if (session != null) {
+				response.setCommand(command);
+				return session.seal(response, false);
+			}
+			if (requestingNode != null) {
+				// sign and encrypt responseMessage
+				if (response.getContent() != null) {
+					// we can only sign if content != null
+					response.signMessage(fBase.configuration.getPrivateKey(),
+							EncryptionAlgorithm.RSA);
+				}
+				response.encryptFields(requestingNode.getPublicKey(), EncryptionAlgorithm.RSA);
+			}
+			return response;
+		} catch (FBaseException e) {
+			logger.error("Could not secure response", e);
+			Message errorMessage = new Message();
+			errorMessage.setTextualInfo("Error, " + e.getMessage());
+			return errorMessage;
 		}
+	}
+
+	/**
+	 * Creates the response to an {@link Command#ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE}
+	 * request.
+	 * 
+	 * @param status - the result of the announce task
+	 * @param error - the exception thrown while announcing, or null
+	 * @return the response
+	 */
+	private static Message createAnnounceResponse(Boolean status, Throwable error) {
+		Message response = new Message();
+		if (error != null) {
+			response.setContent(error.getMessage());
+		} else if (!Boolean.TRUE.equals(status)) {
+			response.setContent("Announcing failed, check log of target machine");
+		} else {
+			response.setContent("true");
+		}
+		return response;
+	}
 
-		responseSocket.send(JSONable.toJSON(responseMessage));
+	/**
+	 * Looks up the data records related to a range of messageIDs. At most
+	 * {@link #MAX_RANGE_RESPONSE_SIZE} messages are returned, the response tells which version
+	 * has to be requested next if the range is larger.
+	 * 
+	 * @param connector - the connector used to look up the message history and data records
+	 * @param range - the requested range
+	 * @return the response
+	 * @throws FBaseStorageConnectorException
+	 */
+	static GetMissedMessagesResponse getMissedMessages(AbstractDBConnector connector,
+			MessageIDRange range) throws FBaseStorageConnectorException {
+		MessageID first = range.getFirstMessageID();
+		if (range.getLastVersion() < first.getVersion()) {
+			throw new IllegalArgumentException("Last version is lower than first version");
+		}
+		int lastVersion = (int) Math.min(range.getLastVersion(),
+				(long) first.getVersion() + MAX_RANGE_RESPONSE_SIZE - 1);
+
+		List<DataIdentifier> dataIDs = new ArrayList<>();
+		for (int version = first.getVersion(); version <= lastVersion; version++) {
+			dataIDs.add(connector.messageHistory_get(
+					new MessageID(first.getNodeID(), first.getMachineName(), version)));
+		}
+		Map<DataIdentifier, DataRecord> records = connector.dataRecords_getAll(
+				dataIDs.stream().filter(Objects::nonNull).collect(Collectors.toSet()));
 
+		List<GetMissedMessageResponse> responses = new ArrayList<>();
+		for (DataIdentifier dataID : dataIDs) {
+			responses.add(new GetMissedMessageResponse(dataID, records.get(dataID)));
+		}
+		Integer nextVersion = lastVersion < range.getLastVersion() ? lastVersion + 1 : null;
+		return new GetMissedMessagesResponse(responses, nextVersion);
 	}
 
 }
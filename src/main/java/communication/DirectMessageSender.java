@@ -1,14 +1,18 @@
 package communication;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
 
+import communication.DirectMessageSessions.Session;
 import control.FBase;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import de.hasenburg.fbase.model.GetMissedMessageResponse;
+import de.hasenburg.fbase.model.GetMissedMessagesResponse;
+import de.hasenburg.fbase.model.MessageIDRange;
 import exceptions.FBaseCommunicationException;
 import exceptions.FBaseEncryptionException;
 import model.JSONable;
@@ -16,6 +20,7 @@ import model.config.NodeConfig;
 import model.data.DataIdentifier;
 import model.data.DataRecord;
 import model.data.MessageID;
+import model.data.NodeID;
 import model.messages.Command;
 import model.messages.Envelope;
 import model.messages.Message;
@@ -30,15 +35,46 @@ public class DirectMessageSender extends AbstractSender {
 
 	private static Logger logger = Logger.getLogger(DirectMessageSender.class.getName());
 
+	/**
+	 * Maximum time in milliseconds to wait for a response, see {@link PeerHealthMonitor} for
+	 * the timeout of a request
+	 */
+	public static final long REQUEST_TIMEOUT = 2000;
+
+	/**
+	 * Minimum timeout in milliseconds of requests that take longer to process than others,
+	 * like range requests and announce requests, because the response times of all requests
+	 * to a machine determine the adaptive timeout
+	 */
+	public static final long SLOW_REQUEST_TIMEOUT = REQUEST_TIMEOUT;
+
 	private FBase fBase = null;
 	private NodeConfig targetNode = null;
 
+	/**
+	 * True if the last request did not get a response
+	 */
+	private boolean failed = false;
+
 	/**
 	 * Initializes the Message, it then can be used without further modifications.
 	 * Messages are send to a random machine of the given node configuration.
 	 */
 	public DirectMessageSender(NodeConfig targetNode, FBase fBase) {
-		super(getRandomAddress(targetNode.getMachines()), targetNode.getMessagePort(), ZMQ.REQ);
+		this(targetNode, getRandomAddress(targetNode.getMachines()), fBase);
+	}
+
+	/**
+	 * Initializes the Message, it then can be used without further modifications.
+	 * Messages are send to the given machine of the given node configuration.
+	 * 
+	 * @param targetNode - the node configuration
+	 * @param machineAddress - the address of one of the machines of the node, including the
+	 *            protocol
+	 * @param fBase
+	 */
+	public DirectMessageSender(NodeConfig targetNode, String machineAddress, FBase fBase) {
+		super(machineAddress, targetNode.getMessagePort(), ZMQ.REQ);
 		this.fBase = fBase;
 		this.targetNode = targetNode;
 	}
@@ -51,11 +87,28 @@ public class DirectMessageSender extends AbstractSender {
 		this.fBase = fBase;
 	}
 	
-	private static String getRandomAddress(List<String> machines) {
+	static String getRandomAddress(List<String> machines) {
 		int randomNum = ThreadLocalRandom.current().nextInt(0, machines.size());
 		return "tcp://" + machines.get(randomNum);
 	}
 
+	/**
+	 * @return the node configuration of the target node, or null if the sender was created
+	 *         for an address
+	 */
+	public NodeConfig getTargetNode() {
+		return targetNode;
+	}
+
+	/**
+	 * A sender is healthy if it is not shut down and got a response to its last request.
+	 * 
+	 * @return true if the sender can be reused
+	 */
+	public boolean isHealthy() {
+		return ableToSend && !isShutdown() && !failed;
+	}
+
 	/**
 	 * Sends an envelope to the address of the sender. The parameters secret and algorithm are
 	 * not used. If the envelope should contain an encrypted message, it must be supplied
@@ -64,32 +117,108 @@ public class DirectMessageSender extends AbstractSender {
 	 * It is recommended to use the other sender methods instead of this one directly
 	 * 
 	 * @param envelope
-	 * @return the response
+	 * @return the response, binary responses are converted to json
 	 * @throws FBaseCommunicationException
 	 */
 	@Override
 	public String send(Envelope envelope, String secret, EncryptionAlgorithm algorithm)
 			throws FBaseCommunicationException {
+		byte[] reply = exchange(envelope, PeerHealthMonitor.MIN_TIMEOUT);
+		if (reply == null) {
+			return null;
+		} else if (WireFormat.BINARY.equals(MessageCodec.detect(reply))) {
+			return JSONable.toJSON(decodeReply(reply));
+		}
+		return new String(reply, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends an envelope and decodes the response.
+	 * 
+	 * @param envelope
+	 * @param minTimeout - the minimum timeout in milliseconds
+	 * @return the response, or null if not able to send
+	 * @throws FBaseCommunicationException
+	 */
+	private Message request(Envelope envelope, long minTimeout)
+			throws FBaseCommunicationException {
+		byte[] reply = exchange(envelope, minTimeout);
+		return reply == null ? null : decodeReply(reply);
+	}
+
+	private Message decodeReply(byte[] reply) throws FBaseCommunicationException {
+		try {
+			return MessageCodec.decode(reply);
+		} catch (IllegalArgumentException e) {
+			logger.warn("Could not decode reply of node, " + e.getMessage());
+			throw new FBaseCommunicationException(
+					FBaseCommunicationException.NODE_NOT_REACHABLE);
+		}
+	}
+
+	/**
+	 * Sends an envelope to the address of the sender in the format negotiated with the target
+	 * machine, see {@link WireFormatNegotiator}. Requests to machines that did not respond
+	 * recently fail immediately, see {@link PeerHealthMonitor}.
+	 * 
+	 * @param envelope
+	 * @param minTimeout - the minimum timeout in milliseconds
+	 * @return the encoded response, or null if not able to send
+	 * @throws FBaseCommunicationException
+	 */
+	private byte[] exchange(Envelope envelope, long minTimeout)
+			throws FBaseCommunicationException {
 
 		if (!ableToSend) {
 			return null;
 		}
 
+		String peer = getAddress() + ":" + getPort();
+		WireFormatNegotiator negotiator = fBase == null ? null : fBase.wireFormatNegotiator;
+		WireFormat format = negotiator == null ? WireFormat.JSON : negotiator.getFormat(peer);
+		PeerHealthMonitor monitor = fBase == null ? null : fBase.peerHealthMonitor;
+		if (monitor != null && !monitor.allowRequest(peer)) {
+			throw new FBaseCommunicationException(FBaseCommunicationException.NODE_NOT_REACHABLE);
+		}
+		long timeout = monitor == null ? REQUEST_TIMEOUT
+				: monitor.getTimeout(peer, minTimeout, REQUEST_TIMEOUT);
+
+		long start = System.currentTimeMillis();
 		sender.sendMore(envelope.getConfigID().getID());
-		sender.send(JSONable.toJSON(envelope.getMessage()));
+		sender.send(MessageCodec.encode(envelope.getMessage(), format));
 
 		ZMQ.Poller poller = context.poller();
 		poller.register(sender, ZMQ.Poller.POLLIN);
-		long rc = poller.poll(2000);
-		if (rc == -1)
+		long rc = poller.poll(timeout);
+		if (rc == -1) {
+			failed = true;
+			if (monitor != null) {
+				monitor.failure(peer);
+			}
 			throw new FBaseCommunicationException(FBaseCommunicationException.NODE_NOT_REACHABLE);
+		}
 
 		if (poller.pollin(0)) {
 			// We got a reply from the server, must match sequence
-			String reply = sender.recvStr();
+			byte[] reply = sender.recv();
+			failed = false;
+			if (monitor != null) {
+				monitor.success(peer, System.currentTimeMillis() - start);
+			}
+			if (negotiator != null) {
+				negotiator.replyReceived(peer, format, MessageCodec.detect(reply));
+			}
 			return reply;
 		} else {
-			logger.warn("Did not get a response from node, recreating socket");
+			logger.warn("Did not get a response from node within " + timeout
+					+ "ms, recreating socket");
+			failed = true;
+			if (monitor != null) {
+				monitor.failure(peer);
+			}
+			if (negotiator != null) {
+				negotiator.replyMissing(peer, format);
+			}
 			sender.setLinger(0); // drop pending messages when closed
 			sender.close();
 			poller.unregister(sender);
@@ -114,8 +243,8 @@ public class DirectMessageSender extends AbstractSender {
 		m.setCommand(Command.GET_DATA_FOR_MESSAGEID);
 		m.setContent(messageID.getMessageIDString());
 		try {
-			String answer = send(createEncryptedEnvelope(m, targetNode.getPublicKey()), null, null);
-			Message response = createDecryptedMessage(answer, targetNode.getPublicKey());
+			Message response = secureRequest(m, targetNode.getNodeID(),
+					targetNode.getPublicKey(), PeerHealthMonitor.MIN_TIMEOUT);
 
 			GetMissedMessageResponse returnVal;
 
@@ -134,6 +263,42 @@ public class DirectMessageSender extends AbstractSender {
 		}
 	}
 
+	/**
+	 * Ask the target node to return the {@link DataIdentifier}s and {@link DataRecord}s which
+	 * are related to the versions from the given {@link MessageID} up to lastVersion. The node
+	 * might return only the beginning of the range, see
+	 * {@link GetMissedMessagesResponse#getNextVersion()}.
+	 * 
+	 * @param firstMessageID - the {@link MessageID} of the first version
+	 * @param lastVersion - the last version, inclusive
+	 * @return the specified values wrapped in {@link GetMissedMessagesResponse}, or null if
+	 *         the target node does not support range requests
+	 * @throws FBaseCommunicationException if the node cannot be reached or the request or
+	 *             response cannot be encrypted or decrypted
+	 */
+	public GetMissedMessagesResponse sendGetDataRecords(MessageID firstMessageID,
+			int lastVersion) throws FBaseCommunicationException {
+		Message m = new Message();
+		m.setCommand(Command.GET_DATA_FOR_MESSAGEID);
+		m.setContent(JSONable.toJSON(new MessageIDRange(firstMessageID, lastVersion)));
+		m.setTextualInfo(DirectMessageReceiver.RANGE_REQUEST);
+		try {
+			Message response = secureRequest(m, targetNode.getNodeID(),
+					targetNode.getPublicKey(), SLOW_REQUEST_TIMEOUT);
+
+			if (response.getContent() == null) {
+				// nodes without range support do not understand the request
+				logger.debug("Range request failed: " + response.getTextualInfo());
+				return null;
+			}
+			return JSONable.fromJSON(response.getContent(), GetMissedMessagesResponse.class);
+		} catch (FBaseEncryptionException e1) {
+			// not a missing range support, requesting single messages would fail as well
+			logger.error(e1.getMessage(), e1);
+			throw new FBaseCommunicationException("Range request failed " + e1.getMessage());
+		}
+	}
+
 	/**
 	 * Ask the target machine to run the test of {@link tasks.AnnounceUpdateOfOwnNodeConfigurationTask}.
 	 * This is necessary if a new machine was added to a node, because node configuration
@@ -147,10 +312,10 @@ public class DirectMessageSender extends AbstractSender {
 		m.setContent(Command.ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE.toString());
 		m.setCommand(Command.ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE);
 		try {
-			String answer = send(createEncryptedEnvelope(m, fBase.configuration.getPublicKey()), null, null);
-			Message response = createDecryptedMessage(answer, fBase.configuration.getPublicKey());
+			Message response = secureRequest(m, fBase.configuration.getNodeID(),
+					fBase.configuration.getPublicKey(), SLOW_REQUEST_TIMEOUT);
 
-			if (response.getContent().equals("true")) {
+			if ("true".equals(response.getContent())) {
 				logger.debug("The other machine announced me");
 				return;
 			} else {
@@ -163,6 +328,98 @@ public class DirectMessageSender extends AbstractSender {
 		}
 	}
 
+	/**
+	 * Sends a message to the target node and returns the decrypted response. The message is
+	 * encrypted with the session key of the target machine, see {@link DirectMessageSessions}.
+	 * If sessions are not supported, it is signed and encrypted with RSA instead. The message
+	 * is only sent again if the target machine did not know the session, because then it was
+	 * not processed.
+	 * 
+	 * @param m - the message
+	 * @param nodeID - the nodeID of the target node
+	 * @param nodePublicKey - the public key of the target node
+	 * @param minTimeout - the minimum timeout in milliseconds, see {@link PeerHealthMonitor}
+	 * @return the decrypted response
+	 * @throws FBaseEncryptionException
+	 * @throws FBaseCommunicationException
+	 */
+	private Message secureRequest(Message m, NodeID nodeID, String nodePublicKey,
+			long minTimeout) throws FBaseEncryptionException, FBaseCommunicationException {
+		DirectMessageSessions sessions = fBase.directMessageSessions;
+		String machine = getAddress() + ":" + getPort();
+		// a second attempt is made if the target machine forgot the session, e.g. after a restart
+		for (int attempt = 0; attempt < 2; attempt++) {
+			if (sessions == null || !sessions.isEnabled(nodeID)) {
+				break;
+			}
+			Session session = sessions.getOutgoing(nodeID, machine);
+			if (session == null
+					&& (session = handshake(nodeID, machine, nodePublicKey)) == null) {
+				break;
+			}
+			Message answer = request(new Envelope(fBase.configuration.getNodeID(),
+					session.seal(m, true)), minTimeout);
+			if (answer == null) {
+				throw new FBaseCommunicationException(
+						FBaseCommunicationException.NODE_NOT_REACHABLE);
+			}
+			if (DirectMessageSessions.isSealed(answer)) {
+				Message response = session.open(answer, false);
+				logger.debug("Reply of node received");
+				logger.debug("Message textual info: " + response.getTextualInfo());
+				return response;
+			}
+			if (!DirectMessageSessions.UNKNOWN_SESSION.equals(answer.getTextualInfo())) {
+				// the request might have been processed, so it must not be sent again
+				logger.warn("Node " + nodeID + " answered without session: "
+						+ answer.getTextualInfo());
+				Message response = new Message();
+				response.setTextualInfo(answer.getTextualInfo());
+				return response;
+			}
+			logger.debug("Session with node " + nodeID + " is unknown to " + machine);
+			sessions.invalidate(session);
+		}
+		return request(createEncryptedEnvelope(m, nodePublicKey), nodePublicKey, minTimeout);
+	}
+
+	/**
+	 * Offers a new session key to the target machine with a RSA signed and encrypted request.
+	 * If the machine answers without accepting the session, the node is remembered as not
+	 * supporting sessions, see {@link DirectMessageSessions#rejected(NodeID)}.
+	 * 
+	 * @param nodeID - the nodeID of the target node
+	 * @param machine - the address of the target machine, including the port
+	 * @param nodePublicKey - the public key of the target node
+	 * @return the established session, or null if the target node does not support sessions
+	 * @throws FBaseEncryptionException
+	 * @throws FBaseCommunicationException if the machine did not answer, nothing is
+	 *             remembered then
+	 */
+	private Session handshake(NodeID nodeID, String machine, String nodePublicKey)
+			throws FBaseEncryptionException, FBaseCommunicationException {
+		DirectMessageSessions sessions = fBase.directMessageSessions;
+		Session session = sessions.createOutgoing(nodeID, machine);
+		Message m = new Message();
+		m.setCommand(DirectMessageSessions.HANDSHAKE_COMMAND);
+		m.setTextualInfo(DirectMessageSessions.HANDSHAKE);
+		m.setContent(session.getOffer());
+		Message response = request(createEncryptedEnvelope(m, nodePublicKey), nodePublicKey,
+				PeerHealthMonitor.MIN_TIMEOUT);
+		if (session.getSessionID().equals(response.getContent())) {
+			sessions.established(session);
+			return session;
+		}
+		logger.debug("Node " + nodeID + " rejected session: " + response.getTextualInfo());
+		sessions.rejected(nodeID);
+		return null;
+	}
+
+	private Message request(Envelope envelope, String nodePublicKey, long minTimeout)
+			throws FBaseEncryptionException, FBaseCommunicationException {
+		return createDecryptedMessage(request(envelope, minTimeout), nodePublicKey);
+	}
+
 	/**
 	 * Create an envelope that is signed with the private key of the node and encrypted with
 	 * the public key of the target node. Also sets
@@ -182,22 +439,21 @@ public class DirectMessageSender extends AbstractSender {
 	}
 
 	/**
-	 * Creates a {@link Message} based on a given json String. Also decrypts all fields with
-	 * the own private key and verifies the signature with the provided public key of a node.
+	 * Decrypts all fields of a received {@link Message} with the own private key and verifies
+	 * the signature with the provided public key of a node.
 	 * 
-	 * @param s - json of the message
+	 * @param m - the received message
 	 * @param nodePublicKey - the public key of the target node
 	 * 
 	 * @return the decrypted message
 	 * @throws FBaseEncryptionException
 	 * @throws FBaseCommunicationException
 	 */
-	private Message createDecryptedMessage(String s, String nodePublicKey)
+	private Message createDecryptedMessage(Message m, String nodePublicKey)
 			throws FBaseEncryptionException, FBaseCommunicationException {
-		if (s == null) {
+		if (m == null) {
 			throw new FBaseCommunicationException(FBaseCommunicationException.NODE_NOT_REACHABLE);
 		}
-		Message m = JSONable.fromJSON(s, Message.class);
 		m.decryptFields(fBase.configuration.getPrivateKey(), EncryptionAlgorithm.RSA);
 		if (m.getContent() != null) {
 			// we can only verify, if a content was set
@@ -0,0 +1,214 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import control.FBase;
+import model.config.NodeConfig;
+
+/**
+ * Keeps idle {@link DirectMessageSender}s, so that repeated requests to the same machine reuse
+ * an existing connection instead of creating a new socket and connecting again.
+ *
+ * A borrowed sender is used exclusively by the borrowing thread until it is handed back with
+ * {@link #release(DirectMessageSender)}. Senders whose last request failed are shut down
+ * instead of being kept, as are senders that were not used for {@link #IDLE_TIMEOUT}.
+ */
+public class DirectMessageSenderPool {
+
+	private static Logger logger = Logger.getLogger(DirectMessageSenderPool.class.getName());
+
+	/**
+	 * Time in milliseconds after which an idle sender is shut down
+	 */
+	public static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+	/**
+	 * Maximum number of idle senders kept per machine
+	 */
+	public static final int MAX_IDLE_PER_MACHINE = 4;
+
+	/**
+	 * Minimum time in milliseconds between two runs of the idle eviction
+	 */
+	private static final long EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+	private static class Idle {
+		private final DirectMessageSender sender;
+		private final long releasedAt;
+
+		private Idle(DirectMessageSender sender, long releasedAt) {
+			this.sender = sender;
+			this.releasedAt = releasedAt;
+		}
+	}
+
+	private final FBase fBase;
+
+	/**
+	 * Idle senders per nodeID and machine, the most recently released sender is first
+	 */
+	private final ConcurrentHashMap<String, Deque<Idle>> idleSenders = new ConcurrentHashMap<>();
+
+	/**
+	 * Borrowed senders, mapped to the key of their machine
+	 */
+	private final ConcurrentHashMap<DirectMessageSender, String> borrowed =
+			new ConcurrentHashMap<>();
+
+	private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+	private volatile boolean shutdown = false;
+
+	public DirectMessageSenderPool(FBase fBase) {
+		this.fBase = fBase;
+	}
+
+	/**
+	 * Borrows a sender for a machine of the given node. Machines with an idle sender are
+	 * preferred, otherwise a new sender for a random machine is created.
+	 *
+	 * @param targetNode - the node configuration of the target node
+	 * @return the sender, must be handed back with {@link #release(DirectMessageSender)}
+	 */
+	public DirectMessageSender borrow(NodeConfig targetNode) {
+		List<String> machines = new ArrayList<>(targetNode.getMachines());
+		Collections.shuffle(machines);
+		for (String machine : machines) {
+			String key = getKey(targetNode, "tcp://" + machine, targetNode.getMessagePort());
+			DirectMessageSender sender = pollIdle(key);
+			if (sender != null) {
+				return lend(sender, key);
+			}
+		}
+		String address = DirectMessageSender.getRandomAddress(targetNode.getMachines());
+		return lend(new DirectMessageSender(targetNode, address, fBase),
+				getKey(targetNode, address, targetNode.getMessagePort()));
+	}
+
+	/**
+	 * Borrows a sender for a single machine, see
+	 * {@link DirectMessageSender#DirectMessageSender(String, int, FBase)}.
+	 *
+	 * @param targetAddress - the address of the machine, including the protocol
+	 * @param targetPort - the message port of the machine
+	 * @return the sender, must be handed back with {@link #release(DirectMessageSender)}
+	 */
+	public DirectMessageSender borrow(String targetAddress, int targetPort) {
+		String key = getKey(null, targetAddress, targetPort);
+		DirectMessageSender sender = pollIdle(key);
+		if (sender == null) {
+			sender = new DirectMessageSender(targetAddress, targetPort, fBase);
+		}
+		return lend(sender, key);
+	}
+
+	private DirectMessageSender lend(DirectMessageSender sender, String key) {
+		borrowed.put(sender, key);
+		return sender;
+	}
+
+	/**
+	 * Hands a borrowed sender back. The sender must not be used by the caller anymore.
+	 *
+	 * @param sender - the sender
+	 */
+	public void release(DirectMessageSender sender) {
+		String key = borrowed.remove(sender);
+		if (key == null || shutdown || !sender.isHealthy()) {
+			sender.shutdown();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		// adding within compute prevents that the eviction removes the deque concurrently
+		Deque<Idle> idle = idleSenders.compute(key, (k, deque) -> {
+			Deque<Idle> d = deque == null ? new ConcurrentLinkedDeque<>() : deque;
+			d.offerFirst(new Idle(sender, now));
+			return d;
+		});
+		// the least recently used senders are removed first
+		while (idle.size() > MAX_IDLE_PER_MACHINE) {
+			Idle removed = idle.pollLast();
+			if (removed != null) {
+				removed.sender.shutdown();
+			}
+		}
+		if (shutdown) {
+			// shutdown might have missed the sender
+			closeAll();
+		}
+		evictIdle(now);
+	}
+
+	private DirectMessageSender pollIdle(String key) {
+		if (shutdown) {
+			throw new IllegalStateException("Sender pool is shut down");
+		}
+		long now = System.currentTimeMillis();
+		evictIdle(now);
+		Deque<Idle> idle = idleSenders.get(key);
+		Idle candidate;
+		while (idle != null && (candidate = idle.pollFirst()) != null) {
+			if (now - candidate.releasedAt < IDLE_TIMEOUT && candidate.sender.isHealthy()) {
+				return candidate.sender;
+			}
+			candidate.sender.shutdown();
+		}
+		return null;
+	}
+
+	private void evictIdle(long now) {
+		long last = lastEviction.get();
+		if (now - last < EVICTION_INTERVAL || !lastEviction.compareAndSet(last, now)) {
+			return;
+		}
+		idleSenders.forEach((key, idle) -> {
+			for (Idle candidate : idle) {
+				// only shut down senders that were not borrowed in the meantime
+				if (now - candidate.releasedAt >= IDLE_TIMEOUT && idle.remove(candidate)) {
+					logger.debug("Closing idle sender for " + key);
+					candidate.sender.shutdown();
+				}
+			}
+		});
+		idleSenders.keySet().forEach(
+				key -> idleSenders.computeIfPresent(key, (k, idle) -> idle.isEmpty() ? null : idle));
+	}
+
+	private static String getKey(NodeConfig targetNode, String address, int port) {
+		String nodeID = targetNode == null ? "" : targetNode.getNodeID().getID();
+		return nodeID + "@" + address + ":" + port;
+	}
+
+	/**
+	 * @return the number of idle senders
+	 */
+	public int getNumberOfIdleSenders() {
+		return idleSenders.values().stream().mapToInt(Deque::size).sum();
+	}
+
+	/**
+	 * Shuts down all idle senders, borrowed senders are shut down when they are released.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		closeAll();
+	}
+
+	private void closeAll() {
+		idleSenders.values().forEach(idle -> {
+			Idle candidate;
+			while ((candidate = idle.pollFirst()) != null) {
+				candidate.sender.shutdown();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,370 @@
+package communication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.log4j.Logger;
+
+import exceptions.FBaseEncryptionException;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Message;
+
+/**
+ * Manages the symmetric session keys used for direct messages between nodes.
+ *
+ * Before a node sends direct messages to a machine of another node, it offers a random
+ * session key with a RSA signed and encrypted handshake request, see
+ * {@link DirectMessageSender}. Once the machine accepted the key, requests and responses are
+ * encrypted and authenticated with AES-GCM instead of being signed and encrypted with RSA.
+ * Each machine only knows the sessions offered to itself, so outgoing sessions are kept per
+ * machine. Sessions expire after the configured lifetime, afterwards a new handshake is
+ * necessary.
+ *
+ * Nodes that do not support sessions are remembered for {@link #RETRY_INTERVAL}, direct
+ * messages to them are signed and encrypted with RSA.
+ */
+public class DirectMessageSessions {
+
+	private static Logger logger = Logger.getLogger(DirectMessageSessions.class.getName());
+
+	/**
+	 * The textual info of a handshake request, its content is a {@link Session#getOffer()}
+	 */
+	public static final String HANDSHAKE = "SessionHandshake";
+
+	/**
+	 * The command of a handshake request. Handshakes are marked by {@link #HANDSHAKE} in the
+	 * textual info, which receivers with session support check before they dispatch the
+	 * command; they never process this command otherwise.
+	 *
+	 * Receivers without session support only dispatch GET_DATA_FOR_MESSAGEID and
+	 * ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE, so they answer handshakes with "Unknown command"
+	 * without side effects, which the sender treats as a rejection. A read command is used so
+	 * that even a receiver dispatching it could not change any state. The command must not be
+	 * null, because these receivers fail on requests without a command and never answer.
+	 */
+	public static final Command HANDSHAKE_COMMAND = Command.NODE_CONFIG_READ;
+
+	/**
+	 * Prefix of the textual info of session encrypted messages, followed by the session id
+	 */
+	public static final String SESSION_PREFIX = "Session:";
+
+	/**
+	 * The textual info of the response to a request with an unknown or expired session
+	 */
+	public static final String UNKNOWN_SESSION = "Unknown session";
+
+	/**
+	 * Time in milliseconds after which a node without session support is asked again
+	 */
+	public static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * Time in milliseconds a session is still accepted by the receiving node after it expired,
+	 * so that requests sent shortly before the expiry are not rejected
+	 */
+	private static final long GRACE_PERIOD = TimeUnit.SECONDS.toMillis(30);
+
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final int KEY_SIZE = 128;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_LENGTH = 128;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	/**
+	 * A session key shared with another node.
+	 */
+	public static class Session {
+
+		private final String sessionID;
+		private final NodeID nodeID;
+		private final String machine;
+		private final SecretKey key;
+		private final long expiresAt;
+
+		private Session(String sessionID, NodeID nodeID, String machine, SecretKey key,
+				long expiresAt) {
+			this.sessionID = sessionID;
+			this.nodeID = nodeID;
+			this.machine = machine;
+			this.key = key;
+			this.expiresAt = expiresAt;
+		}
+
+		public String getSessionID() {
+			return sessionID;
+		}
+
+		/**
+		 * @return the other node of the session
+		 */
+		public NodeID getNodeID() {
+			return nodeID;
+		}
+
+		/**
+		 * @return the address of the other machine for outgoing sessions, otherwise null
+		 */
+		public String getMachine() {
+			return machine;
+		}
+
+		public boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+
+		/**
+		 * @return the content of the handshake request which offers this session
+		 */
+		String getOffer() {
+			return sessionID + ":" + Base64.getEncoder().encodeToString(key.getEncoded()) + ":"
+					+ expiresAt;
+		}
+
+		/**
+		 * Encrypts the whole message with the session key. The command stays readable, the
+		 * textual info identifies the session.
+		 *
+		 * @param m - the message
+		 * @param request - true for requests, false for responses
+		 * @return the encrypted message
+		 * @throws FBaseEncryptionException
+		 */
+		public Message seal(Message m, boolean request) throws FBaseEncryptionException {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			try {
+				Cipher cipher = Cipher.getInstance(CIPHER);
+				cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+				cipher.updateAAD(getAssociatedData(m, request));
+				byte[] encrypted = cipher.doFinal(MessageCodec.encode(m, WireFormat.BINARY));
+
+				Message sealed = new Message();
+				sealed.setCommand(m.getCommand());
+				sealed.setTextualInfo(SESSION_PREFIX + sessionID);
+				sealed.setContent(Base64.getEncoder().encodeToString(
+						ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted)
+								.array()));
+				return sealed;
+			} catch (GeneralSecurityException e) {
+				throw new FBaseEncryptionException(e.getMessage());
+			}
+		}
+
+		/**
+		 * Decrypts a message encrypted by {@link #seal(Message, boolean)} and checks that it
+		 * was not modified.
+		 *
+		 * @param sealed - the encrypted message
+		 * @param request - true for requests, false for responses
+		 * @return the decrypted message
+		 * @throws FBaseEncryptionException if the message cannot be decrypted or was modified
+		 */
+		public Message open(Message sealed, boolean request) throws FBaseEncryptionException {
+			try {
+				byte[] data = Base64.getDecoder().decode(sealed.getContent());
+				Cipher cipher = Cipher.getInstance(CIPHER);
+				cipher.init(Cipher.DECRYPT_MODE, key,
+						new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+				cipher.updateAAD(getAssociatedData(sealed, request));
+				return MessageCodec
+						.decode(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH));
+			} catch (GeneralSecurityException | IllegalArgumentException | NullPointerException e) {
+				throw new FBaseEncryptionException(
+						"Could not open message of session " + sessionID + ", " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Binds the ciphertext to the session, the direction and the command, so that it cannot
+		 * be reflected to the sender or replayed with another command.
+		 */
+		private byte[] getAssociatedData(Message m, boolean request) {
+			return (sessionID + "/" + (request ? "request" : "response") + "/" + m.getCommand())
+					.getBytes(StandardCharsets.UTF_8);
+		}
+
+	}
+
+	private final long lifetime;
+
+	/**
+	 * Sessions offered to machines of other nodes, mapped by the address of the machine
+	 */
+	private final ConcurrentHashMap<String, Session> outgoing = new ConcurrentHashMap<>();
+
+	/**
+	 * Sessions offered by other nodes, mapped by session id
+	 */
+	private final ConcurrentHashMap<String, Session> incoming = new ConcurrentHashMap<>();
+
+	/**
+	 * Nodes that did not accept a session, mapped to the time of the rejection
+	 */
+	private final ConcurrentHashMap<NodeID, Long> unsupported = new ConcurrentHashMap<>();
+
+	/**
+	 * @param lifetime - the lifetime of sessions in seconds, 0 disables sessions
+	 */
+	public DirectMessageSessions(int lifetime) {
+		if (lifetime < 0) {
+			throw new IllegalArgumentException("Session lifetime must not be negative");
+		}
+		this.lifetime = TimeUnit.SECONDS.toMillis(lifetime);
+	}
+
+	/**
+	 * @param nodeID - the target node
+	 * @return true if a session should be used for direct messages to the node
+	 */
+	public boolean isEnabled(NodeID nodeID) {
+		if (lifetime == 0) {
+			return false;
+		}
+		Long rejectionTime = unsupported.get(nodeID);
+		if (rejectionTime == null) {
+			return true;
+		}
+		if (System.currentTimeMillis() - rejectionTime > RETRY_INTERVAL) {
+			unsupported.remove(nodeID, rejectionTime);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param nodeID - the target node
+	 * @param machine - the address of the target machine, including the port
+	 * @return the established session with the machine, or null if a handshake is necessary
+	 */
+	public Session getOutgoing(NodeID nodeID, String machine) {
+		Session session = outgoing.get(machine);
+		if (session == null) {
+			return null;
+		}
+		if (!session.getNodeID().equals(nodeID)
+				|| session.isExpired(System.currentTimeMillis())) {
+			outgoing.remove(machine, session);
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Creates a new session with a random key that must be offered to the target machine with
+	 * a handshake.
+	 *
+	 * @param nodeID - the target node
+	 * @param machine - the address of the target machine, including the port
+	 * @return the new session
+	 */
+	public Session createOutgoing(NodeID nodeID, String machine) {
+		try {
+			KeyGenerator generator = KeyGenerator.getInstance("AES");
+			generator.init(KEY_SIZE, random);
+			return new Session(UUID.randomUUID().toString(), nodeID, machine,
+					generator.generateKey(), System.currentTimeMillis() + lifetime);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("AES is not available", e);
+		}
+	}
+
+	/**
+	 * Must be called once the target machine accepted the session.
+	 *
+	 * @param session - the session
+	 */
+	public void established(Session session) {
+		outgoing.put(session.getMachine(), session);
+		logger.debug("Established session with machine " + session.getMachine() + " of node "
+				+ session.getNodeID());
+	}
+
+	/**
+	 * Must be called if a session is unknown to the target machine, so that the next direct
+	 * message starts a new handshake.
+	 *
+	 * @param session - the session
+	 */
+	public void invalidate(Session session) {
+		outgoing.remove(session.getMachine(), session);
+	}
+
+	/**
+	 * Must be called if the target node does not support sessions.
+	 *
+	 * @param nodeID - the target node
+	 */
+	public void rejected(NodeID nodeID) {
+		logger.info("Node " + nodeID + " does not support sessions, using RSA for "
+				+ RETRY_INTERVAL / 1000 + " seconds");
+		unsupported.put(nodeID, System.currentTimeMillis());
+	}
+
+	/**
+	 * Accepts a session offered by another node with an authenticated handshake.
+	 *
+	 * @param nodeID - the node that offered the session
+	 * @param offer - the content of the handshake request
+	 * @throws FBaseEncryptionException if the offer cannot be parsed
+	 */
+	public void accept(NodeID nodeID, String offer) throws FBaseEncryptionException {
+		if (lifetime == 0) {
+			throw new FBaseEncryptionException("Sessions are disabled");
+		}
+		String[] parts = offer == null ? new String[0] : offer.split(":");
+		if (parts.length != 3) {
+			throw new FBaseEncryptionException("Session offer not parseable");
+		}
+		long now = System.currentTimeMillis();
+		incoming.values().removeIf(s -> s.isExpired(now - GRACE_PERIOD));
+		try {
+			// do not keep sessions longer than configured
+			long expiresAt = Math.min(Long.parseLong(parts[2]), now + lifetime);
+			SecretKey key = new SecretKeySpec(Base64.getDecoder().decode(parts[1]), "AES");
+			incoming.put(parts[0], new Session(parts[0], nodeID, null, key, expiresAt));
+		} catch (IllegalArgumentException e) {
+			throw new FBaseEncryptionException("Session offer not parseable");
+		}
+		logger.debug("Accepted session of node " + nodeID);
+	}
+
+	/**
+	 * @param nodeID - the node that sent the message
+	 * @param textualInfo - the textual info of the received message
+	 * @return the session of the message, or null if the session is unknown, expired, or
+	 *         belongs to another node
+	 */
+	public Session getIncoming(NodeID nodeID, String textualInfo) {
+		Session session = incoming.get(textualInfo.substring(SESSION_PREFIX.length()));
+		if (session == null || !session.getNodeID().equals(nodeID)
+				|| session.isExpired(System.currentTimeMillis() - GRACE_PERIOD)) {
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * @param m - a received message
+	 * @return true if the message is encrypted with a session key
+	 */
+	public static boolean isSealed(Message m) {
+		return m.getTextualInfo() != null && m.getTextualInfo().startsWith(SESSION_PREFIX);
+	}
+
+}
@@ -0,0 +1,302 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import de.hasenburg.fbase.model.UpdatePipelineStatistics;
+import exceptions.FBaseStorageConnectorException;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import storageconnector.AbstractDBConnector;
+
+/**
+ * Applies data record updates received from other nodes to the local database.
+ *
+ * Updates of the same keygroup are applied one after another in the order they were
+ * submitted, updates of different keygroups in parallel. Consecutive puts and consecutive
+ * deletes of a keygroup that are queued at the same time are applied with a single
+ * {@link AbstractDBConnector#dataRecords_putAll(java.util.Collection)} or
+ * {@link AbstractDBConnector#dataRecords_deleteAll(java.util.Collection)} call.
+ *
+ * Updates are not published again, use the {@link tasks.TaskManager} for updates created by
+ * clients of this node.
+ *
+ * The queue of a keygroup is removed as soon as it is drained, so keygroups that are not
+ * updated anymore do not occupy memory.
+ */
+public class KeygroupUpdatePipeline {
+
+	private static Logger logger = Logger.getLogger(KeygroupUpdatePipeline.class.getName());
+
+	/**
+	 * Maximum number of updates applied in one batch
+	 */
+	public static final int MAX_BATCH_SIZE = 100;
+
+	private static class Update {
+		private final DataRecord record;
+		private final DataIdentifier identifier;
+
+		private Update(DataRecord record, DataIdentifier identifier) {
+			this.record = record;
+			this.identifier = identifier;
+		}
+
+		private boolean isPut() {
+			return record != null;
+		}
+	}
+
+	/**
+	 * The queued updates of a single keygroup. Updates are only added while the lane is in
+	 * {@link KeygroupUpdatePipeline#lanes}, so a removed lane stays empty.
+	 */
+	private class Lane {
+		private final KeygroupID keygroupID;
+		private final Queue<Update> updates = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		private Lane(KeygroupID keygroupID) {
+			this.keygroupID = keygroupID;
+		}
+
+		private void schedule() {
+			if (!updates.isEmpty() && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this::run);
+				} catch (RejectedExecutionException e) {
+					scheduled.set(false);
+					logger.warn("Pipeline is shut down, dropping " + updates.size() + " updates");
+					queuedUpdates.addAndGet(-updates.size());
+					updates.clear();
+				}
+			}
+		}
+
+		private void run() {
+			try {
+				applyBatch();
+				if (executor.isShutdown()) {
+					// the lane cannot be scheduled again
+					while (!updates.isEmpty()) {
+						applyBatch();
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				// submit adds updates while holding the lock of the lane's map entry, so no
+				// update can be added after the lane was found empty and removed
+				if (lanes.computeIfPresent(keygroupID,
+						(k, lane) -> lane == this && updates.isEmpty() && !scheduled.get() ? null
+								: lane) == this) {
+					// updates might be left over or added after the queue was found empty
+					schedule();
+				}
+			}
+		}
+
+		private void applyBatch() {
+			Update first = updates.peek();
+			if (first == null) {
+				return;
+			}
+			// take the following updates of the same type
+			List<Update> batch = new ArrayList<>();
+			Update next;
+			while (batch.size() < MAX_BATCH_SIZE && (next = updates.peek()) != null
+					&& next.isPut() == first.isPut()) {
+				batch.add(updates.poll());
+			}
+			queuedUpdates.addAndGet(-batch.size());
+			if (first.isPut()) {
+				putAll(batch);
+			} else {
+				deleteAll(batch);
+			}
+		}
+	}
+
+	private final AbstractDBConnector connector;
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<KeygroupID, Lane> lanes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger queuedUpdates = new AtomicInteger();
+	private final LongAdder appliedUpdates = new LongAdder();
+	private final LongAdder appliedBatches = new LongAdder();
+	private final LongAdder failedUpdates = new LongAdder();
+
+	/**
+	 * @param connector - the connector the updates are applied to
+	 * @param threads - the maximum number of keygroups that are updated in parallel
+	 */
+	public KeygroupUpdatePipeline(AbstractDBConnector connector, int threads) {
+		this.connector = connector;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread =
+					new Thread(runnable, "UpdatePipeline-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues a data record that is put after all previously submitted updates of its
+	 * keygroup.
+	 *
+	 * @param record - the data record
+	 */
+	public void put(DataRecord record) {
+		submit(record.getKeygroupID(), new Update(record, null));
+	}
+
+	/**
+	 * Queues the deletion of a data record that is deleted after all previously submitted
+	 * updates of its keygroup.
+	 *
+	 * @param identifier - the identifier of the data record
+	 */
+	public void delete(DataIdentifier identifier) {
+		submit(identifier.getKeygroupID(), new Update(null, identifier));
+	}
+
+	private void submit(KeygroupID keygroupID, Update update) {
+		Lane lane = lanes.compute(keygroupID, (k, existing) -> {
+			Lane l = existing != null ? existing : new Lane(k);
+			l.updates.offer(update);
+			return l;
+		});
+		queuedUpdates.incrementAndGet();
+		lane.schedule();
+	}
+
+	private void putAll(List<Update> batch) {
+		// only the last put of a data record matters
+		Map<DataIdentifier, DataRecord> records = new LinkedHashMap<>();
+		for (Update update : batch) {
+			records.remove(update.record.getDataIdentifier());
+			records.put(update.record.getDataIdentifier(), update.record);
+		}
+		try {
+			connector.dataRecords_putAll(records.values());
+			applied(batch.size());
+			logger.debug("Put " + records.size() + " data records into database");
+		} catch (FBaseStorageConnectorException e) {
+			logger.warn("Could not put batch of data records, putting them one by one", e);
+			for (DataRecord record : records.values()) {
+				try {
+					connector.dataRecords_put(record);
+					applied(1);
+				} catch (FBaseStorageConnectorException e1) {
+					logger.error("Could not put data record " + record.getDataIdentifier(), e1);
+					failedUpdates.increment();
+				}
+			}
+		}
+	}
+
+	private void deleteAll(List<Update> batch) {
+		Set<DataIdentifier> identifiers = new LinkedHashSet<>();
+		for (Update update : batch) {
+			identifiers.add(update.identifier);
+		}
+		try {
+			connector.dataRecords_deleteAll(identifiers);
+			applied(batch.size());
+			logger.debug("Deleted " + identifiers.size() + " data records from database");
+		} catch (FBaseStorageConnectorException e) {
+			logger.warn("Could not delete batch of data records, deleting them one by one", e);
+			for (DataIdentifier identifier : identifiers) {
+				try {
+					connector.dataRecords_delete(identifier);
+					applied(1);
+				} catch (FBaseStorageConnectorException e1) {
+					logger.error("Could not delete data record " + identifier, e1);
+					failedUpdates.increment();
+				}
+			}
+		}
+	}
+
+	private void applied(int updates) {
+		appliedUpdates.add(updates);
+		appliedBatches.increment();
+	}
+
+	/**
+	 * Applies all queued updates and stops the pipeline, updates submitted afterwards are
+	 * dropped.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of updates that were submitted but not applied yet
+	 */
+	public int getQueuedUpdates() {
+		return queuedUpdates.get();
+	}
+
+	/**
+	 * @return the number of updates applied so far
+	 */
+	public long getAppliedUpdates() {
+		return appliedUpdates.sum();
+	}
+
+	/**
+	 * @return the number of connector calls used to apply the updates
+	 */
+	public long getAppliedBatches() {
+		return appliedBatches.sum();
+	}
+
+	/**
+	 * @return the number of updates that could not be applied
+	 */
+	public long getFailedUpdates() {
+		return failedUpdates.sum();
+	}
+
+	/**
+	 * @return the number of keygroups with queued or running updates
+	 */
+	public int getNumberOfLanes() {
+		return lanes.size();
+	}
+
+	/**
+	 * @return the statistics of the pipeline
+	 */
+	public UpdatePipelineStatistics getStatistics() {
+		return new UpdatePipelineStatistics(getQueuedUpdates(), getAppliedUpdates(),
+				getAppliedBatches(), getFailedUpdates(), getNumberOfLanes());
+	}
+
+}
@@ -0,0 +1,188 @@
+package communication;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import exceptions.FBaseException;
+import model.JSONable;
+import model.data.MessageID;
+import model.messages.Command;
+import model.messages.Message;
+
+/**
+ * Encodes and decodes {@link Message}s for ZeroMQ frames.
+ *
+ * The binary encoding starts with {@link #MAGIC} and a version byte, followed by a byte
+ * whose bits tell which fields are present. Each present field is written as a 4 byte length
+ * followed by its UTF-8 bytes, in the order messageID, command, content, textualInfo and
+ * signature. JSON frames start with '{' and are not valid UTF-8 if they start with
+ * {@link #MAGIC}, so decoders can always tell both encodings apart.
+ */
+public final class MessageCodec {
+
+	/**
+	 * First byte of binary encoded messages, never part of valid UTF-8
+	 */
+	public static final byte MAGIC = (byte) 0xFB;
+
+	/**
+	 * The version of the binary encoding written by this codec
+	 */
+	public static final byte VERSION = 1;
+
+	private static final int HEADER_LENGTH = 3;
+
+	private static final int FIELD_MESSAGE_ID = 1;
+	private static final int FIELD_COMMAND = 1 << 1;
+	private static final int FIELD_CONTENT = 1 << 2;
+	private static final int FIELD_TEXTUAL_INFO = 1 << 3;
+	private static final int FIELD_SIGNATURE = 1 << 4;
+
+	private MessageCodec() {
+
+	}
+
+	/**
+	 * Encodes the message with the given format.
+	 *
+	 * @param message - the message
+	 * @param format - the format
+	 * @return the encoded message
+	 */
+	public static byte[] encode(Message message, WireFormat format) {
+		if (WireFormat.JSON.equals(format)) {
+			return JSONable.toJSON(message).getBytes(StandardCharsets.UTF_8);
+		}
+
+		byte[] messageID = message.getMessageID() == null ? null
+				: toBytes(message.getMessageID().getMessageIDString());
+		byte[] command = message.getCommand() == null ? null
+				: toBytes(message.getCommand().name());
+		byte[] content = toBytes(message.getContent());
+		byte[] textualInfo = toBytes(message.getTextualInfo());
+		byte[] signature = toBytes(message.getSignature());
+
+		int fields = 0;
+		int length = HEADER_LENGTH;
+		if (messageID != null) {
+			fields |= FIELD_MESSAGE_ID;
+			length += 4 + messageID.length;
+		}
+		if (command != null) {
+			fields |= FIELD_COMMAND;
+			length += 4 + command.length;
+		}
+		if (content != null) {
+			fields |= FIELD_CONTENT;
+			length += 4 + content.length;
+		}
+		if (textualInfo != null) {
+			fields |= FIELD_TEXTUAL_INFO;
+			length += 4 + textualInfo.length;
+		}
+		if (signature != null) {
+			fields |= FIELD_SIGNATURE;
+			length += 4 + signature.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.put((byte) fields);
+		putField(buffer, messageID);
+		putField(buffer, command);
+		putField(buffer, content);
+		putField(buffer, textualInfo);
+		putField(buffer, signature);
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes a message in any of the supported formats.
+	 *
+	 * @param frame - the encoded message
+	 * @return the message
+	 * @throws IllegalArgumentException if the frame is not a valid encoded message
+	 */
+	public static Message decode(byte[] frame) {
+		if (WireFormat.JSON.equals(detect(frame))) {
+			Message message = JSONable.fromJSON(new String(frame, StandardCharsets.UTF_8),
+					Message.class);
+			if (message == null) {
+				throw new IllegalArgumentException("Frame is not a json message");
+			}
+			return message;
+		}
+
+		if (frame.length < HEADER_LENGTH) {
+			throw new IllegalArgumentException("Binary message is too short");
+		}
+		if (frame[1] != VERSION) {
+			throw new IllegalArgumentException("Unsupported binary message version " + frame[1]);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(frame, HEADER_LENGTH, frame.length - HEADER_LENGTH);
+		int fields = frame[2];
+		Message message = new Message();
+		try {
+			if ((fields & FIELD_MESSAGE_ID) != 0) {
+				MessageID messageID = new MessageID();
+				messageID.setMessageIDString(getField(buffer));
+				message.setMessageID(messageID);
+			}
+			if ((fields & FIELD_COMMAND) != 0) {
+				message.setCommand(Command.valueOf(getField(buffer)));
+			}
+			if ((fields & FIELD_CONTENT) != 0) {
+				message.setContent(getField(buffer));
+			}
+			if ((fields & FIELD_TEXTUAL_INFO) != 0) {
+				message.setTextualInfo(getField(buffer));
+			}
+			if ((fields & FIELD_SIGNATURE) != 0) {
+				message.setSignature(getField(buffer));
+			}
+		} catch (BufferUnderflowException | FBaseException e) {
+			throw new IllegalArgumentException("Binary message is malformed", e);
+		}
+		if (buffer.hasRemaining()) {
+			throw new IllegalArgumentException("Binary message has trailing bytes");
+		}
+		return message;
+	}
+
+	/**
+	 * @param frame - the encoded message
+	 * @return the format of the encoded message
+	 */
+	public static WireFormat detect(byte[] frame) {
+		if (frame.length > 0 && frame[0] == MAGIC) {
+			return WireFormat.BINARY;
+		}
+		return WireFormat.JSON;
+	}
+
+	private static byte[] toBytes(String s) {
+		return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void putField(ByteBuffer buffer, byte[] field) {
+		if (field != null) {
+			buffer.putInt(field.length);
+			buffer.put(field);
+		}
+	}
+
+	private static String getField(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid field length " + length);
+		}
+		String field = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+				StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return field;
+	}
+
+}
@@ -1,9 +1,9 @@
 package communication;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -13,6 +13,8 @@ import org.apache.log4j.Logger;
 
 import control.FBase;
 import de.hasenburg.fbase.model.GetMissedMessageResponse;
+import de.hasenburg.fbase.model.GetMissedMessagesResponse;
+import de.hasenburg.fbase.model.MessageIDRange;
 import exceptions.FBaseCommunicationException;
 import exceptions.FBaseNamingServiceException;
 import exceptions.FBaseStorageConnectorException;
@@ -23,13 +25,13 @@ import model.data.NodeID;
  * The {@link MessageIdEvaluator} manages all messageIDs received.
  * 
  * Everytime,
- * {@link Subscriber#interpreteReceivedEnvelope(model.messages.Envelope, org.zeromq.ZMQ.Socket)}
+ * {@link Subscriber#interpreteReceivedEnvelope(model.messages.Envelope, WireFormat, org.zeromq.ZMQ.Socket)}
  * is called, the subscriber adds the ID of the contained envelope if one is set using
  * {@link #addReceivedMessageID(MessageID)}.
  * 
  * The {@link MessageIdEvaluator} continuously runs through all not evaluated messageIDs. If
  * he finds a gap, he will create a directMessageSender and ask the related node about the send
- * data.
+ * data. Consecutive missing messageIDs are requested as a single range.
  * 
  * @author jonathanhasenburg
  *
@@ -45,7 +47,87 @@ public class MessageIdEvaluator {
 	private FBase fBase;
 	private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
-	private TreeMap<NodeID, TreeMap<String, TreeSet<Integer>>> idStorage = new TreeMap<>();
+	/**
+	 * The received versions of a single machine. All versions up to the watermark have been
+	 * received, the bits of the bit set tell which versions above it have been received.
+	 * If a version below the first received version arrives, the versions in between are
+	 * considered missing as well.
+	 */
+	static class ReceivedVersions {
+
+		private int first;
+		private int watermark;
+		private BitSet above = new BitSet();
+
+		ReceivedVersions(int version) {
+			first = version;
+			watermark = version;
+		}
+
+		synchronized void add(int version) {
+			if (version < first) {
+				rebase(version);
+				return;
+			}
+			int index = version - watermark - 1;
+			if (index < 0) {
+				return;
+			}
+			above.set(index);
+			if (index == 0) {
+				// the gap above the watermark is closed, advance to the next missing version
+				int received = above.nextClearBit(0);
+				watermark += received;
+				above = above.get(received, Math.max(received, above.length()));
+			}
+		}
+
+		/**
+		 * Makes the given version the first version, all versions between it and the old first
+		 * version are missing.
+		 */
+		private void rebase(int version) {
+			BitSet rebased = new BitSet();
+			int offset = watermark - version;
+			rebased.set(first - version - 1, offset);
+			for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+				rebased.set(offset + i);
+			}
+			first = version;
+			watermark = version;
+			above = rebased;
+			if (!above.isEmpty() && above.get(0)) {
+				add(version + 1);
+			}
+		}
+
+		synchronized void addMissingVersions(NodeID nodeID, String machineName,
+				List<MessageID> missingIDs) {
+			int highest = above.length();
+			for (int i = above.nextClearBit(0); i < highest; i = above.nextClearBit(i + 1)) {
+				missingIDs.add(new MessageID(nodeID, machineName, watermark + 1 + i));
+			}
+		}
+
+		synchronized void addMissingRanges(NodeID nodeID, String machineName,
+				List<MessageIDRange> missingRanges) {
+			int highest = above.length();
+			for (int i = above.nextClearBit(0); i < highest; i = above.nextClearBit(i)) {
+				int end = above.nextSetBit(i);
+				missingRanges.add(new MessageIDRange(
+						new MessageID(nodeID, machineName, watermark + 1 + i), watermark + end));
+				i = end;
+			}
+		}
+
+		synchronized int getWatermark() {
+			return watermark;
+		}
+
+	}
+
+	private final ConcurrentSkipListMap<NodeID, ConcurrentSkipListMap<String, ReceivedVersions>> idStorage =
+			new ConcurrentSkipListMap<>();
 
 	public MessageIdEvaluator(FBase fBase) {
 		this.fBase = fBase;
@@ -60,92 +142,124 @@ public class MessageIdEvaluator {
 		executor.shutdownNow();
 	}
 
-	public synchronized void addReceivedMessageID(MessageID messageID) {
+	public void addReceivedMessageID(MessageID messageID) {
 		logger.debug("Adding " + messageID.getMessageIDString() + " to received IDs");
-		getIDSet(getMachineMap(messageID.getNodeID()), messageID.getMachineName())
-				.add(messageID.getVersion());
+		ConcurrentSkipListMap<String, ReceivedVersions> machineMap =
+				idStorage.computeIfAbsent(messageID.getNodeID(), n -> new ConcurrentSkipListMap<>());
+		ReceivedVersions versions = machineMap.putIfAbsent(messageID.getMachineName(),
+				new ReceivedVersions(messageID.getVersion()));
+		if (versions != null) {
+			versions.add(messageID.getVersion());
+		}
 	}
 
-	public synchronized List<MessageID> getMissingMessageIDs() {
+	/**
+	 * Returns all versions that are missing between the first and the highest received version
+	 * of each machine, ordered by node, machine and version.
+	 * 
+	 * @return the missing message ids
+	 */
+	public List<MessageID> getMissingMessageIDs() {
 		ArrayList<MessageID> missingIDs = new ArrayList<>();
-		for (NodeID nodeID : idStorage.keySet()) {
-			for (String machineName : getMachineMap(nodeID).keySet()) {
-				int i = getIDSet(getMachineMap(nodeID), machineName).first();
-				for (Integer version : getIDSet(getMachineMap(nodeID), machineName)) {
-					while (version - i > 0) {
-						// add MessageIDs
-						missingIDs.add(new MessageID(nodeID, machineName, i));
-						i++;
-					}
-					i++;
-				}
-			}
-		}
+		idStorage.forEach((nodeID, machineMap) -> machineMap.forEach(
+				(machineName, versions) -> versions.addMissingVersions(nodeID, machineName,
+						missingIDs)));
 		return missingIDs;
 	}
 
-	private TreeMap<String, TreeSet<Integer>> getMachineMap(NodeID nodeID) {
-		TreeMap<String, TreeSet<Integer>> machineMap = idStorage.get(nodeID);
-		if (machineMap == null) {
-			machineMap = new TreeMap<>();
-			idStorage.put(nodeID, machineMap);
-		}
-		return machineMap;
-	}
-
-	private TreeSet<Integer> getIDSet(TreeMap<String, TreeSet<Integer>> machineMap,
-			String machineName) {
-		TreeSet<Integer> idSet = machineMap.get(machineName);
-		if (idSet == null) {
-			idSet = new TreeSet<>();
-			machineMap.put(machineName, idSet);
-		}
-		return idSet;
+	/**
+	 * Returns the missing versions as ranges of consecutive versions, ordered like
+	 * {@link #getMissingMessageIDs()}.
+	 * 
+	 * @return the ranges of missing message ids
+	 */
+	public List<MessageIDRange> getMissingMessageIDRanges() {
+		ArrayList<MessageIDRange> missingRanges = new ArrayList<>();
+		idStorage.forEach((nodeID, machineMap) -> machineMap.forEach(
+				(machineName, versions) -> versions.addMissingRanges(nodeID, machineName,
+						missingRanges)));
+		return missingRanges;
 	}
 
 	private Runnable evaluateIDs = () -> {
-		List<MessageID> missingIDs = getMissingMessageIDs();
-		if (!missingIDs.isEmpty()) {
-			logger.debug("Found " + missingIDs.size() + " missing IDs");
+		List<MessageIDRange> missingRanges = getMissingMessageIDRanges();
+		if (!missingRanges.isEmpty()) {
+			logger.debug("Found " + missingRanges.size() + " ranges of missing IDs");
 		}
 		if (fBase != null) {
 			NodeID nodeID = null;
 			DirectMessageSender directMessageSender = null;
-			for (MessageID mID : missingIDs) {
+			for (MessageIDRange range : missingRanges) {
 				try {
-					if (!mID.getNodeID().equals(nodeID)) {
+					if (!range.getFirstMessageID().getNodeID().equals(nodeID)) {
 						if (directMessageSender != null) {
-							directMessageSender.shutdown();
+							fBase.directMessageSenderPool.release(directMessageSender);
+							directMessageSender = null;
 						}
-						nodeID = mID.getNodeID();
+						nodeID = range.getFirstMessageID().getNodeID();
 						logger.info("Retrieving missed messages from node " + nodeID);
-						directMessageSender = new DirectMessageSender(
-								fBase.configAccessHelper.nodeConfig_get(nodeID), fBase);
-					}
-
-					GetMissedMessageResponse response = directMessageSender.sendGetDataRecord(mID);
-
-					if (response.getDataIdentifier() == null) {
-						logger.debug("Node does not have information about the message anymore");
-					} else if (response.getDataRecord() == null) {
-						logger.debug("Data record " + response.getDataIdentifier() + " is deleted");
-						fBase.taskmanager.runDeleteDataRecordTask(response.getDataIdentifier(),
-								false);
-					} else {
-						logger.debug("Data record " + response.getDataIdentifier() + " is put");
-						fBase.taskmanager.runPutDataRecordTask(response.getDataRecord(), false);
+						directMessageSender = fBase.directMessageSenderPool
+								.borrow(fBase.configAccessHelper.nodeConfig_get(nodeID));
 					}
-
-					addReceivedMessageID(mID); // to remember that we got it
+					retrieveRange(directMessageSender, range);
 				} catch (FBaseStorageConnectorException | FBaseCommunicationException
 						| NullPointerException | FBaseNamingServiceException e) {
 					logger.error("Unable to check on missed messages because cannot get "
 							+ "nodeConfig for nodeID " + nodeID, e);
 				}
 			}
+			if (directMessageSender != null) {
+				fBase.directMessageSenderPool.release(directMessageSender);
+			}
 		} else {
 			logger.error("FBase not initialized, so we cannot retrieve missed data");
 		}
 	};
 
+	/**
+	 * Retrieves the messages of a range with as few requests as possible. Falls back to
+	 * requesting single messages if the node does not support range requests.
+	 */
+	private void retrieveRange(DirectMessageSender directMessageSender, MessageIDRange range)
+			throws FBaseCommunicationException {
+		MessageID first = range.getFirstMessageID();
+		Integer version = first.getVersion();
+		while (version != null) {
+			MessageID mID = new MessageID(first.getNodeID(), first.getMachineName(), version);
+			GetMissedMessagesResponse response =
+					directMessageSender.sendGetDataRecords(mID, range.getLastVersion());
+			if (response == null) {
+				logger.debug("Node does not support range requests, requesting single messages");
+				for (int v = version; v <= range.getLastVersion(); v++) {
+					mID = new MessageID(first.getNodeID(), first.getMachineName(), v);
+					apply(mID, directMessageSender.sendGetDataRecord(mID));
+				}
+				return;
+			}
+			for (GetMissedMessageResponse missedMessage : response.getResponses()) {
+				apply(new MessageID(first.getNodeID(), first.getMachineName(), version++),
+						missedMessage);
+			}
+			if (response.getNextVersion() != null && response.getNextVersion() < version) {
+				logger.warn("Node returned an invalid next version, stopping retrieval");
+				return;
+			}
+			version = response.getNextVersion();
+		}
+	}
+
+	private void apply(MessageID mID, GetMissedMessageResponse response) {
+		if (response.getDataIdentifier() == null) {
+			logger.debug("Node does not have information about " + mID.getMessageIDString()
+					+ " anymore");
+		} else if (response.getDataRecord() == null) {
+			logger.debug("Data record " + response.getDataIdentifier() + " is deleted");
+			fBase.updatePipeline.delete(response.getDataIdentifier());
+		} else {
+			logger.debug("Data record " + response.getDataIdentifier() + " is put");
+			fBase.updatePipeline.put(response.getDataRecord());
+		}
+		addReceivedMessageID(mID); // to remember that we got it
+	}
+
 }
@@ -0,0 +1,229 @@
+package communication;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseEncryptionException;
+import exceptions.FBaseNamingServiceException;
+import model.config.Config;
+
+/**
+ * Caches the configurations read from the naming service, so that callers do not wait for the
+ * naming service if a configuration is already known.
+ *
+ * A configuration is fresh for the configured time to live and returned without contacting
+ * the naming service. Afterwards, it is stale: until the stale time has passed, the stale
+ * configuration is returned immediately while it is refreshed in the background. Callers of
+ * configurations that are unknown or stale for longer wait for the refresh, but if the naming
+ * service cannot be reached, the last known configuration is returned anyway. This keeps a
+ * node operational while the naming service is offline.
+ *
+ * Concurrent refreshes of the same key are only sent once. Configurations that do not exist
+ * anymore according to the naming service are removed, a loaded configuration never replaces
+ * a cached configuration with a higher version, and a refresh that was running while its key
+ * was invalidated does not update the cache.
+ *
+ * @param <K> the type of the configuration ids
+ * @param <V> the type of the configurations
+ */
+public class NamingServiceCache<K, V extends Config> {
+
+	private static Logger logger = Logger.getLogger(NamingServiceCache.class.getName());
+
+	private static class Entry<V> {
+		private final V config;
+		private final long loadedAt;
+
+		private Entry(V config, long loadedAt) {
+			this.config = config;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private final Function<K, CompletableFuture<V>> loader;
+	private final int maximumSize;
+	private final long timeToLiveNanos;
+	private final long staleTimeNanos;
+
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+	/**
+	 * @param loader - reads a configuration from the naming service without blocking
+	 * @param maximumSize - the maximum number of cached configurations
+	 * @param timeToLive - the time after which a configuration is refreshed
+	 * @param staleTime - the time after the time to live during which a stale configuration
+	 *            is returned without waiting for its refresh
+	 * @param unit - the unit of both times
+	 */
+	public NamingServiceCache(Function<K, CompletableFuture<V>> loader, int maximumSize,
+			long timeToLive, long staleTime, TimeUnit unit) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be greater than 0");
+		}
+		this.loader = loader;
+		this.maximumSize = maximumSize;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+		this.staleTimeNanos = unit.toNanos(staleTime);
+	}
+
+	/**
+	 * Returns the cached configuration of the key, see the class description for when the
+	 * naming service is contacted.
+	 *
+	 * @param key - the configuration id
+	 * @return the configuration, or null if the response could not be decrypted
+	 * @throws FBaseCommunicationException - if the naming service cannot be reached and no
+	 *             configuration is cached
+	 * @throws FBaseNamingServiceException - if the configuration does not exist
+	 */
+	public V get(K key) throws FBaseCommunicationException, FBaseNamingServiceException {
+		Entry<V> entry = entries.get(key);
+		long age = entry == null ? Long.MAX_VALUE : System.nanoTime() - entry.loadedAt;
+		if (age < timeToLiveNanos) {
+			return entry.config;
+		}
+
+		CompletableFuture<V> refresh = refresh(key);
+		if (age - timeToLiveNanos < staleTimeNanos) {
+			return entry.config;
+		}
+
+		try {
+			return refresh.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof FBaseCommunicationException) {
+				entry = entries.get(key);
+				if (entry != null) {
+					logger.warn("Naming service not reachable, using configuration " + key
+							+ " loaded " + TimeUnit.NANOSECONDS.toSeconds(age) + " seconds ago");
+					return entry.config;
+				}
+				throw (FBaseCommunicationException) cause;
+			} else if (cause instanceof FBaseNamingServiceException) {
+				throw (FBaseNamingServiceException) cause;
+			} else if (cause instanceof FBaseEncryptionException) {
+				logger.error(cause.getMessage());
+				return null;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FBaseCommunicationException(
+					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+		}
+	}
+
+	/**
+	 * Reads the configuration of the key from the naming service and caches it, unless a read
+	 * of the key is already running.
+	 *
+	 * @param key - the configuration id
+	 * @return a future that completes with the read configuration, see
+	 *         {@link NamingServiceSender#requestAsync(model.messages.Message)} for failures
+	 */
+	public CompletableFuture<V> refresh(K key) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> running = loading.putIfAbsent(key, future);
+		if (running != null) {
+			return running;
+		}
+
+		CompletableFuture<V> read;
+		try {
+			read = loader.apply(key);
+		} catch (RuntimeException e) {
+			read = new CompletableFuture<>();
+			read.completeExceptionally(e);
+		}
+		read.whenComplete((config, t) -> {
+			// only update the cache if the key was not invalidated while loading
+			if (loading.remove(key, future)) {
+				if (t == null && config != null) {
+					put(key, config);
+				} else if (t instanceof FBaseNamingServiceException) {
+					entries.remove(key);
+				}
+			}
+			if (t != null) {
+				future.completeExceptionally(t);
+			} else {
+				future.complete(config);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Caches a configuration that was approved by the naming service, e.g., the response to
+	 * an update.
+	 *
+	 * @param key - the configuration id
+	 * @param config - the configuration
+	 */
+	public void put(K key, V config) {
+		if (config == null) {
+			return;
+		}
+		if (entries.size() >= maximumSize && !entries.containsKey(key)) {
+			evictOldest();
+		}
+		Entry<V> entry = new Entry<>(config, System.nanoTime());
+		// a cached config with a higher version is kept, but counts as refreshed
+		entries.merge(key, entry, (cached, loaded) -> {
+			if (cached.config.getVersion() != null && loaded.config.getVersion() != null
+					&& cached.config.getVersion() > loaded.config.getVersion()) {
+				return new Entry<>(cached.config, loaded.loadedAt);
+			}
+			return loaded;
+		});
+	}
+
+	private void evictOldest() {
+		K oldest = null;
+		long oldestLoadedAt = 0;
+		for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+			if (oldest == null || e.getValue().loadedAt - oldestLoadedAt < 0) {
+				oldest = e.getKey();
+				oldestLoadedAt = e.getValue().loadedAt;
+			}
+		}
+		if (oldest != null) {
+			entries.remove(oldest);
+		}
+	}
+
+	/**
+	 * Removes the key from the cache. Refreshes that are currently running for the key will
+	 * not update the cache.
+	 *
+	 * @param key - the configuration id
+	 */
+	public void invalidate(K key) {
+		loading.remove(key);
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all keys from the cache.
+	 */
+	public void invalidateAll() {
+		loading.clear();
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+}
@@ -1,5 +1,10 @@
 package communication;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
 
@@ -28,6 +33,9 @@ import model.messages.ResponseCode;
 /**
  * Sends requests to designated receivers.
  * 
+ * Read node and keygroup configs are cached, see {@link NamingServiceCache}. Configs changed
+ * by this sender are updated in or removed from the cache.
+ * 
  * TODO 2: Don't catch encryption exception?
  * TODO 2: Remove booleans as return value, because no exception equals success
  * 
@@ -38,61 +46,204 @@ public class NamingServiceSender extends AbstractSender {
 
 	private static Logger logger = Logger.getLogger(NamingServiceSender.class.getName());
 
+	/**
+	 * Maximum time in milliseconds to wait for a response of the naming service, see
+	 * {@link PeerHealthMonitor} for the timeout of a request
+	 */
+	public static final long REQUEST_TIMEOUT = 2000;
+
+	/**
+	 * Maximum number of cached configurations per type
+	 */
+	private static final int CACHE_SIZE = 10000;
+
 	private FBase fBase;
+	private final AsyncRequestClient client;
+
+	private final NamingServiceCache<KeygroupID, KeygroupConfig> keygroupConfigs;
+	private final NamingServiceCache<NodeID, NodeConfig> nodeConfigs;
 
 	/**
 	 * Initializes the NamingServiceSender, it then can be used without further modifications.
+	 * All methods can be used by multiple threads concurrently, their requests are sent
+	 * without waiting for the responses of other requests.
 	 */
 	public NamingServiceSender(String address, int port, FBase fBase) {
-		super(address, port, ZMQ.REQ);
+		super(address, port, ZMQ.DEALER);
 		this.fBase = fBase;
+		this.client = new AsyncRequestClient("NamingServiceSender", context, sender);
+		long timeToLive = fBase == null ? 30000
+				: fBase.configuration.getNamingServiceCacheTimeToLive();
+		long staleTime = fBase == null ? 600000
+				: fBase.configuration.getNamingServiceCacheStaleTime();
+		this.keygroupConfigs = new NamingServiceCache<>(this::readKeygroupConfig, CACHE_SIZE,
+				timeToLive, staleTime, TimeUnit.MILLISECONDS);
+		this.nodeConfigs = new NamingServiceCache<>(this::readNodeConfig, CACHE_SIZE,
+				timeToLive, staleTime, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void shutdown() {
+		// the socket must not be used anymore when it is closed
+		client.shutdown();
+		super.shutdown();
 	}
 
 	/**
 	 * Sends an envelope to the specified address.
 	 * 
 	 * @param envelope
-	 * @return the response
+	 * @return the response, binary responses are converted to json
 	 * @throws FBaseCommunicationException
 	 */
 	@Override
 	public String send(Envelope envelope, String secret, EncryptionAlgorithm algorithm)
 			throws FBaseCommunicationException {
+		byte[] reply = exchange(envelope);
+		if (reply == null) {
+			return null;
+		} else if (WireFormat.BINARY.equals(MessageCodec.detect(reply))) {
+			return JSONable.toJSON(decodeReply(reply));
+		}
+		return new String(reply, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends an envelope and decodes the response.
+	 * 
+	 * @param envelope
+	 * @return the response, or null if not able to send
+	 * @throws FBaseCommunicationException
+	 */
+	private Message request(Envelope envelope) throws FBaseCommunicationException {
+		byte[] reply = exchange(envelope);
+		return reply == null ? null : decodeReply(reply);
+	}
+
+	private Message decodeReply(byte[] reply) throws FBaseCommunicationException {
+		try {
+			return MessageCodec.decode(reply);
+		} catch (IllegalArgumentException e) {
+			logger.warn("Could not decode reply of naming service, " + e.getMessage());
+			throw new FBaseCommunicationException(
+					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+		}
+	}
+
+	/**
+	 * Sends an envelope to the specified address in the format negotiated with the naming
+	 * service, see {@link WireFormatNegotiator}.
+	 * 
+	 * @param envelope
+	 * @return the encoded response, or null if not able to send
+	 * @throws FBaseCommunicationException
+	 */
+	private byte[] exchange(Envelope envelope) throws FBaseCommunicationException {
+		try {
+			return exchangeAsync(envelope).get();
+		} catch (ExecutionException e) {
+			throw new FBaseCommunicationException(
+					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FBaseCommunicationException(
+					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #exchange(Envelope)}, the future fails if the naming
+	 * service does not answer in time or did not answer recently, see
+	 * {@link PeerHealthMonitor}.
+	 */
+	private CompletableFuture<byte[]> exchangeAsync(Envelope envelope) {
 
 		if (!ableToSend) {
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
 		String nodeID = envelope.getNodeID().getID();
 		if (nodeID == null) {
 			logger.error("The envelope should contain a nodeID, but does not.");
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		sender.sendMore(nodeID);
-		sender.send(JSONable.toJSON(envelope.getMessage()));
-
-		ZMQ.Poller poller = context.poller();
-		poller.register(sender, ZMQ.Poller.POLLIN);
-		long rc = poller.poll(2000);
-		if (rc == -1)
-			throw new FBaseCommunicationException(
-					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+		String peer = getAddress() + ":" + getPort();
+		WireFormatNegotiator negotiator = fBase == null ? null : fBase.wireFormatNegotiator;
+		WireFormat format = negotiator == null ? WireFormat.JSON : negotiator.getFormat(peer);
+		PeerHealthMonitor monitor = fBase == null ? null : fBase.peerHealthMonitor;
+		if (monitor != null && !monitor.allowRequest(peer)) {
+			CompletableFuture<byte[]> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(new FBaseCommunicationException(
+					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE));
+			return rejected;
+		}
+		long timeout =
+				monitor == null ? REQUEST_TIMEOUT : monitor.getTimeout(peer, REQUEST_TIMEOUT);
+
+		long start = System.currentTimeMillis();
+		return client.request(nodeID.getBytes(StandardCharsets.UTF_8),
+				MessageCodec.encode(envelope.getMessage(), format), timeout)
+				.whenComplete((reply, t) -> {
+					if (monitor != null) {
+						if (t != null) {
+							monitor.failure(peer);
+						} else {
+							monitor.success(peer, System.currentTimeMillis() - start);
+						}
+					}
+					if (negotiator == null) {
+						return;
+					}
+					if (t != null) {
+						logger.warn("Did not get a response from naming service");
+						negotiator.replyMissing(peer, format);
+					} else {
+						negotiator.replyReceived(peer, format, MessageCodec.detect(reply));
+					}
+				});
+	}
 
-		if (poller.pollin(0)) {
-			// We got a reply from the server, must match sequence
-			String reply = sender.recvStr();
-			return reply;
-		} else {
-			logger.warn("Did not get a response from naming service, recreating socket");
-			sender.setLinger(0); // drop pending messages when closed
-			sender.close();
-			poller.unregister(sender);
-			sender = context.socket(ZMQ.REQ);
-			sender.connect(getAddress() + ":" + getPort());
-			throw new FBaseCommunicationException(
-					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+	/**
+	 * Sends a message to the naming service without blocking. The message is signed and
+	 * encrypted before it is sent, the response is decrypted.
+	 * 
+	 * @param m - the message
+	 * @return a future that completes with the decrypted response, or fails with a
+	 *         {@link FBaseCommunicationException}, {@link FBaseEncryptionException} or
+	 *         {@link FBaseNamingServiceException}
+	 */
+	public CompletableFuture<Message> requestAsync(Message m) {
+		CompletableFuture<Message> result = new CompletableFuture<>();
+		CompletableFuture<byte[]> reply;
+		try {
+			reply = exchangeAsync(createEncryptedEnvelope(m));
+		} catch (FBaseEncryptionException e) {
+			result.completeExceptionally(e);
+			return result;
 		}
+		// decrypting must not block the thread of the client
+		reply.whenCompleteAsync((r, t) -> {
+			try {
+				if (t != null) {
+					throw new FBaseCommunicationException(
+							FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+				}
+				result.complete(createDecryptedMessage(r == null ? null : decodeReply(r)));
+			} catch (FBaseCommunicationException | FBaseEncryptionException
+					| FBaseNamingServiceException | RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return the number of requests that were sent to the naming service but not answered
+	 *         yet
+	 */
+	public int getNumberOfOutstandingRequests() {
+		return client.getNumberOfOutstandingRequests();
 	}
 
 	/**
@@ -109,8 +260,10 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.RESET_NAMING_SERVICE);
 		m.setContent("");
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
+			keygroupConfigs.invalidateAll();
+			nodeConfigs.invalidateAll();
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
@@ -131,8 +284,9 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.NODE_CONFIG_CREATE);
 		m.setContent(JSONable.toJSON(nodeConfig));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
+			nodeConfigs.invalidate(nodeConfig.getNodeID());
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
@@ -153,8 +307,9 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.NODE_CONFIG_UPDATE);
 		m.setContent(JSONable.toJSON(nodeConfig));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
+			nodeConfigs.invalidate(nodeConfig.getNodeID());
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
@@ -171,18 +326,27 @@ public class NamingServiceSender extends AbstractSender {
 	 * @throws FBaseNamingServiceException - if not existent
 	 */
 	public NodeConfig sendNodeConfigRead(NodeID id) throws FBaseCommunicationException, FBaseNamingServiceException {
+		return nodeConfigs.get(id);
+	}
+
+	/**
+	 * Asynchronous version of {@link #sendNodeConfigRead(NodeID)} that always asks the naming
+	 * service and updates the cached config.
+	 * 
+	 * @param id - the {@link NodeID}
+	 * @return a future that completes with the specified {@link NodeConfig}, see
+	 *         {@link #requestAsync(Message)} for failures
+	 */
+	public CompletableFuture<NodeConfig> sendNodeConfigReadAsync(NodeID id) {
+		return nodeConfigs.refresh(id);
+	}
+
+	private CompletableFuture<NodeConfig> readNodeConfig(NodeID id) {
 		Message m = new Message();
 		m.setCommand(Command.NODE_CONFIG_READ);
 		m.setContent(JSONable.toJSON(id));
-		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
-			Message response = createDecryptedMessage(answer);
-			NodeConfig config = JSONable.fromJSON(response.getContent(), NodeConfig.class);
-			return config;
-		} catch (FBaseEncryptionException e1) {
-			logger.error(e1.getMessage());
-			return null;
-		}
+		return requestAsync(m).thenApply(
+				response -> JSONable.fromJSON(response.getContent(), NodeConfig.class));
 	}
 
 	/**
@@ -198,8 +362,9 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.NODE_CONFIG_DELETE);
 		m.setContent(JSONable.toJSON(id));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
+			nodeConfigs.invalidate(id);
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
@@ -221,7 +386,7 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.CLIENT_CONFIG_CREATE);
 		m.setContent(JSONable.toJSON(clientConfig));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
@@ -244,7 +409,7 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.CLIENT_CONFIG_UPDATE);
 		m.setContent(JSONable.toJSON(clientConfig));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
@@ -267,7 +432,7 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.CLIENT_CONFIG_READ);
 		m.setContent(JSONable.toJSON(id));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			ClientConfig config = JSONable.fromJSON(response.getContent(), ClientConfig.class);
 			return config;
@@ -291,7 +456,7 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.CLIENT_CONFIG_DELETE);
 		m.setContent(JSONable.toJSON(id));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
@@ -314,11 +479,11 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.KEYGROUP_CONFIG_CREATE);
 		m.setContent(JSONable.toJSON(config));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -343,11 +508,11 @@ public class NamingServiceSender extends AbstractSender {
 				new ConfigIDToKeygroupWrapper<ClientID>(keygroupID, cID);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -372,11 +537,11 @@ public class NamingServiceSender extends AbstractSender {
 				new ConfigIDToKeygroupWrapper<ClientID>(keygroupID, cId);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -401,11 +566,11 @@ public class NamingServiceSender extends AbstractSender {
 				new ConfigToKeygroupWrapper<ReplicaNodeConfig>(keygroupID, rNConfig);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -430,11 +595,11 @@ public class NamingServiceSender extends AbstractSender {
 				new ConfigToKeygroupWrapper<TriggerNodeConfig>(keygroupID, tNConfig);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -451,19 +616,27 @@ public class NamingServiceSender extends AbstractSender {
 	 * @throws FBaseNamingServiceException - if not existent
 	 */
 	public KeygroupConfig sendKeygroupConfigRead(KeygroupID id) throws FBaseCommunicationException, FBaseNamingServiceException {
+		return keygroupConfigs.get(id);
+	}
+
+	/**
+	 * Asynchronous version of {@link #sendKeygroupConfigRead(KeygroupID)} that always asks
+	 * the naming service and updates the cached config.
+	 * 
+	 * @param id - the {@link KeygroupID}
+	 * @return a future that completes with the specified {@link KeygroupConfig}, see
+	 *         {@link #requestAsync(Message)} for failures
+	 */
+	public CompletableFuture<KeygroupConfig> sendKeygroupConfigReadAsync(KeygroupID id) {
+		return keygroupConfigs.refresh(id);
+	}
+
+	private CompletableFuture<KeygroupConfig> readKeygroupConfig(KeygroupID id) {
 		Message m = new Message();
 		m.setCommand(Command.KEYGROUP_CONFIG_READ);
 		m.setContent(JSONable.toJSON(id));
-		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
-			Message response = createDecryptedMessage(answer);
-			KeygroupConfig newConfig =
-					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
-		} catch (FBaseEncryptionException e1) {
-			logger.error(e1.getMessage());
-			return null;
-		}
+		return requestAsync(m).thenApply(
+				response -> JSONable.fromJSON(response.getContent(), KeygroupConfig.class));
 	}
 
 	/**
@@ -486,11 +659,11 @@ public class NamingServiceSender extends AbstractSender {
 				new CryptoToKeygroupWrapper(keygroupID, encryptionSecret, encryptionAlgorithm);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
@@ -511,8 +684,9 @@ public class NamingServiceSender extends AbstractSender {
 		m.setCommand(Command.KEYGROUP_CONFIG_DELETE);
 		m.setContent(JSONable.toJSON(id));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
+			keygroupConfigs.invalidate(id);
 			return Boolean.parseBoolean(response.getContent());
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
@@ -537,17 +711,30 @@ public class NamingServiceSender extends AbstractSender {
 				new ConfigIDToKeygroupWrapper<NodeID>(keygroupID, nId);
 		m.setContent(JSONable.toJSON(wrapper));
 		try {
-			String answer = send(createEncryptedEnvelope(m), null, null);
+			Message answer = request(createEncryptedEnvelope(m));
 			Message response = createDecryptedMessage(answer);
 			KeygroupConfig newConfig =
 					JSONable.fromJSON(response.getContent(), KeygroupConfig.class);
-			return newConfig;
+			return cache(newConfig);
 		} catch (FBaseEncryptionException e1) {
 			logger.error(e1.getMessage());
 			return null;
 		}
 	}
 
+	/**
+	 * Caches a {@link KeygroupConfig} version approved by the naming service.
+	 * 
+	 * @param config - the {@link KeygroupConfig}, may be null
+	 * @return the given config
+	 */
+	private KeygroupConfig cache(KeygroupConfig config) {
+		if (config != null && config.getKeygroupID() != null) {
+			keygroupConfigs.put(config.getKeygroupID(), config);
+		}
+		return config;
+	}
+
 	/**
 	 * Create an envelope that is signed with the private key of the node and encrypted with
 	 * the public key of the naming service. Also sets
@@ -566,10 +753,9 @@ public class NamingServiceSender extends AbstractSender {
 	}
 
 	/**
-	 * Creates a {@link Message} based on a given json String. Also decrypts all fields with
-	 * the own private key.
+	 * Decrypts all fields of a received {@link Message} with the own private key.
 	 * 
-	 * @param s - json of the message
+	 * @param m - the received message
 	 * @return
 	 * @throws FBaseEncryptionException - if the response from the namingservice cannot be
 	 *             decrypted
@@ -577,13 +763,12 @@ public class NamingServiceSender extends AbstractSender {
 	 * @throws FBaseNamingServiceException - if the response from the naming service is not
 	 *             success
 	 */
-	private Message createDecryptedMessage(String s) throws FBaseEncryptionException,
+	private Message createDecryptedMessage(Message m) throws FBaseEncryptionException,
 			FBaseCommunicationException, FBaseNamingServiceException {
-		if (s == null) {
+		if (m == null) {
 			throw new FBaseCommunicationException(
 					FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
 		}
-		Message m = JSONable.fromJSON(s, Message.class);
 		m.decryptFields(fBase.configuration.getPrivateKey(), EncryptionAlgorithm.RSA);
 		m.verifyMessage(fBase.configuration.getNamingServicePublicKey(), EncryptionAlgorithm.RSA);
 		logger.debug("Reply of naming service received");
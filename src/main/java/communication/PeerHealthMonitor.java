@@ -0,0 +1,232 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import de.hasenburg.fbase.model.PeerStatistics;
+
+/**
+ * Tracks the response times and failures of requests to each peer, to choose the timeout of
+ * the next request and to stop sending requests to peers that are down.
+ *
+ * The timeout of a request is {@link #TIMEOUT_FACTOR} times the 99th percentile of the last
+ * {@link #WINDOW_SIZE} response times of the peer, but at least {@link #MIN_TIMEOUT} and at
+ * most the maximum timeout given by the sender. Senders can raise the minimum for requests
+ * that are known to take longer than most others, so that they do not time out on healthy
+ * peers. Until {@link #MIN_SAMPLES} responses were received, the maximum timeout is used.
+ *
+ * After {@link #FAILURE_THRESHOLD} consecutive failures, the circuit breaker of the peer opens
+ * and requests fail immediately. Once the open duration has passed, a single probe request is
+ * let through (half-open). If it succeeds, the breaker closes, otherwise it opens again for
+ * twice the duration, up to the maximum open duration.
+ */
+public class PeerHealthMonitor {
+
+	private static Logger logger = Logger.getLogger(PeerHealthMonitor.class.getName());
+
+	/**
+	 * Number of consecutive failures after which the breaker of a peer opens
+	 */
+	public static final int FAILURE_THRESHOLD = 3;
+
+	/**
+	 * Number of response times used to calculate the timeout
+	 */
+	public static final int WINDOW_SIZE = 128;
+
+	/**
+	 * Number of response times necessary before the timeout is adapted
+	 */
+	public static final int MIN_SAMPLES = 10;
+
+	public static final long MIN_TIMEOUT = 250;
+
+	public static final int TIMEOUT_FACTOR = 3;
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private class Peer {
+		private final long[] window = new long[WINDOW_SIZE];
+		private int next = 0;
+		private int samples = 0;
+		private long p50 = 0;
+		private long p99 = 0;
+
+		private State state = State.CLOSED;
+		private int consecutiveFailures = 0;
+		private long openDuration = minOpenDuration;
+		private long openUntil = 0;
+
+		private long requests = 0;
+		private long failures = 0;
+		private long rejected = 0;
+		private long lastTimeout = 0;
+
+		private synchronized void success(long responseTime) {
+			window[next] = responseTime;
+			next = (next + 1) % WINDOW_SIZE;
+			requests++;
+			samples = Math.min(samples + 1, WINDOW_SIZE);
+			long[] sorted = Arrays.copyOf(window, samples);
+			Arrays.sort(sorted);
+			p50 = sorted[(samples - 1) / 2];
+			p99 = sorted[(int) Math.ceil(samples * 0.99) - 1];
+
+			consecutiveFailures = 0;
+			openDuration = minOpenDuration;
+			state = State.CLOSED;
+		}
+
+		private synchronized void failure(String peer) {
+			requests++;
+			failures++;
+			consecutiveFailures++;
+			if (State.HALF_OPEN.equals(state)) {
+				openDuration = Math.min(openDuration * 2, maxOpenDuration);
+				open(peer);
+			} else if (State.CLOSED.equals(state) && consecutiveFailures >= FAILURE_THRESHOLD) {
+				open(peer);
+			}
+		}
+
+		private void open(String peer) {
+			state = State.OPEN;
+			openUntil = System.currentTimeMillis() + openDuration;
+			logger.warn("Peer " + peer + " is not reachable, failing requests for "
+					+ openDuration + "ms");
+		}
+
+		private synchronized boolean allowRequest() {
+			if (State.CLOSED.equals(state)) {
+				return true;
+			}
+			long now = System.currentTimeMillis();
+			if (now >= openUntil) {
+				// let a single probe through, another one if it does not finish in time
+				state = State.HALF_OPEN;
+				openUntil = now + openDuration;
+				return true;
+			}
+			rejected++;
+			return false;
+		}
+
+		private synchronized long getTimeout(long minTimeout, long maxTimeout) {
+			if (samples < MIN_SAMPLES) {
+				lastTimeout = maxTimeout;
+			} else {
+				lastTimeout = Math.max(minTimeout, Math.min(maxTimeout, p99 * TIMEOUT_FACTOR));
+			}
+			return lastTimeout;
+		}
+
+		private synchronized PeerStatistics getStatistics(String peer) {
+			return new PeerStatistics(peer, state.toString(), requests, failures, rejected, p50,
+					p99, lastTimeout);
+		}
+	}
+
+	private final long minOpenDuration;
+	private final long maxOpenDuration;
+
+	private final ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<>();
+
+	public PeerHealthMonitor() {
+		this(TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(30));
+	}
+
+	/**
+	 * @param minOpenDuration - the time in milliseconds a breaker stays open after it opened
+	 *            the first time
+	 * @param maxOpenDuration - the maximum time in milliseconds a breaker stays open
+	 */
+	public PeerHealthMonitor(long minOpenDuration, long maxOpenDuration) {
+		this.minOpenDuration = minOpenDuration;
+		this.maxOpenDuration = maxOpenDuration;
+	}
+
+	private Peer getPeer(String peer) {
+		return peers.computeIfAbsent(peer, k -> new Peer());
+	}
+
+	/**
+	 * Must be called before a request is sent to a peer. If true is returned, either
+	 * {@link #success(String, long)} or {@link #failure(String)} must be called afterwards.
+	 *
+	 * @param peer - the address and port of the peer
+	 * @return false if the breaker of the peer is open and the request must not be sent
+	 */
+	public boolean allowRequest(String peer) {
+		return getPeer(peer).allowRequest();
+	}
+
+	/**
+	 * @param peer - the address and port of the peer
+	 * @param maxTimeout - the maximum timeout in milliseconds
+	 * @return the timeout in milliseconds for the next request to the peer
+	 */
+	public long getTimeout(String peer, long maxTimeout) {
+		return getTimeout(peer, MIN_TIMEOUT, maxTimeout);
+	}
+
+	/**
+	 * @param peer - the address and port of the peer
+	 * @param minTimeout - the minimum timeout in milliseconds, at least {@link #MIN_TIMEOUT}
+	 * @param maxTimeout - the maximum timeout in milliseconds
+	 * @return the timeout in milliseconds for the next request to the peer
+	 */
+	public long getTimeout(String peer, long minTimeout, long maxTimeout) {
+		return getPeer(peer).getTimeout(Math.max(MIN_TIMEOUT, minTimeout), maxTimeout);
+	}
+
+	/**
+	 * Must be called with every response of a peer.
+	 *
+	 * @param peer - the address and port of the peer
+	 * @param responseTime - the time in milliseconds between sending the request and
+	 *            receiving the response
+	 */
+	public void success(String peer, long responseTime) {
+		getPeer(peer).success(responseTime);
+	}
+
+	/**
+	 * Must be called if a peer did not respond in time.
+	 *
+	 * @param peer - the address and port of the peer
+	 */
+	public void failure(String peer) {
+		getPeer(peer).failure(peer);
+	}
+
+	/**
+	 * @param peer - the address and port of the peer
+	 * @return the state of the breaker of the peer
+	 */
+	public State getState(String peer) {
+		Peer p = peers.get(peer);
+		if (p == null) {
+			return State.CLOSED;
+		}
+		synchronized (p) {
+			return p.state;
+		}
+	}
+
+	/**
+	 * @return the statistics of all peers that were contacted so far
+	 */
+	public List<PeerStatistics> getStatistics() {
+		List<PeerStatistics> statistics = new ArrayList<>();
+		peers.forEach((peer, p) -> statistics.add(p.getStatistics(peer)));
+		return statistics;
+	}
+
+}
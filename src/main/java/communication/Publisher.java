@@ -1,16 +1,37 @@
 package communication;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
 
 import crypto.CryptoProvider.EncryptionAlgorithm;
+import de.hasenburg.fbase.model.PublisherStatistics;
 import exceptions.FBaseEncryptionException;
-import model.JSONable;
 import model.messages.Envelope;
 
 /**
  * Publishes envelopes to all subscribers.
- * 
+ *
+ * ZeroMQ sockets must not be used by multiple threads at the same time, so
+ * {@link #send(Envelope, String, EncryptionAlgorithm)} only encrypts and encodes the
+ * envelope in the calling thread and adds it to a lock-free queue. A single writer thread
+ * drains the queue and is the only thread that uses the socket.
+ *
+ * The writer can batch frames: after taking the first frame of a batch, it waits until
+ * either maxBatchSize frames are queued or maxBatchDelay has passed, and then writes the
+ * whole batch at once. Without a delay, frames are written as soon as possible.
+ *
+ * Frames that cannot be written are logged and dropped, so that a single failure does not
+ * stop the writer. If only the namespace of a frame was written, the socket is recreated, as
+ * subscribers would otherwise receive the next namespace as payload. If the writer stops
+ * nevertheless, the publisher shuts down and further envelopes are rejected.
+ *
  * @author jonathanhasenburg
  *
  */
@@ -19,16 +40,80 @@ public class Publisher extends AbstractSender {
 	private static Logger logger = Logger.getLogger(Publisher.class.getName());
 
 	/**
-	 * Initializes the Publisher, it then can be used without further modifications.
+	 * The default maximum number of frames written in one batch
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	/**
+	 * Maximum time the idle writer sleeps before checking the queue again, only matters if a
+	 * wake up signal got lost
+	 */
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static class Frame {
+		private final String namespace;
+		private final byte[] payload;
+
+		private Frame(String namespace, byte[] payload) {
+			this.namespace = namespace;
+			this.payload = payload;
+		}
+	}
+
+	private final int maxBatchSize;
+	private final long maxBatchDelayNanos;
+	private final WireFormat format;
+
+	private final Queue<Frame> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final LongAdder publishedFrames = new LongAdder();
+	private final LongAdder writtenBatches = new LongAdder();
+	private final LongAdder failedFrames = new LongAdder();
+	private final LongAdder recreatedSockets = new LongAdder();
+
+	private final Thread writer;
+	private volatile boolean running = true;
+	private volatile boolean writerIdle = false;
+	private volatile boolean writerFailed = false;
+
+	/**
+	 * Initializes the Publisher, it then can be used without further modifications. Frames
+	 * are published as soon as possible and in {@link WireFormat#JSON}.
 	 */
 	public Publisher(String address, int port) {
+		this(address, port, DEFAULT_MAX_BATCH_SIZE, 0, WireFormat.JSON);
+	}
+
+	/**
+	 * Initializes the Publisher, it then can be used without further modifications.
+	 *
+	 * @param address - the address the publisher binds to
+	 * @param port - the port the publisher binds to
+	 * @param maxBatchSize - the maximum number of frames written in one batch
+	 * @param maxBatchDelay - the maximum time in milliseconds a frame waits for other frames
+	 *            to be written in the same batch, 0 to write frames as soon as possible
+	 * @param format - the format of published messages, all subscribers must understand it
+	 */
+	public Publisher(String address, int port, int maxBatchSize, long maxBatchDelay,
+			WireFormat format) {
 		super(address, port, ZMQ.PUB);
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("Maximum batch size must be greater than 0");
+		}
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelay);
+		this.format = format;
+		writer = new Thread(this::writeFrames, "Publisher-" + port);
+		writer.setDaemon(true);
+		writer.start();
 	}
 
 	/**
 	 * Publishes a new envelope to all subscribers and encrypts the message with the given
-	 * secret and algorithm
-	 * 
+	 * secret and algorithm. The envelope is only queued, so it might not have been published
+	 * yet when this method returns.
+	 *
 	 * @param envelope - the published envelope
 	 * @param secret - the secret used for encryption
 	 * @param algorithm - the algorithm used for encryption
@@ -38,11 +123,174 @@ public class Publisher extends AbstractSender {
 	@Override
 	public String send(Envelope envelope, String secret, EncryptionAlgorithm algorithm)
 			throws FBaseEncryptionException {
+		if (!running) {
+			if (writerFailed) {
+				logger.error("Publisher writer stopped unexpectedly, dropping envelope with "
+						+ "namespace " + envelope.getConfigID().getID());
+			} else {
+				logger.warn("Publisher is shut down, dropping envelope with namespace "
+						+ envelope.getConfigID().getID());
+			}
+			return null;
+		}
 		logger.debug("Publishing envelope with namespace " + envelope.getConfigID().getID());
 		envelope.getMessage().encryptFields(secret, algorithm);
-		sender.sendMore(envelope.getConfigID().getID());
-		sender.send(JSONable.toJSON(envelope.getMessage()));
+		queue.offer(new Frame(envelope.getConfigID().getID(),
+				MessageCodec.encode(envelope.getMessage(), format)));
+		int depth = queueDepth.incrementAndGet();
+		maxQueueDepth.accumulateAndGet(depth, Math::max);
+		if (writerIdle || depth >= maxBatchSize) {
+			LockSupport.unpark(writer);
+		}
 		return null;
 	}
 
+	private void writeFrames() {
+		try {
+			writeQueuedFrames();
+		} catch (Throwable t) {
+			writerFailed = true;
+			running = false;
+			logger.fatal("Publisher writer stopped unexpectedly", t);
+			throw t;
+		}
+		logger.debug("Publisher writer stopped");
+	}
+
+	private void writeQueuedFrames() {
+		while (running || !queue.isEmpty()) {
+			Frame frame = queue.poll();
+			if (frame == null) {
+				writerIdle = true;
+				// re-check, a frame might have been queued before the flag was visible
+				if (queue.isEmpty() && running) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+				writerIdle = false;
+				continue;
+			}
+			if (maxBatchDelayNanos > 0) {
+				awaitBatch();
+			}
+			int taken = 0;
+			int written = 0;
+			do {
+				queueDepth.decrementAndGet();
+				taken++;
+				boolean started = false;
+				try {
+					started = sender.sendMore(frame.namespace);
+					if (!started || !sender.send(frame.payload)) {
+						throw new IllegalStateException("Socket did not accept the frame");
+					}
+					written++;
+				} catch (RuntimeException e) {
+					failedFrames.increment();
+					logger.error("Could not publish frame with namespace " + frame.namespace, e);
+					if (started) {
+						recreateSocket();
+					}
+				}
+			} while (taken < maxBatchSize && (frame = queue.poll()) != null);
+			if (written > 0) {
+				publishedFrames.add(written);
+				writtenBatches.increment();
+			}
+		}
+	}
+
+	/**
+	 * Replaces the socket after a frame was only partially written. Messages that were not
+	 * sent yet by the old socket are dropped, subscribers reconnect automatically.
+	 */
+	private void recreateSocket() {
+		String endpoint = getAddress() + ":" + getPort();
+		logger.warn("Recreating publisher socket bound to " + endpoint);
+		sender.setLinger(0);
+		sender.unbind(endpoint);
+		sender.close();
+		sender = context.socket(ZMQ.PUB);
+		sender.bind(endpoint);
+		recreatedSockets.increment();
+	}
+
+	/**
+	 * Waits until a batch is full, the maximum batch delay passed or the publisher is shut
+	 * down. The first frame of the batch has already been taken from the queue.
+	 */
+	private void awaitBatch() {
+		long deadline = System.nanoTime() + maxBatchDelayNanos;
+		long remaining = maxBatchDelayNanos;
+		while (running && queueDepth.get() < maxBatchSize && remaining > 0) {
+			LockSupport.parkNanos(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Stops the writer after all queued frames have been published and closes the socket.
+	 */
+	@Override
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		super.shutdown();
+	}
+
+	/**
+	 * @return the number of frames that are queued but have not been published yet
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @return the highest number of queued frames observed since the publisher was started
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return the number of frames published so far
+	 */
+	public long getNumberOfPublishedFrames() {
+		return publishedFrames.sum();
+	}
+
+	/**
+	 * @return the number of frames that could not be published and were dropped
+	 */
+	public long getNumberOfFailedFrames() {
+		return failedFrames.sum();
+	}
+
+	/**
+	 * @return the number of batches written so far, each contains at least one frame
+	 */
+	public long getNumberOfWrittenBatches() {
+		return writtenBatches.sum();
+	}
+
+	/**
+	 * @return the number of times the socket was recreated after a partially written frame
+	 */
+	public long getNumberOfRecreatedSockets() {
+		return recreatedSockets.sum();
+	}
+
+	/**
+	 * @return the current statistics of the publisher
+	 */
+	public PublisherStatistics getStatistics() {
+		return new PublisherStatistics(getQueueDepth(), getMaxQueueDepth(),
+				getNumberOfPublishedFrames(), getNumberOfWrittenBatches(),
+				getNumberOfFailedFrames(), getNumberOfRecreatedSockets());
+	}
+
 }
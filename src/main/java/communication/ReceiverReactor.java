@@ -0,0 +1,365 @@
+package communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+
+/**
+ * Receives the envelopes of many {@link AbstractEnvelopeReceiver}s with a single event loop
+ * thread that polls all of their sockets.
+ *
+ * Received frames are decoded and interpreted by a shared worker pool. The envelopes of one
+ * receiver are interpreted one after another in the order they were received, envelopes of
+ * different receivers in parallel. Receivers therefore do not hold a thread while no
+ * envelopes arrive.
+ *
+ * Envelopes of ROUTER receivers are requests that are independent of each other, so they are
+ * interpreted in parallel.
+ *
+ * ZeroMQ sockets must only be used by the event loop thread. Responses of request-reply
+ * receivers are queued by the workers and sent by the event loop, see
+ * {@link #reply(AbstractEnvelopeReceiver, AbstractEnvelopeReceiver.Route, byte[])}. Workers
+ * and other threads wake up the event loop by writing to a pipe that is polled together with
+ * the sockets, so the loop only runs if there is something to do.
+ */
+public class ReceiverReactor {
+
+	private static Logger logger = Logger.getLogger(ReceiverReactor.class.getName());
+
+	/**
+	 * Maximum time in milliseconds the event loop waits for envelopes, only matters if a wake
+	 * up signal got lost
+	 */
+	private static final long IDLE_POLL_TIMEOUT = 1000;
+
+	private static class Registration {
+		private final AbstractEnvelopeReceiver receiver;
+		private final ZMQ.Socket socket;
+		private final SerialExecutor executor;
+		private final CompletableFuture<Void> stopped;
+
+		private Registration(AbstractEnvelopeReceiver receiver, ZMQ.Socket socket,
+				SerialExecutor executor, CompletableFuture<Void> stopped) {
+			this.receiver = receiver;
+			this.socket = socket;
+			this.executor = executor;
+			this.stopped = stopped;
+		}
+	}
+
+	private static class Reply {
+		private final AbstractEnvelopeReceiver receiver;
+		private final AbstractEnvelopeReceiver.Route route;
+		private final byte[] frame;
+
+		private Reply(AbstractEnvelopeReceiver receiver, AbstractEnvelopeReceiver.Route route,
+				byte[] frame) {
+			this.receiver = receiver;
+			this.route = route;
+			this.frame = frame;
+		}
+	}
+
+	private final String name;
+	private final ZMQ.Context context;
+	private final ExecutorService workers;
+	private final Thread eventLoop;
+	private volatile boolean running = true;
+
+	/**
+	 * Registrations and unregistrations that are run by the event loop
+	 */
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Written to wake up the event loop, the source is polled together with the sockets
+	 */
+	private final Pipe wakeUpPipe;
+	private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+	/**
+	 * Only modified by the event loop
+	 */
+	private final Map<AbstractEnvelopeReceiver, Registration> registrations =
+			new ConcurrentHashMap<>();
+	private ZMQ.Poller poller = null;
+	private List<Registration> polled = new ArrayList<>();
+
+	/**
+	 * Creates the reactor and starts its event loop.
+	 *
+	 * @param name - used to name the threads of the reactor
+	 * @param workerThreads - the number of threads that interprete envelopes
+	 */
+	public ReceiverReactor(String name, int workerThreads) {
+		if (workerThreads <= 0) {
+			throw new IllegalArgumentException("Number of worker threads must be greater than 0");
+		}
+		this.name = name;
+		try {
+			this.wakeUpPipe = Pipe.open();
+			wakeUpPipe.source().configureBlocking(false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not open wake up pipe", e);
+		}
+		this.context = ZMQ.context(1);
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+			Thread thread =
+					new Thread(runnable, name + "-worker-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		eventLoop = new Thread(this::runEventLoop, name);
+		eventLoop.setDaemon(true);
+		eventLoop.start();
+	}
+
+	/**
+	 * Opens the socket of the receiver and starts polling it.
+	 *
+	 * @param receiver - the receiver
+	 * @return a future that completes once the receiver was unregistered
+	 */
+	Future<Void> register(AbstractEnvelopeReceiver receiver) {
+		CompletableFuture<Void> stopped = new CompletableFuture<>();
+		commands.offer(() -> {
+			try {
+				registrations.put(receiver, new Registration(receiver,
+						receiver.openSocket(context), new SerialExecutor(workers), stopped));
+				poller = null;
+			} catch (RuntimeException e) {
+				logger.error("Could not register receiver for " + receiver.getAddress() + ":"
+						+ receiver.getPort(), e);
+				stopped.completeExceptionally(e);
+			}
+		});
+		wakeUp();
+		if (!running) {
+			// the event loop might not run the command anymore
+			stopped.completeExceptionally(new IllegalStateException("Reactor is shut down"));
+		}
+		return stopped;
+	}
+
+	/**
+	 * Stops polling the socket of the receiver and closes it. Waits until the socket is
+	 * closed, envelopes that are already received might still be interpreted.
+	 *
+	 * @param receiver - the receiver
+	 */
+	void unregister(AbstractEnvelopeReceiver receiver) {
+		CompletableFuture<Void> unregistered = new CompletableFuture<>();
+		commands.offer(() -> {
+			Registration registration = registrations.remove(receiver);
+			if (registration != null) {
+				close(registration);
+				poller = null;
+			}
+			unregistered.complete(null);
+		});
+		if (Thread.currentThread() == eventLoop || !running) {
+			return;
+		}
+		wakeUp();
+		try {
+			unregistered.get(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			logger.warn("Could not unregister receiver for " + receiver.getAddress() + ":"
+					+ receiver.getPort() + " in time");
+		}
+	}
+
+	/**
+	 * Sends a response with the socket of a request-reply receiver. Can be called from any
+	 * thread, the response is sent by the event loop. Responses of receivers that are not
+	 * registered anymore are dropped.
+	 *
+	 * @param receiver - the receiver that received the request
+	 * @param route - the route of the request for ROUTER receivers, otherwise null
+	 * @param frame - the encoded response
+	 */
+	void reply(AbstractEnvelopeReceiver receiver, AbstractEnvelopeReceiver.Route route,
+			byte[] frame) {
+		replies.offer(new Reply(receiver, route, frame));
+		wakeUp();
+	}
+
+	/**
+	 * Makes the event loop run its next pass right away, e.g., because the topics of a
+	 * receiver changed. Can be called from any thread.
+	 */
+	void wakeUp() {
+		if (Thread.currentThread() == eventLoop || !wakeUpPending.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			wakeUpPipe.sink().write(ByteBuffer.allocate(1));
+		} catch (IOException e) {
+			logger.warn("Could not wake up event loop of " + name, e);
+		}
+	}
+
+	/**
+	 * Reads all wake up signals, so that the pipe is not readable anymore.
+	 */
+	private void drainWakeUps() throws IOException {
+		wakeUpPending.set(false);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		while (wakeUpPipe.source().read(buffer) > 0) {
+			buffer.clear();
+		}
+	}
+
+	private void runEventLoop() {
+		try {
+			while (running) {
+				runCommands();
+				sendReplies();
+				for (Registration registration : registrations.values()) {
+					registration.receiver.beforeReceive(registration.socket);
+				}
+				if (poller == null) {
+					createPoller();
+				}
+				if (poller.poll(IDLE_POLL_TIMEOUT) <= 0) {
+					continue;
+				}
+				if (poller.pollin(0)) {
+					drainWakeUps();
+				}
+				for (int i = 0; i < polled.size(); i++) {
+					// the wake up pipe is registered first
+					if (poller.pollin(i + 1)) {
+						receive(polled.get(i));
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.fatal("Event loop of " + name + " failed", e);
+		} finally {
+			running = false;
+			runCommands();
+			registrations.values().forEach(this::close);
+			registrations.clear();
+			context.term();
+			try {
+				wakeUpPipe.sink().close();
+				wakeUpPipe.source().close();
+			} catch (IOException e) {
+				logger.warn("Could not close wake up pipe of " + name, e);
+			}
+			logger.debug("Event loop of " + name + " stopped");
+		}
+	}
+
+	private void runCommands() {
+		Runnable command;
+		while ((command = commands.poll()) != null) {
+			command.run();
+		}
+	}
+
+	private void sendReplies() {
+		Reply reply;
+		while ((reply = replies.poll()) != null) {
+			Registration registration = registrations.get(reply.receiver);
+			if (registration != null) {
+				AbstractEnvelopeReceiver.send(registration.socket, reply.route, reply.frame);
+			}
+		}
+	}
+
+	private void createPoller() {
+		poller = context.poller(registrations.size() + 1);
+		poller.register(wakeUpPipe.source(), ZMQ.Poller.POLLIN);
+		polled = new ArrayList<>(registrations.values());
+		for (Registration registration : polled) {
+			poller.register(registration.socket, ZMQ.Poller.POLLIN);
+		}
+	}
+
+	private void receive(Registration registration) {
+		ZMQ.Socket socket = registration.socket;
+		// read all envelopes that are already queued, but do not block
+		AbstractEnvelopeReceiver receiver = registration.receiver;
+		byte[] firstFrame;
+		while ((firstFrame = socket.recv(ZMQ.DONTWAIT)) != null) {
+			Runnable task = receiver.readEnvelope(firstFrame, socket);
+			if (receiver.isConcurrent()) {
+				try {
+					workers.execute(task);
+				} catch (RejectedExecutionException e) {
+					logger.warn("Dropping request, workers of " + name + " are shut down");
+				}
+			} else {
+				registration.executor.execute(task);
+			}
+			if (receiver.expectsReply()) {
+				// request-reply sockets cannot receive before the response was sent
+				return;
+			}
+		}
+	}
+
+	private void close(Registration registration) {
+		registration.socket.close();
+		registration.stopped.complete(null);
+	}
+
+	/**
+	 * @return the number of registered receivers
+	 */
+	public int getNumberOfReceivers() {
+		return registrations.size();
+	}
+
+	/**
+	 * Closes the sockets of all receivers and stops the event loop and all workers.
+	 */
+	public void shutdown() {
+		running = false;
+		wakeUp();
+		try {
+			eventLoop.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isShutdown() {
+		return !running;
+	}
+
+}
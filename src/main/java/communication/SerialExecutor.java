@@ -0,0 +1,81 @@
+package communication;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs tasks one after another in the order they were submitted on the threads of a shared
+ * executor. A serial executor does not hold a thread while it has nothing to do, so many of
+ * them can share a small pool.
+ */
+public class SerialExecutor implements Executor {
+
+	private static Logger logger = Logger.getLogger(SerialExecutor.class.getName());
+
+	/**
+	 * Maximum number of tasks run before the thread is handed back to the shared executor,
+	 * so that other serial executors are not starved
+	 */
+	private static final int MAX_TASKS_PER_RUN = 100;
+
+	private final Executor delegate;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	public SerialExecutor(Executor delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		tasks.offer(task);
+		schedule();
+	}
+
+	private void schedule() {
+		if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+			try {
+				delegate.execute(this::runTasks);
+			} catch (RuntimeException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void runTasks() {
+		try {
+			Runnable task;
+			int run = 0;
+			while (run++ < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					logger.error("Serially executed task failed", e);
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			// tasks might be left over or added after the queue was found empty
+			try {
+				schedule();
+			} catch (RejectedExecutionException e) {
+				logger.warn("Dropping " + tasks.size() + " tasks, executor was shut down");
+				tasks.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of tasks that have not been started yet
+	 */
+	public int getQueueSize() {
+		return tasks.size();
+	}
+
+}
@@ -1,5 +1,8 @@
 package communication;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
 
@@ -19,10 +22,13 @@ import model.messages.Message;
 /**
  * Subscribes to data streams of envelopes of different subscribers.
  * 
+ * A subscriber either receives envelopes with its own socket, or is attached to a
+ * {@link SubscriberSocket} that is shared with the subscribers of other keygroups.
+ * 
  * @author jonathanhasenburg
  *
  */
-public class Subscriber extends AbstractReceiver {
+public class Subscriber extends AbstractEnvelopeReceiver {
 
 	private static Logger logger = Logger.getLogger(Subscriber.class.getName());
 
@@ -31,6 +37,10 @@ public class Subscriber extends AbstractReceiver {
 	private String secret;
 	private EncryptionAlgorithm algorithm;
 
+	private SubscriberSocket sharedSocket = null;
+	private volatile Future<?> attached = null;
+	private final AtomicInteger numberOfDeliveredMessages = new AtomicInteger();
+
 	/**
 	 * Creates a subscriber, that does not filter any messages.
 	 * 
@@ -65,8 +75,96 @@ public class Subscriber extends AbstractReceiver {
 		this.filterID = keygroupIDFilter;
 	}
 
+	/**
+	 * Creates a subscriber that receives the messages of the keygroup with a shared socket.
+	 * 
+	 * @param sharedSocket
+	 * @param secret
+	 * @param algorithm
+	 * @param keygroupID
+	 */
+	public Subscriber(SubscriberSocket sharedSocket, String secret,
+			EncryptionAlgorithm algorithm, FBase fBase, KeygroupID keygroupID) {
+		this(sharedSocket.getAddress(), sharedSocket.getPort(), secret, algorithm, fBase,
+				keygroupID);
+		this.sharedSocket = sharedSocket;
+	}
+
+	/**
+	 * Starts receiving envelopes, subscribers with a shared socket attach to it.
+	 * 
+	 * @return the future of the receiving thread, or null if the shared socket is closed
+	 */
+	@Override
+	public synchronized Future<?> startReceiving() {
+		if (sharedSocket == null) {
+			return super.startReceiving();
+		}
+		if (attached == null) {
+			attached = sharedSocket.attach(this);
+		}
+		return attached;
+	}
+
+	/**
+	 * Starts receiving envelopes with the given reactor. Subscribers with a shared socket
+	 * attach to it instead, the socket decides how it receives envelopes.
+	 */
+	@Override
+	public synchronized Future<?> startReceiving(ReceiverReactor reactor) {
+		if (sharedSocket == null) {
+			return super.startReceiving(reactor);
+		}
+		return startReceiving();
+	}
+
+	/**
+	 * Stops receiving envelopes, subscribers with a shared socket detach from it.
+	 */
+	@Override
+	public synchronized void stopReception() {
+		if (sharedSocket == null) {
+			super.stopReception();
+		} else if (attached != null) {
+			attached = null;
+			sharedSocket.detach(this);
+		}
+	}
+
+	@Override
+	public boolean isReceiving() {
+		if (sharedSocket == null) {
+			return super.isReceiving();
+		}
+		return attached != null && sharedSocket.isReceiving();
+	}
+
+	@Override
+	public int getNumberOfReceivedMessages() {
+		if (sharedSocket == null) {
+			return super.getNumberOfReceivedMessages();
+		}
+		return numberOfDeliveredMessages.get();
+	}
+
+	public KeygroupID getKeygroupID() {
+		return filterID;
+	}
+
+	/**
+	 * Interprets an envelope received by the shared socket.
+	 * 
+	 * @param envelope
+	 * @param format
+	 */
+	void deliver(Envelope envelope, WireFormat format) {
+		numberOfDeliveredMessages.incrementAndGet();
+		interpreteReceivedEnvelope(envelope, format, null);
+	}
+
 	@Override
-	protected void interpreteReceivedEnvelope(Envelope envelope, ZMQ.Socket responseSocket) {
+	protected void interpreteReceivedEnvelope(Envelope envelope, WireFormat format,
+			ZMQ.Socket responseSocket) {
 		if (fBase == null) {
 			logger.warn("The subscriber is started without an fBase instance, "
 					+ "so messages are not interpreted and only counted");
@@ -80,18 +178,22 @@ public class Subscriber extends AbstractReceiver {
 				envelope.getMessage().decryptFields(secret, algorithm);
 				Command command = envelope.getMessage().getCommand();
 				String content = envelope.getMessage().getContent();
-				fBase.taskmanager.runLogTask(command + " - " + content);
+				logger.debug(command + " - " + content);
 				if (Command.PUT_DATA_RECORD.equals(command)) {
 					DataRecord update = JSONable.fromJSON(content, DataRecord.class);
-					fBase.taskmanager.runPutDataRecordTask(update, false);
+					fBase.connector.cache_invalidateDataRecord(update.getDataIdentifier());
+					fBase.updatePipeline.put(update);
 				} else if (Command.DELETE_DATA_RECORD.equals(command)) {
 					DataIdentifier identifier = JSONable.fromJSON(content, DataIdentifier.class);
-					fBase.taskmanager.runDeleteDataRecordTask(identifier, false);
+					fBase.connector.cache_invalidateDataRecord(identifier);
+					fBase.updatePipeline.delete(identifier);
 				} else if (Command.UPDATE_KEYGROUP_CONFIG.equals(command)) {
 					KeygroupConfig config = JSONable.fromJSON(content, KeygroupConfig.class);
+					fBase.connector.cache_invalidateKeygroupConfig(config.getKeygroupID());
 					fBase.taskmanager.runUpdateKeygroupConfigTask(config, false);
 				} else if (Command.UPDATE_FOREIGN_NODE_CONFIG.equals(command)) {
 					NodeConfig config = JSONable.fromJSON(content, NodeConfig.class);
+					fBase.connector.cache_invalidateNodeConfig(config.getNodeID());
 					fBase.taskmanager.runUpdateForeignNodeConfigTask(config);
 				}
 
@@ -0,0 +1,160 @@
+package communication;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+
+import model.messages.Envelope;
+
+/**
+ * A single SUB socket connected to the publisher of a remote machine, shared by all
+ * {@link Subscriber}s of keygroups replicated from this machine.
+ *
+ * The socket subscribes to the keygroups of all attached subscribers. Topic filters are
+ * added and removed by the receiving thread, because ZeroMQ sockets must not be used by
+ * multiple threads. Received envelopes are handed to the most recently attached subscriber
+ * of their keygroup, so a subscriber that replaces an older one for the same keygroup takes
+ * over immediately.
+ *
+ * The socket stops receiving as soon as the last subscriber is detached and cannot be used
+ * afterwards.
+ */
+public class SubscriberSocket extends AbstractEnvelopeReceiver {
+
+	private static Logger logger = Logger.getLogger(SubscriberSocket.class.getName());
+
+	/**
+	 * Attached subscribers per keygroup namespace
+	 */
+	private final ConcurrentHashMap<String, List<Subscriber>> subscribers =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Topics the socket is subscribed to, only used by the receiving thread
+	 */
+	private final Set<String> subscribedTopics = new HashSet<>();
+
+	private final AtomicBoolean topicsChanged = new AtomicBoolean(false);
+
+	private final ReceiverReactor reactor;
+	private boolean closed = false;
+
+	/**
+	 * @param address
+	 * @param port
+	 * @param reactor - the reactor used to receive envelopes, or null to use an own thread
+	 */
+	public SubscriberSocket(String address, int port, ReceiverReactor reactor) {
+		super(address, port, ZMQ.SUB);
+		this.reactor = reactor;
+	}
+
+	/**
+	 * Attaches a subscriber to the socket and starts receiving if necessary.
+	 *
+	 * @param subscriber - the subscriber, its filterID is used as topic
+	 * @return the future of the reception, or null if the socket was already closed
+	 */
+	public synchronized Future<?> attach(Subscriber subscriber) {
+		if (closed) {
+			return null;
+		}
+		subscribers.computeIfAbsent(subscriber.getKeygroupID().getID(),
+				k -> new CopyOnWriteArrayList<>()).add(subscriber);
+		topicsChanged.set(true);
+		if (reactor != null) {
+			reactor.wakeUp();
+		}
+		return reactor == null ? startReceiving() : startReceiving(reactor);
+	}
+
+	/**
+	 * Detaches a subscriber from the socket. If it was the last one, the socket is closed.
+	 *
+	 * @param subscriber - the subscriber
+	 */
+	public synchronized void detach(Subscriber subscriber) {
+		subscribers.computeIfPresent(subscriber.getKeygroupID().getID(), (k, list) -> {
+			list.remove(subscriber);
+			return list.isEmpty() ? null : list;
+		});
+		topicsChanged.set(true);
+		if (reactor != null) {
+			reactor.wakeUp();
+		}
+		if (subscribers.isEmpty()) {
+			logger.debug("No subscribers left for " + getAddress() + ":" + getPort());
+			stopReception();
+		}
+	}
+
+	/**
+	 * Closes the socket, all attached subscribers stop receiving envelopes.
+	 */
+	@Override
+	public synchronized void stopReception() {
+		closed = true;
+		subscribers.clear();
+		super.stopReception();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return the number of keygroups the socket is subscribed to
+	 */
+	public int getNumberOfTopics() {
+		return subscribers.size();
+	}
+
+	@Override
+	protected void configureSocket(ZMQ.Socket socket) {
+		// topics are subscribed in beforeReceive
+	}
+
+	@Override
+	protected void beforeReceive(ZMQ.Socket socket) {
+		if (!topicsChanged.getAndSet(false)) {
+			return;
+		}
+		Set<String> topics = new HashSet<>(subscribers.keySet());
+		subscribedTopics.removeIf(topic -> {
+			if (!topics.contains(topic)) {
+				socket.unsubscribe(topic);
+				return true;
+			}
+			return false;
+		});
+		for (String topic : topics) {
+			if (subscribedTopics.add(topic)) {
+				socket.subscribe(topic);
+			}
+		}
+		logger.debug("Subscribed to " + subscribedTopics.size() + " keygroups at "
+				+ getAddress() + ":" + getPort());
+	}
+
+	@Override
+	protected void interpreteReceivedEnvelope(Envelope envelope, WireFormat format,
+			ZMQ.Socket responseSocket) {
+		// subscriptions match prefixes, so only keygroups with subscribers are accepted
+		List<Subscriber> list = subscribers.get(envelope.getConfigID().getID());
+		if (list == null) {
+			return;
+		}
+		Object[] candidates = list.toArray();
+		if (candidates.length > 0) {
+			((Subscriber) candidates[candidates.length - 1]).deliver(envelope, format);
+		}
+	}
+
+}
@@ -12,12 +12,24 @@ import control.FBase;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import model.data.KeygroupID;
 
+/**
+ * Keeps track of the subscribers of all keygroups this machine is responsible for.
+ * 
+ * Subscribers of different keygroups that subscribe to the same machine share one
+ * {@link SubscriberSocket}, so the number of sockets and receiving threads depends on the
+ * number of machines and not on the number of keygroups.
+ */
 public class SubscriptionRegistry {
 
 	private static Logger logger = Logger.getLogger(SubscriptionRegistry.class.getName());
 
 	private final Map<KeygroupID, ArrayList<Subscriber>> activeSubscriptions = new HashMap<>();
 
+	/**
+	 * Shared sockets per machine address and port
+	 */
+	private final Map<String, SubscriberSocket> sockets = new HashMap<>();
+
 	private FBase fBase;
 
 	public SubscriptionRegistry(FBase fBase) {
@@ -25,7 +37,8 @@ public class SubscriptionRegistry {
 	}
 
 	/**
-	 * Starts a new Subscriber and adds it to the list of active subscribers for a KeygroupID
+	 * Starts a new Subscriber and adds it to the list of active subscribers for a KeygroupID.
+	 * The subscriber uses the shared socket of the given address and port.
 	 * 
 	 * @param address - the address to subscribe to
 	 * @param port - the port to subscribe to
@@ -38,9 +51,15 @@ public class SubscriptionRegistry {
 			EncryptionAlgorithm algorithm, KeygroupID keygroupID) {
 		Subscriber subscriber = null;
 		try {
-			subscriber = new Subscriber(address, port, secret, algorithm, fBase, keygroupID);
+			subscriber = new Subscriber(getSocket(address, port), secret, algorithm, fBase,
+					keygroupID);
 			if (subscriber.startReceiving() == null) {
-				throw new RuntimeException("Could not start receiving.");
+				// the socket was closed by another thread in the meantime
+				subscriber = new Subscriber(getSocket(address, port), secret, algorithm, fBase,
+						keygroupID);
+				if (subscriber.startReceiving() == null) {
+					throw new RuntimeException("Could not start receiving.");
+				}
 			}
 		} catch (Exception e) {
 			logger.error("Could not initialize Subscriber");
@@ -57,6 +76,35 @@ public class SubscriptionRegistry {
 		return subscriber;
 	}
 
+	/**
+	 * Returns the shared socket for the given address and port and creates a new one if none
+	 * exists or the existing one is closed.
+	 * 
+	 * @param address
+	 * @param port
+	 * @return the shared socket
+	 */
+	private SubscriberSocket getSocket(String address, int port) {
+		String key = address + ":" + port;
+		SubscriberSocket socket = sockets.get(key);
+		if (socket == null || socket.isClosed()) {
+			socket = new SubscriberSocket(address, port,
+					fBase == null ? null : fBase.receiverReactor);
+			sockets.put(key, socket);
+		}
+		return socket;
+	}
+
+	/**
+	 * Returns the number of open shared sockets, closed sockets are removed.
+	 * 
+	 * @return the number of sockets
+	 */
+	public synchronized int getNumberOfSockets() {
+		sockets.values().removeIf(SubscriberSocket::isClosed);
+		return sockets.size();
+	}
+
 	/**
 	 * Returns the subscriber for a specific keygroup.
 	 * 
@@ -69,7 +117,8 @@ public class SubscriptionRegistry {
 	
 	/**
 	 * Removes all subscribers from active subscriptions for a specific keygroup.
-	 * NOTE: This method does not call {@link Subscriber#stopReception()}.
+	 * NOTE: This method does not call {@link Subscriber#stopReception()}, so they keep their
+	 * keygroup subscribed on the shared sockets until then.
 	 * 
 	 * @param keygroupID
 	 * @return all subscribers removed from active subscriptions
@@ -139,6 +188,8 @@ public class SubscriptionRegistry {
 	public synchronized void deleteAllData() {
 		activeSubscriptions.values().forEach(list -> list.forEach(subs -> subs.stopReception()));
 		activeSubscriptions.clear();
+		sockets.values().forEach(socket -> socket.stopReception());
+		sockets.clear();
 	}
 
 }
@@ -0,0 +1,19 @@
+package communication;
+
+/**
+ * The encodings of {@link model.messages.Message}s that are sent over ZeroMQ sockets.
+ * Receivers detect the encoding of every frame, see {@link MessageCodec}.
+ */
+public enum WireFormat {
+
+	/**
+	 * The message as JSON string, understood by all peers
+	 */
+	JSON,
+
+	/**
+	 * The versioned, length-prefixed binary encoding of {@link MessageCodec}
+	 */
+	BINARY
+
+}
@@ -0,0 +1,91 @@
+package communication;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers which {@link WireFormat} is used for requests to each peer.
+ *
+ * Requests are sent in the preferred format. Peers that only understand JSON either answer a
+ * binary request in JSON or do not answer at all, in both cases the peer falls back to JSON.
+ * After {@link #RETRY_INTERVAL} has passed, the preferred format is tried again, so peers
+ * that were updated or only timed out once are not stuck with JSON.
+ */
+public class WireFormatNegotiator {
+
+	private static Logger logger = Logger.getLogger(WireFormatNegotiator.class.getName());
+
+	/**
+	 * Time in milliseconds after which a peer that fell back to JSON is asked with the
+	 * preferred format again
+	 */
+	public static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private final WireFormat preferredFormat;
+
+	/**
+	 * Peers that fell back to JSON, mapped to the time of the fallback
+	 */
+	private final ConcurrentHashMap<String, Long> fallbacks = new ConcurrentHashMap<>();
+
+	public WireFormatNegotiator(WireFormat preferredFormat) {
+		this.preferredFormat = preferredFormat;
+	}
+
+	/**
+	 * @param peer - the address and port of the peer
+	 * @return the format that should be used for the next request to the peer
+	 */
+	public WireFormat getFormat(String peer) {
+		if (WireFormat.JSON.equals(preferredFormat)) {
+			return WireFormat.JSON;
+		}
+		Long fallbackTime = fallbacks.get(peer);
+		if (fallbackTime == null) {
+			return preferredFormat;
+		}
+		if (System.currentTimeMillis() - fallbackTime > RETRY_INTERVAL) {
+			fallbacks.remove(peer, fallbackTime);
+			return preferredFormat;
+		}
+		return WireFormat.JSON;
+	}
+
+	/**
+	 * Must be called with every reply of a peer.
+	 *
+	 * @param peer - the address and port of the peer
+	 * @param requestFormat - the format of the request
+	 * @param replyFormat - the format of the reply
+	 */
+	public void replyReceived(String peer, WireFormat requestFormat, WireFormat replyFormat) {
+		if (!requestFormat.equals(replyFormat)) {
+			fallBack(peer, requestFormat);
+		}
+	}
+
+	/**
+	 * Must be called if a peer did not reply to a request.
+	 *
+	 * @param peer - the address and port of the peer
+	 * @param requestFormat - the format of the request
+	 */
+	public void replyMissing(String peer, WireFormat requestFormat) {
+		fallBack(peer, requestFormat);
+	}
+
+	private void fallBack(String peer, WireFormat requestFormat) {
+		if (!WireFormat.JSON.equals(requestFormat)
+				&& fallbacks.put(peer, System.currentTimeMillis()) == null) {
+			logger.info("Peer " + peer + " does not reply in " + requestFormat
+					+ ", falling back to " + WireFormat.JSON);
+		}
+	}
+
+	public WireFormat getPreferredFormat() {
+		return preferredFormat;
+	}
+
+}
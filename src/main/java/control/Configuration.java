@@ -16,6 +16,8 @@ import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
+import communication.Publisher;
+import communication.WireFormat;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import model.config.NodeConfig;
 import model.data.NodeID;
@@ -36,20 +38,34 @@ public class Configuration {
 	private String description = null;
 	private AbstractDBConnector.Connector databaseConnector = null;
 	private Integer messageHistorySize = null;
+	private String localLogDirectory = null;
+	private Integer cacheSize = null;
+	private Long cacheTimeToLive = null;
+	private Integer dataTaskThreads = null;
+	private Integer configTaskThreads = null;
+	private Integer backgroundTaskThreads = null;
+	private Integer taskQueueSize = null;
 
 	// Communication
 	private Integer restPort = null;
 	private Integer messagePort = null;
 	private Integer publisherPort = null;
+	private Integer publisherBatchSize = null;
+	private Long publisherBatchDelay = null;
+	private WireFormat wireFormat = null;
+	private Integer receiverThreads = null;
 
 	// Security
 	private String privateKey = null;
 	private String publicKey = null;
+	private Integer sessionKeyLifetime = null;
 
 	// Naming Service
 	private String namingServiceAddress = null;
 	private Integer namingServicePort = null;
 	private String namingServicePublicKey = null;
+	private Long namingServiceCacheTimeToLive = null;
+	private Long namingServiceCacheStaleTime = null;
 
 	public Configuration(String configName) {
 		this.properties = new Properties();
@@ -72,20 +88,40 @@ public class Configuration {
 					properties.getProperty("databaseConnector", Connector.ON_HEAP.toString()));
 			messageHistorySize =
 					Integer.parseInt(properties.getProperty("messageHistorySize", "10000"));
+			localLogDirectory = properties.getProperty("localLogDirectory", "fbase-data");
+			cacheSize = Integer.parseInt(properties.getProperty("cacheSize", "0"));
+			cacheTimeToLive = Long.parseLong(properties.getProperty("cacheTimeToLive", "30000"));
+			dataTaskThreads = Integer.parseInt(properties.getProperty("dataTaskThreads", "16"));
+			configTaskThreads = Integer.parseInt(properties.getProperty("configTaskThreads", "8"));
+			backgroundTaskThreads =
+					Integer.parseInt(properties.getProperty("backgroundTaskThreads", "2"));
+			taskQueueSize = Integer.parseInt(properties.getProperty("taskQueueSize", "10000"));
 
 			// Communication
 			restPort = Integer.parseInt(properties.getProperty("restPort", "-1"));
 			messagePort = Integer.parseInt(properties.getProperty("messagePort", "6000"));
 			publisherPort = Integer.parseInt(properties.getProperty("publisherPort", "7000"));
+			publisherBatchSize = Integer.parseInt(properties.getProperty("publisherBatchSize",
+					String.valueOf(Publisher.DEFAULT_MAX_BATCH_SIZE)));
+			publisherBatchDelay = Long.parseLong(properties.getProperty("publisherBatchDelay", "0"));
+			wireFormat = WireFormat.valueOf(
+					properties.getProperty("wireFormat", WireFormat.JSON.toString()));
+			receiverThreads = Integer.parseInt(properties.getProperty("receiverThreads", "4"));
 
 			// Security
 			privateKey = properties.getProperty("privateKey", "Unknown");
 			publicKey = properties.getProperty("publicKey", "Unknown");
+			sessionKeyLifetime =
+					Integer.parseInt(properties.getProperty("sessionKeyLifetime", "3600"));
 
 			// Naming Service
 			namingServiceAddress = properties.getProperty("namingServiceAddress", "Unknown");
 			namingServicePort = Integer.parseInt(properties.getProperty("namingServicePort", "-1"));
 			namingServicePublicKey = properties.getProperty("namingServicePublicKey", "Unknown");
+			namingServiceCacheTimeToLive = Long
+					.parseLong(properties.getProperty("namingServiceCacheTimeToLive", "30000"));
+			namingServiceCacheStaleTime = Long
+					.parseLong(properties.getProperty("namingServiceCacheStaleTime", "600000"));
 
 			// Set IP Address of Machine
 			machineIPAddress = getBestIPAddress();
@@ -199,6 +235,34 @@ public class Configuration {
 		return messageHistorySize;
 	}
 
+	public String getLocalLogDirectory() {
+		return localLogDirectory;
+	}
+
+	public Integer getCacheSize() {
+		return cacheSize;
+	}
+
+	public Long getCacheTimeToLive() {
+		return cacheTimeToLive;
+	}
+
+	public Integer getDataTaskThreads() {
+		return dataTaskThreads;
+	}
+
+	public Integer getConfigTaskThreads() {
+		return configTaskThreads;
+	}
+
+	public Integer getBackgroundTaskThreads() {
+		return backgroundTaskThreads;
+	}
+
+	public Integer getTaskQueueSize() {
+		return taskQueueSize;
+	}
+
 	public Integer getRestPort() {
 		return restPort;
 	}
@@ -211,6 +275,26 @@ public class Configuration {
 		return publisherPort;
 	}
 
+	public Integer getPublisherBatchSize() {
+		return publisherBatchSize;
+	}
+
+	public Long getPublisherBatchDelay() {
+		return publisherBatchDelay;
+	}
+
+	public WireFormat getWireFormat() {
+		return wireFormat;
+	}
+
+	public Integer getReceiverThreads() {
+		return receiverThreads;
+	}
+
+	public Integer getSessionKeyLifetime() {
+		return sessionKeyLifetime;
+	}
+
 	public String getPrivateKey() {
 		return privateKey;
 	}
@@ -231,4 +315,12 @@ public class Configuration {
 		return namingServicePublicKey;
 	}
 
+	public Long getNamingServiceCacheTimeToLive() {
+		return namingServiceCacheTimeToLive;
+	}
+
+	public Long getNamingServiceCacheStaleTime() {
+		return namingServiceCacheStaleTime;
+	}
+
 }
@@ -14,10 +14,16 @@ import org.javatuples.Pair;
 
 import communication.DirectMessageReceiver;
 import communication.DirectMessageSender;
+import communication.DirectMessageSenderPool;
+import communication.DirectMessageSessions;
+import communication.KeygroupUpdatePipeline;
 import communication.MessageIdEvaluator;
 import communication.NamingServiceSender;
+import communication.PeerHealthMonitor;
 import communication.Publisher;
+import communication.ReceiverReactor;
 import communication.SubscriptionRegistry;
+import communication.WireFormatNegotiator;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import de.hasenburg.fbase.rest.WebServer;
 import exceptions.FBaseCommunicationException;
@@ -32,7 +38,9 @@ import model.data.DataRecord;
 import model.data.KeygroupID;
 import storageconnector.AbstractDBConnector;
 import storageconnector.AbstractDBConnector.Connector;
+import storageconnector.CachingDBConnector;
 import storageconnector.ConfigAccessHelper;
+import storageconnector.LocalLogDBConnector;
 import storageconnector.OnHeapDBConnector;
 import storageconnector.S3DBConnector;
 import tasks.TaskManager;
@@ -56,6 +64,12 @@ public class FBase {
 	public DirectMessageReceiver directMessageReceiver = null;
 	public SubscriptionRegistry subscriptionRegistry = null;
 	public MessageIdEvaluator messageIdEvaluator = null;
+	public WireFormatNegotiator wireFormatNegotiator = null;
+	public PeerHealthMonitor peerHealthMonitor = null;
+	public ReceiverReactor receiverReactor = null;
+	public KeygroupUpdatePipeline updatePipeline = null;
+	public DirectMessageSessions directMessageSessions = null;
+	public DirectMessageSenderPool directMessageSenderPool = null;
 	private WebServer server = null;
 
 	private List<Future<Boolean>> backgroundTaskList = new ArrayList<>();
@@ -69,9 +83,17 @@ public class FBase {
 			FBaseCommunicationException, FBaseNamingServiceException {
 		if (Connector.S3.equals(configuration.getDatabaseConnector())) {
 			connector = new S3DBConnector(configuration.getNodeID());
+		} else if (Connector.LOCAL_LOG.equals(configuration.getDatabaseConnector())) {
+			connector = new LocalLogDBConnector(configuration.getNodeID(),
+					configuration.getLocalLogDirectory());
 		} else {
 			connector = new OnHeapDBConnector(configuration.getNodeID());
 		}
+		if (configuration.getCacheSize() > 0) {
+			connector = new CachingDBConnector(connector, configuration.getCacheSize(),
+					configuration.getCacheTimeToLive());
+		}
+		connector.setMessageHistorySize(configuration.getMessageHistorySize());
 		configuration.setMachineName(connector.dbConnection_initiate());
 		configAccessHelper = new ConfigAccessHelper(this);
 		taskmanager = new TaskManager(this);
@@ -79,14 +101,24 @@ public class FBase {
 			server = new WebServer(this);
 			server.startServer();
 		}
-		publisher = new Publisher("tcp://0.0.0.0", configuration.getPublisherPort());
+		wireFormatNegotiator = new WireFormatNegotiator(configuration.getWireFormat());
+		peerHealthMonitor = new PeerHealthMonitor();
+		directMessageSessions = new DirectMessageSessions(configuration.getSessionKeyLifetime());
+		directMessageSenderPool = new DirectMessageSenderPool(this);
+		publisher = new Publisher("tcp://0.0.0.0", configuration.getPublisherPort(),
+				configuration.getPublisherBatchSize(), configuration.getPublisherBatchDelay(),
+				configuration.getWireFormat());
 
 		namingServiceSender = new NamingServiceSender(configuration.getNamingServiceAddress(),
 				configuration.getNamingServicePort(), this);
 
+		updatePipeline =
+				new KeygroupUpdatePipeline(connector, configuration.getReceiverThreads());
+		receiverReactor = new ReceiverReactor("Receiver-" + configuration.getMessagePort(),
+				configuration.getReceiverThreads());
 		directMessageReceiver =
 				new DirectMessageReceiver("tcp://0.0.0.0", configuration.getMessagePort(), this);
-		directMessageReceiver.startReceiving();
+		directMessageReceiver.startReceiving(receiverReactor);
 
 		subscriptionRegistry = new SubscriptionRegistry(this);
 		messageIdEvaluator = new MessageIdEvaluator(this);
@@ -133,18 +165,17 @@ public class FBase {
 		while (iterator.hasNext()) {
 			String next = iterator.next();
 			if (!configuration.getMachineName().equals(next)) {
-				DirectMessageSender sender =
-						new DirectMessageSender("tcp://" + heartbeats.get(next).getValue0(),
-								configuration.getMessagePort(), this);
+				DirectMessageSender sender = directMessageSenderPool.borrow(
+						"tcp://" + heartbeats.get(next).getValue0(), configuration.getMessagePort());
 				try {
 					sender.sendAnnounceMeRequest();
-					sender.shutdown();
+					directMessageSenderPool.release(sender);
 					break;
 				} catch (FBaseException e) {
 					logger.debug(
 							"Machine " + next + " could not announce me, trying with another one");
 				}
-				sender.shutdown();
+				directMessageSenderPool.release(sender);
 			}
 			// no machine left for announcing
 			if (iterator.hasNext()) {
@@ -163,10 +194,14 @@ public class FBase {
 		}
 		subscriptionRegistry.deleteAllData();
 		messageIdEvaluator.tearDown();
+		directMessageSenderPool.shutdown();
 		publisher.shutdown();
 		namingServiceSender.shutdown();
 		directMessageReceiver.stopReception();
+		receiverReactor.shutdown();
+		updatePipeline.shutdown();
 		taskmanager.tearDown();
+		connector.dbConnection_close();
 		try {
 			Thread.sleep(500);
 		} catch (InterruptedException e) {
@@ -0,0 +1,147 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Execution statistics of a periodic background task, see {@link tasks.BackgroundScheduler}.
+ * Times are given in milliseconds.
+ */
+public class BackgroundJobStatistics implements JSONable {
+
+	private String name = null;
+	private long interval = 0;
+	private long runs = 0;
+	private long failures = 0;
+	private long overruns = 0;
+	private long lastExecutionTime = 0;
+	private long meanExecutionTime = 0;
+	private long maxExecutionTime = 0;
+
+	public BackgroundJobStatistics() {
+
+	}
+
+	public BackgroundJobStatistics(String name, long interval, long runs, long failures,
+			long overruns, long lastExecutionTime, long meanExecutionTime, long maxExecutionTime) {
+		super();
+		this.name = name;
+		this.interval = interval;
+		this.runs = runs;
+		this.failures = failures;
+		this.overruns = overruns;
+		this.lastExecutionTime = lastExecutionTime;
+		this.meanExecutionTime = meanExecutionTime;
+		this.maxExecutionTime = maxExecutionTime;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public long getRuns() {
+		return runs;
+	}
+
+	public void setRuns(long runs) {
+		this.runs = runs;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public void setFailures(long failures) {
+		this.failures = failures;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+
+	public void setOverruns(long overruns) {
+		this.overruns = overruns;
+	}
+
+	public long getLastExecutionTime() {
+		return lastExecutionTime;
+	}
+
+	public void setLastExecutionTime(long lastExecutionTime) {
+		this.lastExecutionTime = lastExecutionTime;
+	}
+
+	public long getMeanExecutionTime() {
+		return meanExecutionTime;
+	}
+
+	public void setMeanExecutionTime(long meanExecutionTime) {
+		this.meanExecutionTime = meanExecutionTime;
+	}
+
+	public long getMaxExecutionTime() {
+		return maxExecutionTime;
+	}
+
+	public void setMaxExecutionTime(long maxExecutionTime) {
+		this.maxExecutionTime = maxExecutionTime;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		result = prime * result + (int) (interval ^ (interval >>> 32));
+		result = prime * result + (int) (runs ^ (runs >>> 32));
+		result = prime * result + (int) (failures ^ (failures >>> 32));
+		result = prime * result + (int) (overruns ^ (overruns >>> 32));
+		result = prime * result + (int) (lastExecutionTime ^ (lastExecutionTime >>> 32));
+		result = prime * result + (int) (meanExecutionTime ^ (meanExecutionTime >>> 32));
+		result = prime * result + (int) (maxExecutionTime ^ (maxExecutionTime >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		BackgroundJobStatistics other = (BackgroundJobStatistics) obj;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		if (interval != other.interval)
+			return false;
+		if (runs != other.runs)
+			return false;
+		if (failures != other.failures)
+			return false;
+		if (overruns != other.overruns)
+			return false;
+		if (lastExecutionTime != other.lastExecutionTime)
+			return false;
+		if (meanExecutionTime != other.meanExecutionTime)
+			return false;
+		if (maxExecutionTime != other.maxExecutionTime)
+			return false;
+		return true;
+	}
+
+}
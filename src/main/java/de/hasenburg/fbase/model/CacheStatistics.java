@@ -0,0 +1,149 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Statistics of a cache of the {@link storageconnector.CachingDBConnector}. The hit rate is
+ * the ratio of lookups served from the cache, evictions are entries removed because the cache
+ * was full and expirations are entries removed because their time to live expired.
+ */
+public class CacheStatistics implements JSONable {
+
+	private String name = null;
+	private long hits = 0;
+	private long misses = 0;
+	private double hitRate = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long size = 0;
+	private long maximumSize = 0;
+
+	public CacheStatistics() {
+
+	}
+
+	public CacheStatistics(String name, long hits, long misses, double hitRate, long evictions,
+			long expirations, long size, long maximumSize) {
+		super();
+		this.name = name;
+		this.hits = hits;
+		this.misses = misses;
+		this.hitRate = hitRate;
+		this.evictions = evictions;
+		this.expirations = expirations;
+		this.size = size;
+		this.maximumSize = maximumSize;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public void setHits(long hits) {
+		this.hits = hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public void setMisses(long misses) {
+		this.misses = misses;
+	}
+
+	public double getHitRate() {
+		return hitRate;
+	}
+
+	public void setHitRate(double hitRate) {
+		this.hitRate = hitRate;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public void setEvictions(long evictions) {
+		this.evictions = evictions;
+	}
+
+	public long getExpirations() {
+		return expirations;
+	}
+
+	public void setExpirations(long expirations) {
+		this.expirations = expirations;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	public void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		result = prime * result + (int) (hits ^ (hits >>> 32));
+		result = prime * result + (int) (misses ^ (misses >>> 32));
+		long temp = Double.doubleToLongBits(hitRate);
+		result = prime * result + (int) (temp ^ (temp >>> 32));
+		result = prime * result + (int) (evictions ^ (evictions >>> 32));
+		result = prime * result + (int) (expirations ^ (expirations >>> 32));
+		result = prime * result + (int) (size ^ (size >>> 32));
+		result = prime * result + (int) (maximumSize ^ (maximumSize >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		CacheStatistics other = (CacheStatistics) obj;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		if (hits != other.hits)
+			return false;
+		if (misses != other.misses)
+			return false;
+		if (Double.doubleToLongBits(hitRate) != Double.doubleToLongBits(other.hitRate))
+			return false;
+		if (evictions != other.evictions)
+			return false;
+		if (expirations != other.expirations)
+			return false;
+		if (size != other.size)
+			return false;
+		if (maximumSize != other.maximumSize)
+			return false;
+		return true;
+	}
+
+}
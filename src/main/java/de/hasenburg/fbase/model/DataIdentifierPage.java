@@ -0,0 +1,75 @@
+package de.hasenburg.fbase.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.JSONable;
+import model.data.DataIdentifier;
+
+/**
+ * One page of {@link DataIdentifier}s of a keygroup, ordered by their data id. If more data
+ * identifiers exist, nextCursor can be used to retrieve the next page; otherwise it is null.
+ */
+public class DataIdentifierPage implements JSONable {
+
+	private List<DataIdentifier> dataIdentifiers = new ArrayList<>();
+	private String nextCursor = null;
+
+	public DataIdentifierPage() {
+
+	}
+
+	public DataIdentifierPage(List<DataIdentifier> dataIdentifiers, String nextCursor) {
+		super();
+		this.dataIdentifiers = dataIdentifiers;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<DataIdentifier> getDataIdentifiers() {
+		return dataIdentifiers;
+	}
+
+	public void setDataIdentifiers(List<DataIdentifier> dataIdentifiers) {
+		this.dataIdentifiers = dataIdentifiers;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((dataIdentifiers == null) ? 0 : dataIdentifiers.hashCode());
+		result = prime * result + ((nextCursor == null) ? 0 : nextCursor.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DataIdentifierPage other = (DataIdentifierPage) obj;
+		if (dataIdentifiers == null) {
+			if (other.dataIdentifiers != null)
+				return false;
+		} else if (!dataIdentifiers.equals(other.dataIdentifiers))
+			return false;
+		if (nextCursor == null) {
+			if (other.nextCursor != null)
+				return false;
+		} else if (!nextCursor.equals(other.nextCursor))
+			return false;
+		return true;
+	}
+
+}
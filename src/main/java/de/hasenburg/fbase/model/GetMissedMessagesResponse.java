@@ -0,0 +1,77 @@
+package de.hasenburg.fbase.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.JSONable;
+
+/**
+ * The response to a {@link MessageIDRange} request. The n-th response belongs to the n-th
+ * version of the requested range; its data identifier is null if the node does not have
+ * information about the message anymore. If the range did not fit into a single response,
+ * nextVersion is the first version that still has to be requested; otherwise it is null.
+ */
+public class GetMissedMessagesResponse implements JSONable {
+
+	private List<GetMissedMessageResponse> responses = new ArrayList<>();
+	private Integer nextVersion = null;
+
+	public GetMissedMessagesResponse() {
+
+	}
+
+	public GetMissedMessagesResponse(List<GetMissedMessageResponse> responses,
+			Integer nextVersion) {
+		super();
+		this.responses = responses;
+		this.nextVersion = nextVersion;
+	}
+
+	public List<GetMissedMessageResponse> getResponses() {
+		return responses;
+	}
+
+	public void setResponses(List<GetMissedMessageResponse> responses) {
+		this.responses = responses;
+	}
+
+	public Integer getNextVersion() {
+		return nextVersion;
+	}
+
+	public void setNextVersion(Integer nextVersion) {
+		this.nextVersion = nextVersion;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((responses == null) ? 0 : responses.hashCode());
+		result = prime * result + ((nextVersion == null) ? 0 : nextVersion.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		GetMissedMessagesResponse other = (GetMissedMessagesResponse) obj;
+		if (responses == null) {
+			if (other.responses != null)
+				return false;
+		} else if (!responses.equals(other.responses))
+			return false;
+		if (nextVersion == null) {
+			if (other.nextVersion != null)
+				return false;
+		} else if (!nextVersion.equals(other.nextVersion))
+			return false;
+		return true;
+	}
+
+}
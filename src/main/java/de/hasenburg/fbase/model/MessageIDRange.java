@@ -0,0 +1,69 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+import model.data.MessageID;
+
+/**
+ * A range of consecutive versions of a node and machine combination, from the version of
+ * firstMessageID up to and including lastVersion.
+ */
+public class MessageIDRange implements JSONable {
+
+	private MessageID firstMessageID = null;
+	private int lastVersion = 0;
+
+	public MessageIDRange() {
+
+	}
+
+	public MessageIDRange(MessageID firstMessageID, int lastVersion) {
+		super();
+		this.firstMessageID = firstMessageID;
+		this.lastVersion = lastVersion;
+	}
+
+	public MessageID getFirstMessageID() {
+		return firstMessageID;
+	}
+
+	public void setFirstMessageID(MessageID firstMessageID) {
+		this.firstMessageID = firstMessageID;
+	}
+
+	public int getLastVersion() {
+		return lastVersion;
+	}
+
+	public void setLastVersion(int lastVersion) {
+		this.lastVersion = lastVersion;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((firstMessageID == null) ? 0 : firstMessageID.hashCode());
+		result = prime * result + lastVersion;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MessageIDRange other = (MessageIDRange) obj;
+		if (firstMessageID == null) {
+			if (other.firstMessageID != null)
+				return false;
+		} else if (!firstMessageID.equals(other.firstMessageID))
+			return false;
+		if (lastVersion != other.lastVersion)
+			return false;
+		return true;
+	}
+
+}
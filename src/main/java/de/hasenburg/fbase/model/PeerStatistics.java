@@ -0,0 +1,150 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Request statistics of a peer, see {@link communication.PeerHealthMonitor}. Times are given in
+ * milliseconds, p50 and p99 are percentiles of the recent response times.
+ */
+public class PeerStatistics implements JSONable {
+
+	private String peer = null;
+	private String state = null;
+	private long requests = 0;
+	private long failures = 0;
+	private long rejected = 0;
+	private long p50 = 0;
+	private long p99 = 0;
+	private long timeout = 0;
+
+	public PeerStatistics() {
+
+	}
+
+	public PeerStatistics(String peer, String state, long requests, long failures,
+			long rejected, long p50, long p99, long timeout) {
+		super();
+		this.peer = peer;
+		this.state = state;
+		this.requests = requests;
+		this.failures = failures;
+		this.rejected = rejected;
+		this.p50 = p50;
+		this.p99 = p99;
+		this.timeout = timeout;
+	}
+
+	public String getPeer() {
+		return peer;
+	}
+
+	public void setPeer(String peer) {
+		this.peer = peer;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	public long getRequests() {
+		return requests;
+	}
+
+	public void setRequests(long requests) {
+		this.requests = requests;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public void setFailures(long failures) {
+		this.failures = failures;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public void setRejected(long rejected) {
+		this.rejected = rejected;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public void setP50(long p50) {
+		this.p50 = p50;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public void setP99(long p99) {
+		this.p99 = p99;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((peer == null) ? 0 : peer.hashCode());
+		result = prime * result + ((state == null) ? 0 : state.hashCode());
+		result = prime * result + (int) (requests ^ (requests >>> 32));
+		result = prime * result + (int) (failures ^ (failures >>> 32));
+		result = prime * result + (int) (rejected ^ (rejected >>> 32));
+		result = prime * result + (int) (p50 ^ (p50 >>> 32));
+		result = prime * result + (int) (p99 ^ (p99 >>> 32));
+		result = prime * result + (int) (timeout ^ (timeout >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PeerStatistics other = (PeerStatistics) obj;
+		if (peer == null) {
+			if (other.peer != null)
+				return false;
+		} else if (!peer.equals(other.peer))
+			return false;
+		if (state == null) {
+			if (other.state != null)
+				return false;
+		} else if (!state.equals(other.state))
+			return false;
+		if (requests != other.requests)
+			return false;
+		if (failures != other.failures)
+			return false;
+		if (rejected != other.rejected)
+			return false;
+		if (p50 != other.p50)
+			return false;
+		if (p99 != other.p99)
+			return false;
+		if (timeout != other.timeout)
+			return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Statistics of the {@link communication.Publisher}. The queue depth is the number of frames
+ * that are queued but not published yet, failed frames were dropped.
+ */
+public class PublisherStatistics implements JSONable {
+
+	private long queueDepth = 0;
+	private long maxQueueDepth = 0;
+	private long publishedFrames = 0;
+	private long writtenBatches = 0;
+	private long failedFrames = 0;
+	private long recreatedSockets = 0;
+
+	public PublisherStatistics() {
+
+	}
+
+	public PublisherStatistics(long queueDepth, long maxQueueDepth, long publishedFrames,
+			long writtenBatches, long failedFrames, long recreatedSockets) {
+		super();
+		this.queueDepth = queueDepth;
+		this.maxQueueDepth = maxQueueDepth;
+		this.publishedFrames = publishedFrames;
+		this.writtenBatches = writtenBatches;
+		this.failedFrames = failedFrames;
+		this.recreatedSockets = recreatedSockets;
+	}
+
+	public long getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(long queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public long getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	public void setMaxQueueDepth(long maxQueueDepth) {
+		this.maxQueueDepth = maxQueueDepth;
+	}
+
+	public long getPublishedFrames() {
+		return publishedFrames;
+	}
+
+	public void setPublishedFrames(long publishedFrames) {
+		this.publishedFrames = publishedFrames;
+	}
+
+	public long getWrittenBatches() {
+		return writtenBatches;
+	}
+
+	public void setWrittenBatches(long writtenBatches) {
+		this.writtenBatches = writtenBatches;
+	}
+
+	public long getFailedFrames() {
+		return failedFrames;
+	}
+
+	public void setFailedFrames(long failedFrames) {
+		this.failedFrames = failedFrames;
+	}
+
+	public long getRecreatedSockets() {
+		return recreatedSockets;
+	}
+
+	public void setRecreatedSockets(long recreatedSockets) {
+		this.recreatedSockets = recreatedSockets;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (queueDepth ^ (queueDepth >>> 32));
+		result = prime * result + (int) (maxQueueDepth ^ (maxQueueDepth >>> 32));
+		result = prime * result + (int) (publishedFrames ^ (publishedFrames >>> 32));
+		result = prime * result + (int) (writtenBatches ^ (writtenBatches >>> 32));
+		result = prime * result + (int) (failedFrames ^ (failedFrames >>> 32));
+		result = prime * result + (int) (recreatedSockets ^ (recreatedSockets >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PublisherStatistics other = (PublisherStatistics) obj;
+		if (queueDepth != other.queueDepth)
+			return false;
+		if (maxQueueDepth != other.maxQueueDepth)
+			return false;
+		if (publishedFrames != other.publishedFrames)
+			return false;
+		if (writtenBatches != other.writtenBatches)
+			return false;
+		if (failedFrames != other.failedFrames)
+			return false;
+		if (recreatedSockets != other.recreatedSockets)
+			return false;
+		return true;
+	}
+
+}
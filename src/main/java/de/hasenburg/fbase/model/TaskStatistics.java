@@ -0,0 +1,232 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Execution statistics of a task, see {@link tasks.TaskManager}. Times are given in
+ * microseconds. The queue wait is the time between submitting a task and starting it, the
+ * execution time the time it ran. Timeouts are failures caused by a machine or the naming
+ * service that did not reply in time.
+ */
+public class TaskStatistics implements JSONable {
+
+	private String name = null;
+	private String category = null;
+	private long running = 0;
+	private long successes = 0;
+	private long failures = 0;
+	private long timeouts = 0;
+	private long queueWaitMean = 0;
+	private long queueWaitP50 = 0;
+	private long queueWaitP99 = 0;
+	private long queueWaitMax = 0;
+	private long executionTimeMean = 0;
+	private long executionTimeP50 = 0;
+	private long executionTimeP99 = 0;
+	private long executionTimeMax = 0;
+
+	public TaskStatistics() {
+
+	}
+
+	public TaskStatistics(String name, String category, long running, long successes, long failures,
+			long timeouts, long queueWaitMean, long queueWaitP50, long queueWaitP99,
+			long queueWaitMax, long executionTimeMean, long executionTimeP50, long executionTimeP99,
+			long executionTimeMax) {
+		super();
+		this.name = name;
+		this.category = category;
+		this.running = running;
+		this.successes = successes;
+		this.failures = failures;
+		this.timeouts = timeouts;
+		this.queueWaitMean = queueWaitMean;
+		this.queueWaitP50 = queueWaitP50;
+		this.queueWaitP99 = queueWaitP99;
+		this.queueWaitMax = queueWaitMax;
+		this.executionTimeMean = executionTimeMean;
+		this.executionTimeP50 = executionTimeP50;
+		this.executionTimeP99 = executionTimeP99;
+		this.executionTimeMax = executionTimeMax;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public void setCategory(String category) {
+		this.category = category;
+	}
+
+	public long getRunning() {
+		return running;
+	}
+
+	public void setRunning(long running) {
+		this.running = running;
+	}
+
+	public long getSuccesses() {
+		return successes;
+	}
+
+	public void setSuccesses(long successes) {
+		this.successes = successes;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public void setFailures(long failures) {
+		this.failures = failures;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public void setTimeouts(long timeouts) {
+		this.timeouts = timeouts;
+	}
+
+	public long getQueueWaitMean() {
+		return queueWaitMean;
+	}
+
+	public void setQueueWaitMean(long queueWaitMean) {
+		this.queueWaitMean = queueWaitMean;
+	}
+
+	public long getQueueWaitP50() {
+		return queueWaitP50;
+	}
+
+	public void setQueueWaitP50(long queueWaitP50) {
+		this.queueWaitP50 = queueWaitP50;
+	}
+
+	public long getQueueWaitP99() {
+		return queueWaitP99;
+	}
+
+	public void setQueueWaitP99(long queueWaitP99) {
+		this.queueWaitP99 = queueWaitP99;
+	}
+
+	public long getQueueWaitMax() {
+		return queueWaitMax;
+	}
+
+	public void setQueueWaitMax(long queueWaitMax) {
+		this.queueWaitMax = queueWaitMax;
+	}
+
+	public long getExecutionTimeMean() {
+		return executionTimeMean;
+	}
+
+	public void setExecutionTimeMean(long executionTimeMean) {
+		this.executionTimeMean = executionTimeMean;
+	}
+
+	public long getExecutionTimeP50() {
+		return executionTimeP50;
+	}
+
+	public void setExecutionTimeP50(long executionTimeP50) {
+		this.executionTimeP50 = executionTimeP50;
+	}
+
+	public long getExecutionTimeP99() {
+		return executionTimeP99;
+	}
+
+	public void setExecutionTimeP99(long executionTimeP99) {
+		this.executionTimeP99 = executionTimeP99;
+	}
+
+	public long getExecutionTimeMax() {
+		return executionTimeMax;
+	}
+
+	public void setExecutionTimeMax(long executionTimeMax) {
+		this.executionTimeMax = executionTimeMax;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		result = prime * result + ((category == null) ? 0 : category.hashCode());
+		result = prime * result + (int) (running ^ (running >>> 32));
+		result = prime * result + (int) (successes ^ (successes >>> 32));
+		result = prime * result + (int) (failures ^ (failures >>> 32));
+		result = prime * result + (int) (timeouts ^ (timeouts >>> 32));
+		result = prime * result + (int) (queueWaitMean ^ (queueWaitMean >>> 32));
+		result = prime * result + (int) (queueWaitP50 ^ (queueWaitP50 >>> 32));
+		result = prime * result + (int) (queueWaitP99 ^ (queueWaitP99 >>> 32));
+		result = prime * result + (int) (queueWaitMax ^ (queueWaitMax >>> 32));
+		result = prime * result + (int) (executionTimeMean ^ (executionTimeMean >>> 32));
+		result = prime * result + (int) (executionTimeP50 ^ (executionTimeP50 >>> 32));
+		result = prime * result + (int) (executionTimeP99 ^ (executionTimeP99 >>> 32));
+		result = prime * result + (int) (executionTimeMax ^ (executionTimeMax >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TaskStatistics other = (TaskStatistics) obj;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		if (category == null) {
+			if (other.category != null)
+				return false;
+		} else if (!category.equals(other.category))
+			return false;
+		if (running != other.running)
+			return false;
+		if (successes != other.successes)
+			return false;
+		if (failures != other.failures)
+			return false;
+		if (timeouts != other.timeouts)
+			return false;
+		if (queueWaitMean != other.queueWaitMean)
+			return false;
+		if (queueWaitP50 != other.queueWaitP50)
+			return false;
+		if (queueWaitP99 != other.queueWaitP99)
+			return false;
+		if (queueWaitMax != other.queueWaitMax)
+			return false;
+		if (executionTimeMean != other.executionTimeMean)
+			return false;
+		if (executionTimeP50 != other.executionTimeP50)
+			return false;
+		if (executionTimeP99 != other.executionTimeP99)
+			return false;
+		if (executionTimeMax != other.executionTimeMax)
+			return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,105 @@
+package de.hasenburg.fbase.model;
+
+import model.JSONable;
+
+/**
+ * Statistics of the {@link communication.KeygroupUpdatePipeline}. Batches are the connector
+ * calls used to apply the updates, failed updates could not be applied at all.
+ */
+public class UpdatePipelineStatistics implements JSONable {
+
+	private long queuedUpdates = 0;
+	private long appliedUpdates = 0;
+	private long appliedBatches = 0;
+	private long failedUpdates = 0;
+	private long lanes = 0;
+
+	public UpdatePipelineStatistics() {
+
+	}
+
+	public UpdatePipelineStatistics(long queuedUpdates, long appliedUpdates, long appliedBatches,
+			long failedUpdates, long lanes) {
+		super();
+		this.queuedUpdates = queuedUpdates;
+		this.appliedUpdates = appliedUpdates;
+		this.appliedBatches = appliedBatches;
+		this.failedUpdates = failedUpdates;
+		this.lanes = lanes;
+	}
+
+	public long getQueuedUpdates() {
+		return queuedUpdates;
+	}
+
+	public void setQueuedUpdates(long queuedUpdates) {
+		this.queuedUpdates = queuedUpdates;
+	}
+
+	public long getAppliedUpdates() {
+		return appliedUpdates;
+	}
+
+	public void setAppliedUpdates(long appliedUpdates) {
+		this.appliedUpdates = appliedUpdates;
+	}
+
+	public long getAppliedBatches() {
+		return appliedBatches;
+	}
+
+	public void setAppliedBatches(long appliedBatches) {
+		this.appliedBatches = appliedBatches;
+	}
+
+	public long getFailedUpdates() {
+		return failedUpdates;
+	}
+
+	public void setFailedUpdates(long failedUpdates) {
+		this.failedUpdates = failedUpdates;
+	}
+
+	public long getLanes() {
+		return lanes;
+	}
+
+	public void setLanes(long lanes) {
+		this.lanes = lanes;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (queuedUpdates ^ (queuedUpdates >>> 32));
+		result = prime * result + (int) (appliedUpdates ^ (appliedUpdates >>> 32));
+		result = prime * result + (int) (appliedBatches ^ (appliedBatches >>> 32));
+		result = prime * result + (int) (failedUpdates ^ (failedUpdates >>> 32));
+		result = prime * result + (int) (lanes ^ (lanes >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		UpdatePipelineStatistics other = (UpdatePipelineStatistics) obj;
+		if (queuedUpdates != other.queuedUpdates)
+			return false;
+		if (appliedUpdates != other.appliedUpdates)
+			return false;
+		if (appliedBatches != other.appliedBatches)
+			return false;
+		if (failedUpdates != other.failedUpdates)
+			return false;
+		if (lanes != other.lanes)
+			return false;
+		return true;
+	}
+
+}
@@ -82,6 +82,7 @@ public class ClientsResource {
 		try {
 			fBase.namingServiceSender.sendClientConfigCreate(clientConfig);
 			fBase.connector.clientConfig_put(clientConfig.getClientID(), clientConfig);
+			fBase.configAccessHelper.clientConfig_invalidate(clientConfig.getClientID());
 		} catch (FBaseCommunicationException | FBaseNamingServiceException
 				| FBaseStorageConnectorException e) {
 			logger.warn(e);
@@ -104,6 +105,7 @@ public class ClientsResource {
 		try {
 			fBase.namingServiceSender.sendClientConfigUpdate(clientConfig);
 			fBase.connector.clientConfig_put(clientConfig.getClientID(), clientConfig);
+			fBase.configAccessHelper.clientConfig_invalidate(clientConfig.getClientID());
 		} catch (FBaseCommunicationException | FBaseNamingServiceException
 				| FBaseStorageConnectorException e) {
 			logger.warn(e);
@@ -120,6 +122,7 @@ public class ClientsResource {
 
 		try {
 			fBase.namingServiceSender.sendClientConfigDelete(new ClientID(clientID));
+			fBase.configAccessHelper.clientConfig_invalidate(new ClientID(clientID));
 			// TODO C: Remove config from database
 		} catch (FBaseCommunicationException | FBaseNamingServiceException e) {
 			logger.warn(e);
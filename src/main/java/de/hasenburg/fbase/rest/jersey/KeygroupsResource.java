@@ -75,16 +75,16 @@ public class KeygroupsResource {
 
 		KeygroupConfig config = null;
 		try {
+			// bypass the cache, the config is updated with the latest version
 			config = fBase.namingServiceSender
-					.sendKeygroupConfigRead(new KeygroupID(app, tenant, group));
+					.sendKeygroupConfigReadAsync(new KeygroupID(app, tenant, group)).get();
 
 			if (config == null) {
 				return Response.status(404, "Keygroup does not exist").build();
 			}
 
 			fBase.taskmanager.runUpdateKeygroupConfigTask(config, false).get(3, TimeUnit.SECONDS);
-		} catch (FBaseCommunicationException | FBaseNamingServiceException | InterruptedException
-				| ExecutionException | TimeoutException e) {
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
 			logger.warn(e);
 			return Response.status(500, e.getMessage()).build();
 		}
@@ -0,0 +1,105 @@
+package de.hasenburg.fbase.rest.jersey;
+
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import control.FBase;
+import de.hasenburg.fbase.model.BackgroundJobStatistics;
+import de.hasenburg.fbase.model.CacheStatistics;
+import de.hasenburg.fbase.model.PeerStatistics;
+import de.hasenburg.fbase.model.PublisherStatistics;
+import de.hasenburg.fbase.model.TaskStatistics;
+import de.hasenburg.fbase.model.UpdatePipelineStatistics;
+import model.JSONable;
+import model.messages.Message;
+import storageconnector.CachingDBConnector;
+
+/**
+ *
+ * The supported methods are: <br>
+ * GET {@link PeerStatistics} of all peers this machine sent requests to <br>
+ * GET {@link BackgroundJobStatistics} of all running background tasks <br>
+ * GET {@link TaskStatistics} of all tasks that ran on this machine <br>
+ * GET {@link CacheStatistics} of all caches, empty if the storage is not cached <br>
+ * GET {@link PublisherStatistics} of the publisher <br>
+ * GET {@link UpdatePipelineStatistics} of the pipeline applying updates of other nodes
+ *
+ */
+@Path("metrics")
+public class MetricsResource {
+
+	@Inject
+	FBase fBase;
+
+	@GET
+	@Path("peers")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getPeerStatistics() {
+		Message m = new Message();
+		String json = fBase.peerHealthMonitor.getStatistics().stream()
+				.map(e -> JSONable.toJSON(e)).collect(Collectors.joining(", "));
+		m.setContent("[" + json + "]");
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	@GET
+	@Path("background")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getBackgroundJobStatistics() {
+		Message m = new Message();
+		String json = fBase.taskmanager.getBackgroundTaskStatistics().stream()
+				.map(e -> JSONable.toJSON(e)).collect(Collectors.joining(", "));
+		m.setContent("[" + json + "]");
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	@GET
+	@Path("tasks")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getTaskStatistics() {
+		Message m = new Message();
+		String json = fBase.taskmanager.getTaskStatistics().stream()
+				.map(e -> JSONable.toJSON(e)).collect(Collectors.joining(", "));
+		m.setContent("[" + json + "]");
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	@GET
+	@Path("cache")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getCacheStatistics() {
+		Message m = new Message();
+		String json = "";
+		if (fBase.connector instanceof CachingDBConnector) {
+			json = ((CachingDBConnector) fBase.connector).getStatistics().stream()
+					.map(e -> JSONable.toJSON(e)).collect(Collectors.joining(", "));
+		}
+		m.setContent("[" + json + "]");
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	@GET
+	@Path("publisher")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getPublisherStatistics() {
+		Message m = new Message();
+		m.setContent(JSONable.toJSON(fBase.publisher.getStatistics()));
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	@GET
+	@Path("pipeline")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getUpdatePipelineStatistics() {
+		Message m = new Message();
+		m.setContent(JSONable.toJSON(fBase.updatePipeline.getStatistics()));
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+}
@@ -68,6 +68,7 @@ public class NodesResource {
 
 		try {
 			fBase.namingServiceSender.sendNodeConfigCreate(nodeConfig);
+			fBase.configAccessHelper.nodeConfig_invalidate(nodeConfig.getNodeID());
 		} catch (FBaseCommunicationException | FBaseNamingServiceException e) {
 			logger.warn(e);
 			return Response.status(500, e.getMessage()).build();
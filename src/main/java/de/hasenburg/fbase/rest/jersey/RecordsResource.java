@@ -1,5 +1,10 @@
 package de.hasenburg.fbase.rest.jersey;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -15,12 +20,15 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.log4j.Logger;
 
 import control.FBase;
+import de.hasenburg.fbase.model.DataIdentifierPage;
 import exceptions.FBaseStorageConnectorException;
 import model.JSONable;
 import model.data.DataIdentifier;
@@ -34,7 +42,9 @@ import model.messages.Message;
  * GET {@link DataRecord} for a given {@link DataIdentifier} <br>
  * PUT given {@link DataRecord} <br>
  * DELETE {@link DataRecord} with a given {@link DataIdentifier} <br>
- * LIST all {@link DataIdentifier} for a given {@link KeygroupID}
+ * LIST all {@link DataIdentifier} for a given {@link KeygroupID}. Setting limit, cursor or
+ * prefix returns a single {@link DataIdentifierPage} instead, setting stream=true streams
+ * all identifiers as newline-delimited JSON
  * 
  * TODO C Methods should only be possible to use for clients that are a part of keygroup
  * 
@@ -46,6 +56,17 @@ public class RecordsResource {
 
 	private static Logger logger = Logger.getLogger(RecordsResource.class.getName());
 
+	/**
+	 * Maximum number of data identifiers returned in a single page, also used as the page size
+	 * when streaming
+	 */
+	static final int MAX_PAGE_SIZE = 1000;
+
+	/**
+	 * Media type of streamed listings, each line contains one JSON object
+	 */
+	static final String NDJSON = "application/x-ndjson";
+
 	@Inject
 	FBase fBase;
 
@@ -53,11 +74,23 @@ public class RecordsResource {
 	@Path("{app}/{tenant}/{group}")
 	@Produces(MediaType.APPLICATION_JSON)
 	public Response listDataRecords(@PathParam("app") String app,
-			@PathParam("tenant") String tenant, @PathParam("group") String group) {
+			@PathParam("tenant") String tenant, @PathParam("group") String group,
+			@QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor,
+			@QueryParam("prefix") String prefix, @QueryParam("stream") boolean stream) {
+
+		KeygroupID keygroupID = new KeygroupID(app, tenant, group);
+
+		if (stream) {
+			return streamDataRecords(keygroupID, prefix);
+		}
+
+		if (limit != null || cursor != null || prefix != null) {
+			return listDataRecordsPage(keygroupID, limit, cursor, prefix);
+		}
 
 		Set<DataIdentifier> dataIdentifiers = null;
 		try {
-			dataIdentifiers = fBase.connector.dataRecords_list(new KeygroupID(app, tenant, group));
+			dataIdentifiers = fBase.connector.dataRecords_list(keygroupID);
 
 			if (dataIdentifiers == null) {
 				return Response.status(404, "Keygroup does not exist").build();
@@ -74,6 +107,88 @@ public class RecordsResource {
 		return Response.ok(JSONable.toJSON(m)).build();
 	}
 
+	/**
+	 * Returns a single page of at most limit {@link DataIdentifier}s. The content of the
+	 * returned message is a {@link DataIdentifierPage}, its next cursor can be used to request
+	 * the following page.
+	 */
+	private Response listDataRecordsPage(KeygroupID keygroupID, Integer limit, String cursor,
+			String prefix) {
+		if (limit == null) {
+			limit = MAX_PAGE_SIZE;
+		}
+		if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+			return Response.status(400, "Limit must be between 1 and " + MAX_PAGE_SIZE).build();
+		}
+
+		DataIdentifierPage page = null;
+		try {
+			page = fBase.connector.dataRecords_listPage(keygroupID, prefix, cursor, limit);
+
+			if (page == null) {
+				return Response.status(404, "Keygroup does not exist").build();
+			}
+		} catch (FBaseStorageConnectorException e) {
+			logger.warn(e);
+			return Response.status(500, e.getMessage()).build();
+		}
+
+		Message m = new Message();
+		m.setContent(JSONable.toJSON(page));
+		return Response.ok(JSONable.toJSON(m)).build();
+	}
+
+	/**
+	 * Streams all {@link DataIdentifier}s of the keygroup, one JSON object per line. The
+	 * identifiers are fetched page by page while writing, so only a single page is kept in
+	 * memory.
+	 */
+	private Response streamDataRecords(KeygroupID keygroupID, String prefix) {
+		DataIdentifierPage firstPage = null;
+		try {
+			// retrieve the first page upfront to be able to respond with an error status
+			firstPage = fBase.connector.dataRecords_listPage(keygroupID, prefix, null,
+					MAX_PAGE_SIZE);
+
+			if (firstPage == null) {
+				return Response.status(404, "Keygroup does not exist").build();
+			}
+		} catch (FBaseStorageConnectorException e) {
+			logger.warn(e);
+			return Response.status(500, e.getMessage()).build();
+		}
+
+		final DataIdentifierPage first = firstPage;
+		StreamingOutput output = out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			DataIdentifierPage page = first;
+			while (true) {
+				for (DataIdentifier identifier : page.getDataIdentifiers()) {
+					writer.write(JSONable.toJSON(identifier));
+					writer.write('\n');
+				}
+				if (page.getNextCursor() == null) {
+					break;
+				}
+				writer.flush();
+				try {
+					page = fBase.connector.dataRecords_listPage(keygroupID, prefix,
+							page.getNextCursor(), MAX_PAGE_SIZE);
+				} catch (FBaseStorageConnectorException e) {
+					// status has already been sent, so abort the response
+					logger.warn(e);
+					throw new IOException(e);
+				}
+				if (page == null) {
+					// keygroup was deleted while streaming
+					break;
+				}
+			}
+			writer.flush();
+		};
+		return Response.ok(output, NDJSON).build();
+	}
+
 	@GET
 	@Path("{app}/{tenant}/{group}/{dataID}")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -3,14 +3,20 @@
  */
 package storageconnector;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.javatuples.Pair;
 
 import control.Configuration;
+import de.hasenburg.fbase.model.DataIdentifierPage;
 import exceptions.FBaseStorageConnectorException;
 import model.config.ClientConfig;
 import model.config.KeygroupConfig;
@@ -29,6 +35,13 @@ import model.data.NodeID;
  * <b>Please, note that subclasses must provide a no-arguments constructor which will be used
  * to instantiate them<b>
  * 
+ * <br>
+ * Records and configurations returned by the getters might be instances shared with the
+ * storage and other callers, so they must be treated as read-only. Callers that want to
+ * modify them have to create a copy first, e.g., with {@link model.JSONable#clone}.
+ * Implementations must not be affected by changes to objects passed to a put method after
+ * the method returned.
+ * 
  * @author Dave
  * @author jonathanhasenburg
  * 
@@ -36,13 +49,47 @@ import model.data.NodeID;
 public abstract class AbstractDBConnector {
 
 	public enum Connector {
-		ON_HEAP, S3
+		ON_HEAP, S3, LOCAL_LOG
 	};
 
+	/**
+	 * The default number of messages kept in the message history of a machine
+	 */
+	public static final int DEFAULT_MESSAGE_HISTORY_SIZE = 10000;
+
+	private int messageHistorySize = DEFAULT_MESSAGE_HISTORY_SIZE;
+
 	protected AbstractDBConnector() {
 		// default constructor
 	}
 
+	/**
+	 * MESSAGEHISTORY<br>
+	 * <br>
+	 * Sets the number of messages kept in the message history of this machine. Connectors
+	 * must be able to answer {@link #messageHistory_get(MessageID)} for at least the last
+	 * messageHistorySize versions; older entries may be discarded. Should be called before
+	 * {@link #dbConnection_initiate()}.
+	 * 
+	 * @param messageHistorySize - the number of messages, must be greater than 0
+	 */
+	public void setMessageHistorySize(int messageHistorySize) {
+		if (messageHistorySize <= 0) {
+			throw new IllegalArgumentException("Message history size must be greater than 0");
+		}
+		this.messageHistorySize = messageHistorySize;
+	}
+
+	/**
+	 * MESSAGEHISTORY<br>
+	 * <br>
+	 * 
+	 * @return the number of messages kept in the message history of this machine
+	 */
+	public int getMessageHistorySize() {
+		return messageHistorySize;
+	}
+
 	/**
 	 * CONNECTION ADMINISTRATION<br<br>
 	 * called when initializing the connection
@@ -105,6 +152,129 @@ public abstract class AbstractDBConnector {
 	public abstract Set<DataIdentifier> dataRecords_list(KeygroupID keygroupID)
 			throws FBaseStorageConnectorException;
 
+	/**
+	 * DATA STORAGE<br>
+	 * <br>
+	 * lists one page of the items in the respective keygroup, ordered by their data id. The
+	 * default implementation sorts the result of {@link #dataRecords_list(KeygroupID)};
+	 * subclasses should override it so that memory use does not depend on the size of the
+	 * keygroup.
+	 * 
+	 * @param keygroupID the keygroup
+	 * @param prefix only data ids starting with this prefix are listed, may be null
+	 * @param cursor only data ids after this cursor are listed, use null to start at the
+	 *            beginning and {@link DataIdentifierPage#getNextCursor()} to continue
+	 * @param limit the maximum number of items in the page, must be greater than 0
+	 * @return the page
+	 * @throws FBaseStorageConnectorException when the operation failed, e.g., because the
+	 *             keygroup does not exist
+	 */
+	public DataIdentifierPage dataRecords_listPage(KeygroupID keygroupID, String prefix,
+			String cursor, int limit) throws FBaseStorageConnectorException {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		TreeSet<String> dataIDs = new TreeSet<>();
+		for (DataIdentifier dataIdentifier : dataRecords_list(keygroupID)) {
+			dataIDs.add(dataIdentifier.getDataID());
+		}
+		return createPage(keygroupID,
+				(cursor == null ? dataIDs : dataIDs.tailSet(cursor, false)).iterator(), prefix,
+				limit);
+	}
+
+	/**
+	 * Creates a page from data ids ordered ascending. Iterates at most limit + 1 data ids.
+	 * 
+	 * @param keygroupID the keygroup of the data ids
+	 * @param dataIDs the ordered data ids, starting after the cursor
+	 * @param prefix only data ids starting with this prefix are added, may be null
+	 * @param limit the maximum number of items in the page
+	 * @return the page
+	 */
+	protected static DataIdentifierPage createPage(KeygroupID keygroupID,
+			Iterator<String> dataIDs, String prefix, int limit) {
+		List<DataIdentifier> identifiers = new ArrayList<>(Math.min(limit, 1024));
+		String nextCursor = null;
+		while (dataIDs.hasNext()) {
+			String dataID = dataIDs.next();
+			if (prefix != null && !dataID.startsWith(prefix)) {
+				if (dataID.compareTo(prefix) > 0) {
+					// ordered, so no more data ids with that prefix follow
+					break;
+				}
+				continue;
+			}
+			if (identifiers.size() == limit) {
+				nextCursor = identifiers.get(limit - 1).getDataID();
+				break;
+			}
+			identifiers.add(new DataIdentifier(keygroupID, dataID));
+		}
+		return new DataIdentifierPage(identifiers, nextCursor);
+	}
+
+	/**
+	 * DATA STORAGE<br>
+	 * <br>
+	 * persists multiple data items at once. The default implementation calls
+	 * {@link #dataRecords_put(DataRecord)} for each record; subclasses should override it if
+	 * the storage system supports batch writes.
+	 * 
+	 * @param records the data records which shall be stored
+	 * @throws FBaseStorageConnectorException when the operation failed for at least one
+	 *             record; other records might have been stored anyway
+	 */
+	public void dataRecords_putAll(Collection<DataRecord> records)
+			throws FBaseStorageConnectorException {
+		for (DataRecord record : records) {
+			dataRecords_put(record);
+		}
+	}
+
+	/**
+	 * DATA STORAGE<br>
+	 * <br>
+	 * retrieves multiple data items at once. The default implementation calls
+	 * {@link #dataRecords_get(DataIdentifier)} for each identifier; subclasses should override
+	 * it if the storage system supports batch reads.
+	 * 
+	 * @param dataIdentifiers identifiers for the data items
+	 * @return a map containing a mapping for each data item that was found
+	 * @throws FBaseStorageConnectorException when the operation failed
+	 */
+	public Map<DataIdentifier, DataRecord> dataRecords_getAll(
+			Collection<DataIdentifier> dataIdentifiers) throws FBaseStorageConnectorException {
+		Map<DataIdentifier, DataRecord> records = new HashMap<>();
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			DataRecord record = dataRecords_get(dataIdentifier);
+			if (record != null) {
+				records.put(dataIdentifier, record);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * DATA STORAGE<br>
+	 * <br>
+	 * deletes multiple data items at once. The default implementation calls
+	 * {@link #dataRecords_delete(DataIdentifier)} for each identifier; subclasses should
+	 * override it if the storage system supports batch deletes.
+	 * 
+	 * @param dataIdentifiers identifiers for the data items
+	 * @return true if none of the items exists after the method call, false otherwise
+	 * @throws FBaseStorageConnectorException when the operation failed
+	 */
+	public boolean dataRecords_deleteAll(Collection<DataIdentifier> dataIdentifiers)
+			throws FBaseStorageConnectorException {
+		boolean deleted = true;
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			deleted &= dataRecords_delete(dataIdentifier);
+		}
+		return deleted;
+	}
+
 	/**
 	 * KEYGROUP MANAGEMENT<br>
 	 * <br>
@@ -344,12 +514,48 @@ public abstract class AbstractDBConnector {
 	 * @param messageID - the {@link MessageID}
 	 * 
 	 * @return the {@link DataIdentifier} related to the given messageID or null no entry for
-	 *         the messageID exists
+	 *         the messageID exists (anymore, see {@link #getMessageHistorySize()})
 	 * @throws FBaseStorageConnectorException when the operation fails
 	 */
 	public abstract DataIdentifier messageHistory_get(MessageID messageID)
 			throws FBaseStorageConnectorException;
 
+	/**
+	 * CACHING<br>
+	 * <br>
+	 * Signals that the data record might have been changed by a remote update, so cached
+	 * copies must not be used anymore. Does nothing for connectors without a cache.
+	 *
+	 * @param dataIdentifier the identifier of the changed data record
+	 */
+	public void cache_invalidateDataRecord(DataIdentifier dataIdentifier) {
+
+	}
+
+	/**
+	 * CACHING<br>
+	 * <br>
+	 * Signals that the keygroup config might have been changed by a remote update, so cached
+	 * copies must not be used anymore. Does nothing for connectors without a cache.
+	 *
+	 * @param keygroupID the id of the changed keygroup config
+	 */
+	public void cache_invalidateKeygroupConfig(KeygroupID keygroupID) {
+
+	}
+
+	/**
+	 * CACHING<br>
+	 * <br>
+	 * Signals that the node config might have been changed by a remote update, so cached
+	 * copies must not be used anymore. Does nothing for connectors without a cache.
+	 *
+	 * @param nodeID the id of the changed node config
+	 */
+	public void cache_invalidateNodeConfig(NodeID nodeID) {
+
+	}
+
 	/*
 	 * 
 	 * Convenience methods start here
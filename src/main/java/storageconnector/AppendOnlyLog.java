@@ -0,0 +1,737 @@
+package storageconnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A durable key value store backed by a single append-only file. Keys are grouped in
+ * namespaces. Every put, delete or namespace drop appends one entry to the file, while an
+ * in-memory index points to the position of the latest value of each key. Reads are
+ * positional reads of exactly the value bytes.<br>
+ * <br>
+ * Entry layout: length (int), crc32 of the body (int) and the body consisting of the type
+ * (byte), namespace length (short), namespace, key length (short), key and the value.<br>
+ * <br>
+ * On {@link #open()}, the file is scanned to rebuild the index. A torn or corrupted entry at
+ * the end of the file, e.g., caused by a crash during a write, is cut off. If valid entries
+ * follow a corrupted entry, the file is left untouched and opening it fails, as cutting it
+ * off would lose data. Writes are synced
+ * to disk before they return; concurrent writers share a single sync. {@link #compact()}
+ * rewrites the file with the live entries only and atomically replaces the old file.
+ */
+public class AppendOnlyLog {
+
+	private static final Logger logger = Logger.getLogger(AppendOnlyLog.class.getName());
+
+	private static final byte[] FILE_HEADER = "FBLOG001".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_DELETE = 2;
+	private static final byte TYPE_DROP_NAMESPACE = 3;
+
+	/** length and crc */
+	private static final int ENTRY_HEADER_SIZE = 8;
+
+	/**
+	 * Position and size of an entry in the file.
+	 */
+	private static class Pointer {
+
+		final long position;
+		final int entryLength;
+		final int valueLength;
+
+		Pointer(long position, int entryLength, int valueLength) {
+			this.position = position;
+			this.entryLength = entryLength;
+			this.valueLength = valueLength;
+		}
+
+		long valuePosition() {
+			return position + entryLength - valueLength;
+		}
+
+	}
+
+	private final Path path;
+	private final Path compactionPath;
+
+	/** namespace -> key -> pointer, keys are kept ordered to support paginated listings */
+	private final ConcurrentMap<String, ConcurrentNavigableMap<String, Pointer>> index =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Appends and reads hold the read lock, so the channel cannot be replaced while in use.
+	 * {@link #close()} and {@link #compact()}, while replacing the file, hold the write lock.
+	 */
+	private final ReentrantReadWriteLock channelLock = new ReentrantReadWriteLock();
+
+	/** serializes appends and the related index updates */
+	private final Object appendLock = new Object();
+
+	/** serializes syncs */
+	private final Object syncLock = new Object();
+
+	/** serializes compactions */
+	private final Object compactionLock = new Object();
+
+	private FileChannel channel = null;
+	private long writtenPosition = 0;
+	private long syncedPosition = 0;
+
+	/** changes whenever the log is opened or closed */
+	private long generation = 0;
+
+	/** bytes in the file that belong to overwritten, deleted or dropped entries */
+	private long deadBytes = 0;
+
+	public AppendOnlyLog(File file) {
+		this.path = file.toPath();
+		this.compactionPath = new File(file.getPath() + ".compact").toPath();
+	}
+
+	/**
+	 * Opens the log, creating the file if it does not exist yet, and rebuilds the index.
+	 *
+	 * @throws IOException if the file cannot be read or is not a log file
+	 */
+	public void open() throws IOException {
+		channelLock.writeLock().lock();
+		try {
+			// a compaction that did not finish is discarded, the old file is still complete
+			Files.deleteIfExists(compactionPath);
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			generation++;
+			index.clear();
+			deadBytes = 0;
+			try {
+				if (channel.size() == 0) {
+					channel.write(ByteBuffer.wrap(FILE_HEADER), 0);
+					channel.force(true);
+				} else {
+					checkHeader();
+				}
+				writtenPosition = recover();
+			} catch (IOException e) {
+				channel.close();
+				channel = null;
+				index.clear();
+				throw e;
+			}
+			syncedPosition = writtenPosition;
+			logger.info("Opened log " + path + " with " + writtenPosition + " bytes, "
+					+ deadBytes + " of them not live");
+		} finally {
+			channelLock.writeLock().unlock();
+		}
+	}
+
+	private void checkHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER.length);
+		readFully(header, 0);
+		if (!header.hasRemaining() && Arrays.equals(header.array(), FILE_HEADER)) {
+			return;
+		}
+		throw new IOException(path + " is not a log file");
+	}
+
+	/**
+	 * Scans all entries and applies them to the index. Cuts off the file after the last valid
+	 * entry if no valid entry follows, i.e., if the end of the file is torn.
+	 *
+	 * @return the position after the last valid entry
+	 * @throws IOException if a corrupted entry is followed by valid entries
+	 */
+	private long recover() throws IOException {
+		long size = channel.size();
+		long position = FILE_HEADER.length;
+		ByteBuffer body;
+		while ((body = readEntry(position, size)) != null) {
+			int entryLength = ENTRY_HEADER_SIZE + body.remaining();
+			if (!applyEntry(body, position, entryLength)) {
+				break;
+			}
+			position += entryLength;
+		}
+		if (position < size) {
+			long next = findNextEntry(position + 1, size);
+			if (next >= 0) {
+				throw new IOException("Log " + path + " has a corrupted entry at " + position
+						+ " followed by a valid entry at " + next
+						+ ", refusing to open it to not lose data");
+			}
+			logger.warn("Log " + path + " has an incomplete or corrupted entry at " + position
+					+ ", discarding the last " + (size - position) + " bytes");
+			channel.truncate(position);
+			channel.force(true);
+		}
+		return position;
+	}
+
+	/**
+	 * @param position - the position of the entry
+	 * @param size - the size of the file
+	 * @return the body of the entry at the given position, or null if there is no complete
+	 *         entry with a valid checksum
+	 */
+	private ByteBuffer readEntry(long position, long size) throws IOException {
+		if (position + ENTRY_HEADER_SIZE > size) {
+			return null;
+		}
+		ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+		readFully(entryHeader, position);
+		entryHeader.flip();
+		int length = entryHeader.getInt();
+		int crc = entryHeader.getInt();
+		if (length <= 0 || position + ENTRY_HEADER_SIZE + length > size) {
+			return null;
+		}
+		ByteBuffer body = ByteBuffer.allocate(length);
+		readFully(body, position + ENTRY_HEADER_SIZE);
+		if (crc != crc(body.array(), length)) {
+			return null;
+		}
+		body.flip();
+		return body;
+	}
+
+	/**
+	 * Searches for a valid entry after a corrupted one, whose length might be corrupted as
+	 * well.
+	 *
+	 * @param from - the first position to check
+	 * @param size - the size of the file
+	 * @return the position of the first valid entry, or -1 if there is none
+	 */
+	private long findNextEntry(long from, long size) throws IOException {
+		for (long position = from; position + ENTRY_HEADER_SIZE < size; position++) {
+			ByteBuffer body = readEntry(position, size);
+			if (body != null && isEntryType(body.get(0))) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isEntryType(byte type) {
+		return type == TYPE_PUT || type == TYPE_DELETE || type == TYPE_DROP_NAMESPACE;
+	}
+
+	private boolean applyEntry(ByteBuffer body, long position, int entryLength) {
+		try {
+			byte type = body.get();
+			String namespace = readString(body);
+			String key = readString(body);
+			int valueLength = body.remaining();
+			switch (type) {
+			case TYPE_PUT:
+				updateIndex(namespace, key, new Pointer(position, entryLength, valueLength));
+				return true;
+			case TYPE_DELETE:
+				updateIndex(namespace, key, null);
+				deadBytes += entryLength;
+				return true;
+			case TYPE_DROP_NAMESPACE:
+				dropFromIndex(namespace);
+				deadBytes += entryLength;
+				return true;
+			default:
+				return false;
+			}
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void updateIndex(String namespace, String key, Pointer pointer) {
+		ConcurrentNavigableMap<String, Pointer> keys;
+		Pointer old;
+		if (pointer == null) {
+			keys = index.get(namespace);
+			old = keys == null ? null : keys.remove(key);
+		} else {
+			keys = index.computeIfAbsent(namespace, n -> new ConcurrentSkipListMap<>());
+			old = keys.put(key, pointer);
+		}
+		if (old != null) {
+			deadBytes += old.entryLength;
+		}
+	}
+
+	private void dropFromIndex(String namespace) {
+		Map<String, Pointer> keys = index.remove(namespace);
+		if (keys != null) {
+			for (Pointer pointer : keys.values()) {
+				deadBytes += pointer.entryLength;
+			}
+		}
+	}
+
+	/**
+	 * Durably stores the value for the given key.
+	 *
+	 * @param namespace - the namespace of the key
+	 * @param key - the key
+	 * @param value - the value
+	 * @throws IOException if the value cannot be written
+	 */
+	public void put(String namespace, String key, byte[] value) throws IOException {
+		append(TYPE_PUT, namespace, key, value);
+	}
+
+	/**
+	 * Durably stores all given values with a single write. The batch is not atomic: if the
+	 * machine crashes during the write, the values that were written completely are stored
+	 * after the log was reopened.
+	 *
+	 * @param namespace - the namespace of the keys
+	 * @param values - key -> value
+	 * @throws IOException if the values cannot be written
+	 */
+	public void putAll(String namespace, Map<String, byte[]> values) throws IOException {
+		List<PendingEntry> entries = new ArrayList<>(values.size());
+		for (Map.Entry<String, byte[]> value : values.entrySet()) {
+			entries.add(new PendingEntry(TYPE_PUT, namespace, value.getKey(), value.getValue()));
+		}
+		append(entries);
+	}
+
+	/**
+	 * Durably removes all given keys with a single write.
+	 *
+	 * @param namespace - the namespace of the keys
+	 * @param keys - the keys
+	 * @throws IOException if the deletions cannot be written
+	 */
+	public void deleteAll(String namespace, Collection<String> keys) throws IOException {
+		List<PendingEntry> entries = new ArrayList<>(keys.size());
+		for (String key : keys) {
+			if (contains(namespace, key)) {
+				entries.add(new PendingEntry(TYPE_DELETE, namespace, key, new byte[0]));
+			}
+		}
+		append(entries);
+	}
+
+	/**
+	 * Durably removes the given key.
+	 *
+	 * @param namespace - the namespace of the key
+	 * @param key - the key
+	 * @return true if the key existed
+	 * @throws IOException if the deletion cannot be written
+	 */
+	public boolean delete(String namespace, String key) throws IOException {
+		if (!contains(namespace, key)) {
+			return false;
+		}
+		append(TYPE_DELETE, namespace, key, new byte[0]);
+		return true;
+	}
+
+	/**
+	 * Durably removes all keys of the given namespace.
+	 *
+	 * @param namespace - the namespace
+	 * @throws IOException if the drop cannot be written
+	 */
+	public void dropNamespace(String namespace) throws IOException {
+		append(TYPE_DROP_NAMESPACE, namespace, "", new byte[0]);
+	}
+
+	/**
+	 * Removes the given key from the index without writing to the file. The key might be
+	 * present again after the log was reopened, unless a compaction ran in between. Useful for
+	 * data that is pruned by its owner anyway.
+	 *
+	 * @param namespace - the namespace of the key
+	 * @param key - the key
+	 */
+	public void forget(String namespace, String key) {
+		synchronized (appendLock) {
+			updateIndex(namespace, key, null);
+		}
+	}
+
+	/**
+	 * An entry that is about to be appended.
+	 */
+	private static class PendingEntry {
+
+		final byte type;
+		final String namespace;
+		final String key;
+		final int valueLength;
+		final byte[] encoded;
+
+		PendingEntry(byte type, String namespace, String key, byte[] value) throws IOException {
+			this.type = type;
+			this.namespace = namespace;
+			this.key = key;
+			this.valueLength = value.length;
+
+			byte[] namespaceBytes = namespace.getBytes(StandardCharsets.UTF_8);
+			byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+			if (namespaceBytes.length > 0xFFFF || keyBytes.length > 0xFFFF) {
+				throw new IOException("Namespace or key too long");
+			}
+			int length = 1 + 2 + namespaceBytes.length + 2 + keyBytes.length + value.length;
+			ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + length);
+			entry.putInt(length);
+			entry.putInt(0);
+			entry.put(type);
+			entry.putShort((short) namespaceBytes.length);
+			entry.put(namespaceBytes);
+			entry.putShort((short) keyBytes.length);
+			entry.put(keyBytes);
+			entry.put(value);
+			entry.putInt(4, crc(entry.array(), ENTRY_HEADER_SIZE, length));
+			this.encoded = entry.array();
+		}
+
+	}
+
+	private void append(byte type, String namespace, String key, byte[] value)
+			throws IOException {
+		append(Collections.singletonList(new PendingEntry(type, namespace, key, value)));
+	}
+
+	/**
+	 * Appends all entries with a single write and a single sync.
+	 */
+	private void append(List<PendingEntry> entries) throws IOException {
+		if (entries.isEmpty()) {
+			return;
+		}
+		int size = 0;
+		for (PendingEntry entry : entries) {
+			size += entry.encoded.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		for (PendingEntry entry : entries) {
+			buffer.put(entry.encoded);
+		}
+		buffer.flip();
+
+		channelLock.readLock().lock();
+		try {
+			checkOpen();
+			long end;
+			synchronized (appendLock) {
+				long position = writtenPosition;
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, position + buffer.position());
+				}
+				writtenPosition = position + size;
+				end = writtenPosition;
+				for (PendingEntry entry : entries) {
+					Pointer pointer =
+							new Pointer(position, entry.encoded.length, entry.valueLength);
+					switch (entry.type) {
+					case TYPE_PUT:
+						updateIndex(entry.namespace, entry.key, pointer);
+						break;
+					case TYPE_DELETE:
+						updateIndex(entry.namespace, entry.key, null);
+						deadBytes += pointer.entryLength;
+						break;
+					default:
+						dropFromIndex(entry.namespace);
+						deadBytes += pointer.entryLength;
+					}
+					position += entry.encoded.length;
+				}
+			}
+			sync(end);
+		} finally {
+			channelLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Makes sure that everything up to end is on disk. A single force covers all appends that
+	 * happened before it, so concurrent writers mostly wait for the same sync.
+	 */
+	private void sync(long end) throws IOException {
+		synchronized (syncLock) {
+			if (syncedPosition >= end) {
+				return;
+			}
+			long target;
+			synchronized (appendLock) {
+				target = writtenPosition;
+			}
+			channel.force(false);
+			syncedPosition = target;
+		}
+	}
+
+	/**
+	 * @param namespace - the namespace of the key
+	 * @param key - the key
+	 * @return the value or null, if the key does not exist
+	 * @throws IOException if the value cannot be read
+	 */
+	public byte[] get(String namespace, String key) throws IOException {
+		channelLock.readLock().lock();
+		try {
+			checkOpen();
+			Map<String, Pointer> keys = index.get(namespace);
+			Pointer pointer = keys == null ? null : keys.get(key);
+			if (pointer == null) {
+				return null;
+			}
+			ByteBuffer value = ByteBuffer.allocate(pointer.valueLength);
+			readFully(value, pointer.valuePosition());
+			return value.array();
+		} finally {
+			channelLock.readLock().unlock();
+		}
+	}
+
+	public boolean contains(String namespace, String key) {
+		Map<String, Pointer> keys = index.get(namespace);
+		return keys != null && keys.containsKey(key);
+	}
+
+	/**
+	 * @param namespace - the namespace
+	 * @return a copy of all keys of the namespace
+	 */
+	public Set<String> keys(String namespace) {
+		Map<String, Pointer> keys = index.get(namespace);
+		if (keys == null) {
+			return Collections.emptySet();
+		}
+		return new HashSet<>(keys.keySet());
+	}
+
+	/**
+	 * Returns the keys of a namespace in ascending order, starting at fromKey. The iterator
+	 * is weakly consistent, i.e., it does not fail if keys are added or removed concurrently.
+	 * 
+	 * @param namespace - the namespace
+	 * @param fromKey - the first key, or null to start with the lowest key
+	 * @param inclusive - true if fromKey itself should be returned if it exists
+	 * @return an iterator over the keys
+	 */
+	public Iterator<String> keys(String namespace, String fromKey, boolean inclusive) {
+		ConcurrentNavigableMap<String, Pointer> keys = index.get(namespace);
+		if (keys == null) {
+			return Collections.emptyIterator();
+		}
+		if (fromKey == null) {
+			return keys.keySet().iterator();
+		}
+		return keys.tailMap(fromKey, inclusive).keySet().iterator();
+	}
+
+	/**
+	 * @return the number of bytes that would be freed by {@link #compact()}
+	 */
+	public long getDeadBytes() {
+		synchronized (appendLock) {
+			return deadBytes;
+		}
+	}
+
+	/**
+	 * @return the size of the log file
+	 */
+	public long getSize() {
+		synchronized (appendLock) {
+			return writtenPosition;
+		}
+	}
+
+	/**
+	 * Rewrites the log with the live entries only. The live entries are copied while reads
+	 * and writes continue; only the entries appended in the meantime are copied while both
+	 * are blocked, before the compacted file replaces the old one.
+	 *
+	 * @throws IOException if the compacted log cannot be written; the old log stays in use
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			long oldSize;
+			long snapshotEnd;
+			long snapshotGeneration;
+			// old position -> new position of the copied entries
+			Map<Long, Long> relocated = new HashMap<>();
+			long position;
+			try (FileChannel target = FileChannel.open(compactionPath, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				channelLock.readLock().lock();
+				try {
+					checkOpen();
+					snapshotGeneration = generation;
+					synchronized (appendLock) {
+						snapshotEnd = writtenPosition;
+					}
+					oldSize = snapshotEnd;
+					position = writeAll(target, ByteBuffer.wrap(FILE_HEADER), 0);
+					for (ConcurrentNavigableMap<String, Pointer> keys : index.values()) {
+						for (Pointer pointer : keys.values()) {
+							// entries after the snapshot are copied below
+							if (pointer.position >= snapshotEnd
+									|| relocated.containsKey(pointer.position)) {
+								continue;
+							}
+							ByteBuffer entry = ByteBuffer.allocate(pointer.entryLength);
+							readFully(entry, pointer.position);
+							entry.flip();
+							relocated.put(pointer.position, position);
+							position = writeAll(target, entry, position);
+						}
+					}
+				} finally {
+					channelLock.readLock().unlock();
+				}
+
+				channelLock.writeLock().lock();
+				try {
+					checkOpen();
+					if (generation != snapshotGeneration) {
+						throw new IOException("Log " + path + " was reopened during compaction");
+					}
+					long tailStart = position;
+					long tailSize = writtenPosition - snapshotEnd;
+					while (position < tailStart + tailSize) {
+						position += channel.transferTo(snapshotEnd + position - tailStart,
+								tailStart + tailSize - position, target.position(position));
+					}
+					target.force(true);
+					Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+
+					Map<String, ConcurrentNavigableMap<String, Pointer>> compactedIndex =
+							new HashMap<>();
+					long liveBytes = 0;
+					for (Map.Entry<String, ConcurrentNavigableMap<String, Pointer>> namespace : index
+							.entrySet()) {
+						ConcurrentNavigableMap<String, Pointer> keys = new ConcurrentSkipListMap<>();
+						for (Map.Entry<String, Pointer> key : namespace.getValue().entrySet()) {
+							Pointer pointer = key.getValue();
+							long newPosition = pointer.position >= snapshotEnd
+									? pointer.position - snapshotEnd + tailStart
+									: relocated.get(pointer.position);
+							keys.put(key.getKey(), new Pointer(newPosition, pointer.entryLength,
+									pointer.valueLength));
+							liveBytes += pointer.entryLength;
+						}
+						if (!keys.isEmpty()) {
+							compactedIndex.put(namespace.getKey(), keys);
+						}
+					}
+
+					channel.close();
+					channel =
+							FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+					synchronized (appendLock) {
+						index.clear();
+						index.putAll(compactedIndex);
+						writtenPosition = position;
+						deadBytes = position - FILE_HEADER.length - liveBytes;
+					}
+					synchronized (syncLock) {
+						syncedPosition = position;
+					}
+				} finally {
+					channelLock.writeLock().unlock();
+				}
+			} catch (IOException e) {
+				Files.deleteIfExists(compactionPath);
+				throw e;
+			}
+			logger.info("Compacted log " + path + " from " + oldSize + " to " + position
+					+ " bytes");
+		}
+	}
+
+	private static long writeAll(FileChannel target, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			position += target.write(buffer, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Closes the log. All writes are already durable.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channelLock.writeLock().lock();
+		try {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+				generation++;
+			}
+		} finally {
+			channelLock.writeLock().unlock();
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (channel == null) {
+			throw new IOException("Log " + path + " is not open");
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				return;
+			}
+		}
+	}
+
+	private static int crc(byte[] bytes, int length) {
+		return crc(bytes, 0, length);
+	}
+
+	private static int crc(byte[] bytes, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+}
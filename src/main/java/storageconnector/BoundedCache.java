@@ -0,0 +1,358 @@
+package storageconnector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import exceptions.FBaseStorageConnectorException;
+
+/**
+ * A size bounded cache with least recently used eviction and an optional time to live for
+ * entries. Null values are cached as well, so that lookups of non existing keys do not reach
+ * the storage system every time.
+ *
+ * Expired entries are removed when they are accessed or evicted, so the memory use is bounded
+ * by the maximum size only. Values are loaded outside of the cache lock. If a key is
+ * invalidated while its value is loaded, the loaded value is returned but not cached, as it
+ * might already be outdated.
+ *
+ * Writes to the storage system are bracketed by {@link #startWrite(Object)} and
+ * {@link #completeWrite(Object, Object)}. The written value is cached only if no other write
+ * of the key overlapped with it; otherwise the storage system might hold the value of any of
+ * the writes, so the key stays uncached until it is loaded again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V> {
+
+	/**
+	 * Loads the value for a key that is not cached.
+	 */
+	@FunctionalInterface
+	public interface Loader<K, V> {
+		V load(K key) throws FBaseStorageConnectorException;
+	}
+
+	/**
+	 * Loads the values for multiple keys that are not cached. Keys that are not part of the
+	 * returned map are cached as non existing.
+	 */
+	@FunctionalInterface
+	public interface BulkLoader<K, V> {
+		Map<K, V> loadAll(Collection<K> keys) throws FBaseStorageConnectorException;
+	}
+
+	private static class Entry<V> {
+		private final V value;
+		private final long expiresAt;
+
+		private Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * The writes of a key that are running
+	 */
+	private static class Writes {
+		private int running = 0;
+		private boolean overlapping = false;
+	}
+
+	private final int maximumSize;
+	private final long timeToLiveNanos;
+
+	/** guarded by itself, iterates from least to most recently used */
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	/** incremented on every invalidation, guarded by entries */
+	private long invalidations = 0;
+
+	/** keys that are being written, guarded by entries */
+	private final Map<K, Writes> writes = new HashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * @param maximumSize - the maximum number of cached entries
+	 * @param timeToLive - the time after which an entry expires, 0 if entries never expire
+	 * @param unit - the unit of timeToLive
+	 */
+	public BoundedCache(int maximumSize, long timeToLive, TimeUnit unit) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be greater than 0");
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("Time to live must not be negative");
+		}
+		this.maximumSize = maximumSize;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				if (size() > BoundedCache.this.maximumSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value of the key or loads and caches it if it is not cached.
+	 *
+	 * @param key - the key
+	 * @param loader - used to load the value if it is not cached
+	 * @return the value, might be null
+	 * @throws FBaseStorageConnectorException if thrown by the loader, nothing is cached then
+	 */
+	public V get(K key, Loader<K, V> loader) throws FBaseStorageConnectorException {
+		long stamp;
+		synchronized (entries) {
+			Entry<V> entry = getEntry(key);
+			if (entry != null) {
+				hits.increment();
+				return entry.value;
+			}
+			stamp = invalidations;
+		}
+		misses.increment();
+		V value = loader.load(key);
+		synchronized (entries) {
+			if (stamp == invalidations && !entries.containsKey(key) && !writes.containsKey(key)) {
+				entries.put(key, createEntry(value));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the values of all given keys, values that are not cached are loaded with a
+	 * single call of the bulk loader.
+	 *
+	 * @param keys - the keys
+	 * @param loader - used to load all values that are not cached
+	 * @return a map containing all keys with a value that is not null
+	 * @throws FBaseStorageConnectorException if thrown by the loader, nothing is cached then
+	 */
+	public Map<K, V> getAll(Collection<K> keys, BulkLoader<K, V> loader)
+			throws FBaseStorageConnectorException {
+		Map<K, V> result = new HashMap<>();
+		List<K> missing = new ArrayList<>();
+		long stamp;
+		synchronized (entries) {
+			for (K key : keys) {
+				Entry<V> entry = getEntry(key);
+				if (entry == null) {
+					missing.add(key);
+				} else if (entry.value != null) {
+					result.put(key, entry.value);
+				}
+			}
+			stamp = invalidations;
+		}
+		hits.add(keys.size() - missing.size());
+		if (missing.isEmpty()) {
+			return result;
+		}
+		misses.add(missing.size());
+		Map<K, V> loaded = loader.loadAll(missing);
+		synchronized (entries) {
+			if (stamp == invalidations) {
+				for (K key : missing) {
+					if (!entries.containsKey(key) && !writes.containsKey(key)) {
+						entries.put(key, createEntry(loaded.get(key)));
+					}
+				}
+			}
+		}
+		result.putAll(loaded);
+		return result;
+	}
+
+	/**
+	 * Caches the given value, replacing any cached value of the key.
+	 *
+	 * @param key - the key
+	 * @param value - the new value, might be null
+	 */
+	public void put(K key, V value) {
+		synchronized (entries) {
+			entries.put(key, createEntry(value));
+		}
+	}
+
+	/**
+	 * Must be called before the value of the key is written to the storage system. Removes the
+	 * key from the cache until the write completes.
+	 *
+	 * @param key - the key
+	 */
+	public void startWrite(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+			Writes keyWrites = writes.computeIfAbsent(key, k -> new Writes());
+			if (keyWrites.running > 0) {
+				keyWrites.overlapping = true;
+			}
+			keyWrites.running++;
+		}
+	}
+
+	/**
+	 * Must be called after the value was written to the storage system. Caches the value if
+	 * no other write of the key overlapped with this one.
+	 *
+	 * @param key - the key
+	 * @param value - the written value, might be null
+	 */
+	public void completeWrite(K key, V value) {
+		synchronized (entries) {
+			if (finishWrite(key)) {
+				entries.put(key, createEntry(value));
+			} else {
+				// loads that started before the writes must not cache their value either
+				invalidations++;
+				entries.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Must be called instead of {@link #completeWrite(Object, Object)} if the write failed or
+	 * its result is unknown. Removes the key from the cache.
+	 *
+	 * @param key - the key
+	 */
+	public void abortWrite(K key) {
+		synchronized (entries) {
+			finishWrite(key);
+			invalidations++;
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * @return true, if no other write of the key overlapped with the finished one
+	 */
+	private boolean finishWrite(K key) {
+		Writes keyWrites = writes.get(key);
+		if (keyWrites == null) {
+			return false;
+		}
+		if (--keyWrites.running == 0) {
+			writes.remove(key);
+		}
+		return !keyWrites.overlapping;
+	}
+
+	/**
+	 * Removes the key from the cache.
+	 *
+	 * @param key - the key
+	 */
+	public void invalidate(K key) {
+		synchronized (entries) {
+			invalidations++;
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * Removes all keys matching the predicate from the cache.
+	 *
+	 * @param predicate - the predicate
+	 */
+	public void invalidateIf(Predicate<K> predicate) {
+		synchronized (entries) {
+			invalidations++;
+			entries.keySet().removeIf(predicate);
+		}
+	}
+
+	/**
+	 * Removes all keys from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			invalidations++;
+			entries.clear();
+		}
+	}
+
+	private Entry<V> getEntry(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && timeToLiveNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+			entries.remove(key);
+			expirations.increment();
+			return null;
+		}
+		return entry;
+	}
+
+	private Entry<V> createEntry(V value) {
+		return new Entry<>(value, System.nanoTime() + timeToLiveNanos);
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of entries removed because the cache was full
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the number of entries removed because their time to live expired
+	 */
+	public long getExpirationCount() {
+		return expirations.sum();
+	}
+
+	/**
+	 * @return the ratio of lookups served from the cache, 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		long hitCount = getHitCount();
+		long total = hitCount + getMissCount();
+		return total == 0 ? 0.0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount();
+	}
+
+}
@@ -0,0 +1,366 @@
+package storageconnector;
+
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.javatuples.Pair;
+
+import de.hasenburg.fbase.model.CacheStatistics;
+import de.hasenburg.fbase.model.DataIdentifierPage;
+import exceptions.FBaseStorageConnectorException;
+import model.JSONable;
+import model.config.ClientConfig;
+import model.config.KeygroupConfig;
+import model.config.NodeConfig;
+import model.data.ClientID;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.MessageID;
+import model.data.NodeID;
+
+/**
+ * Wraps another {@link AbstractDBConnector} and caches data records, keygroup configs, node
+ * configs and client configs in {@link BoundedCache}s, so that repeated reads of hot keys do
+ * not reach the storage system.
+ *
+ * Writes go to the wrapped connector first and update the cache afterwards (write-through).
+ * If writes of the same key overlap, the key is not cached until it is read again, as the
+ * order in which the writes reached the storage system is unknown.
+ * Other machines of the same node might change the shared storage without using this cache,
+ * so entries expire after the configured time to live; remote updates received by the
+ * {@link communication.Subscriber} invalidate the affected entries right away.
+ *
+ * Listings, subscriber machines, heartbeats and the message history are not cached.
+ */
+public class CachingDBConnector extends AbstractDBConnector {
+
+	private static Logger logger = Logger.getLogger(CachingDBConnector.class.getName());
+
+	private final AbstractDBConnector connector;
+
+	private final BoundedCache<DataIdentifier, DataRecord> records;
+	private final BoundedCache<KeygroupID, KeygroupConfig> keygroupConfigs;
+	private final BoundedCache<NodeID, NodeConfig> nodeConfigs;
+	private final BoundedCache<ClientID, ClientConfig> clientConfigs;
+
+	/**
+	 * @param connector - the connector whose reads are cached
+	 * @param maximumSize - the maximum number of cached data records, each config cache is
+	 *            bounded by a tenth of it
+	 * @param timeToLive - the time to live of cached entries in milliseconds, 0 if entries
+	 *            never expire
+	 */
+	public CachingDBConnector(AbstractDBConnector connector, int maximumSize, long timeToLive) {
+		this.connector = connector;
+		int configSize = Math.max(1, maximumSize / 10);
+		records = new BoundedCache<>(maximumSize, timeToLive, TimeUnit.MILLISECONDS);
+		keygroupConfigs = new BoundedCache<>(configSize, timeToLive, TimeUnit.MILLISECONDS);
+		nodeConfigs = new BoundedCache<>(configSize, timeToLive, TimeUnit.MILLISECONDS);
+		clientConfigs = new BoundedCache<>(configSize, timeToLive, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the wrapped connector
+	 */
+	public AbstractDBConnector getConnector() {
+		return connector;
+	}
+
+	/**
+	 * @return the statistics of all caches, named records, keygroupConfigs, nodeConfigs and
+	 *         clientConfigs
+	 */
+	public List<CacheStatistics> getStatistics() {
+		List<CacheStatistics> statistics = new ArrayList<>();
+		statistics.add(getStatistics("records", records));
+		statistics.add(getStatistics("keygroupConfigs", keygroupConfigs));
+		statistics.add(getStatistics("nodeConfigs", nodeConfigs));
+		statistics.add(getStatistics("clientConfigs", clientConfigs));
+		return statistics;
+	}
+
+	private static CacheStatistics getStatistics(String name, BoundedCache<?, ?> cache) {
+		return new CacheStatistics(name, cache.getHitCount(), cache.getMissCount(),
+				cache.getHitRate(), cache.getEvictionCount(), cache.getExpirationCount(),
+				cache.size(), cache.getMaximumSize());
+	}
+
+	@Override
+	public void setMessageHistorySize(int messageHistorySize) {
+		super.setMessageHistorySize(messageHistorySize);
+		connector.setMessageHistorySize(messageHistorySize);
+	}
+
+	@Override
+	public String dbConnection_initiate() throws FBaseStorageConnectorException {
+		return connector.dbConnection_initiate();
+	}
+
+	@Override
+	public void dbConnection_close() {
+		logger.info("Record cache: " + records);
+		logger.info("Keygroup config cache: " + keygroupConfigs);
+		connector.dbConnection_close();
+	}
+
+	@Override
+	public void dataRecords_put(DataRecord record) throws FBaseStorageConnectorException {
+		DataIdentifier dataIdentifier = record.getDataIdentifier();
+		records.startWrite(dataIdentifier);
+		try {
+			connector.dataRecords_put(record);
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			records.abortWrite(dataIdentifier);
+			throw e;
+		}
+		records.completeWrite(dataIdentifier, JSONable.clone(record));
+	}
+
+	@Override
+	public DataRecord dataRecords_get(DataIdentifier dataIdentifier)
+			throws FBaseStorageConnectorException {
+		return records.get(dataIdentifier, connector::dataRecords_get);
+	}
+
+	@Override
+	public boolean dataRecords_delete(DataIdentifier dataIdentifier)
+			throws FBaseStorageConnectorException {
+		records.startWrite(dataIdentifier);
+		try {
+			boolean deleted = connector.dataRecords_delete(dataIdentifier);
+			if (deleted) {
+				records.completeWrite(dataIdentifier, null);
+			} else {
+				records.abortWrite(dataIdentifier);
+			}
+			return deleted;
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			records.abortWrite(dataIdentifier);
+			throw e;
+		}
+	}
+
+	@Override
+	public Set<DataIdentifier> dataRecords_list(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		return connector.dataRecords_list(keygroupID);
+	}
+
+	@Override
+	public DataIdentifierPage dataRecords_listPage(KeygroupID keygroupID, String prefix,
+			String cursor, int limit) throws FBaseStorageConnectorException {
+		return connector.dataRecords_listPage(keygroupID, prefix, cursor, limit);
+	}
+
+	@Override
+	public void dataRecords_putAll(Collection<DataRecord> records)
+			throws FBaseStorageConnectorException {
+		for (DataRecord record : records) {
+			this.records.startWrite(record.getDataIdentifier());
+		}
+		try {
+			connector.dataRecords_putAll(records);
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			for (DataRecord record : records) {
+				this.records.abortWrite(record.getDataIdentifier());
+			}
+			throw e;
+		}
+		for (DataRecord record : records) {
+			this.records.completeWrite(record.getDataIdentifier(), JSONable.clone(record));
+		}
+	}
+
+	@Override
+	public Map<DataIdentifier, DataRecord> dataRecords_getAll(
+			Collection<DataIdentifier> dataIdentifiers) throws FBaseStorageConnectorException {
+		return records.getAll(dataIdentifiers, connector::dataRecords_getAll);
+	}
+
+	@Override
+	public boolean dataRecords_deleteAll(Collection<DataIdentifier> dataIdentifiers)
+			throws FBaseStorageConnectorException {
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			records.startWrite(dataIdentifier);
+		}
+		try {
+			boolean deleted = connector.dataRecords_deleteAll(dataIdentifiers);
+			for (DataIdentifier dataIdentifier : dataIdentifiers) {
+				if (deleted) {
+					records.completeWrite(dataIdentifier, null);
+				} else {
+					records.abortWrite(dataIdentifier);
+				}
+			}
+			return deleted;
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			for (DataIdentifier dataIdentifier : dataIdentifiers) {
+				records.abortWrite(dataIdentifier);
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean keygroup_create(KeygroupID keygroupID) throws FBaseStorageConnectorException {
+		records.invalidateIf(id -> keygroupID.equals(id.getKeygroupID()));
+		return connector.keygroup_create(keygroupID);
+	}
+
+	@Override
+	public boolean keygroup_delete(KeygroupID keygroupID) throws FBaseStorageConnectorException {
+		try {
+			return connector.keygroup_delete(keygroupID);
+		} finally {
+			records.invalidateIf(id -> keygroupID.equals(id.getKeygroupID()));
+		}
+	}
+
+	@Override
+	public void keygroupConfig_put(KeygroupID keygroupID, KeygroupConfig config)
+			throws FBaseStorageConnectorException {
+		keygroupConfigs.startWrite(keygroupID);
+		try {
+			connector.keygroupConfig_put(keygroupID, config);
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			keygroupConfigs.abortWrite(keygroupID);
+			throw e;
+		}
+		keygroupConfigs.completeWrite(keygroupID, JSONable.clone(config));
+	}
+
+	@Override
+	public KeygroupConfig keygroupConfig_get(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		return keygroupConfigs.get(keygroupID, connector::keygroupConfig_get);
+	}
+
+	@Override
+	public List<KeygroupID> keygroupConfig_list() throws FBaseStorageConnectorException {
+		return connector.keygroupConfig_list();
+	}
+
+	@Override
+	public void nodeConfig_put(NodeID nodeID, NodeConfig config)
+			throws FBaseStorageConnectorException {
+		nodeConfigs.startWrite(nodeID);
+		try {
+			connector.nodeConfig_put(nodeID, config);
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			nodeConfigs.abortWrite(nodeID);
+			throw e;
+		}
+		nodeConfigs.completeWrite(nodeID, JSONable.clone(config));
+	}
+
+	@Override
+	public NodeConfig nodeConfig_get(NodeID nodeID) throws FBaseStorageConnectorException {
+		return nodeConfigs.get(nodeID, connector::nodeConfig_get);
+	}
+
+	@Override
+	public List<NodeID> nodeConfig_list() throws FBaseStorageConnectorException {
+		return connector.nodeConfig_list();
+	}
+
+	@Override
+	public void clientConfig_put(ClientID clientID, ClientConfig config)
+			throws FBaseStorageConnectorException {
+		clientConfigs.startWrite(clientID);
+		try {
+			connector.clientConfig_put(clientID, config);
+		} catch (FBaseStorageConnectorException | RuntimeException e) {
+			clientConfigs.abortWrite(clientID);
+			throw e;
+		}
+		clientConfigs.completeWrite(clientID, JSONable.clone(config));
+	}
+
+	@Override
+	public ClientConfig clientConfig_get(ClientID clientID)
+			throws FBaseStorageConnectorException {
+		return clientConfigs.get(clientID, connector::clientConfig_get);
+	}
+
+	@Override
+	public List<ClientID> clientConfig_list() throws FBaseStorageConnectorException {
+		return connector.clientConfig_list();
+	}
+
+	@Override
+	public Integer keyGroupSubscriberMachines_put(KeygroupID keygroup, String machine)
+			throws FBaseStorageConnectorException {
+		return connector.keyGroupSubscriberMachines_put(keygroup, machine);
+	}
+
+	@Override
+	public Map<KeygroupID, Pair<String, Integer>> keyGroupSubscriberMachines_listAll()
+			throws FBaseStorageConnectorException {
+		return connector.keyGroupSubscriberMachines_listAll();
+	}
+
+	@Override
+	public void keyGroupSubscriberMachines_remove(KeygroupID keygroupid)
+			throws FBaseStorageConnectorException {
+		connector.keyGroupSubscriberMachines_remove(keygroupid);
+	}
+
+	@Override
+	public void heartbeats_update(String machine, String address)
+			throws FBaseStorageConnectorException {
+		connector.heartbeats_update(machine, address);
+	}
+
+	@Override
+	public Map<String, Pair<String, Long>> heartbeats_listAll()
+			throws FBaseStorageConnectorException {
+		return connector.heartbeats_listAll();
+	}
+
+	@Override
+	public boolean heartbeats_remove(String machine) throws FBaseStorageConnectorException {
+		return connector.heartbeats_remove(machine);
+	}
+
+	@Override
+	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
+		return connector.messageHistory_getNextMessageID();
+	}
+
+	@Override
+	public void messageHistory_put(MessageID messageID, DataIdentifier relatedData)
+			throws FBaseStorageConnectorException {
+		connector.messageHistory_put(messageID, relatedData);
+	}
+
+	@Override
+	public DataIdentifier messageHistory_get(MessageID messageID)
+			throws FBaseStorageConnectorException {
+		return connector.messageHistory_get(messageID);
+	}
+
+	@Override
+	public void cache_invalidateDataRecord(DataIdentifier dataIdentifier) {
+		records.invalidate(dataIdentifier);
+		connector.cache_invalidateDataRecord(dataIdentifier);
+	}
+
+	@Override
+	public void cache_invalidateKeygroupConfig(KeygroupID keygroupID) {
+		keygroupConfigs.invalidate(keygroupID);
+		connector.cache_invalidateKeygroupConfig(keygroupID);
+	}
+
+	@Override
+	public void cache_invalidateNodeConfig(NodeID nodeID) {
+		nodeConfigs.invalidate(nodeID);
+		connector.cache_invalidateNodeConfig(nodeID);
+	}
+
+}
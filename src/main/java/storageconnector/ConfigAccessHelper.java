@@ -1,10 +1,13 @@
 package storageconnector;
 
+import java.util.concurrent.TimeUnit;
+
 import control.FBase;
 import exceptions.FBaseCommunicationException;
 import exceptions.FBaseNamingServiceException;
 import exceptions.FBaseStorageConnectorException;
 import model.config.ClientConfig;
+import model.config.Config;
 import model.config.KeygroupConfig;
 import model.config.NodeConfig;
 import model.data.ClientID;
@@ -16,17 +19,46 @@ import model.data.NodeID;
  * for that is that this class will try to load the config from the NamingService if it cannot
  * be found in the database.
  * 
+ * Loaded configs are cached for {@link #CACHE_TIME_TO_LIVE} milliseconds, configs that could
+ * not be found for {@link #CACHE_NEGATIVE_TIME_TO_LIVE} milliseconds. Code that changes a
+ * config must invalidate the cached version.
+ * 
  * @author jonathanhasenburg
  *
  */
 public class ConfigAccessHelper {
 
+	/**
+	 * Maximum number of cached configurations per type
+	 */
+	private static final int CACHE_SIZE = 10000;
+
+	/**
+	 * Time in milliseconds after which a cached configuration is loaded again
+	 */
+	private static final long CACHE_TIME_TO_LIVE = 60000;
+
+	/**
+	 * Time in milliseconds after which a configuration that could not be found is looked up
+	 * again
+	 */
+	private static final long CACHE_NEGATIVE_TIME_TO_LIVE = 5000;
+
 	private final FBase fBase;
 
+	private final ConfigCache<KeygroupID, KeygroupConfig> keygroupConfigs = createCache();
+	private final ConfigCache<NodeID, NodeConfig> nodeConfigs = createCache();
+	private final ConfigCache<ClientID, ClientConfig> clientConfigs = createCache();
+
 	public ConfigAccessHelper(FBase fBase) {
 		this.fBase = fBase;
 	}
 
+	private static <K, V extends Config> ConfigCache<K, V> createCache() {
+		return new ConfigCache<>(CACHE_SIZE, CACHE_TIME_TO_LIVE, CACHE_NEGATIVE_TIME_TO_LIVE,
+				TimeUnit.MILLISECONDS);
+	}
+
 	/**
 	 * Extends the functionality of {@link AbstractDBConnector#keygroupConfig_get(KeygroupID)}
 	 * about naming service querying if not existent in node db.
@@ -40,11 +72,13 @@ public class ConfigAccessHelper {
 	public KeygroupConfig keygroupConfig_get(KeygroupID keygroupID)
 			throws FBaseStorageConnectorException, FBaseCommunicationException,
 			FBaseNamingServiceException {
-		KeygroupConfig config = fBase.connector.keygroupConfig_get(keygroupID);
-		if (config == null) {
-			config = fBase.namingServiceSender.sendKeygroupConfigRead(keygroupID);
-		}
-		return config;
+		return keygroupConfigs.get(keygroupID, id -> {
+			KeygroupConfig config = fBase.connector.keygroupConfig_get(id);
+			if (config == null) {
+				config = fBase.namingServiceSender.sendKeygroupConfigRead(id);
+			}
+			return config;
+		});
 	}
 
 	/**
@@ -59,11 +93,13 @@ public class ConfigAccessHelper {
 	 */
 	public NodeConfig nodeConfig_get(NodeID nodeID) throws FBaseStorageConnectorException,
 			FBaseCommunicationException, FBaseNamingServiceException {
-		NodeConfig nodeConfig = fBase.connector.nodeConfig_get(nodeID);
-		if (nodeConfig == null) {
-			nodeConfig = fBase.namingServiceSender.sendNodeConfigRead(nodeID);
-		}
-		return nodeConfig;
+		return nodeConfigs.get(nodeID, id -> {
+			NodeConfig nodeConfig = fBase.connector.nodeConfig_get(id);
+			if (nodeConfig == null) {
+				nodeConfig = fBase.namingServiceSender.sendNodeConfigRead(id);
+			}
+			return nodeConfig;
+		});
 	}
 
 	/**
@@ -79,11 +115,40 @@ public class ConfigAccessHelper {
 	 */
 	public ClientConfig clientConfig_get(ClientID clientID) throws FBaseStorageConnectorException,
 			FBaseCommunicationException, FBaseNamingServiceException {
-		ClientConfig clientConfig = fBase.connector.clientConfig_get(clientID);
-		if (clientConfig == null) {
-			clientConfig = fBase.namingServiceSender.sendClientConfigRead(clientID);
-		}
-		return clientConfig;
+		return clientConfigs.get(clientID, id -> {
+			ClientConfig clientConfig = fBase.connector.clientConfig_get(id);
+			if (clientConfig == null) {
+				clientConfig = fBase.namingServiceSender.sendClientConfigRead(id);
+			}
+			return clientConfig;
+		});
+	}
+
+	/**
+	 * Removes the cached {@link KeygroupConfig}, must be called after the config was changed.
+	 * 
+	 * @param keygroupID
+	 */
+	public void keygroupConfig_invalidate(KeygroupID keygroupID) {
+		keygroupConfigs.invalidate(keygroupID);
+	}
+
+	/**
+	 * Removes the cached {@link NodeConfig}, must be called after the config was changed.
+	 * 
+	 * @param nodeID
+	 */
+	public void nodeConfig_invalidate(NodeID nodeID) {
+		nodeConfigs.invalidate(nodeID);
+	}
+
+	/**
+	 * Removes the cached {@link ClientConfig}, must be called after the config was changed.
+	 * 
+	 * @param clientID
+	 */
+	public void clientConfig_invalidate(ClientID clientID) {
+		clientConfigs.invalidate(clientID);
 	}
 
 }
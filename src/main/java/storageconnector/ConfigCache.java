@@ -0,0 +1,194 @@
+package storageconnector;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseNamingServiceException;
+import exceptions.FBaseStorageConnectorException;
+import model.config.Config;
+
+/**
+ * Caches configurations that are loaded by the {@link ConfigAccessHelper}.
+ *
+ * Concurrent misses for the same key are loaded only once, all other callers wait for the
+ * result of the first one (single-flight). Besides found configurations, the cache also
+ * remembers for a shorter time that no configuration exists, i.e., the loader returned null
+ * or the naming service rejected the request. Failures to reach the storage or the naming
+ * service are not cached.
+ *
+ * A loaded configuration never replaces an unexpired cached configuration with a higher
+ * version, and a load that was running while its key was invalidated does not update the
+ * cache.
+ *
+ * @param <K> the type of the configuration ids
+ * @param <V> the type of the configurations
+ */
+public class ConfigCache<K, V extends Config> {
+
+	/**
+	 * Loads a configuration that is not cached.
+	 */
+	@FunctionalInterface
+	public interface Loader<K, V> {
+		V load(K key) throws FBaseStorageConnectorException, FBaseCommunicationException,
+				FBaseNamingServiceException;
+	}
+
+	private static class Entry<V> {
+		private final V config;
+		private final String failure;
+		private final long expiresAt;
+
+		private Entry(V config, String failure, long expiresAt) {
+			this.config = config;
+			this.failure = failure;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(long now) {
+			return now - expiresAt > 0;
+		}
+	}
+
+	private final int maximumSize;
+	private final long timeToLiveNanos;
+	private final long negativeTimeToLiveNanos;
+
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, CompletableFuture<Entry<V>>> loading =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * @param maximumSize - the maximum number of cached entries
+	 * @param timeToLive - the time after which a found configuration expires
+	 * @param negativeTimeToLive - the time after which a missing configuration expires
+	 * @param unit - the unit of both times
+	 */
+	public ConfigCache(int maximumSize, long timeToLive, long negativeTimeToLive,
+			TimeUnit unit) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be greater than 0");
+		}
+		this.maximumSize = maximumSize;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+		this.negativeTimeToLiveNanos = unit.toNanos(negativeTimeToLive);
+	}
+
+	/**
+	 * Returns the cached configuration of the key or loads it if it is not cached.
+	 *
+	 * @param key - the configuration id
+	 * @param loader - used to load the configuration if it is not cached
+	 * @return the configuration, or null if the loader returned null
+	 * @throws FBaseStorageConnectorException
+	 * @throws FBaseCommunicationException
+	 * @throws FBaseNamingServiceException also if a cached rejection of the naming service is
+	 *             found
+	 */
+	public V get(K key, Loader<K, V> loader) throws FBaseStorageConnectorException,
+			FBaseCommunicationException, FBaseNamingServiceException {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && !entry.isExpired(System.nanoTime())) {
+			return unwrap(entry);
+		}
+
+		CompletableFuture<Entry<V>> future = new CompletableFuture<>();
+		CompletableFuture<Entry<V>> running = loading.putIfAbsent(key, future);
+		if (running != null) {
+			return unwrap(await(running));
+		}
+
+		try {
+			try {
+				V config = loader.load(key);
+				entry = new Entry<>(config, null, System.nanoTime()
+						+ (config == null ? negativeTimeToLiveNanos : timeToLiveNanos));
+			} catch (FBaseNamingServiceException e) {
+				entry = new Entry<>(null, e.getMessage(),
+						System.nanoTime() + negativeTimeToLiveNanos);
+			}
+		} catch (FBaseStorageConnectorException | FBaseCommunicationException
+				| RuntimeException e) {
+			loading.remove(key, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+
+		// only update the cache if the key was not invalidated while loading
+		if (loading.remove(key, future)) {
+			store(key, entry);
+		}
+		future.complete(entry);
+		return unwrap(entry);
+	}
+
+	private void store(K key, Entry<V> entry) {
+		long now = System.nanoTime();
+		if (entries.size() >= maximumSize && !entries.containsKey(key)) {
+			entries.values().removeIf(e -> e.isExpired(now));
+			if (entries.size() >= maximumSize) {
+				entries.clear();
+			}
+		}
+		// an unexpired cached config with a higher version is kept
+		entries.merge(key, entry, (cached, loaded) -> {
+			if (!cached.isExpired(now) && cached.config != null && loaded.config != null
+					&& cached.config.getVersion() != null && loaded.config.getVersion() != null
+					&& cached.config.getVersion() > loaded.config.getVersion()) {
+				return cached;
+			}
+			return loaded;
+		});
+	}
+
+	private Entry<V> await(CompletableFuture<Entry<V>> running)
+			throws FBaseStorageConnectorException, FBaseCommunicationException {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof FBaseStorageConnectorException) {
+				throw (FBaseStorageConnectorException) cause;
+			} else if (cause instanceof FBaseCommunicationException) {
+				throw (FBaseCommunicationException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+
+	private V unwrap(Entry<V> entry) throws FBaseNamingServiceException {
+		if (entry.failure != null) {
+			throw new FBaseNamingServiceException(entry.failure);
+		}
+		return entry.config;
+	}
+
+	/**
+	 * Removes the key from the cache. Loads that are currently running for the key will not
+	 * update the cache.
+	 *
+	 * @param key - the configuration id
+	 */
+	public void invalidate(K key) {
+		loading.remove(key);
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all keys from the cache.
+	 */
+	public void invalidateAll() {
+		loading.clear();
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+}
@@ -0,0 +1,512 @@
+package storageconnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.javatuples.Pair;
+
+import de.hasenburg.fbase.model.DataIdentifierPage;
+import exceptions.FBaseStorageConnectorException;
+import model.JSONable;
+import model.config.ClientConfig;
+import model.config.KeygroupConfig;
+import model.config.NodeConfig;
+import model.data.ClientID;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.MessageID;
+import model.data.NodeID;
+
+/**
+ * Stores all data durably on the local disk of the machine in an {@link AppendOnlyLog}. The
+ * log is kept in a single file per node in the configured directory, so only one machine can
+ * exist per node (like for {@link OnHeapDBConnector}).<br>
+ * <br>
+ * Every write is synced to disk before it returns. Reads look up the position of the value in
+ * memory and read it with a single positional read. After a crash, the log is replayed when
+ * the connection is initiated and incomplete writes are discarded. A background thread
+ * compacts the log when most of it is no longer live.
+ */
+public class LocalLogDBConnector extends AbstractDBConnector {
+
+	private static final Logger logger = Logger.getLogger(LocalLogDBConnector.class.getName());
+
+	private static final String NS_KEYGROUPS = "keygroups";
+	private static final String NS_RECORDS_PREFIX = "records/";
+	private static final String NS_KEYGROUP_CONFIGS = "keygroup-configs";
+	private static final String NS_NODE_CONFIGS = "node-configs";
+	private static final String NS_CLIENT_CONFIGS = "client-configs";
+	private static final String NS_SUBSCRIBER_MACHINES = "subscriber-machines";
+	private static final String NS_HEARTBEATS = "heartbeats";
+	private static final String NS_MESSAGE_HISTORY = "message-history";
+
+	private static final String MACHINE_NAME = "M1";
+
+	/** compaction starts once this many bytes are no longer live ... */
+	private static final long COMPACTION_MIN_DEAD_BYTES = 16 * 1024 * 1024;
+	/** ... and they make up more than half of the log */
+	private static final double COMPACTION_MIN_DEAD_RATIO = 0.5;
+	private static final long COMPACTION_CHECK_INTERVAL_SECONDS = 30;
+
+	private final NodeID nodeID;
+	private final AppendOnlyLog log;
+
+	private MessageHistoryRing messageHistory = null;
+	private final AtomicInteger lastMessageVersion = new AtomicInteger(0);
+
+	private ScheduledExecutorService compactor = null;
+
+	public LocalLogDBConnector(NodeID nodeID, String directory) {
+		this.nodeID = nodeID;
+		this.log = new AppendOnlyLog(new File(directory, nodeID.getID() + ".log"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see storageconnector.AbstractDBConnector#dbConnection_initiate() Always returns the same
+	 * name, because always only one machine exists for a local node
+	 */
+	@Override
+	public synchronized String dbConnection_initiate() throws FBaseStorageConnectorException {
+		try {
+			log.open();
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+
+		// rebuild message history, entries outside of the window are pruned
+		messageHistory = new MessageHistoryRing(getMessageHistorySize());
+		for (String key : log.keys(NS_MESSAGE_HISTORY)) {
+			int version = Integer.parseInt(key);
+			DataIdentifier identifier = fromBytes(log_get(NS_MESSAGE_HISTORY, key),
+					DataIdentifier.class);
+			messageHistory.put(version, identifier);
+			lastMessageVersion.accumulateAndGet(version, Math::max);
+		}
+		int lowestVersion = messageHistory.getHighestVersion() - getMessageHistorySize();
+		for (String key : log.keys(NS_MESSAGE_HISTORY)) {
+			if (Integer.parseInt(key) <= lowestVersion) {
+				log.forget(NS_MESSAGE_HISTORY, key);
+			}
+		}
+
+		compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "local-log-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+				COMPACTION_CHECK_INTERVAL_SECONDS, COMPACTION_CHECK_INTERVAL_SECONDS,
+				TimeUnit.SECONDS);
+
+		logger.info("Connector initialized.");
+		return MACHINE_NAME;
+	}
+
+	@Override
+	public synchronized void dbConnection_close() {
+		if (compactor != null) {
+			compactor.shutdownNow();
+			compactor = null;
+		}
+		try {
+			log.close();
+		} catch (IOException e) {
+			logger.warn("Could not close log", e);
+		}
+		logger.info("Connector closed.");
+	}
+
+	private void compactIfNeeded() {
+		long deadBytes = log.getDeadBytes();
+		if (deadBytes < COMPACTION_MIN_DEAD_BYTES
+				|| deadBytes < log.getSize() * COMPACTION_MIN_DEAD_RATIO) {
+			return;
+		}
+		try {
+			log.compact();
+		} catch (IOException e) {
+			logger.error("Could not compact log", e);
+		}
+	}
+
+	/**
+	 * Compacts the log regardless of its state. Mainly used for tests.
+	 *
+	 * @throws FBaseStorageConnectorException if the compaction fails
+	 */
+	public void compact() throws FBaseStorageConnectorException {
+		try {
+			log.compact();
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
+	/*
+	 * Log access
+	 */
+
+	private void log_put(String namespace, String key, byte[] value)
+			throws FBaseStorageConnectorException {
+		try {
+			log.put(namespace, key, value);
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
+	private byte[] log_get(String namespace, String key) throws FBaseStorageConnectorException {
+		try {
+			return log.get(namespace, key);
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
+	private boolean log_delete(String namespace, String key)
+			throws FBaseStorageConnectorException {
+		try {
+			return log.delete(namespace, key);
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
+	private static byte[] toBytes(Object object) {
+		return JSONable.toJSON(object).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static <T> T fromBytes(byte[] bytes, Class<T> targetClass) {
+		if (bytes == null) {
+			return null;
+		}
+		return JSONable.fromJSON(new String(bytes, StandardCharsets.UTF_8), targetClass);
+	}
+
+	private static String getRecordNamespace(KeygroupID keygroupID) {
+		return NS_RECORDS_PREFIX + keygroupID.getID();
+	}
+
+	private void checkKeygroupExists(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		if (!log.contains(NS_KEYGROUPS, keygroupID.getID())) {
+			throw new FBaseStorageConnectorException("Keygroup does not exist.");
+		}
+	}
+
+	/*
+	 * DATA STORAGE
+	 */
+
+	@Override
+	public void dataRecords_put(DataRecord record) throws FBaseStorageConnectorException {
+		DataIdentifier identifier = record.getDataIdentifier();
+		checkKeygroupExists(identifier.getKeygroupID());
+		log_put(getRecordNamespace(identifier.getKeygroupID()), identifier.getDataID(),
+				toBytes(record));
+	}
+
+	@Override
+	public DataRecord dataRecords_get(DataIdentifier dataIdentifier)
+			throws FBaseStorageConnectorException {
+		checkKeygroupExists(dataIdentifier.getKeygroupID());
+		return fromBytes(log_get(getRecordNamespace(dataIdentifier.getKeygroupID()),
+				dataIdentifier.getDataID()), DataRecord.class);
+	}
+
+	@Override
+	public boolean dataRecords_delete(DataIdentifier dataIdentifier)
+			throws FBaseStorageConnectorException {
+		checkKeygroupExists(dataIdentifier.getKeygroupID());
+		log_delete(getRecordNamespace(dataIdentifier.getKeygroupID()), dataIdentifier.getDataID());
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_putAll(java.util.Collection) Writes
+	 * and syncs the records of each keygroup at once
+	 */
+	@Override
+	public void dataRecords_putAll(Collection<DataRecord> records)
+			throws FBaseStorageConnectorException {
+		Map<KeygroupID, Map<String, byte[]>> recordsByKeygroup = new HashMap<>();
+		for (DataRecord record : records) {
+			DataIdentifier identifier = record.getDataIdentifier();
+			recordsByKeygroup.computeIfAbsent(identifier.getKeygroupID(), k -> new HashMap<>())
+					.put(identifier.getDataID(), toBytes(record));
+		}
+		for (KeygroupID keygroupID : recordsByKeygroup.keySet()) {
+			checkKeygroupExists(keygroupID);
+		}
+		try {
+			for (Map.Entry<KeygroupID, Map<String, byte[]>> entry : recordsByKeygroup
+					.entrySet()) {
+				log.putAll(getRecordNamespace(entry.getKey()), entry.getValue());
+			}
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
+	@Override
+	public boolean dataRecords_deleteAll(Collection<DataIdentifier> dataIdentifiers)
+			throws FBaseStorageConnectorException {
+		Map<KeygroupID, List<String>> keysByKeygroup = new HashMap<>();
+		for (DataIdentifier identifier : dataIdentifiers) {
+			keysByKeygroup.computeIfAbsent(identifier.getKeygroupID(), k -> new ArrayList<>())
+					.add(identifier.getDataID());
+		}
+		for (KeygroupID keygroupID : keysByKeygroup.keySet()) {
+			checkKeygroupExists(keygroupID);
+		}
+		try {
+			for (Map.Entry<KeygroupID, List<String>> entry : keysByKeygroup.entrySet()) {
+				log.deleteAll(getRecordNamespace(entry.getKey()), entry.getValue());
+			}
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+		return true;
+	}
+
+	@Override
+	public Set<DataIdentifier> dataRecords_list(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		checkKeygroupExists(keygroupID);
+		Set<DataIdentifier> identifiers = new HashSet<>();
+		for (String dataID : log.keys(getRecordNamespace(keygroupID))) {
+			identifiers.add(new DataIdentifier(keygroupID, dataID));
+		}
+		return identifiers;
+	}
+
+	@Override
+	public DataIdentifierPage dataRecords_listPage(KeygroupID keygroupID, String prefix,
+			String cursor, int limit) throws FBaseStorageConnectorException {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		checkKeygroupExists(keygroupID);
+		String namespace = getRecordNamespace(keygroupID);
+		Iterator<String> dataIDs;
+		if (cursor != null && (prefix == null || cursor.compareTo(prefix) >= 0)) {
+			dataIDs = log.keys(namespace, cursor, false);
+		} else {
+			dataIDs = log.keys(namespace, prefix, true);
+		}
+		return createPage(keygroupID, dataIDs, prefix, limit);
+	}
+
+	@Override
+	public synchronized boolean keygroup_create(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		if (log.contains(NS_KEYGROUPS, keygroupID.getID())) {
+			throw new FBaseStorageConnectorException("Keygroup already exists.");
+		}
+		log_put(NS_KEYGROUPS, keygroupID.getID(), new byte[0]);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean keygroup_delete(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		log_delete(NS_KEYGROUPS, keygroupID.getID());
+		try {
+			log.dropNamespace(getRecordNamespace(keygroupID));
+		} catch (IOException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+		return true;
+	}
+
+	/*
+	 * CONFIGURATIONS
+	 */
+
+	@Override
+	public void keygroupConfig_put(KeygroupID keygroupID, KeygroupConfig config)
+			throws FBaseStorageConnectorException {
+		log_put(NS_KEYGROUP_CONFIGS, keygroupID.getID(), toBytes(config));
+	}
+
+	@Override
+	public KeygroupConfig keygroupConfig_get(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		return fromBytes(log_get(NS_KEYGROUP_CONFIGS, keygroupID.getID()), KeygroupConfig.class);
+	}
+
+	@Override
+	public List<KeygroupID> keygroupConfig_list() throws FBaseStorageConnectorException {
+		List<KeygroupID> keygroupIDs = new ArrayList<>();
+		for (String key : log.keys(NS_KEYGROUP_CONFIGS)) {
+			keygroupIDs.add(KeygroupID.createFromString(key));
+		}
+		return keygroupIDs;
+	}
+
+	@Override
+	public void nodeConfig_put(NodeID nodeID, NodeConfig config)
+			throws FBaseStorageConnectorException {
+		log_put(NS_NODE_CONFIGS, nodeID.getID(), toBytes(config));
+	}
+
+	@Override
+	public NodeConfig nodeConfig_get(NodeID nodeID) throws FBaseStorageConnectorException {
+		return fromBytes(log_get(NS_NODE_CONFIGS, nodeID.getID()), NodeConfig.class);
+	}
+
+	@Override
+	public List<NodeID> nodeConfig_list() throws FBaseStorageConnectorException {
+		List<NodeID> nodeIDs = new ArrayList<>();
+		for (String key : log.keys(NS_NODE_CONFIGS)) {
+			nodeIDs.add(new NodeID(key));
+		}
+		return nodeIDs;
+	}
+
+	@Override
+	public void clientConfig_put(ClientID clientID, ClientConfig config)
+			throws FBaseStorageConnectorException {
+		log_put(NS_CLIENT_CONFIGS, clientID.getID(), toBytes(config));
+	}
+
+	@Override
+	public ClientConfig clientConfig_get(ClientID clientID)
+			throws FBaseStorageConnectorException {
+		return fromBytes(log_get(NS_CLIENT_CONFIGS, clientID.getID()), ClientConfig.class);
+	}
+
+	@Override
+	public List<ClientID> clientConfig_list() throws FBaseStorageConnectorException {
+		List<ClientID> clientIDs = new ArrayList<>();
+		for (String key : log.keys(NS_CLIENT_CONFIGS)) {
+			clientIDs.add(new ClientID(key));
+		}
+		return clientIDs;
+	}
+
+	/*
+	 * SUBSCRIBER MACHINES, stored as "version\nmachine"
+	 */
+
+	@Override
+	public synchronized Integer keyGroupSubscriberMachines_put(KeygroupID keygroup,
+			String machine) throws FBaseStorageConnectorException {
+		Pair<String, Integer> current = readSubscriberMachine(keygroup.getID());
+		int version = current == null ? 1 : current.getValue1() + 1;
+		String value = version + "\n" + (machine == null ? "" : machine);
+		log_put(NS_SUBSCRIBER_MACHINES, keygroup.getID(), value.getBytes(StandardCharsets.UTF_8));
+		return version;
+	}
+
+	private Pair<String, Integer> readSubscriberMachine(String key)
+			throws FBaseStorageConnectorException {
+		byte[] bytes = log_get(NS_SUBSCRIBER_MACHINES, key);
+		if (bytes == null) {
+			return null;
+		}
+		String[] parts = new String(bytes, StandardCharsets.UTF_8).split("\n", 2);
+		String machine = parts.length < 2 || parts[1].isEmpty() ? null : parts[1];
+		return new Pair<String, Integer>(machine, Integer.parseInt(parts[0]));
+	}
+
+	@Override
+	public Map<KeygroupID, Pair<String, Integer>> keyGroupSubscriberMachines_listAll()
+			throws FBaseStorageConnectorException {
+		Map<KeygroupID, Pair<String, Integer>> machines = new HashMap<>();
+		for (String key : log.keys(NS_SUBSCRIBER_MACHINES)) {
+			Pair<String, Integer> machine = readSubscriberMachine(key);
+			if (machine != null) {
+				machines.put(KeygroupID.createFromString(key), machine);
+			}
+		}
+		return machines;
+	}
+
+	@Override
+	public synchronized void keyGroupSubscriberMachines_remove(KeygroupID keygroupid)
+			throws FBaseStorageConnectorException {
+		log_delete(NS_SUBSCRIBER_MACHINES, keygroupid.getID());
+	}
+
+	/*
+	 * HEARTBEATS, stored as "time\naddress"
+	 */
+
+	@Override
+	public void heartbeats_update(String machine, String address)
+			throws FBaseStorageConnectorException {
+		String value = System.currentTimeMillis() + "\n" + address;
+		log_put(NS_HEARTBEATS, machine, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public Map<String, Pair<String, Long>> heartbeats_listAll()
+			throws FBaseStorageConnectorException {
+		Map<String, Pair<String, Long>> heartbeats = new HashMap<>();
+		for (String machine : log.keys(NS_HEARTBEATS)) {
+			byte[] bytes = log_get(NS_HEARTBEATS, machine);
+			if (bytes != null) {
+				String[] parts = new String(bytes, StandardCharsets.UTF_8).split("\n", 2);
+				heartbeats.put(machine,
+						new Pair<String, Long>(parts[1], Long.parseLong(parts[0])));
+			}
+		}
+		return heartbeats;
+	}
+
+	@Override
+	public boolean heartbeats_remove(String machine) throws FBaseStorageConnectorException {
+		log_delete(NS_HEARTBEATS, machine);
+		return true;
+	}
+
+	/*
+	 * MESSAGE HISTORY, the log is the durable copy of the in-memory ring
+	 */
+
+	@Override
+	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
+		return new MessageID(nodeID, MACHINE_NAME, lastMessageVersion.incrementAndGet());
+	}
+
+	@Override
+	public void messageHistory_put(MessageID messageID, DataIdentifier relatedData)
+			throws FBaseStorageConnectorException {
+		int version = messageID.getVersion();
+		log_put(NS_MESSAGE_HISTORY, Integer.toString(version), toBytes(relatedData));
+		messageHistory.put(version, relatedData);
+		lastMessageVersion.accumulateAndGet(version, Math::max);
+		// entries that left the window are dropped with the next compaction
+		int prunedVersion = version - getMessageHistorySize();
+		if (prunedVersion > 0) {
+			log.forget(NS_MESSAGE_HISTORY, Integer.toString(prunedVersion));
+		}
+	}
+
+	@Override
+	public DataIdentifier messageHistory_get(MessageID messageID)
+			throws FBaseStorageConnectorException {
+		return messageHistory.get(messageID.getVersion());
+	}
+
+}
@@ -0,0 +1,116 @@
+package storageconnector;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import model.data.DataIdentifier;
+
+/**
+ * A bounded message history for the messages of a single node and machine combination.
+ *
+ * Entries are stored in a fixed size array at the position version % capacity, so a new
+ * version overwrites the entry that is exactly capacity versions older. Only the last
+ * capacity versions can be retrieved; older versions are treated like unknown versions.
+ *
+ * Writers are serialized, readers do not lock. A writer first invalidates the version of a
+ * slot, then sets the identifier and finally publishes the new version, so a reader that sees
+ * the same version before and after reading the identifier got the matching identifier.
+ * Versions of a slot only grow, so a version cannot reappear in a slot.
+ */
+public class MessageHistoryRing {
+
+	private final int capacity;
+
+	/** the version stored in each slot, 0 if the slot is empty or being written */
+	private final AtomicIntegerArray versions;
+	private final AtomicReferenceArray<DataIdentifier> identifiers;
+
+	private volatile int highestVersion = 0;
+
+	public MessageHistoryRing(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be greater than 0");
+		}
+		this.capacity = capacity;
+		this.versions = new AtomicIntegerArray(capacity);
+		this.identifiers = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Stores the given identifier for the given version. Versions that are already outside
+	 * of the window of the highest stored version are ignored.
+	 *
+	 * @param version - the version of the message, must be greater than 0
+	 * @param identifier - the related {@link DataIdentifier}
+	 */
+	public synchronized void put(int version, DataIdentifier identifier) {
+		if (version <= 0) {
+			throw new IllegalArgumentException("Version must be greater than 0");
+		}
+		if (version <= highestVersion - capacity) {
+			return;
+		}
+		int slot = version % capacity;
+		if (versions.get(slot) > version) {
+			return;
+		}
+		versions.set(slot, 0);
+		identifiers.set(slot, identifier);
+		versions.set(slot, version);
+		if (version > highestVersion) {
+			highestVersion = version;
+		}
+	}
+
+	/**
+	 * @param version - the version of the message
+	 * @return the stored {@link DataIdentifier} or null, if the version was never stored or
+	 *         has already been overwritten
+	 */
+	public DataIdentifier get(int version) {
+		if (version <= 0) {
+			return null;
+		}
+		int slot = version % capacity;
+		if (versions.get(slot) != version) {
+			return null;
+		}
+		DataIdentifier identifier = identifiers.get(slot);
+		if (versions.get(slot) != version) {
+			return null;
+		}
+		return identifier;
+	}
+
+	/**
+	 * @return the highest version stored so far, or 0 if nothing was stored yet
+	 */
+	public int getHighestVersion() {
+		return highestVersion;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Creates a new ring with the given capacity that contains the entries of this ring which
+	 * fit into the new window.
+	 *
+	 * @param newCapacity - the capacity of the new ring
+	 * @return the new ring
+	 */
+	public synchronized MessageHistoryRing resize(int newCapacity) {
+		MessageHistoryRing ring = new MessageHistoryRing(newCapacity);
+		int lowestVersion = Math.max(1, highestVersion - Math.min(capacity, newCapacity) + 1);
+		for (int version = lowestVersion; version <= highestVersion; version++) {
+			DataIdentifier identifier = get(version);
+			if (identifier != null) {
+				ring.put(version, identifier);
+			}
+		}
+		ring.highestVersion = Math.max(ring.highestVersion, highestVersion);
+		return ring;
+	}
+
+}
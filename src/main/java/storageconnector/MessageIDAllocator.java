@@ -0,0 +1,89 @@
+package storageconnector;
+
+import exceptions.FBaseStorageConnectorException;
+
+/**
+ * Hands out the versions of {@link model.data.MessageID}s for a single node and machine
+ * combination from memory.
+ *
+ * Versions are reserved in blocks of a fixed size. Only the upper bound of the current block
+ * is persisted via the {@link ReservationStore}, so a durable write is needed once per block
+ * instead of a lookup of the last used version for every message.
+ *
+ * If a machine stops without calling {@link #release()}, allocation continues after the last
+ * persisted upper bound and the unused versions of that block are skipped. Subscribers treat
+ * them like missed messages, for which the publishing node answers that it has no data.
+ */
+public class MessageIDAllocator {
+
+	/**
+	 * Persists the upper bound of the reserved block.
+	 */
+	public interface ReservationStore {
+
+		/**
+		 * @return the last persisted upper bound, or 0 if nothing was reserved yet
+		 * @throws FBaseStorageConnectorException when the operation fails
+		 */
+		int readReservedUpperBound() throws FBaseStorageConnectorException;
+
+		/**
+		 * Durably stores a new upper bound; it must be persisted when the method returns.
+		 *
+		 * @param upperBound - the highest version that may be handed out
+		 * @throws FBaseStorageConnectorException when the operation fails
+		 */
+		void writeReservedUpperBound(int upperBound) throws FBaseStorageConnectorException;
+
+	}
+
+	private final int blockSize;
+	private final ReservationStore store;
+
+	private boolean initialized = false;
+	private int nextVersion = 1;
+	private int reservedUpperBound = 0;
+
+	public MessageIDAllocator(int blockSize, ReservationStore store) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be greater than 0");
+		}
+		this.blockSize = blockSize;
+		this.store = store;
+	}
+
+	/**
+	 * Returns the next version. Only reaches out to the {@link ReservationStore} when called
+	 * for the first time or when the current block is used up.
+	 *
+	 * @return the next version
+	 * @throws FBaseStorageConnectorException if a new block cannot be reserved
+	 */
+	public synchronized int nextVersion() throws FBaseStorageConnectorException {
+		if (!initialized) {
+			reservedUpperBound = store.readReservedUpperBound();
+			nextVersion = reservedUpperBound + 1;
+			initialized = true;
+		}
+		if (nextVersion > reservedUpperBound) {
+			int newUpperBound = nextVersion - 1 + blockSize;
+			store.writeReservedUpperBound(newUpperBound);
+			reservedUpperBound = newUpperBound;
+		}
+		return nextVersion++;
+	}
+
+	/**
+	 * Gives back the unused versions of the current block, so that the next allocator for
+	 * the same node and machine continues without a gap.
+	 *
+	 * @throws FBaseStorageConnectorException when the operation fails
+	 */
+	public synchronized void release() throws FBaseStorageConnectorException {
+		if (initialized && nextVersion - 1 < reservedUpperBound) {
+			store.writeReservedUpperBound(nextVersion - 1);
+			reservedUpperBound = nextVersion - 1;
+		}
+	}
+
+}
@@ -4,16 +4,23 @@
 package storageconnector;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.javatuples.Pair;
 
+import de.hasenburg.fbase.model.DataIdentifierPage;
 import exceptions.FBaseStorageConnectorException;
 import model.JSONable;
 import model.config.ClientConfig;
@@ -27,8 +34,14 @@ import model.data.MessageID;
 import model.data.NodeID;
 
 /**
- * This class stores all data on heap in a number of maps; it should only be used for testing
- * purposes.
+ * This class stores all data on heap in a number of concurrent maps. Data records are striped
+ * by keygroup, so each keygroup has its own map which is sorted by data id. Reads do not lock
+ * and concurrent writes to different keys do not block each other. All data is lost when the
+ * machine stops.<br>
+ * <br>
+ * Objects are copied once when they are put and are never modified afterwards. Getters hand
+ * out these stored snapshots without copying them, see {@link AbstractDBConnector} for the
+ * read-only contract.
  * 
  * 
  * @author Dave
@@ -39,25 +52,30 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	private static final Logger log = Logger.getLogger(AbstractDBConnector.class);
 
 	/** stores keygroup config data */
-	private final Map<KeygroupID, KeygroupConfig> keygroupConfigs = new HashMap<>();
+	private final ConcurrentMap<KeygroupID, KeygroupConfig> keygroupConfigs =
+			new ConcurrentHashMap<>();
 
 	/** stores node config data */
-	private final Map<NodeID, NodeConfig> nodeConfigs = new HashMap<>();
+	private final ConcurrentMap<NodeID, NodeConfig> nodeConfigs = new ConcurrentHashMap<>();
 
 	/** stores client config data */
-	private final Map<ClientID, ClientConfig> clientConfigs = new HashMap<>();
+	private final ConcurrentMap<ClientID, ClientConfig> clientConfigs =
+			new ConcurrentHashMap<>();
 
 	/** stores keygroup subscriber info */
-	private final Map<KeygroupID, Pair<String, Integer>> keygroupSubscribers = new HashMap<>();
+	private final ConcurrentMap<KeygroupID, Pair<String, Integer>> keygroupSubscribers =
+			new ConcurrentHashMap<>();
 
 	/**
 	 * stores liveness info per machine <br>
 	 * (machine name -> (machine address, last heartbeat in milliseconds))
 	 */
-	private final Map<String, Pair<String, Long>> heartbeats = new HashMap<>();
+	private final ConcurrentMap<String, Pair<String, Long>> heartbeats =
+			new ConcurrentHashMap<>();
 
-	/** stores data records */
-	private final Map<KeygroupID, Map<DataIdentifier, DataRecord>> records = new HashMap<>();
+	/** stores data records, one map per keygroup (dataID -> record) sorted by dataID */
+	private final ConcurrentMap<KeygroupID, ConcurrentNavigableMap<String, DataRecord>> records =
+			new ConcurrentHashMap<>();
 
 	/**
 	 * stores the message history
@@ -65,7 +83,11 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 * Only messageIDs from this node and machine can be in here, so we can use a small
 	 * shortcut
 	 */
-	private final TreeMap<Integer, DataIdentifier> messageHistory = new TreeMap<>();
+	private volatile MessageHistoryRing messageHistory =
+			new MessageHistoryRing(getMessageHistorySize());
+
+	/** the last version handed out by {@link #messageHistory_getNextMessageID()} */
+	private final AtomicInteger lastMessageVersion = new AtomicInteger(0);
 
 	private NodeID nodeID = null;
 	private String machineName = null;
@@ -105,11 +127,8 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	@Override
 	public void dataRecords_put(DataRecord record) throws FBaseStorageConnectorException {
 		record = JSONable.clone(record);
-		Map<DataIdentifier, DataRecord> keygroupMap =
-				records.get(record.getDataIdentifier().getKeygroupID());
-		if (keygroupMap == null)
-			throw new FBaseStorageConnectorException("Keygroup does not exist.");
-		keygroupMap.put(record.getDataIdentifier(), record);
+		getKeygroupMap(record.getDataIdentifier().getKeygroupID())
+				.put(record.getDataIdentifier().getDataID(), record);
 	}
 
 	/*
@@ -119,10 +138,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 */
 	@Override
 	public DataRecord dataRecords_get(DataIdentifier key) throws FBaseStorageConnectorException {
-		Map<DataIdentifier, DataRecord> keygroupMap = records.get(key.getKeygroupID());
-		if (keygroupMap == null)
-			throw new FBaseStorageConnectorException("Keygroup does not exist.");
-		return JSONable.clone(keygroupMap.get(key));
+		return getKeygroupMap(key.getKeygroupID()).get(key.getDataID());
 	}
 
 	/*
@@ -132,11 +148,9 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 */
 	@Override
 	public boolean dataRecords_delete(DataIdentifier key) throws FBaseStorageConnectorException {
-		Map<DataIdentifier, DataRecord> keygroupMap = records.get(key.getKeygroupID());
-		if (keygroupMap == null)
-			throw new FBaseStorageConnectorException("Keygroup does not exist.");
-		keygroupMap.remove(key);
-		return !keygroupMap.containsKey(key);
+		Map<String, DataRecord> keygroupMap = getKeygroupMap(key.getKeygroupID());
+		keygroupMap.remove(key.getDataID());
+		return !keygroupMap.containsKey(key.getDataID());
 	}
 
 	/*
@@ -147,10 +161,93 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	@Override
 	public Set<DataIdentifier> dataRecords_list(KeygroupID keygroup)
 			throws FBaseStorageConnectorException {
-		Map<DataIdentifier, DataRecord> keygroupMap = records.get(keygroup);
+		// the key set of a concurrent map is weakly consistent, so copying it is safe
+		Set<DataIdentifier> identifiers = new HashSet<>();
+		for (String dataID : getKeygroupMap(keygroup).keySet()) {
+			identifiers.add(new DataIdentifier(keygroup, dataID));
+		}
+		return identifiers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_listPage(model.data.KeygroupID,
+	 * java.lang.String, java.lang.String, int) Walks the sorted keygroup map from the cursor
+	 */
+	@Override
+	public DataIdentifierPage dataRecords_listPage(KeygroupID keygroupID, String prefix,
+			String cursor, int limit) throws FBaseStorageConnectorException {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		NavigableMap<String, DataRecord> keygroupMap = getKeygroupMap(keygroupID);
+		NavigableMap<String, DataRecord> tail;
+		if (cursor != null && (prefix == null || cursor.compareTo(prefix) >= 0)) {
+			tail = keygroupMap.tailMap(cursor, false);
+		} else if (prefix != null) {
+			tail = keygroupMap.tailMap(prefix, true);
+		} else {
+			tail = keygroupMap;
+		}
+		return createPage(keygroupID, tail.keySet().iterator(), prefix, limit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_putAll(java.util.Collection)
+	 * Checks all keygroups first, so either all or none of the records are stored
+	 */
+	@Override
+	public void dataRecords_putAll(Collection<DataRecord> records)
+			throws FBaseStorageConnectorException {
+		Map<KeygroupID, Map<String, DataRecord>> recordsByKeygroup = new HashMap<>();
+		for (DataRecord record : records) {
+			record = JSONable.clone(record);
+			recordsByKeygroup
+					.computeIfAbsent(record.getDataIdentifier().getKeygroupID(),
+							k -> new HashMap<>())
+					.put(record.getDataIdentifier().getDataID(), record);
+		}
+		for (KeygroupID keygroupID : recordsByKeygroup.keySet()) {
+			getKeygroupMap(keygroupID);
+		}
+		for (Map.Entry<KeygroupID, Map<String, DataRecord>> entry : recordsByKeygroup
+				.entrySet()) {
+			getKeygroupMap(entry.getKey()).putAll(entry.getValue());
+		}
+	}
+
+	@Override
+	public Map<DataIdentifier, DataRecord> dataRecords_getAll(
+			Collection<DataIdentifier> dataIdentifiers) throws FBaseStorageConnectorException {
+		Map<DataIdentifier, DataRecord> result = new HashMap<>();
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			DataRecord record = getKeygroupMap(dataIdentifier.getKeygroupID())
+					.get(dataIdentifier.getDataID());
+			if (record != null) {
+				result.put(dataIdentifier, record);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean dataRecords_deleteAll(Collection<DataIdentifier> dataIdentifiers)
+			throws FBaseStorageConnectorException {
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			getKeygroupMap(dataIdentifier.getKeygroupID()).remove(dataIdentifier.getDataID());
+		}
+		return true;
+	}
+
+	private ConcurrentNavigableMap<String, DataRecord> getKeygroupMap(KeygroupID keygroupID)
+			throws FBaseStorageConnectorException {
+		ConcurrentNavigableMap<String, DataRecord> keygroupMap = records.get(keygroupID);
 		if (keygroupMap == null)
 			throw new FBaseStorageConnectorException("Keygroup does not exist.");
-		return new HashSet<DataIdentifier>(keygroupMap.keySet());
+		return keygroupMap;
 	}
 
 	/*
@@ -160,10 +257,8 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 */
 	@Override
 	public boolean keygroup_create(KeygroupID id) throws FBaseStorageConnectorException {
-		Map<DataIdentifier, DataRecord> keygroupMap = records.get(id);
-		if (keygroupMap != null)
+		if (records.putIfAbsent(id, new ConcurrentSkipListMap<>()) != null)
 			throw new FBaseStorageConnectorException("Keygroup already exists.");
-		records.put(id, new HashMap<>());
 		return records.containsKey(id);
 	}
 
@@ -189,7 +284,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 			throws FBaseStorageConnectorException {
 		id = JSONable.clone(id);
 		config = JSONable.clone(config);
-		keygroupConfigs.put(id, config);
+		putOrRemove(keygroupConfigs, id, config);
 	}
 
 	/*
@@ -200,7 +295,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	@Override
 	public KeygroupConfig keygroupConfig_get(KeygroupID keygroupID)
 			throws FBaseStorageConnectorException {
-		return JSONable.clone(keygroupConfigs.get(keygroupID));
+		return keygroupConfigs.get(keygroupID);
 	}
 
 	@Override
@@ -218,7 +313,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 			throws FBaseStorageConnectorException {
 		nodeID = JSONable.clone(nodeID);
 		config = JSONable.clone(config);
-		nodeConfigs.put(nodeID, config);
+		putOrRemove(nodeConfigs, nodeID, config);
 	}
 
 	/*
@@ -228,7 +323,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 */
 	@Override
 	public NodeConfig nodeConfig_get(NodeID nodeID) throws FBaseStorageConnectorException {
-		return JSONable.clone(nodeConfigs.get(nodeID));
+		return nodeConfigs.get(nodeID);
 	}
 
 	@Override
@@ -247,7 +342,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 			throws FBaseStorageConnectorException {
 		clientID = JSONable.clone(clientID);
 		config = JSONable.clone(config);
-		clientConfigs.put(clientID, config);
+		putOrRemove(clientConfigs, clientID, config);
 	}
 
 	/*
@@ -257,7 +352,7 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	 */
 	@Override
 	public ClientConfig clientConfig_get(ClientID clientID) throws FBaseStorageConnectorException {
-		return JSONable.clone(clientConfigs.get(clientID));
+		return clientConfigs.get(clientID);
 	}
 
 	@Override
@@ -274,13 +369,12 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	@Override
 	public Integer keyGroupSubscriberMachines_put(KeygroupID keygroup, String machine)
 			throws FBaseStorageConnectorException {
-		Pair<String, Integer> pair = keygroupSubscribers.get(keygroup);
-		if (pair == null) {
-			pair = new Pair<String, Integer>(machine, 1);
-		} else {
-			pair = pair.setAt1(pair.getValue1() + 1);
-		}
-		keygroupSubscribers.put(keygroup, pair);
+		Pair<String, Integer> pair = keygroupSubscribers.compute(keygroup, (key, current) -> {
+			if (current == null) {
+				return new Pair<String, Integer>(machine, 1);
+			}
+			return current.setAt1(current.getValue1() + 1);
+		});
 		return pair.getValue1();
 	}
 
@@ -328,6 +422,18 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 			throws FBaseStorageConnectorException {
 		return new HashMap<>(heartbeats);
 	}
+
+	/**
+	 * {@link ConcurrentHashMap} does not accept null values, storing null removes the entry
+	 * instead.
+	 */
+	private static <K, V> void putOrRemove(ConcurrentMap<K, V> map, K key, V value) {
+		if (value == null) {
+			map.remove(key);
+		} else {
+			map.put(key, value);
+		}
+	}
 	
 	@Override
 	public boolean heartbeats_remove(String machine) throws FBaseStorageConnectorException {
@@ -336,19 +442,22 @@ public class OnHeapDBConnector extends AbstractDBConnector {
 	}
 
 	@Override
-	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
-		if (messageHistory.isEmpty()) {
-			return new MessageID(nodeID, machineName, 1);
-		}
+	public void setMessageHistorySize(int messageHistorySize) {
+		super.setMessageHistorySize(messageHistorySize);
+		messageHistory = messageHistory.resize(messageHistorySize);
+	}
 
-		int nextVersion = messageHistory.lastKey() + 1;
-		return new MessageID(nodeID, machineName, nextVersion);
+	@Override
+	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
+		return new MessageID(nodeID, machineName, lastMessageVersion.incrementAndGet());
 	}
 
 	@Override
 	public void messageHistory_put(MessageID messageID, DataIdentifier relatedData)
 			throws FBaseStorageConnectorException {
 		messageHistory.put(messageID.getVersion(), relatedData);
+		// never hand out a version that is already stored
+		lastMessageVersion.accumulateAndGet(messageID.getVersion(), Math::max);
 	}
 
 	@Override
@@ -7,12 +7,21 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.javatuples.Pair;
@@ -22,11 +31,15 @@ import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
+import de.hasenburg.fbase.model.DataIdentifierPage;
 import exceptions.FBaseException;
 import exceptions.FBaseStorageConnectorException;
 import model.JSONable;
@@ -57,6 +70,44 @@ public class S3DBConnector extends AbstractDBConnector {
 	private NodeID nodeID = null;
 	private String machineName = null;
 
+	/**
+	 * Number of message versions reserved with a single write, see {@link MessageIDAllocator}
+	 */
+	private static final int MESSAGE_ID_BLOCK_SIZE = 100;
+
+	private MessageIDAllocator messageIDAllocator = null;
+
+	/**
+	 * Interval in which message history entries that left the window of
+	 * {@link #getMessageHistorySize()} are deleted
+	 */
+	private static final long MESSAGE_HISTORY_PRUNE_INTERVAL_SECONDS = 10;
+
+	/**
+	 * Maximum number of keys S3 accepts in a single multi-object delete
+	 */
+	private static final int MAX_KEYS_PER_DELETE = 1000;
+
+	/**
+	 * Maximum number of keys S3 returns in a single listing
+	 */
+	private static final int MAX_KEYS_PER_LISTING = 1000;
+
+	/** the highest version of this machine put into the message history */
+	private final AtomicInteger highestHistoryVersion = new AtomicInteger(0);
+
+	/** the lowest version of this machine that might still exist, 0 if not known yet */
+	private volatile int lowestUnprunedVersion = 0;
+
+	private ScheduledExecutorService historyPruner = null;
+
+	/**
+	 * Number of S3 requests that are issued in parallel by batch operations
+	 */
+	private static final int PARALLEL_REQUESTS = 16;
+
+	private ExecutorService requestExecutor = null;
+
 	public S3DBConnector(NodeID nodeID) {
 		this.nodeID = nodeID;
 		suffixMap = new HashMap<>();
@@ -80,9 +131,12 @@ public class S3DBConnector extends AbstractDBConnector {
 	 * @param nodeID
 	 * @param machineName
 	 */
-	public void setNodeIDAndMachineName(NodeID nodeID, String machineName) {
+	public synchronized void setNodeIDAndMachineName(NodeID nodeID, String machineName) {
 		this.nodeID = nodeID;
 		this.machineName = machineName;
+		this.messageIDAllocator = null;
+		this.highestHistoryVersion.set(0);
+		this.lowestUnprunedVersion = 0;
 	}
 
 	@Override
@@ -110,14 +164,15 @@ public class S3DBConnector extends AbstractDBConnector {
 		Map<String, Pair<String, Long>> heartbeats_listAll = heartbeats_listAll();
 
 		// generate names until we found one that is not used, yet.
-		while (true) {
-			String name = generateNameString(5);
-			if (!heartbeats_listAll.containsKey(name)) {
-				this.machineName = name;
-				return this.machineName;
-			}
-		}
-		
+		String name;
+		do {
+			name = generateNameString(5);
+		} while (heartbeats_listAll.containsKey(name));
+		setNodeIDAndMachineName(nodeID, name);
+
+		startHistoryPruner();
+		startRequestExecutor();
+		return this.machineName;
 	}
 
 	public void deleteBuckets() throws FBaseStorageConnectorException {
@@ -149,8 +204,22 @@ public class S3DBConnector extends AbstractDBConnector {
 	}
 
 	@Override
-	public void dbConnection_close() {
-		// nothing needs to be done here
+	public synchronized void dbConnection_close() {
+		if (historyPruner != null) {
+			historyPruner.shutdownNow();
+			historyPruner = null;
+		}
+		if (requestExecutor != null) {
+			requestExecutor.shutdown();
+			requestExecutor = null;
+		}
+		if (messageIDAllocator != null) {
+			try {
+				messageIDAllocator.release();
+			} catch (FBaseStorageConnectorException e) {
+				logger.warn("Could not release unused message IDs", e);
+			}
+		}
 	}
 
 	private String getDataRecordBucketName() {
@@ -210,6 +279,143 @@ public class S3DBConnector extends AbstractDBConnector {
 		}
 	}
 
+	private synchronized void startRequestExecutor() {
+		if (requestExecutor != null) {
+			return;
+		}
+		requestExecutor = Executors.newFixedThreadPool(PARALLEL_REQUESTS, runnable -> {
+			Thread thread = new Thread(runnable, "s3-batch-request");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Runs the given requests in parallel and waits until all of them are done.
+	 * 
+	 * @return the results in the order of the requests
+	 * @throws FBaseStorageConnectorException the first exception thrown by a request
+	 */
+	private <T> List<T> runInParallel(List<Callable<T>> requests)
+			throws FBaseStorageConnectorException {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = requestExecutor;
+		}
+		if (executor == null) {
+			throw new FBaseStorageConnectorException("Connection not initiated");
+		}
+		List<Future<T>> futures = new ArrayList<>(requests.size());
+		for (Callable<T> request : requests) {
+			futures.add(executor.submit(request));
+		}
+		List<T> results = new ArrayList<>(requests.size());
+		FBaseStorageConnectorException exception = null;
+		for (Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				results.add(null);
+				if (exception == null) {
+					Throwable cause = e.getCause();
+					exception = cause instanceof FBaseStorageConnectorException
+							? (FBaseStorageConnectorException) cause
+							: new FBaseStorageConnectorException(cause);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FBaseStorageConnectorException(e);
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+		return results;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_putAll(java.util.Collection)
+	 * Checks each keygroup once and then uploads the records in parallel
+	 */
+	@Override
+	public void dataRecords_putAll(Collection<DataRecord> records)
+			throws FBaseStorageConnectorException {
+		Set<KeygroupID> keygroupIDs = new HashSet<>();
+		for (DataRecord record : records) {
+			keygroupIDs.add(record.getDataIdentifier().getKeygroupID());
+		}
+		try {
+			for (KeygroupID keygroupID : keygroupIDs) {
+				if (!s3.doesObjectExist(getDataRecordBucketName(), keygroupID.toString())) {
+					throw new FBaseStorageConnectorException("Keygroup does not exist.");
+				}
+			}
+		} catch (AmazonServiceException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+
+		List<Callable<Void>> requests = new ArrayList<>(records.size());
+		for (DataRecord record : records) {
+			requests.add(() -> {
+				try {
+					s3.putObject(getDataRecordBucketName(), getDataRecordPath(record),
+							JSONable.toJSON(record));
+				} catch (AmazonServiceException e) {
+					throw new FBaseStorageConnectorException(e);
+				}
+				return null;
+			});
+		}
+		runInParallel(requests);
+	}
+
+	@Override
+	public Map<DataIdentifier, DataRecord> dataRecords_getAll(
+			Collection<DataIdentifier> dataIdentifiers) throws FBaseStorageConnectorException {
+		List<DataIdentifier> identifiers = new ArrayList<>(dataIdentifiers);
+		List<Callable<DataRecord>> requests = new ArrayList<>(identifiers.size());
+		for (DataIdentifier dataIdentifier : identifiers) {
+			requests.add(() -> dataRecords_get(dataIdentifier));
+		}
+		List<DataRecord> results = runInParallel(requests);
+
+		Map<DataIdentifier, DataRecord> records = new HashMap<>();
+		for (int i = 0; i < identifiers.size(); i++) {
+			if (results.get(i) != null) {
+				records.put(identifiers.get(i), results.get(i));
+			}
+		}
+		return records;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_deleteAll(java.util.Collection)
+	 * Uses multi-object deletes with up to MAX_KEYS_PER_DELETE keys each
+	 */
+	@Override
+	public boolean dataRecords_deleteAll(Collection<DataIdentifier> dataIdentifiers)
+			throws FBaseStorageConnectorException {
+		List<KeyVersion> keys = new ArrayList<>(dataIdentifiers.size());
+		for (DataIdentifier dataIdentifier : dataIdentifiers) {
+			keys.add(new KeyVersion(getDataRecordPath(dataIdentifier)));
+		}
+		try {
+			for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+				List<KeyVersion> batch =
+						keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_DELETE));
+				s3.deleteObjects(new DeleteObjectsRequest(getDataRecordBucketName())
+						.withKeys(new ArrayList<>(batch)).withQuiet(true));
+			}
+			return true;
+		} catch (AmazonServiceException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
 	@Override
 	public Set<DataIdentifier> dataRecords_list(KeygroupID keygroupID)
 			throws FBaseStorageConnectorException {
@@ -236,6 +442,47 @@ public class S3DBConnector extends AbstractDBConnector {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see storageconnector.AbstractDBConnector#dataRecords_listPage(model.data.KeygroupID,
+	 * java.lang.String, java.lang.String, int) S3 lists keys in lexicographic order, so the
+	 * cursor is used as the marker of the listing
+	 */
+	@Override
+	public DataIdentifierPage dataRecords_listPage(KeygroupID keygroupID, String prefix,
+			String cursor, int limit) throws FBaseStorageConnectorException {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		String keygroupPrefix = keygroupID.toString() + "/";
+		String marker = cursor == null ? null : keygroupPrefix + cursor;
+		List<DataIdentifier> identifiers = new ArrayList<>();
+		try {
+			while (true) {
+				ListObjectsRequest request = new ListObjectsRequest()
+						.withBucketName(getDataRecordBucketName())
+						.withPrefix(keygroupPrefix + (prefix == null ? "" : prefix))
+						.withMarker(marker)
+						.withMaxKeys(Math.min(MAX_KEYS_PER_LISTING, limit - identifiers.size()));
+				ObjectListing ol = s3.listObjects(request);
+				for (S3ObjectSummary os : ol.getObjectSummaries()) {
+					identifiers.add(DataIdentifier.createFromString(os.getKey()));
+					marker = os.getKey();
+				}
+				if (!ol.isTruncated()) {
+					return new DataIdentifierPage(identifiers, null);
+				}
+				if (identifiers.size() >= limit) {
+					return new DataIdentifierPage(identifiers,
+							identifiers.get(identifiers.size() - 1).getDataID());
+				}
+			}
+		} catch (AmazonServiceException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
+	}
+
 	@Override
 	public boolean keygroup_create(KeygroupID keygroupID) throws FBaseStorageConnectorException {
 		try {
@@ -614,39 +861,93 @@ public class S3DBConnector extends AbstractDBConnector {
 		return messageID.getMessageIDString();
 	}
 
-	@Override
-	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
+	private String getMessageIDPrefix() {
+		return nodeID + "/" + machineName + "/";
+	}
 
-		// so we can test it without initializing FBase
+	private String getMessageSequencePath() {
+		return nodeID + "/" + machineName + ".sequence";
+	}
 
-		try {
+	private synchronized MessageIDAllocator getMessageIDAllocator() {
+		if (messageIDAllocator == null) {
+			messageIDAllocator = new MessageIDAllocator(MESSAGE_ID_BLOCK_SIZE, messageSequenceStore);
+		}
+		return messageIDAllocator;
+	}
 
-			ObjectListing ol = s3.listObjects(getMessageBucketName(), nodeID + "/" + machineName);
+	@Override
+	public MessageID messageHistory_getNextMessageID() throws FBaseStorageConnectorException {
+		return new MessageID(nodeID, machineName, getMessageIDAllocator().nextVersion());
+	}
 
-			// no data
-			List<S3ObjectSummary> objects = ol.getObjectSummaries();
-			if (objects.isEmpty()) {
-				return new MessageID(nodeID, machineName, 1);
-			}
+	/**
+	 * Stores the reserved upper bound in a single object next to the message history of this
+	 * machine. If no such object exists yet, the highest version found in the message history
+	 * is used, which requires a single listing when the allocator is initialized.
+	 */
+	private final MessageIDAllocator.ReservationStore messageSequenceStore =
+			new MessageIDAllocator.ReservationStore() {
 
-			// get last batch
-			while (ol.isTruncated()) {
-				ol = s3.listNextBatchOfObjects(ol);
-			}
+				@Override
+				public int readReservedUpperBound() throws FBaseStorageConnectorException {
+					try {
+						String sequence =
+								s3.getObjectAsString(getMessageBucketName(), getMessageSequencePath());
+						return Integer.parseInt(sequence.trim());
+					} catch (AmazonServiceException e) {
+						if (404 != e.getStatusCode()) {
+							throw new FBaseStorageConnectorException(e);
+						}
+					} catch (NumberFormatException e) {
+						logger.error("Stored message sequence cannot be parsed, "
+								+ "falling back to message history", e);
+					}
+					return getHighestMessageHistoryVersion();
+				}
 
-			// get last item
-			objects = ol.getObjectSummaries();
-			MessageID messageID = new MessageID();
-			try {
-				messageID.setMessageIDString(objects.get(objects.size() - 1).getKey());
-			} catch (FBaseException e) {
-				throw new FBaseStorageConnectorException(
-						"Cannot get version from " + objects.get(objects.size() - 1).getKey());
-			}
+				@Override
+				public void writeReservedUpperBound(int upperBound)
+						throws FBaseStorageConnectorException {
+					try {
+						s3.putObject(getMessageBucketName(), getMessageSequencePath(),
+								Integer.toString(upperBound));
+					} catch (AmazonServiceException e) {
+						throw new FBaseStorageConnectorException(e);
+					}
+				}
 
-			int nextVersion = messageID.getVersion() + 1;
-			return new MessageID(nodeID, machineName, nextVersion);
+			};
 
+	/**
+	 * Pages through the message history of this machine and returns the highest stored
+	 * version. Keys are ordered lexicographically by S3, so all of them must be checked.
+	 * 
+	 * @return the highest version or 0, if no message history exists
+	 * @throws FBaseStorageConnectorException
+	 */
+	private int getHighestMessageHistoryVersion() throws FBaseStorageConnectorException {
+		try {
+			int highestVersion = 0;
+			ObjectListing ol = s3.listObjects(getMessageBucketName(), getMessageIDPrefix());
+			while (true) {
+				for (S3ObjectSummary os : ol.getObjectSummaries()) {
+					MessageID messageID = new MessageID();
+					try {
+						messageID.setMessageIDString(os.getKey());
+						highestVersion = Math.max(highestVersion, messageID.getVersion());
+					} catch (FBaseException e) {
+						logger.warn("Cannot get version from " + os.getKey());
+					}
+				}
+				// check if truncated
+				if (ol.isTruncated()) {
+					ol = s3.listNextBatchOfObjects(ol);
+				} else {
+					break;
+				}
+			}
+			return highestVersion;
 		} catch (AmazonServiceException e) {
 			throw new FBaseStorageConnectorException(e);
 		}
@@ -661,6 +962,98 @@ public class S3DBConnector extends AbstractDBConnector {
 		} catch (AmazonServiceException e) {
 			throw new FBaseStorageConnectorException(e);
 		}
+		if (nodeID.equals(messageID.getNodeID())
+				&& machineName.equals(messageID.getMachineName())) {
+			highestHistoryVersion.accumulateAndGet(messageID.getVersion(), Math::max);
+		}
+	}
+
+	private synchronized void startHistoryPruner() {
+		if (historyPruner != null) {
+			return;
+		}
+		historyPruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "s3-message-history-pruner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		historyPruner.scheduleWithFixedDelay(() -> {
+			try {
+				pruneMessageHistory();
+			} catch (FBaseStorageConnectorException | AmazonServiceException e) {
+				logger.warn("Could not prune message history", e);
+			}
+		}, MESSAGE_HISTORY_PRUNE_INTERVAL_SECONDS, MESSAGE_HISTORY_PRUNE_INTERVAL_SECONDS,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Deletes all message history entries of this machine that are older than the last
+	 * {@link #getMessageHistorySize()} versions. The keys are derived from the versions, so
+	 * only the first run after startup has to list the message history to find the lowest
+	 * remaining version. Deletes are sent in batches of {@link #MAX_KEYS_PER_DELETE} keys.
+	 * 
+	 * @throws FBaseStorageConnectorException when the lowest version cannot be determined
+	 */
+	void pruneMessageHistory() throws FBaseStorageConnectorException {
+		int pruneUpTo = highestHistoryVersion.get() - getMessageHistorySize();
+		if (pruneUpTo <= 0) {
+			return;
+		}
+		if (lowestUnprunedVersion == 0) {
+			lowestUnprunedVersion = getLowestMessageHistoryVersion();
+		}
+
+		String prefix = getMessageIDPrefix();
+		while (lowestUnprunedVersion > 0 && lowestUnprunedVersion <= pruneUpTo) {
+			int batchEnd =
+					Math.min(pruneUpTo, lowestUnprunedVersion + MAX_KEYS_PER_DELETE - 1);
+			List<KeyVersion> keys = new ArrayList<>(batchEnd - lowestUnprunedVersion + 1);
+			for (int version = lowestUnprunedVersion; version <= batchEnd; version++) {
+				keys.add(new KeyVersion(prefix + version));
+			}
+			s3.deleteObjects(
+					new DeleteObjectsRequest(getMessageBucketName()).withKeys(keys).withQuiet(true));
+			logger.debug("Pruned message history versions " + lowestUnprunedVersion + " to "
+					+ batchEnd);
+			lowestUnprunedVersion = batchEnd + 1;
+		}
+	}
+
+	/**
+	 * Pages through the message history of this machine and returns the lowest stored
+	 * version.
+	 * 
+	 * @return the lowest version or 0, if no message history exists
+	 * @throws FBaseStorageConnectorException
+	 */
+	private int getLowestMessageHistoryVersion() throws FBaseStorageConnectorException {
+		try {
+			int lowestVersion = 0;
+			ObjectListing ol = s3.listObjects(getMessageBucketName(), getMessageIDPrefix());
+			while (true) {
+				for (S3ObjectSummary os : ol.getObjectSummaries()) {
+					MessageID messageID = new MessageID();
+					try {
+						messageID.setMessageIDString(os.getKey());
+						if (lowestVersion == 0 || messageID.getVersion() < lowestVersion) {
+							lowestVersion = messageID.getVersion();
+						}
+					} catch (FBaseException e) {
+						logger.warn("Cannot get version from " + os.getKey());
+					}
+				}
+				// check if truncated
+				if (ol.isTruncated()) {
+					ol = s3.listNextBatchOfObjects(ol);
+				} else {
+					break;
+				}
+			}
+			return lowestVersion;
+		} catch (AmazonServiceException e) {
+			throw new FBaseStorageConnectorException(e);
+		}
 	}
 
 	@Override
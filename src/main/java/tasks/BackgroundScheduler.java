@@ -0,0 +1,285 @@
+package tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+
+import de.hasenburg.fbase.model.BackgroundJobStatistics;
+import tasks.background.BackgroundTask;
+
+/**
+ * Runs {@link BackgroundTask}s periodically on a small, shared pool of threads.
+ *
+ * The first round of a task starts immediately. Each following round starts the interval of
+ * the task after the previous round finished, varied by up to {@link #JITTER} of the interval
+ * so that the tasks of multiple machines do not run in lockstep. Because the next round is
+ * only scheduled when the previous one finished, rounds of the same task never overlap; rounds
+ * that take longer than the interval are counted as overruns.
+ *
+ * Rounds of some tasks wait for responses of other machines, so they can occupy the shared
+ * threads for several seconds. Tasks that must run on time, like the heartbeat, are
+ * scheduled with {@link #scheduleDedicated(BackgroundTask)} on a thread of their own.
+ */
+public class BackgroundScheduler {
+
+	private static Logger logger = Logger.getLogger(BackgroundScheduler.class.getName());
+
+	/**
+	 * Maximum deviation of the time between two rounds, relative to the interval
+	 */
+	public static final double JITTER = 0.1;
+
+	/**
+	 * A scheduled {@link BackgroundTask}, cancelling it stops the task.
+	 */
+	public class Job implements Future<Boolean> {
+
+		private final BackgroundTask task;
+		private final ScheduledThreadPoolExecutor executor;
+		private final boolean dedicated;
+		private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+
+		private ScheduledFuture<?> next = null;
+		private long due = 0;
+		private boolean running = false;
+
+		private long runs = 0;
+		private long failures = 0;
+		private long overruns = 0;
+		private long lastExecutionTime = 0;
+		private long totalExecutionTime = 0;
+		private long maxExecutionTime = 0;
+
+		private Job(BackgroundTask task, ScheduledThreadPoolExecutor executor,
+				boolean dedicated) {
+			this.task = task;
+			this.executor = executor;
+			this.dedicated = dedicated;
+		}
+
+		private synchronized void schedule(long delay) {
+			if (completion.isDone()) {
+				return;
+			}
+			try {
+				next = executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+				due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+			} catch (RejectedExecutionException e) {
+				logger.debug("Scheduler is shut down, stopping " + task.getName());
+				completion.cancel(false);
+			}
+		}
+
+		private void run() {
+			long delayed;
+			synchronized (this) {
+				if (running || completion.isDone()) {
+					return;
+				}
+				running = true;
+				delayed = System.nanoTime() - due;
+			}
+			long start = System.nanoTime();
+			Boolean result = null;
+			Exception error = null;
+			taskManager.registerTask(task.getName());
+			try {
+				result = task.call();
+			} catch (Exception e) {
+				error = e;
+				logger.error("Round of background task " + task.getName() + " failed", e);
+			} finally {
+				taskManager.deregisterTask(task.getName());
+			}
+			long executionNanos = System.nanoTime() - start;
+			// the queue wait of a round is the time it started later than scheduled
+			taskManager.recordTask(task.getName(), delayed, executionNanos, result, error);
+			long executionTime = TimeUnit.NANOSECONDS.toMillis(executionNanos);
+			synchronized (this) {
+				running = false;
+				runs++;
+				if (TaskManager.isFailure(result, error)) {
+					failures++;
+				}
+				if (executionTime > task.getInterval()) {
+					overruns++;
+					logger.warn("Round of background task " + task.getName() + " took "
+							+ executionTime + "ms, longer than its interval");
+				}
+				lastExecutionTime = executionTime;
+				totalExecutionTime += executionTime;
+				maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+				schedule(getDelay(task.getInterval()));
+			}
+		}
+
+		public BackgroundTask getTask() {
+			return task;
+		}
+
+		/**
+		 * Changes the interval of the task. If the task is waiting for its next round, the
+		 * round is rescheduled with the new interval.
+		 *
+		 * @param interval - the time in milliseconds between two rounds
+		 */
+		public synchronized void setInterval(long interval) {
+			task.setInterval(interval);
+			if (!running && next != null && next.cancel(false)) {
+				schedule(getDelay(interval));
+			}
+		}
+
+		private synchronized BackgroundJobStatistics getStatistics() {
+			return new BackgroundJobStatistics(task.getName().toString(), task.getInterval(),
+					runs, failures, overruns, lastExecutionTime,
+					runs == 0 ? 0 : totalExecutionTime / runs, maxExecutionTime);
+		}
+
+		@Override
+		public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = completion.cancel(false);
+			if (next != null) {
+				next.cancel(mayInterruptIfRunning);
+			}
+			jobs.remove(this);
+			if (dedicated) {
+				executor.shutdown();
+			}
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return completion.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return completion.isDone();
+		}
+
+		/**
+		 * Waits until the job is cancelled.
+		 */
+		@Override
+		public Boolean get() throws InterruptedException, ExecutionException {
+			return completion.get();
+		}
+
+		@Override
+		public Boolean get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			return completion.get(timeout, unit);
+		}
+
+	}
+
+	private final TaskManager taskManager;
+	private final ScheduledThreadPoolExecutor executor;
+	private final List<Job> jobs = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param taskManager - the task manager that keeps track of running tasks
+	 * @param threads - the number of threads shared by all background tasks
+	 */
+	public BackgroundScheduler(TaskManager taskManager, int threads) {
+		this.taskManager = taskManager;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = createExecutor(threads,
+				() -> "Background-" + threadNumber.incrementAndGet());
+	}
+
+	private static ScheduledThreadPoolExecutor createExecutor(int threads,
+			Supplier<String> threadName) {
+		ScheduledThreadPoolExecutor executor =
+				new ScheduledThreadPoolExecutor(threads, runnable -> {
+					Thread thread = new Thread(runnable, threadName.get());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+
+	/**
+	 * Starts running the task periodically on the shared threads.
+	 *
+	 * @param task - the task
+	 * @return the job of the task
+	 */
+	public Job schedule(BackgroundTask task) {
+		return schedule(new Job(task, executor, false));
+	}
+
+	/**
+	 * Starts running the task periodically on a thread that is not shared with other tasks,
+	 * so that its rounds are not delayed by long rounds of other tasks. The thread stops when
+	 * the job is cancelled.
+	 *
+	 * @param task - the task
+	 * @return the job of the task
+	 */
+	public Job scheduleDedicated(BackgroundTask task) {
+		return schedule(new Job(task,
+				createExecutor(1, () -> "Background-" + task.getName()), true));
+	}
+
+	private Job schedule(Job job) {
+		if (executor.isShutdown()) {
+			job.executor.shutdown();
+		}
+		jobs.add(job);
+		job.schedule(0);
+		return job;
+	}
+
+	private static long getDelay(long interval) {
+		long jitter = (long) (interval * JITTER);
+		if (jitter == 0) {
+			return interval;
+		}
+		return interval + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+	}
+
+	/**
+	 * @return the jobs that were not cancelled
+	 */
+	public List<Job> getJobs() {
+		return new ArrayList<>(jobs);
+	}
+
+	/**
+	 * @return the execution statistics of all jobs that were not cancelled
+	 */
+	public List<BackgroundJobStatistics> getStatistics() {
+		List<BackgroundJobStatistics> statistics = new ArrayList<>();
+		jobs.forEach(job -> statistics.add(job.getStatistics()));
+		return statistics;
+	}
+
+	/**
+	 * Cancels all jobs and interrupts running rounds.
+	 */
+	public void shutdown() {
+		jobs.forEach(job -> {
+			job.cancel(true);
+			job.executor.shutdownNow();
+		});
+		executor.shutdownNow();
+	}
+
+}
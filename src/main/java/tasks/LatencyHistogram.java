@@ -0,0 +1,130 @@
+package tasks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in microseconds with a fixed memory footprint, similar to an
+ * HdrHistogram.
+ *
+ * Values below {@link #SUB_BUCKETS} are counted exactly. Larger values are counted in buckets
+ * whose width doubles with each power of two, with {@link #SUB_BUCKETS} / 2 buckets per power
+ * of two, so percentiles are accurate to about 6%. Values of more than about 25 days are
+ * counted in the highest bucket. Recording is lock free and can be done concurrently.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Number of values that are counted exactly
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	private static final int MAX_SHIFT = 36;
+	private static final int BUCKETS = (MAX_SHIFT + 2) * HALF_SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if (shift > MAX_SHIFT) {
+			return BUCKETS - 1;
+		}
+		return shift * HALF_SUB_BUCKETS + (int) (value >> shift);
+	}
+
+	private static long getHighestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / HALF_SUB_BUCKETS - 1;
+		long subBucket = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param value - the duration in microseconds, negative values are counted as 0
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts.incrementAndGet(getIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean of all recorded values, 0 if no value was recorded
+	 */
+	public long getMean() {
+		long c = count.get();
+		return c == 0 ? 0 : sum.get() / c;
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the highest value of the bucket that contains the given percentile, but at most
+	 * the largest recorded value.
+	 *
+	 * @param percentile - the percentile between 0 and 100
+	 * @return see above, 0 if no value was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				if (i == BUCKETS - 1) {
+					// the highest bucket has no upper bound
+					return getMax();
+				}
+				return Math.min(getHighestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+}
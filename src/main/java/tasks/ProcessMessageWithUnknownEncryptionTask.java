@@ -8,7 +8,7 @@ import org.apache.log4j.Logger;
 
 import control.FBase;
 import exceptions.FBaseCommunicationException;
-import exceptions.FBaseNamingServiceException;
+import exceptions.FBaseException;
 import model.config.KeygroupConfig;
 import model.data.KeygroupID;
 import model.messages.Envelope;
@@ -35,8 +35,12 @@ class ProcessMessageWithUnknownEncryptionTask extends Task<Boolean> {
 
 	private Envelope envelope = null;
 
+	/**
+	 * @return true, if the keygroup config was updated
+	 * @throws FBaseException if the naming service could not be reached
+	 */
 	@Override
-	public Boolean executeFunctionality() {
+	public Boolean executeFunctionality() throws FBaseException {
 		logger.debug("Trying to process envelope with keygroup id " + envelope.getKeygroupID());
 
 		KeygroupID keygroupID = envelope.getKeygroupID();
@@ -48,10 +52,21 @@ class ProcessMessageWithUnknownEncryptionTask extends Task<Boolean> {
 
 		KeygroupConfig config;
 		try {
-			config = fBase.namingServiceSender.sendKeygroupConfigRead(envelope.getKeygroupID());
-		} catch (FBaseCommunicationException | FBaseNamingServiceException e1) {
+			// the cached config is the one that cannot decrypt the message
+			config = fBase.namingServiceSender.sendKeygroupConfigReadAsync(keygroupID).get();
+		} catch (ExecutionException e1) {
 			// cannot connect to naming service
-			logger.error("Cannot connect to naming service");
+			logger.error("Cannot get keygroup config from naming service, "
+					+ e1.getCause().getMessage());
+			if (e1.getCause() instanceof FBaseException) {
+				throw (FBaseException) e1.getCause();
+			} else if (e1.getCause() instanceof TimeoutException) {
+				throw new FBaseCommunicationException(
+						FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE);
+			}
+			return false;
+		} catch (InterruptedException e1) {
+			Thread.currentThread().interrupt();
 			return false;
 		}
 
@@ -59,8 +74,10 @@ class ProcessMessageWithUnknownEncryptionTask extends Task<Boolean> {
 			fBase.taskmanager.runUpdateKeygroupConfigTask(config, false).get(3, TimeUnit.SECONDS);
 		} catch (ExecutionException e) {
 			logger.error("Could not update keygroup config" + e.getMessage());
+			return false;
 		} catch (TimeoutException | InterruptedException e) {
 			logger.error(e);
+			return false;
 		}
 		logger.debug("Updated subscriptions with new config");
 
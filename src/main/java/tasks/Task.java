@@ -29,9 +29,8 @@ public abstract class Task<V> implements Callable<V> {
 	@Override
 	public V call() throws FBaseException {
 		logger.debug("Executing task " + name);
-		fBase.taskmanager.registerTask(name);
+		// running tasks are registered by the task manager
 		V answer = executeFunctionality();
-		fBase.taskmanager.deregisterTask(name);
 		logger.debug("Task " + name + " completed");
 		return answer;
 	}
@@ -1,15 +1,31 @@
 package tasks;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 
 import control.FBase;
+import de.hasenburg.fbase.model.BackgroundJobStatistics;
+import de.hasenburg.fbase.model.TaskStatistics;
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseException;
 import model.config.KeygroupConfig;
 import model.config.NodeConfig;
 import model.data.DataIdentifier;
@@ -22,12 +38,164 @@ import tasks.background.DetectMissingResponsibility;
 import tasks.background.PollLatestConfigurationDataForResponsibleKeygroupsTask;
 import tasks.background.PutHeartbeatTask;
 
+/**
+ * Runs {@link Task}s in a bounded thread pool per {@link TaskCategory}, so that bursts of
+ * data record updates cannot starve configuration updates and vice versa. Background tasks
+ * are run periodically by a {@link BackgroundScheduler}.
+ * 
+ * Tasks submitted while the queue of their category is full run in the submitting thread,
+ * which slows down the producer. Tasks submitted by a task of the same category also run in
+ * the submitting thread, because the submitting task might wait for them and could otherwise
+ * block its pool.
+ */
 public class TaskManager {
 
-	@SuppressWarnings("unused")
 	private static Logger logger = Logger.getLogger(TaskManager.class.getName());
-	private ExecutorService pool = null;
+
+	/**
+	 * The category of the thread pool a task runs in
+	 */
+	public enum TaskCategory {
+		DATA, CONFIG, BACKGROUND
+	}
+
+	/**
+	 * The category of the pool the current thread belongs to
+	 */
+	private static final ThreadLocal<TaskCategory> currentCategory = new ThreadLocal<>();
+
+	/**
+	 * A future that keeps track of the running tasks of its name and records their metrics,
+	 * both before the future completes
+	 */
+	private class TaskFuture<V> extends FutureTask<V> {
+		private TaskFuture(Callable<V> callable, TaskName name) {
+			this(callable, name, System.nanoTime());
+		}
+
+		private TaskFuture(Callable<V> callable, TaskName name, long submitted) {
+			super(() -> {
+				long start = System.nanoTime();
+				V result = null;
+				Throwable error = null;
+				registerTask(name);
+				try {
+					result = callable.call();
+					return result;
+				} catch (Exception e) {
+					error = e;
+					throw e;
+				} finally {
+					deregisterTask(name);
+					recordTask(name, start - submitted, System.nanoTime() - start, result,
+							error);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs another task and passes its result, or the exception it threw, to a callback once
+	 * it finished, so that nobody has to block a thread waiting for it
+	 */
+	private static class CallbackTask<V> extends Task<V> {
+		private final Task<V> task;
+		private final BiConsumer<V, Throwable> callback;
+
+		private CallbackTask(Task<V> task, FBase fBase, BiConsumer<V, Throwable> callback) {
+			super(task.name, fBase);
+			this.task = task;
+			this.callback = callback;
+		}
+
+		@Override
+		public V executeFunctionality() throws FBaseException {
+			V result = null;
+			Throwable error = null;
+			try {
+				result = task.executeFunctionality();
+				return result;
+			} catch (FBaseException | RuntimeException e) {
+				error = e;
+				throw e;
+			} finally {
+				callback.accept(result, error);
+			}
+		}
+	}
+
+	/**
+	 * The metrics of all tasks with the same name
+	 */
+	private static class TaskMetrics {
+		private final LatencyHistogram queueWait = new LatencyHistogram();
+		private final LatencyHistogram executionTime = new LatencyHistogram();
+		private final AtomicLong successes = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+
+		private void reset() {
+			queueWait.reset();
+			executionTime.reset();
+			successes.set(0);
+			failures.set(0);
+			timeouts.set(0);
+		}
+	}
+
+	/**
+	 * A thread pool that runs tasks of a single category
+	 */
+	private class TaskPool extends ThreadPoolExecutor {
+		private final TaskCategory category;
+
+		private TaskPool(TaskCategory category, int threads, int queueSize,
+				RejectedExecutionHandler handler) {
+			super(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize));
+			this.category = category;
+			AtomicInteger threadNumber = new AtomicInteger();
+			setThreadFactory(runnable -> {
+				Thread thread = new Thread(() -> {
+					currentCategory.set(category);
+					runnable.run();
+				}, "Tasks-" + category + "-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			setRejectedExecutionHandler(handler);
+			allowCoreThreadTimeOut(true);
+		}
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+			return new TaskFuture<>(callable, ((Task<T>) callable).name);
+		}
+
+		private <T> Future<T> submit(Task<T> task) {
+			if (category.equals(currentCategory.get())) {
+				RunnableFuture<T> future = newTaskFor(task);
+				future.run();
+				return future;
+			}
+			return super.submit(task);
+		}
+	}
+
+	/**
+	 * Runs rejected tasks in the submitting thread unless the pool is shut down
+	 */
+	private static final RejectedExecutionHandler CALLER_RUNS = (runnable, executor) -> {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("Task manager is shut down");
+		}
+		logger.debug("Task queue is full, running task in submitting thread");
+		runnable.run();
+	};
+
+	private final Map<TaskCategory, TaskPool> pools = new EnumMap<>(TaskCategory.class);
+	private final BackgroundScheduler scheduler;
 	private final AtomicInteger[] runningTasks = new AtomicInteger[TaskName.values().length];
+	private final TaskMetrics[] taskMetrics = new TaskMetrics[TaskName.values().length];
 
 	// if set to true by enable storingHistory, the taskmanager will store how often it run
 	// each task
@@ -37,17 +205,34 @@ public class TaskManager {
 	private FBase fBase;
 
 	public enum TaskName {
-		LOG, SLEEP, UPDATE_KEYGROUP_CONFIG, UPDATE_KEYGROUP_SUBSCRIPTIONS, PUT_DATA_RECORD,
-		DELETE_DATA_RECORD, UPDATE_FOREIGN_NODE_CONFIG, B_CHECK_KEYGROUP_CONFIGURATIONS_ON_UPDATES,
-		PROCESS_MESSAGE_WITH_UNKNOWN_ENCRYPTION, CHECK_NAMING_SERVICE_CONFIGURATION_DATA,
-		B_POLL_LATEST_CONFIGURATION_DATA_FOR_RESPONSIBLE_KEYGROUPS, B_PUT_HEARTBEAT,
-		B_DETECT_MISSING_HEARTBEATS, REMOVE_MACHINE_FROM_NODE,
-		ANNOUNCE_UPDATE_OF_OWN_NODE_CONFIGURATION, B_DETECT_MISSING_RESPONSIBILITY,
-		B_DETECT_LOST_RESPONSIBILITY
+		LOG(TaskCategory.DATA), SLEEP(TaskCategory.DATA),
+		UPDATE_KEYGROUP_CONFIG(TaskCategory.CONFIG),
+		UPDATE_KEYGROUP_SUBSCRIPTIONS(TaskCategory.CONFIG), PUT_DATA_RECORD(TaskCategory.DATA),
+		DELETE_DATA_RECORD(TaskCategory.DATA), UPDATE_FOREIGN_NODE_CONFIG(TaskCategory.CONFIG),
+		B_CHECK_KEYGROUP_CONFIGURATIONS_ON_UPDATES(TaskCategory.BACKGROUND),
+		PROCESS_MESSAGE_WITH_UNKNOWN_ENCRYPTION(TaskCategory.CONFIG),
+		CHECK_NAMING_SERVICE_CONFIGURATION_DATA(TaskCategory.CONFIG),
+		B_POLL_LATEST_CONFIGURATION_DATA_FOR_RESPONSIBLE_KEYGROUPS(TaskCategory.BACKGROUND),
+		B_PUT_HEARTBEAT(TaskCategory.BACKGROUND), B_DETECT_MISSING_HEARTBEATS(TaskCategory.BACKGROUND),
+		REMOVE_MACHINE_FROM_NODE(TaskCategory.CONFIG),
+		ANNOUNCE_UPDATE_OF_OWN_NODE_CONFIGURATION(TaskCategory.CONFIG),
+		B_DETECT_MISSING_RESPONSIBILITY(TaskCategory.BACKGROUND),
+		B_DETECT_LOST_RESPONSIBILITY(TaskCategory.BACKGROUND);
+
+		private final TaskCategory category;
+
+		private TaskName(TaskCategory category) {
+			this.category = category;
+		}
+
+		public TaskCategory getCategory() {
+			return category;
+		}
 	}
 
 	public void tearDown() {
-		pool.shutdownNow();
+		scheduler.shutdown();
+		pools.values().forEach(ThreadPoolExecutor::shutdownNow);
 	}
 	
 	public void storeHistory() {
@@ -56,10 +241,16 @@ public class TaskManager {
 
 	public TaskManager(FBase fBase) {
 		this.fBase = fBase;
-		pool = Executors.newCachedThreadPool();
+		int queueSize = fBase.configuration.getTaskQueueSize();
+		pools.put(TaskCategory.DATA, new TaskPool(TaskCategory.DATA,
+				fBase.configuration.getDataTaskThreads(), queueSize, CALLER_RUNS));
+		pools.put(TaskCategory.CONFIG, new TaskPool(TaskCategory.CONFIG,
+				fBase.configuration.getConfigTaskThreads(), queueSize, CALLER_RUNS));
+		scheduler = new BackgroundScheduler(this, fBase.configuration.getBackgroundTaskThreads());
 		for (int i = 0; i < runningTasks.length; i++) {
 			runningTasks[i] = new AtomicInteger(0);
 			taskHistory[i] = new AtomicInteger(0);
+			taskMetrics[i] = new TaskMetrics();
 		}
 	}
 
@@ -74,6 +265,60 @@ public class TaskManager {
 		runningTasks[name.ordinal()].decrementAndGet();
 	}
 
+	/**
+	 * Records the metrics of a finished task. A task failed if it threw an exception or
+	 * returned {@link Boolean#FALSE}.
+	 * 
+	 * @param name - the name of the task
+	 * @param queueWait - the time in nanoseconds between submitting and starting the task
+	 * @param executionTime - the time in nanoseconds the task ran
+	 * @param result - the result of the task, null if it threw an exception
+	 * @param error - the exception thrown by the task, null if it returned a result
+	 */
+	void recordTask(TaskName name, long queueWait, long executionTime, Object result,
+			Throwable error) {
+		TaskMetrics metrics = taskMetrics[name.ordinal()];
+		metrics.queueWait.record(TimeUnit.NANOSECONDS.toMicros(queueWait));
+		metrics.executionTime.record(TimeUnit.NANOSECONDS.toMicros(executionTime));
+		if (!isFailure(result, error)) {
+			metrics.successes.incrementAndGet();
+			return;
+		}
+		metrics.failures.incrementAndGet();
+		if (error != null && isTimeout(error)) {
+			metrics.timeouts.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @param result - the result of a task
+	 * @param error - the exception thrown by the task
+	 * @return true, if the task threw an exception or returned {@link Boolean#FALSE}
+	 */
+	static boolean isFailure(Object result, Throwable error) {
+		return error != null || Boolean.FALSE.equals(result);
+	}
+
+	/**
+	 * @param error - an exception thrown by a task
+	 * @return true, if the exception or one of its causes shows that a machine or the naming
+	 *         service did not reply in time
+	 */
+	private static boolean isTimeout(Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if (t instanceof TimeoutException) {
+				return true;
+			}
+			if (t instanceof FBaseCommunicationException
+					&& (FBaseCommunicationException.NODE_NOT_REACHABLE.equals(t.getMessage())
+							|| FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE
+									.equals(t.getMessage()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public Map<TaskName, Integer> getRunningTaskNumbers() {
 		Map<TaskName, Integer> res = new HashMap<>();
 		for (int i = 0; i < runningTasks.length; i++)
@@ -94,9 +339,84 @@ public class TaskManager {
 		return res;
 	}
 
+	/**
+	 * @return the number of tasks per category that wait for a thread of their pool
+	 */
+	public Map<TaskCategory, Integer> getQueuedTaskNumbers() {
+		Map<TaskCategory, Integer> res = new HashMap<>();
+		pools.forEach((category, pool) -> res.put(category, pool.getQueue().size()));
+		return res;
+	}
+
+	/**
+	 * @param name - the name of the tasks
+	 * @return the time in microseconds the tasks with the given name waited for a thread
+	 */
+	public LatencyHistogram getQueueWaitHistogram(TaskName name) {
+		return taskMetrics[name.ordinal()].queueWait;
+	}
+
+	/**
+	 * @param name - the name of the tasks
+	 * @return the time in microseconds the tasks with the given name ran
+	 */
+	public LatencyHistogram getExecutionTimeHistogram(TaskName name) {
+		return taskMetrics[name.ordinal()].executionTime;
+	}
+
+	/**
+	 * @return the execution statistics of all tasks that are running or ran since the last
+	 *         call of {@link #deleteAllData()}
+	 */
+	public List<TaskStatistics> getTaskStatistics() {
+		List<TaskStatistics> statistics = new ArrayList<>();
+		for (TaskName name : TaskName.values()) {
+			TaskMetrics metrics = taskMetrics[name.ordinal()];
+			int running = runningTasks[name.ordinal()].get();
+			if (running == 0 && metrics.executionTime.getCount() == 0) {
+				continue;
+			}
+			statistics.add(new TaskStatistics(name.toString(), name.getCategory().toString(),
+					running, metrics.successes.get(), metrics.failures.get(),
+					metrics.timeouts.get(), metrics.queueWait.getMean(),
+					metrics.queueWait.getPercentile(50), metrics.queueWait.getPercentile(99),
+					metrics.queueWait.getMax(), metrics.executionTime.getMean(),
+					metrics.executionTime.getPercentile(50),
+					metrics.executionTime.getPercentile(99), metrics.executionTime.getMax()));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Changes the interval of all running background tasks with the given name.
+	 * 
+	 * @param name - the name of the background tasks
+	 * @param interval - the time in milliseconds between two rounds
+	 */
+	public void setBackgroundTaskInterval(TaskName name, long interval) {
+		for (BackgroundScheduler.Job job : scheduler.getJobs()) {
+			if (job.getTask().getName().equals(name)) {
+				job.setInterval(interval);
+			}
+		}
+	}
+
+	/**
+	 * @return the execution statistics of all running background tasks
+	 */
+	public List<BackgroundJobStatistics> getBackgroundTaskStatistics() {
+		return scheduler.getStatistics();
+	}
+
+	private <V> Future<V> submit(Task<V> task) {
+		return pools.get(task.name.getCategory()).submit(task);
+	}
+
 	public void deleteAllData() {
 		for (AtomicInteger ai : runningTasks)
 			ai.set(0);
+		for (TaskMetrics metrics : taskMetrics)
+			metrics.reset();
 	}
 
 	/*
@@ -104,53 +424,67 @@ public class TaskManager {
 	 */
 
 	public Future<Boolean> runLogTask(String message) {
-		Future<Boolean> future = pool.submit(new LogTask(message, fBase));
+		Future<Boolean> future = submit(new LogTask(message, fBase));
 		return future;
 	}
 
 	public Future<Boolean> runSleepTask(int time) {
-		Future<Boolean> future = pool.submit(new SleepTask(time, fBase));
+		Future<Boolean> future = submit(new SleepTask(time, fBase));
 		return future;
 	}
 
 	public Future<Boolean> runUpdateKeygroupConfigTask(KeygroupConfig config, boolean publish) {
-		Future<Boolean> future = pool.submit(new UpdateKeygroupConfigTask(config, fBase, publish));
+		Future<Boolean> future = submit(new UpdateKeygroupConfigTask(config, fBase, publish));
 		return future;
 	}
 
 	public Future<Boolean> runUpdateKeygroupSubscriptionsTask(KeygroupConfig config) {
-		Future<Boolean> future = pool.submit(new UpdateKeygroupSubscriptionsTask(config, fBase));
+		Future<Boolean> future = submit(new UpdateKeygroupSubscriptionsTask(config, fBase));
 		return future;
 	}
 
 	public Future<Boolean> runUpdateForeignNodeConfigTask(NodeConfig config) {
-		Future<Boolean> future = pool.submit(new UpdateForeignNodeConfigTask(config, fBase));
+		Future<Boolean> future = submit(new UpdateForeignNodeConfigTask(config, fBase));
 		return future;
 	}
 
 	public Future<Boolean> runPutDataRecordTask(DataRecord record, boolean publish) {
-		Future<Boolean> future = pool.submit(new PutDataRecordTask(record, fBase, publish));
+		Future<Boolean> future = submit(new PutDataRecordTask(record, fBase, publish));
 		return future;
 	}
 
 	public Future<Boolean> runDeleteDataRecordTask(DataIdentifier identifier, boolean publish) {
-		Future<Boolean> future = pool.submit(new DeleteDataRecordTask(identifier, fBase, publish));
+		Future<Boolean> future = submit(new DeleteDataRecordTask(identifier, fBase, publish));
 		return future;
 	}
 
 	public Future<Boolean> runProcessMessageWithUnknownEncryptionTask(Envelope envelope) {
 		Future<Boolean> future =
-				pool.submit(new ProcessMessageWithUnknownEncryptionTask(fBase, envelope));
+				submit(new ProcessMessageWithUnknownEncryptionTask(fBase, envelope));
 		return future;
 	}
 
 	public Future<Boolean> runRemoveMachineFromNodeTask(String machineName) {
-		Future<Boolean> future = pool.submit(new RemoveMachineFromNodeTask(machineName, fBase));
+		Future<Boolean> future = submit(new RemoveMachineFromNodeTask(machineName, fBase));
 		return future;
 	}
 
 	public Future<Boolean> runAnnounceUpdateOfOwnNodeConfigurationTask() {
-		Future<Boolean> future = pool.submit(new AnnounceUpdateOfOwnNodeConfigurationTask(fBase));
+		Future<Boolean> future = submit(new AnnounceUpdateOfOwnNodeConfigurationTask(fBase));
+		return future;
+	}
+
+	/**
+	 * Runs the {@link AnnounceUpdateOfOwnNodeConfigurationTask} and calls the callback once it
+	 * finished.
+	 * 
+	 * @param callback - receives the result of the task, or the exception it threw
+	 * @return the future of the task
+	 */
+	public Future<Boolean> runAnnounceUpdateOfOwnNodeConfigurationTask(
+			BiConsumer<Boolean, Throwable> callback) {
+		Future<Boolean> future = submit(new CallbackTask<>(
+				new AnnounceUpdateOfOwnNodeConfigurationTask(fBase), fBase, callback));
 		return future;
 	}
 
@@ -160,36 +494,38 @@ public class TaskManager {
 
 	public Future<Boolean> startBackgroundCheckKeygroupConfigurationsOnUpdatesTask(int interval) {
 		Future<Boolean> future =
-				pool.submit(new CheckKeygroupConfigurationsOnUpdatesTask(fBase, interval));
+				scheduler.schedule(new CheckKeygroupConfigurationsOnUpdatesTask(fBase, interval));
 		return future;
 	}
 
 	public Future<Boolean> startBackgroundPollLatesConfigurationDataForResponsibleKeygroupsTask(
 			int checkInterval) {
-		Future<Boolean> future = pool.submit(
+		Future<Boolean> future = scheduler.schedule(
 				new PollLatestConfigurationDataForResponsibleKeygroupsTask(fBase, checkInterval));
 		return future;
 	}
 
 	public Future<Boolean> startBackgroundPutHeartbeatTask(int pulse) {
-		Future<Boolean> future = pool.submit(new PutHeartbeatTask(fBase, pulse));
+		Future<Boolean> future = scheduler.scheduleDedicated(new PutHeartbeatTask(fBase, pulse));
 		return future;
 	}
 
 	public Future<Boolean> startDetectMissingHeartbeatsTask(int checkInterval,
 			int toleratedMissingHeartbeat) {
-		Future<Boolean> future = pool.submit(
+		Future<Boolean> future = scheduler.schedule(
 				new DetectMissingHeartbeats(fBase, checkInterval, toleratedMissingHeartbeat));
 		return future;
 	}
 
 	public Future<Boolean> startBackgroundDetectMissingResponsibility(int interval) {
-		Future<Boolean> future = pool.submit(new DetectMissingResponsibility(fBase, interval));
+		Future<Boolean> future =
+				scheduler.schedule(new DetectMissingResponsibility(fBase, interval));
 		return future;
 	}
 
 	public Future<Boolean> startBackgroundDetectLostResponsibility(int interval) {
-		Future<Boolean> future = pool.submit(new DetectLostResponsibility(fBase, interval));
+		Future<Boolean> future =
+				scheduler.schedule(new DetectLostResponsibility(fBase, interval));
 		return future;
 	}
 
@@ -50,6 +50,7 @@ public class UpdateForeignNodeConfigTask extends Task<Boolean> {
 		}
 
 		fBase.connector.nodeConfig_put(config.getNodeID(), config);
+		fBase.configAccessHelper.nodeConfig_invalidate(config.getNodeID());
 		logger.debug("Put node config into database");
 
 		// find to be updated keygroups
@@ -61,6 +61,7 @@ public class UpdateKeygroupConfigTask extends Task<Boolean> {
 		}
 		
 		fBase.connector.keygroupConfig_put(config.getKeygroupID(), config);
+		fBase.configAccessHelper.keygroupConfig_invalidate(config.getKeygroupID());
 		logger.debug("Stored configuration in database");
 
 		try {
@@ -0,0 +1,50 @@
+package tasks.background;
+
+import control.FBase;
+import tasks.BackgroundScheduler;
+import tasks.Task;
+import tasks.TaskManager.TaskName;
+
+/**
+ * A task that is executed periodically by the {@link BackgroundScheduler}. Each call of
+ * {@link #executeFunctionality()} performs a single round of the task.
+ */
+public abstract class BackgroundTask extends Task<Boolean> {
+
+	private volatile long interval;
+
+	/**
+	 * @param name - the name of the task
+	 * @param fBase
+	 * @param interval - the time in milliseconds between two rounds
+	 */
+	public BackgroundTask(TaskName name, FBase fBase, long interval) {
+		super(name, fBase);
+		setInterval(interval);
+	}
+
+	public TaskName getName() {
+		return name;
+	}
+
+	/**
+	 * @return the time in milliseconds between two rounds
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Changes the time between two rounds, takes effect after the current round. Use
+	 * {@link BackgroundScheduler.Job#setInterval(long)} to apply it immediately.
+	 *
+	 * @param interval - the time in milliseconds between two rounds
+	 */
+	public void setInterval(long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be greater than 0");
+		}
+		this.interval = interval;
+	}
+
+}
@@ -17,7 +17,6 @@ import exceptions.FBaseNamingServiceException;
 import exceptions.FBaseStorageConnectorException;
 import model.config.KeygroupConfig;
 import model.data.KeygroupID;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 import tasks.UpdateKeygroupConfigTask;
 import tasks.UpdateKeygroupSubscriptionsTask;
@@ -39,7 +38,7 @@ import tasks.UpdateKeygroupSubscriptionsTask;
  * @author jonathanhasenburg
  *
  */
-public class CheckKeygroupConfigurationsOnUpdatesTask extends Task<Boolean> {
+public class CheckKeygroupConfigurationsOnUpdatesTask extends BackgroundTask {
 
 	private static Logger logger =
 			Logger.getLogger(CheckKeygroupConfigurationsOnUpdatesTask.class.getName());
@@ -48,6 +47,8 @@ public class CheckKeygroupConfigurationsOnUpdatesTask extends Task<Boolean> {
 		logger.setLevel(Level.INFO);
 	}
 	
+	private static final int DEFAULT_INTERVAL = 10000;
+
 	/**
 	 * Creates a new {@link CheckKeygroupConfigurationsOnUpdatesTask}. If checkInterval <= 0,
 	 * the default is used (10 sec)
@@ -56,14 +57,10 @@ public class CheckKeygroupConfigurationsOnUpdatesTask extends Task<Boolean> {
 	 * @param checkInterval - the interval to check in milliseconds
 	 */
 	public CheckKeygroupConfigurationsOnUpdatesTask(FBase fBase, int checkInterval) {
-		super(TaskName.B_CHECK_KEYGROUP_CONFIGURATIONS_ON_UPDATES, fBase);
-		if (checkInterval > 0) {
-			this.checkInterval = checkInterval;
-		}
+		super(TaskName.B_CHECK_KEYGROUP_CONFIGURATIONS_ON_UPDATES, fBase,
+				checkInterval > 0 ? checkInterval : DEFAULT_INTERVAL);
 	}
 
-	private int checkInterval = 10000;
-
 	final List<KeygroupID> currentResponsibleKeygroups = new ArrayList<>();
 	final Map<KeygroupID, KeygroupConfig> currentKeygroupConfigurations = new HashMap<>();
 	final Map<KeygroupID, KeygroupConfig> savedKeygroupConfigurations = new HashMap<>();
@@ -71,56 +68,46 @@ public class CheckKeygroupConfigurationsOnUpdatesTask extends Task<Boolean> {
 	@Override
 	public Boolean executeFunctionality() {
 
-		while (!Thread.currentThread().isInterrupted()) {
-			logger.debug("Checking keygroup configurations on updates");
-			
-			currentResponsibleKeygroups.clear();
-			currentKeygroupConfigurations.clear();
-			try {
-				// get all keygroups I am currently responsible for
-				Map<KeygroupID, Pair<String, Integer>> keygroupSubscriberMachines =
-						fBase.connector.keyGroupSubscriberMachines_listAll();
-				keygroupSubscriberMachines.forEach((k, v) -> {
-					if (fBase.configuration.getMachineName().equals(v.getValue0())) {
-						currentResponsibleKeygroups.add(k);
-					}
-				});
-				logger.debug("Number of currently responsible keygroups / all keygroups: "
-						+ currentResponsibleKeygroups.size() + " / "
-						+ keygroupSubscriberMachines.size());
-
-				// get the keygroup configurations for the responsible keygroups
-				currentResponsibleKeygroups.forEach(k -> {
-					try {
-						KeygroupConfig config = fBase.configAccessHelper.keygroupConfig_get(k);
-						currentKeygroupConfigurations.put(k, config);
-					} catch (FBaseStorageConnectorException | FBaseCommunicationException
-							| FBaseNamingServiceException e) {
-						handleFBaseException(e);
-					}
-				});
-
-				// run update if current version and stored version differ
-				currentKeygroupConfigurations.forEach((keygroupID, config) -> {
-					if (checkIfKeygroupConfigVersionDiffers(keygroupID, config.getVersion())) {
-						fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(config);
-					}
-				});
-
-				savedKeygroupConfigurations.clear();
-				savedKeygroupConfigurations.putAll(currentKeygroupConfigurations);
-			} catch (FBaseStorageConnectorException e) {
-				handleFBaseException(e);
-			}
-
-			try {
-				Thread.sleep(checkInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
+		logger.debug("Checking keygroup configurations on updates");
+		
+		currentResponsibleKeygroups.clear();
+		currentKeygroupConfigurations.clear();
+		try {
+			// get all keygroups I am currently responsible for
+			Map<KeygroupID, Pair<String, Integer>> keygroupSubscriberMachines =
+					fBase.connector.keyGroupSubscriberMachines_listAll();
+			keygroupSubscriberMachines.forEach((k, v) -> {
+				if (fBase.configuration.getMachineName().equals(v.getValue0())) {
+					currentResponsibleKeygroups.add(k);
+				}
+			});
+			logger.debug("Number of currently responsible keygroups / all keygroups: "
+					+ currentResponsibleKeygroups.size() + " / "
+					+ keygroupSubscriberMachines.size());
+
+			// get the keygroup configurations for the responsible keygroups
+			currentResponsibleKeygroups.forEach(k -> {
+				try {
+					KeygroupConfig config = fBase.configAccessHelper.keygroupConfig_get(k);
+					currentKeygroupConfigurations.put(k, config);
+				} catch (FBaseStorageConnectorException | FBaseCommunicationException
+						| FBaseNamingServiceException e) {
+					handleFBaseException(e);
+				}
+			});
+
+			// run update if current version and stored version differ
+			currentKeygroupConfigurations.forEach((keygroupID, config) -> {
+				if (checkIfKeygroupConfigVersionDiffers(keygroupID, config.getVersion())) {
+					fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(config);
+				}
+			});
+
+			savedKeygroupConfigurations.clear();
+			savedKeygroupConfigurations.putAll(currentKeygroupConfigurations);
+		} catch (FBaseStorageConnectorException e) {
+			handleFBaseException(e);
 		}
-		logger.info("Stopping task, because Thread was interrupted");
 		return true;
 	}
 
@@ -12,7 +12,6 @@ import exceptions.FBaseException;
 import exceptions.FBaseStorageConnectorException;
 import model.config.KeygroupConfig;
 import model.data.KeygroupID;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 
 /**
@@ -23,7 +22,7 @@ import tasks.TaskManager.TaskName;
  * @author jonathanhasenburg
  *
  */
-public class DetectLostResponsibility extends Task<Boolean> {
+public class DetectLostResponsibility extends BackgroundTask {
 
 	private static Logger logger = Logger.getLogger(DetectLostResponsibility.class.getName());
 
@@ -31,6 +30,8 @@ public class DetectLostResponsibility extends Task<Boolean> {
 		logger.setLevel(Level.INFO);
 	}
 
+	private static final int DEFAULT_INTERVAL = 10000;
+
 	/**
 	 * Creates a new {@link DetectLostResponsibility}. If checkInterval <= 0, the default is
 	 * used (10 sec).
@@ -39,57 +40,43 @@ public class DetectLostResponsibility extends Task<Boolean> {
 	 * @param checkInterval - the interval to put heartbeats in milliseconds
 	 */
 	public DetectLostResponsibility(FBase fBase, int checkInterval) {
-		super(TaskName.B_DETECT_LOST_RESPONSIBILITY, fBase);
-		if (checkInterval > 0) {
-			this.checkInterval = checkInterval;
-		}
+		super(TaskName.B_DETECT_LOST_RESPONSIBILITY, fBase,
+				checkInterval > 0 ? checkInterval : DEFAULT_INTERVAL);
 
 	}
 
-	private int checkInterval = 10000;
-
 	@Override
 	public Boolean executeFunctionality() {
 
-		while (!Thread.currentThread().isInterrupted()) {
-			logger.debug("Looking for lost responsibilities");
-
-			try {
-				Set<KeygroupID> subscribedKeygroups =
-						fBase.subscriptionRegistry.getSubscribedKeygroups();
-
-				Map<KeygroupID, Pair<String, Integer>> responsibilities =
-						fBase.connector.keyGroupSubscriberMachines_listAll();
-
-				for (KeygroupID keygroupID : subscribedKeygroups) {
-					try {
-						Pair<String, Integer> pair = responsibilities.get(keygroupID);
-						if (pair == null
-								|| !pair.getValue0().equals(fBase.configuration.getMachineName())) {
-							logger.info("Lost responsibility for keygroup " + keygroupID);
-							KeygroupConfig config = fBase.connector.keygroupConfig_get(keygroupID);
-							fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(config);
-						}
-					} catch (FBaseException e) {
-						logger.error("Could not run the subscription update process for keygroup "
-								+ keygroupID, e);
+		logger.debug("Looking for lost responsibilities");
+
+		try {
+			Set<KeygroupID> subscribedKeygroups =
+					fBase.subscriptionRegistry.getSubscribedKeygroups();
+
+			Map<KeygroupID, Pair<String, Integer>> responsibilities =
+					fBase.connector.keyGroupSubscriberMachines_listAll();
+
+			for (KeygroupID keygroupID : subscribedKeygroups) {
+				try {
+					Pair<String, Integer> pair = responsibilities.get(keygroupID);
+					if (pair == null
+							|| !pair.getValue0().equals(fBase.configuration.getMachineName())) {
+						logger.info("Lost responsibility for keygroup " + keygroupID);
+						KeygroupConfig config = fBase.connector.keygroupConfig_get(keygroupID);
+						fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(config);
 					}
+				} catch (FBaseException e) {
+					logger.error("Could not run the subscription update process for keygroup "
+							+ keygroupID, e);
 				}
-
-			} catch (FBaseStorageConnectorException e1) {
-				logger.error(
-						"Could not read data to detect lost responsibilities, going back to sleep",
-						e1);
 			}
 
-			try {
-				Thread.sleep(checkInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
+		} catch (FBaseStorageConnectorException e1) {
+			logger.error(
+					"Could not read data to detect lost responsibilities, going back to sleep",
+					e1);
 		}
-		logger.info("Stopping task, because Thread was interrupted");
 		return true;
 	}
 
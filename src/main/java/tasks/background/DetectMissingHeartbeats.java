@@ -11,7 +11,6 @@ import org.javatuples.Pair;
 
 import control.FBase;
 import exceptions.FBaseStorageConnectorException;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 
 /**
@@ -22,7 +21,7 @@ import tasks.TaskManager.TaskName;
  * @author jonathanhasenburg
  *
  */
-public class DetectMissingHeartbeats extends Task<Boolean> {
+public class DetectMissingHeartbeats extends BackgroundTask {
 
 	private static Logger logger = Logger.getLogger(DetectMissingHeartbeats.class.getName());
 
@@ -30,6 +29,8 @@ public class DetectMissingHeartbeats extends Task<Boolean> {
 		logger.setLevel(Level.INFO);
 	}
 
+	private static final int DEFAULT_INTERVAL = 10000;
+
 	/**
 	 * Creates a new {@link DetectMissingHeartbeats}. If checkInterval <= 0, the default is used (10
 	 * sec). If toleratedMissingHeartbeat <= 0, the default is used (100 sec).
@@ -40,57 +41,44 @@ public class DetectMissingHeartbeats extends Task<Boolean> {
 	 *            heartbeat to not have been updated
 	 */
 	public DetectMissingHeartbeats(FBase fBase, int checkInterval, int toleratedMissingHeartbeat) {
-		super(TaskName.B_DETECT_MISSING_HEARTBEATS, fBase);
-		if (checkInterval > 0) {
-			this.checkInterval = checkInterval;
-		}
+		super(TaskName.B_DETECT_MISSING_HEARTBEATS, fBase,
+				checkInterval > 0 ? checkInterval : DEFAULT_INTERVAL);
 		if (toleratedMissingHeartbeat > 0) {
 			this.toleratedMissingHeartbeat = toleratedMissingHeartbeat;
 		}
 	}
 
-	private int checkInterval = 10000;
 	private int toleratedMissingHeartbeat = 10000;
 
 	@Override
 	public Boolean executeFunctionality() {
 
-		while (!Thread.currentThread().isInterrupted()) {
-			logger.debug("Looking for missing heartbeats");
+		logger.debug("Looking for missing heartbeats");
 
-			try {
-				Map<String, Pair<String, Long>> heartbeats = fBase.connector.heartbeats_listAll();
-				long currentTime = System.currentTimeMillis();
-				heartbeats.forEach((name, info) -> {
-					long timeSince = currentTime - info.getValue1();
-					if (timeSince > toleratedMissingHeartbeat) {
-						logger.warn("Machines " + name + " heartbeat is " + timeSince
-								+ " seconds old. Removing from node");
-						try {
-							boolean success = fBase.taskmanager.runRemoveMachineFromNodeTask(name)
-									.get(10, TimeUnit.SECONDS);
-							logger.info(
-									"Removal of machine " + name + " was a success?: " + success);
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							logger.error("Background task has been interrupted");
-						} catch (ExecutionException | TimeoutException e) {
-							logger.error("Could not remove machine " + name + " from node ", e);
-						}
+		try {
+			Map<String, Pair<String, Long>> heartbeats = fBase.connector.heartbeats_listAll();
+			long currentTime = System.currentTimeMillis();
+			heartbeats.forEach((name, info) -> {
+				long timeSince = currentTime - info.getValue1();
+				if (timeSince > toleratedMissingHeartbeat) {
+					logger.warn("Machines " + name + " heartbeat is " + timeSince
+							+ " seconds old. Removing from node");
+					try {
+						boolean success = fBase.taskmanager.runRemoveMachineFromNodeTask(name)
+								.get(10, TimeUnit.SECONDS);
+						logger.info(
+								"Removal of machine " + name + " was a success?: " + success);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						logger.error("Background task has been interrupted");
+					} catch (ExecutionException | TimeoutException e) {
+						logger.error("Could not remove machine " + name + " from node ", e);
 					}
-				});
-			} catch (FBaseStorageConnectorException e1) {
-				logger.error("Could not read heartbeats, going back to sleep", e1);
-			}
-
-			try {
-				Thread.sleep(checkInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
+				}
+			});
+		} catch (FBaseStorageConnectorException e1) {
+			logger.error("Could not read heartbeats, going back to sleep", e1);
 		}
-		logger.info("Stopping task, because Thread was interrupted");
 		return true;
 	}
 
@@ -10,7 +10,6 @@ import control.FBase;
 import exceptions.FBaseException;
 import exceptions.FBaseStorageConnectorException;
 import model.data.KeygroupID;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 
 /**
@@ -20,7 +19,7 @@ import tasks.TaskManager.TaskName;
  * @author jonathanhasenburg
  *
  */
-public class DetectMissingResponsibility extends Task<Boolean> {
+public class DetectMissingResponsibility extends BackgroundTask {
 
 	private static Logger logger = Logger.getLogger(DetectMissingResponsibility.class.getName());
 
@@ -28,6 +27,8 @@ public class DetectMissingResponsibility extends Task<Boolean> {
 		logger.setLevel(Level.INFO);
 	}
 
+	private static final int DEFAULT_INTERVAL = 10000;
+
 	/**
 	 * Creates a new {@link DetectMissingResponsibility}. If checkInterval <= 0, the default
 	 * is used (10 sec).
@@ -36,49 +37,35 @@ public class DetectMissingResponsibility extends Task<Boolean> {
 	 * @param checkInterval - the interval to put heartbeats in milliseconds
 	 */
 	public DetectMissingResponsibility(FBase fBase, int checkInterval) {
-		super(TaskName.B_DETECT_MISSING_RESPONSIBILITY, fBase);
-		if (checkInterval > 0) {
-			this.checkInterval = checkInterval;
-		}
+		super(TaskName.B_DETECT_MISSING_RESPONSIBILITY, fBase,
+				checkInterval > 0 ? checkInterval : DEFAULT_INTERVAL);
 
 	}
 
-	private int checkInterval = 10000;
-
 	@Override
 	public Boolean executeFunctionality() {
 
-		while (!Thread.currentThread().isInterrupted()) {
-			logger.debug("Looking for missing responsibilities");
+		logger.debug("Looking for missing responsibilities");
 
-			try {
-				Map<KeygroupID, Pair<String, Integer>> responsibilities =
-						fBase.connector.keyGroupSubscriberMachines_listAll();
+		try {
+			Map<KeygroupID, Pair<String, Integer>> responsibilities =
+					fBase.connector.keyGroupSubscriberMachines_listAll();
 
-				for (KeygroupID keygroupID : responsibilities.keySet()) {
-					if (responsibilities.get(keygroupID).getValue0() == null) {
-						try {
-							fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(
-									fBase.connector.keygroupConfig_get(keygroupID));
-						} catch (FBaseException e) {
-							logger.error(
-									"Could not update responsibilites for keygroup " + keygroupID);
-						}
+			for (KeygroupID keygroupID : responsibilities.keySet()) {
+				if (responsibilities.get(keygroupID).getValue0() == null) {
+					try {
+						fBase.taskmanager.runUpdateKeygroupSubscriptionsTask(
+								fBase.connector.keygroupConfig_get(keygroupID));
+					} catch (FBaseException e) {
+						logger.error(
+								"Could not update responsibilites for keygroup " + keygroupID);
 					}
 				}
-
-			} catch (FBaseStorageConnectorException e1) {
-				logger.error("Could not read responsibilities, going back to sleep", e1);
 			}
 
-			try {
-				Thread.sleep(checkInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
+		} catch (FBaseStorageConnectorException e1) {
+			logger.error("Could not read responsibilities, going back to sleep", e1);
 		}
-		logger.info("Stopping task, because Thread was interrupted");
 		return true;
 	}
 
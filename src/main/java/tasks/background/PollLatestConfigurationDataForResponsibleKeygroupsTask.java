@@ -2,24 +2,27 @@ package tasks.background;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.javatuples.Pair;
 
 import control.FBase;
-import exceptions.FBaseCommunicationException;
-import exceptions.FBaseNamingServiceException;
 import exceptions.FBaseStorageConnectorException;
 import model.config.KeygroupConfig;
 import model.config.NodeConfig;
 import model.config.ReplicaNodeConfig;
 import model.data.KeygroupID;
 import model.data.NodeID;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 import tasks.UpdateForeignNodeConfigTask;
 import tasks.UpdateKeygroupConfigTask;
@@ -41,7 +44,7 @@ import tasks.UpdateKeygroupConfigTask;
  * @author jonathanhasenburg
  *
  */
-public class PollLatestConfigurationDataForResponsibleKeygroupsTask extends Task<Boolean> {
+public class PollLatestConfigurationDataForResponsibleKeygroupsTask extends BackgroundTask {
 
 	private static Logger logger =
 			Logger.getLogger(PollLatestConfigurationDataForResponsibleKeygroupsTask.class.getName());
@@ -50,6 +53,8 @@ public class PollLatestConfigurationDataForResponsibleKeygroupsTask extends Task
 		logger.setLevel(Level.WARN);
 	}
 	
+	private static final int DEFAULT_INTERVAL = 3600000;
+
 	/**
 	 * Creates a new {@link PollLatestConfigurationDataForResponsibleKeygroupsTask}. If
 	 * checkInterval <= 0, the default is used (6h)
@@ -58,95 +63,99 @@ public class PollLatestConfigurationDataForResponsibleKeygroupsTask extends Task
 	 * @param checkInterval - the interval to check in milliseconds
 	 */
 	public PollLatestConfigurationDataForResponsibleKeygroupsTask(FBase fBase, int checkInterval) {
-		super(TaskName.B_POLL_LATEST_CONFIGURATION_DATA_FOR_RESPONSIBLE_KEYGROUPS, fBase);
-		if (checkInterval > 0) {
-			this.checkInterval = checkInterval;
-		}
+		super(TaskName.B_POLL_LATEST_CONFIGURATION_DATA_FOR_RESPONSIBLE_KEYGROUPS, fBase,
+				checkInterval > 0 ? checkInterval : DEFAULT_INTERVAL);
 	}
 
-	private int checkInterval = 3600000; // alle 6h
-
 	@Override
 	public Boolean executeFunctionality() {
 
-		while (!Thread.currentThread().isInterrupted()) {
-
-			logger.debug("Polling latest configuration data");
-			
-			try {
-				// get responsible keygroupIDs
-				List<KeygroupID> keygroupIDs = new ArrayList<>();
-				Map<KeygroupID, Pair<String, Integer>> responsibilities =
-						fBase.connector.keyGroupSubscriberMachines_listAll();
-				for (KeygroupID keygroupID : responsibilities.keySet()) {
-					if (fBase.configuration.getMachineName()
-							.equals(responsibilities.get(keygroupID).getValue0())) {
-						keygroupIDs.add(keygroupID);
-					}
+		logger.debug("Polling latest configuration data");
+		
+		try {
+			// get responsible keygroupIDs
+			List<KeygroupID> keygroupIDs = new ArrayList<>();
+			Map<KeygroupID, Pair<String, Integer>> responsibilities =
+					fBase.connector.keyGroupSubscriberMachines_listAll();
+			for (KeygroupID keygroupID : responsibilities.keySet()) {
+				if (fBase.configuration.getMachineName()
+						.equals(responsibilities.get(keygroupID).getValue0())) {
+					keygroupIDs.add(keygroupID);
 				}
-				logger.debug("Need to update keygroup configurations for " + keygroupIDs);
-
-				// updated related keygroup configurations from namingservice
-				List<KeygroupConfig> keygroupConfigs = new ArrayList<>();
-				for (KeygroupID keygroupID : keygroupIDs) {
-					try {
-						KeygroupConfig keygroupConfig =
-								fBase.namingServiceSender.sendKeygroupConfigRead(keygroupID);
-						keygroupConfigs.add(keygroupConfig);
-						fBase.taskmanager.runUpdateKeygroupConfigTask(keygroupConfig, false);
-					} catch (FBaseCommunicationException | FBaseNamingServiceException e) {
-						logger.error(
-								"Could not get latest configuration from namingservice for keygroup"
-										+ " configuration " + keygroupID,
-								e);
-					}
+			}
+			logger.debug("Need to update keygroup configurations for " + keygroupIDs);
+
+			// updated related keygroup configurations from namingservice, all requests are
+			// sent at once
+			Map<KeygroupID, CompletableFuture<KeygroupConfig>> keygroupRequests =
+					new LinkedHashMap<>();
+			for (KeygroupID keygroupID : keygroupIDs) {
+				keygroupRequests.put(keygroupID,
+						fBase.namingServiceSender.sendKeygroupConfigReadAsync(keygroupID));
+			}
+			List<KeygroupConfig> keygroupConfigs = new ArrayList<>();
+			List<Future<Boolean>> updates = new ArrayList<>();
+			for (KeygroupID keygroupID : keygroupRequests.keySet()) {
+				try {
+					KeygroupConfig keygroupConfig = keygroupRequests.get(keygroupID).get();
+					keygroupConfigs.add(keygroupConfig);
+					updates.add(fBase.taskmanager.runUpdateKeygroupConfigTask(keygroupConfig,
+							false));
+				} catch (ExecutionException e) {
+					logger.error(
+							"Could not get latest configuration from namingservice for keygroup"
+									+ " configuration " + keygroupID,
+							e.getCause());
 				}
-				logger.debug("Updated all keygroup configurations");
+			}
+			logger.debug("Updated all keygroup configurations");
 
-				// lets wait a little for subscriptions to come down
+			// lets wait a little for subscriptions to come down, the thread is shared with
+			// other background tasks, so it only waits for the updates to finish
+			long deadline = System.currentTimeMillis() + 10000;
+			for (Future<Boolean> update : updates) {
 				try {
-					Thread.sleep(10000);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					logger.error("Background task has been interrupted");
+					update.get(Math.max(0, deadline - System.currentTimeMillis()),
+							TimeUnit.MILLISECONDS);
+				} catch (ExecutionException | TimeoutException e) {
+					logger.warn("Keygroup configuration update did not finish", e);
 				}
+			}
 
-				// get all replica nodeIDs for keygroupIDs
-				Set<NodeID> nodeIDs = new HashSet<>();
-				for (KeygroupConfig config : keygroupConfigs) {
-					for (ReplicaNodeConfig repNC : config.getReplicaNodes()) {
-						nodeIDs.add(repNC.getNodeID());
-					}
+			// get all replica nodeIDs for keygroupIDs
+			Set<NodeID> nodeIDs = new HashSet<>();
+			for (KeygroupConfig config : keygroupConfigs) {
+				for (ReplicaNodeConfig repNC : config.getReplicaNodes()) {
+					nodeIDs.add(repNC.getNodeID());
 				}
-				logger.debug("Need to update node configurations for " + nodeIDs);
+			}
+			logger.debug("Need to update node configurations for " + nodeIDs);
 
-				// update related node configurations from namingservice
-				for (NodeID nodeID : nodeIDs) {
-					try {
-						NodeConfig nodeConfig =
-								fBase.namingServiceSender.sendNodeConfigRead(nodeID);
-						fBase.taskmanager.runUpdateForeignNodeConfigTask(nodeConfig);
-					} catch (FBaseCommunicationException | FBaseNamingServiceException e) {
-						logger.error(
-								"Could not get latest configuration from namingservice for node"
-										+ nodeID,
-								e);
-					}
+			// update related node configurations from namingservice
+			Map<NodeID, CompletableFuture<NodeConfig>> nodeRequests = new LinkedHashMap<>();
+			for (NodeID nodeID : nodeIDs) {
+				nodeRequests.put(nodeID,
+						fBase.namingServiceSender.sendNodeConfigReadAsync(nodeID));
+			}
+			for (NodeID nodeID : nodeRequests.keySet()) {
+				try {
+					NodeConfig nodeConfig = nodeRequests.get(nodeID).get();
+					fBase.taskmanager.runUpdateForeignNodeConfigTask(nodeConfig);
+				} catch (ExecutionException e) {
+					logger.error(
+							"Could not get latest configuration from namingservice for node"
+									+ nodeID,
+							e.getCause());
 				}
-				logger.debug("Updated all node configurations");
-
-			} catch (FBaseStorageConnectorException e) {
-				logger.fatal("Could not get my responsibel keygroupIDs, going back to sleep", e);
 			}
+			logger.debug("Updated all node configurations");
 
-			try {
-				Thread.sleep(checkInterval);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
+		} catch (FBaseStorageConnectorException e) {
+			logger.fatal("Could not get my responsibel keygroupIDs, going back to sleep", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Background task has been interrupted");
 		}
-		logger.info("Stopping task, because Thread was interrupted");
 		return true;
 	}
 
@@ -5,7 +5,6 @@ import org.apache.log4j.Logger;
 
 import control.FBase;
 import exceptions.FBaseStorageConnectorException;
-import tasks.Task;
 import tasks.TaskManager.TaskName;
 
 /**
@@ -15,7 +14,7 @@ import tasks.TaskManager.TaskName;
  * @author jonathanhasenburg
  *
  */
-public class PutHeartbeatTask extends Task<Boolean> {
+public class PutHeartbeatTask extends BackgroundTask {
 
 	private static Logger logger = Logger.getLogger(PutHeartbeatTask.class.getName());
 
@@ -23,6 +22,8 @@ public class PutHeartbeatTask extends Task<Boolean> {
 		logger.setLevel(Level.WARN);
 	}
 
+	private static final int DEFAULT_INTERVAL = 2000;
+
 	/**
 	 * Creates a new {@link PutHeartbeatTask}. If pulse <= 0, the default is used (2 sec)
 	 * 
@@ -30,35 +31,20 @@ public class PutHeartbeatTask extends Task<Boolean> {
 	 * @param pulse - the interval to put heartbeats in milliseconds
 	 */
 	public PutHeartbeatTask(FBase fBase, int pulse) {
-		super(TaskName.B_PUT_HEARTBEAT, fBase);
-		if (pulse > 0) {
-			this.pulse = pulse;
-		}
+		super(TaskName.B_PUT_HEARTBEAT, fBase, pulse > 0 ? pulse : DEFAULT_INTERVAL);
 	}
 
-	private int pulse = 2000;
-
+	/**
+	 * @throws FBaseStorageConnectorException if the heartbeat could not be stored, so that the
+	 *             round is counted as failed
+	 */
 	@Override
-	public Boolean executeFunctionality() {
-
-		while (!Thread.currentThread().isInterrupted()) {
-			logger.debug("Putting heartbeat");
+	public Boolean executeFunctionality() throws FBaseStorageConnectorException {
 
-			try {
-				fBase.connector.heartbeats_update(fBase.configuration.getMachineName(),
-						fBase.configuration.getMachineIPAddress());
-			} catch (FBaseStorageConnectorException e1) {
-				logger.error("Could not store heartbeat in database", e1);
-			}
+		logger.debug("Putting heartbeat");
 
-			try {
-				Thread.sleep(pulse);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				logger.error("Background task has been interrupted");
-			}
-		}
-		logger.info("Stopping task, because Thread was interrupted");
+		fBase.connector.heartbeats_update(fBase.configuration.getMachineName(),
+				fBase.configuration.getMachineIPAddress());
 		return true;
 	}
 
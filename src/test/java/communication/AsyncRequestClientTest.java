@@ -0,0 +1,134 @@
+package communication;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.ZMQ;
+
+public class AsyncRequestClientTest {
+
+	private static Logger logger = Logger.getLogger(AsyncRequestClientTest.class.getName());
+
+	private ZMQ.Context context = null;
+	private ZMQ.Socket dealer = null;
+	private AsyncRequestClient client = null;
+	private Thread server = null;
+
+	@Before
+	public void setUp() throws Exception {
+		context = ZMQ.context(1);
+		dealer = context.socket(ZMQ.DEALER);
+		dealer.connect("tcp://localhost:8085");
+		client = new AsyncRequestClient("TestClient", context, dealer);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.shutdown();
+		if (server != null) {
+			server.interrupt();
+			server.join(1000);
+		}
+		dealer.close();
+		context.term();
+		logger.debug("\n");
+	}
+
+	/**
+	 * Starts a ROUTER server that collects the given number of requests and answers them in
+	 * reverse order, except for requests with the namespace "ignore".
+	 */
+	private void startServer(int requests) {
+		server = new Thread(() -> {
+			ZMQ.Socket router = context.socket(ZMQ.ROUTER);
+			router.setReceiveTimeOut(100);
+			router.bind("tcp://localhost:8085");
+			List<byte[][]> received = new ArrayList<>();
+			while (received.size() < requests && !Thread.currentThread().isInterrupted()) {
+				byte[] identity = router.recv();
+				if (identity == null) {
+					continue;
+				}
+				byte[] correlationID = router.recv();
+				router.recv(); // delimiter
+				byte[] namespace = router.recv();
+				byte[] frame = router.recv();
+				if (!"ignore".equals(new String(namespace, StandardCharsets.UTF_8))) {
+					received.add(new byte[][] { identity, correlationID, frame });
+				}
+			}
+			for (int i = received.size() - 1; i >= 0; i--) {
+				router.sendMore(received.get(i)[0]);
+				router.sendMore(received.get(i)[1]);
+				router.sendMore(new byte[0]);
+				router.send(received.get(i)[2]);
+			}
+			router.close();
+		});
+		server.start();
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testOutOfOrderResponses() throws InterruptedException, ExecutionException {
+		logger.debug("-------Starting testOutOfOrderResponses-------");
+		int n = 20;
+		startServer(n);
+		List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			futures.add(client.request(bytes("namespace"), bytes("Request " + i), 2000));
+		}
+		for (int i = 0; i < n; i++) {
+			assertArrayEquals(bytes("Request " + i), futures.get(i).get());
+		}
+		assertEquals(0, client.getNumberOfOutstandingRequests());
+		logger.debug("Finished testOutOfOrderResponses.");
+	}
+
+	@Test
+	public void testDeadline() throws InterruptedException, ExecutionException {
+		logger.debug("-------Starting testDeadline-------");
+		startServer(1);
+		CompletableFuture<byte[]> ignored = client.request(bytes("ignore"), bytes("Lost"), 200);
+		CompletableFuture<byte[]> answered =
+				client.request(bytes("namespace"), bytes("Request"), 2000);
+		try {
+			ignored.get();
+			fail("Request should have timed out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertArrayEquals(bytes("Request"), answered.get());
+		logger.debug("Finished testDeadline.");
+	}
+
+	@Test
+	public void testShutdown() throws InterruptedException {
+		logger.debug("-------Starting testShutdown-------");
+		client.shutdown();
+		try {
+			client.request(bytes("namespace"), bytes("Request"), 2000).get();
+			fail("Shut down client should not send requests");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		logger.debug("Finished testShutdown.");
+	}
+
+}
@@ -1,7 +1,10 @@
 package communication;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -15,6 +18,7 @@ import org.junit.Test;
 
 import control.FBase;
 import crypto.CryptoProvider.EncryptionAlgorithm;
+import de.hasenburg.fbase.model.GetMissedMessagesResponse;
 import exceptions.FBaseCommunicationException;
 import model.config.KeygroupConfig;
 import model.config.NodeConfig;
@@ -101,4 +105,45 @@ public class DirectMessageSenderAndReceiverTest {
 
 	}
 
+	@Test
+	public void testRange() throws InterruptedException, ExecutionException, TimeoutException,
+			FBaseCommunicationException {
+		logger.debug("-------Starting testRange-------");
+		int n = DirectMessageReceiver.MAX_RANGE_RESPONSE_SIZE + 5;
+		List<DataRecord> records = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			DataRecord record = new DataRecord();
+			record.setDataIdentifier(new DataIdentifier(keygroupID, "X" + i));
+			record.setValueWithoutKey("Test value " + i);
+			records.add(record);
+			fBase.taskmanager.runPutDataRecordTask(record, true).get(2, TimeUnit.SECONDS);
+		}
+		fBase.taskmanager.runDeleteDataRecordTask(new DataIdentifier(keygroupID, "X0"), true)
+				.get(2, TimeUnit.SECONDS);
+
+		MessageID first = new MessageID(fBase.configuration.getNodeID(),
+				fBase.configuration.getMachineName(), 1);
+		GetMissedMessagesResponse response = directMessageSender.sendGetDataRecords(first, n + 1);
+		assertEquals(DirectMessageReceiver.MAX_RANGE_RESPONSE_SIZE,
+				response.getResponses().size());
+		assertEquals(Integer.valueOf(DirectMessageReceiver.MAX_RANGE_RESPONSE_SIZE + 1),
+				response.getNextVersion());
+		assertEquals(new DataIdentifier(keygroupID, "X0"),
+				response.getResponses().get(0).getDataIdentifier());
+		assertNull(response.getResponses().get(0).getDataRecord());
+		assertEquals(records.get(1), response.getResponses().get(1).getDataRecord());
+
+		MessageID next = new MessageID(first.getNodeID(), first.getMachineName(),
+				response.getNextVersion());
+		response = directMessageSender.sendGetDataRecords(next, n + 1);
+		assertEquals(n + 1 - DirectMessageReceiver.MAX_RANGE_RESPONSE_SIZE,
+				response.getResponses().size());
+		assertNull(response.getNextVersion());
+		// the delete is the last message
+		assertNull(response.getResponses().get(n - DirectMessageReceiver.MAX_RANGE_RESPONSE_SIZE)
+				.getDataRecord());
+
+		logger.debug("Finished testRange.");
+	}
+
 }
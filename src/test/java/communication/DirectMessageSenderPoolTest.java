@@ -0,0 +1,99 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DirectMessageSenderPool} without sending requests.
+ */
+public class DirectMessageSenderPoolTest {
+
+	private static Logger logger = Logger.getLogger(DirectMessageSenderPoolTest.class.getName());
+
+	private static final String address = "tcp://localhost";
+
+	private DirectMessageSenderPool pool = null;
+
+	@Before
+	public void setUp() throws Exception {
+		pool = new DirectMessageSenderPool(null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdown();
+		logger.debug("\n");
+	}
+
+	@Test
+	public void testReuse() {
+		logger.debug("-------Starting testReuse-------");
+		DirectMessageSender sender = pool.borrow(address, 8000);
+		// borrowed senders are not handed out twice
+		DirectMessageSender other = pool.borrow(address, 8000);
+		assertNotSame(sender, other);
+		pool.release(sender);
+		pool.release(other);
+		assertEquals(2, pool.getNumberOfIdleSenders());
+
+		// the most recently released sender is reused first
+		assertSame(other, pool.borrow(address, 8000));
+		assertSame(sender, pool.borrow(address, 8000));
+		assertEquals(0, pool.getNumberOfIdleSenders());
+		logger.debug("Finished testReuse.");
+	}
+
+	@Test
+	public void testMachinesAreSeparated() {
+		logger.debug("-------Starting testMachinesAreSeparated-------");
+		DirectMessageSender sender = pool.borrow(address, 8000);
+		pool.release(sender);
+		DirectMessageSender other = pool.borrow(address, 8001);
+		assertNotSame(sender, other);
+		pool.release(other);
+		assertEquals(2, pool.getNumberOfIdleSenders());
+		logger.debug("Finished testMachinesAreSeparated.");
+	}
+
+	@Test
+	public void testMaxIdle() {
+		logger.debug("-------Starting testMaxIdle-------");
+		List<DirectMessageSender> senders = new ArrayList<>();
+		for (int i = 0; i < DirectMessageSenderPool.MAX_IDLE_PER_MACHINE + 2; i++) {
+			senders.add(pool.borrow(address, 8000));
+		}
+		senders.forEach(pool::release);
+		assertEquals(DirectMessageSenderPool.MAX_IDLE_PER_MACHINE, pool.getNumberOfIdleSenders());
+		logger.debug("Finished testMaxIdle.");
+	}
+
+	@Test
+	public void testShutdown() {
+		logger.debug("-------Starting testShutdown-------");
+		DirectMessageSender sender = pool.borrow(address, 8000);
+		pool.release(pool.borrow(address, 8000));
+		pool.shutdown();
+		assertEquals(0, pool.getNumberOfIdleSenders());
+		// senders released after the shutdown are not kept
+		pool.release(sender);
+		assertEquals(0, pool.getNumberOfIdleSenders());
+		try {
+			pool.borrow(address, 8000);
+			fail("Shut down pool should not hand out senders");
+		} catch (IllegalStateException e) {
+			logger.debug(e.getMessage());
+		}
+		logger.debug("Finished testShutdown.");
+	}
+
+}
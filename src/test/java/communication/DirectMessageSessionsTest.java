@@ -0,0 +1,147 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import communication.DirectMessageSessions.Session;
+import exceptions.FBaseEncryptionException;
+import model.data.MessageID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Message;
+
+public class DirectMessageSessionsTest {
+
+	private static Logger logger = Logger.getLogger(DirectMessageSessionsTest.class.getName());
+
+	private NodeID nodeID1 = new NodeID("N1");
+	private NodeID nodeID2 = new NodeID("N2");
+
+	private static final String MACHINE_1 = "tcp://127.0.0.1:8000";
+	private static final String MACHINE_2 = "tcp://127.0.0.2:8000";
+
+	private DirectMessageSessions sender = null;
+	private DirectMessageSessions receiver = null;
+	private Message message = null;
+
+	@Before
+	public void setUp() throws Exception {
+		sender = new DirectMessageSessions(60);
+		receiver = new DirectMessageSessions(60);
+		message = new Message();
+		message.setMessageID(new MessageID(nodeID1, "M1", 7));
+		message.setCommand(Command.GET_DATA_FOR_MESSAGEID);
+		message.setContent("N1/M1/7");
+		message.setTextualInfo("Some info");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		logger.debug("\n");
+	}
+
+	private Session establish() throws FBaseEncryptionException {
+		Session session = sender.createOutgoing(nodeID2, MACHINE_1);
+		receiver.accept(nodeID1, session.getOffer());
+		sender.established(session);
+		return session;
+	}
+
+	@Test
+	public void testRoundtrip() throws FBaseEncryptionException {
+		logger.debug("-------Starting testRoundtrip-------");
+		Session session = establish();
+		assertEquals(session, sender.getOutgoing(nodeID2, MACHINE_1));
+		// each machine of a node only knows the sessions offered to itself
+		assertNull(sender.getOutgoing(nodeID2, MACHINE_2));
+
+		Message sealed = session.seal(message, true);
+		assertTrue(DirectMessageSessions.isSealed(sealed));
+		assertEquals(Command.GET_DATA_FOR_MESSAGEID, sealed.getCommand());
+		assertFalse(message.getContent().equals(sealed.getContent()));
+
+		Session incoming = receiver.getIncoming(nodeID1, sealed.getTextualInfo());
+		assertEquals(session.getSessionID(), incoming.getSessionID());
+		assertEquals(message, incoming.open(sealed, true));
+
+		Message response = new Message();
+		response.setCommand(Command.GET_DATA_FOR_MESSAGEID);
+		response.setContent("Response");
+		assertEquals(response, session.open(incoming.seal(response, false), false));
+		logger.debug("Finished testRoundtrip.");
+	}
+
+	@Test
+	public void testModifiedMessage() throws FBaseEncryptionException {
+		logger.debug("-------Starting testModifiedMessage-------");
+		Session session = establish();
+		Session incoming = receiver.getIncoming(nodeID1,
+				DirectMessageSessions.SESSION_PREFIX + session.getSessionID());
+
+		Message reflected = session.seal(message, true);
+		Message otherCommand = session.seal(message, true);
+		otherCommand.setCommand(Command.ANNOUNCE_OWN_NODE_CONFIGURATION_CHANGE);
+		Message modified = session.seal(message, true);
+		char[] content = modified.getContent().toCharArray();
+		content[20] = content[20] == 'A' ? 'B' : 'A';
+		modified.setContent(new String(content));
+
+		try {
+			// a request must not be accepted as response
+			session.open(reflected, false);
+			fail("Reflected message should have been rejected");
+		} catch (FBaseEncryptionException e) {
+			logger.debug(e.getMessage());
+		}
+		for (Message m : new Message[] { otherCommand, modified }) {
+			try {
+				incoming.open(m, true);
+				fail("Modified message should have been rejected");
+			} catch (FBaseEncryptionException e) {
+				logger.debug(e.getMessage());
+			}
+		}
+		logger.debug("Finished testModifiedMessage.");
+	}
+
+	@Test
+	public void testUnknownSession() throws FBaseEncryptionException {
+		logger.debug("-------Starting testUnknownSession-------");
+		Session session = establish();
+		String textualInfo = DirectMessageSessions.SESSION_PREFIX + session.getSessionID();
+		// sessions are bound to the node that offered them
+		assertNull(receiver.getIncoming(nodeID2, textualInfo));
+		assertNull(receiver.getIncoming(nodeID1, DirectMessageSessions.SESSION_PREFIX + "x"));
+
+		sender.invalidate(session);
+		assertNull(sender.getOutgoing(nodeID2, MACHINE_1));
+		logger.debug("Finished testUnknownSession.");
+	}
+
+	@Test
+	public void testDisabled() {
+		logger.debug("-------Starting testDisabled-------");
+		DirectMessageSessions disabled = new DirectMessageSessions(0);
+		assertFalse(disabled.isEnabled(nodeID2));
+		try {
+			disabled.accept(nodeID1, sender.createOutgoing(nodeID2, MACHINE_1).getOffer());
+			fail("Disabled sessions should not accept offers");
+		} catch (FBaseEncryptionException e) {
+			logger.debug(e.getMessage());
+		}
+
+		assertTrue(sender.isEnabled(nodeID2));
+		sender.rejected(nodeID2);
+		assertFalse(sender.isEnabled(nodeID2));
+		logger.debug("Finished testDisabled.");
+	}
+
+}
@@ -0,0 +1,134 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hasenburg.fbase.model.UpdatePipelineStatistics;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import storageconnector.OnHeapDBConnector;
+
+public class KeygroupUpdatePipelineTest {
+
+	private static Logger logger = Logger.getLogger(KeygroupUpdatePipelineTest.class.getName());
+
+	private static final int UPDATES = 1000;
+
+	private OnHeapDBConnector connector = null;
+	private KeygroupUpdatePipeline pipeline = null;
+	private KeygroupID keygroupID1 = new KeygroupID("app", "tenant", "group1");
+	private KeygroupID keygroupID2 = new KeygroupID("app", "tenant", "group2");
+
+	@Before
+	public void setUp() throws Exception {
+		connector = new OnHeapDBConnector(new NodeID("N1"));
+		connector.dbConnection_initiate();
+		connector.keygroup_create(keygroupID1);
+		connector.keygroup_create(keygroupID2);
+		pipeline = new KeygroupUpdatePipeline(connector, 4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pipeline.shutdown();
+		connector.dbConnection_close();
+		logger.debug("\n");
+	}
+
+	private DataRecord createRecord(KeygroupID keygroupID, String dataID, String value) {
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(new DataIdentifier(keygroupID, dataID));
+		record.setValueWithoutKey(value);
+		return record;
+	}
+
+	private void awaitQueue() throws InterruptedException {
+		for (int i = 0; i < 100 && pipeline.getQueuedUpdates() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, pipeline.getQueuedUpdates());
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		logger.debug("-------Starting testOrder-------");
+		for (int i = 0; i < UPDATES; i++) {
+			pipeline.put(createRecord(keygroupID1, "A", "" + i));
+			pipeline.put(createRecord(keygroupID2, "B" + (i % 10), "" + i));
+			if (i % 100 == 99) {
+				pipeline.delete(new DataIdentifier(keygroupID2, "B0"));
+			}
+		}
+		pipeline.shutdown();
+		awaitQueue();
+		assertEquals(createRecord(keygroupID1, "A", "" + (UPDATES - 1)),
+				connector.dataRecords_get(new DataIdentifier(keygroupID1, "A")));
+		assertNull(connector.dataRecords_get(new DataIdentifier(keygroupID2, "B0")));
+		assertEquals(createRecord(keygroupID2, "B9", "" + (UPDATES - 1)),
+				connector.dataRecords_get(new DataIdentifier(keygroupID2, "B9")));
+		assertEquals(2 * UPDATES + UPDATES / 100, pipeline.getAppliedUpdates());
+		assertEquals(0, pipeline.getFailedUpdates());
+		logger.debug("Finished testOrder.");
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		logger.debug("-------Starting testBatching-------");
+		for (int i = 0; i < UPDATES; i++) {
+			pipeline.put(createRecord(keygroupID1, "" + i, "" + i));
+		}
+		awaitQueue();
+		pipeline.shutdown();
+		assertEquals(UPDATES, connector.dataRecords_list(keygroupID1).size());
+		assertEquals(UPDATES, pipeline.getAppliedUpdates());
+		assertTrue(pipeline.getAppliedBatches() <= UPDATES);
+		assertTrue(pipeline.getAppliedBatches() >= UPDATES / KeygroupUpdatePipeline.MAX_BATCH_SIZE);
+		logger.debug("Finished testBatching.");
+	}
+
+	@Test
+	public void testUnknownKeygroup() throws Exception {
+		logger.debug("-------Starting testUnknownKeygroup-------");
+		pipeline.put(createRecord(new KeygroupID("app", "tenant", "unknown"), "A", "1"));
+		pipeline.put(createRecord(keygroupID1, "A", "1"));
+		awaitQueue();
+		pipeline.shutdown();
+		assertEquals(1, pipeline.getFailedUpdates());
+		assertEquals(1, pipeline.getAppliedUpdates());
+		logger.debug("Finished testUnknownKeygroup.");
+	}
+
+	@Test
+	public void testLanesAreRemoved() throws Exception {
+		logger.debug("-------Starting testLanesAreRemoved-------");
+		for (int i = 0; i < UPDATES; i++) {
+			KeygroupID keygroupID = new KeygroupID("app", "tenant", "churn" + i);
+			connector.keygroup_create(keygroupID);
+			pipeline.put(createRecord(keygroupID, "A", "" + i));
+		}
+		awaitQueue();
+		for (int i = 0; i < 100 && pipeline.getNumberOfLanes() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, pipeline.getNumberOfLanes());
+		// a removed lane is created again for new updates
+		pipeline.put(createRecord(keygroupID1, "A", "1"));
+		pipeline.shutdown();
+		assertEquals(createRecord(keygroupID1, "A", "1"),
+				connector.dataRecords_get(new DataIdentifier(keygroupID1, "A")));
+		UpdatePipelineStatistics statistics = pipeline.getStatistics();
+		assertEquals(UPDATES + 1, statistics.getAppliedUpdates());
+		assertEquals(0, statistics.getFailedUpdates());
+		assertEquals(0, statistics.getLanes());
+		logger.debug("Finished testLanesAreRemoved.");
+	}
+
+}
@@ -0,0 +1,98 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.data.MessageID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Message;
+
+public class MessageCodecTest {
+
+	private static Logger logger = Logger.getLogger(MessageCodecTest.class.getName());
+
+	private Message message = null;
+
+	@Before
+	public void setUp() throws Exception {
+		message = new Message();
+		message.setMessageID(new MessageID(new NodeID("N1"), "M1", 7));
+		message.setCommand(Command.PUT_DATA_RECORD);
+		message.setContent("Test content with \u00fcml\u00e4\u00fcts");
+		message.setTextualInfo("Some info");
+		message.setSignature("Signature");
+	}
+
+	@Test
+	public void testJSONRoundtrip() {
+		logger.debug("-------Starting testJSONRoundtrip-------");
+		byte[] frame = MessageCodec.encode(message, WireFormat.JSON);
+		assertEquals(WireFormat.JSON, MessageCodec.detect(frame));
+		assertEquals(message, MessageCodec.decode(frame));
+		logger.debug("Finished testJSONRoundtrip.");
+	}
+
+	@Test
+	public void testBinaryRoundtrip() {
+		logger.debug("-------Starting testBinaryRoundtrip-------");
+		byte[] frame = MessageCodec.encode(message, WireFormat.BINARY);
+		assertEquals(WireFormat.BINARY, MessageCodec.detect(frame));
+		assertEquals(message, MessageCodec.decode(frame));
+		logger.debug("Finished testBinaryRoundtrip.");
+	}
+
+	@Test
+	public void testBinaryRoundtripWithoutFields() {
+		logger.debug("-------Starting testBinaryRoundtripWithoutFields-------");
+		Message empty = new Message();
+		empty.setContent("");
+		Message decoded = MessageCodec.decode(MessageCodec.encode(empty, WireFormat.BINARY));
+		assertEquals(empty, decoded);
+		assertEquals("", decoded.getContent());
+		assertNull(decoded.getMessageID());
+		assertNull(decoded.getCommand());
+		logger.debug("Finished testBinaryRoundtripWithoutFields.");
+	}
+
+	@Test
+	public void testUnsupportedVersion() {
+		logger.debug("-------Starting testUnsupportedVersion-------");
+		byte[] frame = MessageCodec.encode(message, WireFormat.BINARY);
+		frame[1] = MessageCodec.VERSION + 1;
+		try {
+			MessageCodec.decode(frame);
+			fail("Unsupported version should have been rejected");
+		} catch (IllegalArgumentException e) {
+			logger.debug(e.getMessage());
+		}
+		logger.debug("Finished testUnsupportedVersion.");
+	}
+
+	@Test
+	public void testMalformedFrames() {
+		logger.debug("-------Starting testMalformedFrames-------");
+		byte[] frame = MessageCodec.encode(message, WireFormat.BINARY);
+		byte[][] malformed = { Arrays.copyOf(frame, frame.length - 1),
+				Arrays.copyOf(frame, frame.length + 1), Arrays.copyOf(frame, 2),
+				"no json".getBytes(StandardCharsets.UTF_8) };
+		for (byte[] m : malformed) {
+			try {
+				MessageCodec.decode(m);
+				fail("Malformed frame should have been rejected");
+			} catch (IllegalArgumentException e) {
+				logger.debug(e.getMessage());
+			}
+		}
+		logger.debug("Finished testMalformedFrames.");
+	}
+
+}
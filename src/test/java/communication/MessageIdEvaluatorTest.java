@@ -1,6 +1,9 @@
 package communication;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.junit.After;
@@ -9,6 +12,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import de.hasenburg.fbase.model.MessageIDRange;
 import model.data.MessageID;
 import model.data.NodeID;
 
@@ -68,4 +72,67 @@ public class MessageIdEvaluatorTest {
 
 	}
 
+	@Test
+	public void testGapsAreClosed() throws InterruptedException {
+		logger.debug("-------Starting testGapsAreClosed-------");
+		MessageIdEvaluator evaluator = new MessageIdEvaluator(null);
+		for (int version = 10; version <= 1000; version += 2) {
+			evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, version));
+		}
+		assertEquals(495, evaluator.getMissingMessageIDs().size());
+		assertEquals("nodeID1/machine1/11",
+				evaluator.getMissingMessageIDs().get(0).getMessageIDString());
+
+		for (int version = 11; version < 1000; version += 2) {
+			evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, version));
+		}
+		// duplicates must not create new gaps
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 500));
+		assertTrue(evaluator.getMissingMessageIDs().isEmpty());
+		logger.debug("Finished testGapsAreClosed.");
+	}
+
+	@Test
+	public void testOlderVersionReceivedLater() throws InterruptedException {
+		logger.debug("-------Starting testOlderVersionReceivedLater-------");
+		MessageIdEvaluator evaluator = new MessageIdEvaluator(null);
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 5));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 7));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 2));
+
+		List<MessageID> missingIDs = evaluator.getMissingMessageIDs();
+		assertEquals(3, missingIDs.size());
+		assertEquals("nodeID1/machine1/3", missingIDs.get(0).getMessageIDString());
+		assertEquals("nodeID1/machine1/4", missingIDs.get(1).getMessageIDString());
+		assertEquals("nodeID1/machine1/6", missingIDs.get(2).getMessageIDString());
+
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 1));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 3));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 4));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 6));
+		assertTrue(evaluator.getMissingMessageIDs().isEmpty());
+		logger.debug("Finished testOlderVersionReceivedLater.");
+	}
+
+	@Test
+	public void testMissingRanges() throws InterruptedException {
+		logger.debug("-------Starting testMissingRanges-------");
+		MessageIdEvaluator evaluator = new MessageIdEvaluator(null);
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 1));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 5));
+		evaluator.addReceivedMessageID(new MessageID(nodeID1, machineName1, 7));
+		evaluator.addReceivedMessageID(new MessageID(nodeID2, machineName2, 1));
+		evaluator.addReceivedMessageID(new MessageID(nodeID2, machineName2, 10001));
+
+		List<MessageIDRange> missingRanges = evaluator.getMissingMessageIDRanges();
+		assertEquals(3, missingRanges.size());
+		assertEquals(new MessageIDRange(new MessageID(nodeID1, machineName1, 2), 4),
+				missingRanges.get(0));
+		assertEquals(new MessageIDRange(new MessageID(nodeID1, machineName1, 6), 6),
+				missingRanges.get(1));
+		assertEquals(new MessageIDRange(new MessageID(nodeID2, machineName2, 2), 10000),
+				missingRanges.get(2));
+		logger.debug("Finished testMissingRanges.");
+	}
+
 }
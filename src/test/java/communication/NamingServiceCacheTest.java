@@ -0,0 +1,142 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseNamingServiceException;
+import model.config.NodeConfig;
+import model.data.NodeID;
+
+public class NamingServiceCacheTest {
+
+	private NamingServiceCache<NodeID, NodeConfig> cache;
+	private NodeID nodeID;
+
+	/**
+	 * The future returned by the next load
+	 */
+	private AtomicReference<CompletableFuture<NodeConfig>> response;
+	private AtomicInteger loads;
+
+	@Before
+	public void setUp() throws Exception {
+		nodeID = new NodeID("N1");
+		response = new AtomicReference<>();
+		loads = new AtomicInteger();
+		cache = createCache(50, 200);
+	}
+
+	private NamingServiceCache<NodeID, NodeConfig> createCache(long timeToLive,
+			long staleTime) {
+		return new NamingServiceCache<>(id -> {
+			loads.incrementAndGet();
+			return response.get();
+		}, 100, timeToLive, staleTime, TimeUnit.MILLISECONDS);
+	}
+
+	private NodeConfig createConfig(int version) {
+		NodeConfig config = new NodeConfig();
+		config.setVersion(version);
+		return config;
+	}
+
+	private static <V> CompletableFuture<V> failed(Throwable t) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+
+	@Test
+	public void testFreshConfigIsNotLoaded() throws Exception {
+		NodeConfig config = createConfig(1);
+		response.set(CompletableFuture.completedFuture(config));
+		assertSame(config, cache.get(nodeID));
+		assertSame(config, cache.get(nodeID));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testStaleConfigIsReturnedWhileRefreshing() throws Exception {
+		NodeConfig oldConfig = createConfig(1);
+		response.set(CompletableFuture.completedFuture(oldConfig));
+		assertSame(oldConfig, cache.get(nodeID));
+		Thread.sleep(100);
+
+		// the refresh does not complete yet
+		CompletableFuture<NodeConfig> refresh = new CompletableFuture<>();
+		response.set(refresh);
+		assertSame(oldConfig, cache.get(nodeID));
+		assertSame(oldConfig, cache.get(nodeID));
+		assertEquals(2, loads.get());
+
+		NodeConfig newConfig = createConfig(2);
+		refresh.complete(newConfig);
+		assertSame(newConfig, cache.get(nodeID));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testLastKnownConfigIsUsedOffline() throws Exception {
+		cache = createCache(10, 10);
+		NodeConfig config = createConfig(1);
+		response.set(CompletableFuture.completedFuture(config));
+		assertSame(config, cache.get(nodeID));
+		Thread.sleep(50);
+
+		response.set(failed(new FBaseCommunicationException(
+				FBaseCommunicationException.NAMING_SERVICE_NOT_REACHABLE)));
+		assertSame(config, cache.get(nodeID));
+
+		try {
+			cache.get(new NodeID("N2"));
+			fail("Unknown config should not be found offline");
+		} catch (FBaseCommunicationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDeletedConfigIsRemoved() throws Exception {
+		cache = createCache(10, 10);
+		response.set(CompletableFuture.completedFuture(createConfig(1)));
+		cache.get(nodeID);
+		Thread.sleep(50);
+
+		response.set(failed(new FBaseNamingServiceException("Unknown node")));
+		try {
+			cache.get(nodeID);
+			fail("Exception should have been thrown");
+		} catch (FBaseNamingServiceException e) {
+			assertEquals("Unknown node", e.getMessage());
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testInvalidationDuringRefresh() throws Exception {
+		CompletableFuture<NodeConfig> refresh = new CompletableFuture<>();
+		response.set(refresh);
+		CompletableFuture<NodeConfig> running = cache.refresh(nodeID);
+		cache.invalidate(nodeID);
+		refresh.complete(createConfig(1));
+		assertEquals(1, running.get().getVersion().intValue());
+		assertEquals(0, cache.size());
+
+		NodeConfig newConfig = createConfig(3);
+		cache.put(nodeID, newConfig);
+		response.set(CompletableFuture.completedFuture(createConfig(2)));
+		cache.refresh(nodeID).get();
+		assertSame(newConfig, cache.get(nodeID));
+	}
+
+}
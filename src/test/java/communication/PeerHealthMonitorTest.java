@@ -0,0 +1,84 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import communication.PeerHealthMonitor.State;
+import de.hasenburg.fbase.model.PeerStatistics;
+
+public class PeerHealthMonitorTest {
+
+	private static final String PEER = "tcp://localhost:6000";
+
+	private PeerHealthMonitor monitor;
+
+	@Before
+	public void setUp() throws Exception {
+		monitor = new PeerHealthMonitor(100, 1000);
+	}
+
+	@Test
+	public void testAdaptiveTimeout() {
+		assertEquals(2000, monitor.getTimeout(PEER, 2000));
+		for (int i = 0; i < PeerHealthMonitor.MIN_SAMPLES; i++) {
+			monitor.success(PEER, 200);
+		}
+		assertEquals(600, monitor.getTimeout(PEER, 2000));
+		for (int i = 0; i < PeerHealthMonitor.WINDOW_SIZE; i++) {
+			monitor.success(PEER, 10);
+		}
+		assertEquals(PeerHealthMonitor.MIN_TIMEOUT, monitor.getTimeout(PEER, 2000));
+		// slow requests do not use the timeout of fast ones
+		assertEquals(1500, monitor.getTimeout(PEER, 1500, 2000));
+		monitor.success(PEER, 5000);
+		monitor.success(PEER, 5000);
+		assertEquals(2000, monitor.getTimeout(PEER, 2000));
+	}
+
+	@Test
+	public void testBreakerOpensAndCloses() throws InterruptedException {
+		for (int i = 0; i < PeerHealthMonitor.FAILURE_THRESHOLD; i++) {
+			assertTrue(monitor.allowRequest(PEER));
+			monitor.failure(PEER);
+		}
+		assertEquals(State.OPEN, monitor.getState(PEER));
+		assertFalse(monitor.allowRequest(PEER));
+
+		Thread.sleep(150);
+		// a single probe is let through
+		assertTrue(monitor.allowRequest(PEER));
+		assertEquals(State.HALF_OPEN, monitor.getState(PEER));
+		assertFalse(monitor.allowRequest(PEER));
+		monitor.failure(PEER);
+		assertEquals(State.OPEN, monitor.getState(PEER));
+
+		// the breaker stays open twice as long
+		Thread.sleep(100);
+		assertFalse(monitor.allowRequest(PEER));
+		Thread.sleep(150);
+		assertTrue(monitor.allowRequest(PEER));
+		monitor.success(PEER, 10);
+		assertEquals(State.CLOSED, monitor.getState(PEER));
+		assertTrue(monitor.allowRequest(PEER));
+	}
+
+	@Test
+	public void testStatistics() {
+		monitor.allowRequest(PEER);
+		monitor.success(PEER, 10);
+		monitor.allowRequest(PEER);
+		monitor.failure(PEER);
+		monitor.getTimeout(PEER, 2000);
+		List<PeerStatistics> statistics = monitor.getStatistics();
+		assertEquals(1, statistics.size());
+		assertEquals(new PeerStatistics(PEER, "CLOSED", 2, 1, 0, 10, 10, 2000),
+				statistics.get(0));
+	}
+
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 import org.junit.After;
@@ -103,6 +105,66 @@ public class PublisherTest {
 		logger.debug("Finished testPublishMany.");
 	}
 
+	@Test
+	public void testPublishConcurrently() throws Exception {
+		logger.debug("-------Starting testPublishConcurrently-------");
+		int threads = 8;
+		int perThread = 250;
+		KeygroupID keygroupID = new KeygroupID("app", "tenant", "group");
+
+		ZMQ.Context context = ZMQ.context(1);
+		ZMQ.Socket subscriber = context.socket(ZMQ.SUB);
+		subscriber.connect(publisher.getAddress() + ":" + publisher.getPort());
+		subscriber.subscribe(keygroupID.toString().getBytes());
+		Thread.sleep(400);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.submit(() -> {
+				for (int i = 0; i < perThread; i++) {
+					Message m = new Message();
+					m.setContent("Test content " + i);
+					publisher.send(new Envelope(keygroupID, m), secret, algorithm);
+				}
+				return null;
+			});
+		}
+
+		// every message must arrive as a complete namespace and content pair
+		for (int i = 0; i < threads * perThread; i++) {
+			assertEquals(keygroupID.toString(), subscriber.recvStr());
+			assertTrue(subscriber.hasReceiveMore());
+			Message m = JSONable.fromJSON(subscriber.recvStr(), Message.class);
+			m.decryptFields(secret, algorithm);
+			assertTrue(m.getContent().startsWith("Test content"));
+		}
+		executor.shutdown();
+		subscriber.close();
+		context.term();
+
+		assertEquals(threads * perThread, publisher.getNumberOfPublishedFrames());
+		assertEquals(0, publisher.getQueueDepth());
+		assertTrue(publisher.getMaxQueueDepth() > 0);
+		logger.debug("Finished testPublishConcurrently.");
+	}
+
+	@Test
+	public void testBatchedPublish() throws Exception {
+		logger.debug("-------Starting testBatchedPublish-------");
+		publisher.shutdown();
+		publisher = new Publisher("tcp://localhost", 6204, 10, 50, WireFormat.JSON);
+		Message m = new Message();
+		m.setContent("Test content");
+		Envelope e = new Envelope(new KeygroupID("app", "tenant", "group"), m);
+		Thread t = new Thread(new SubscribeHelper(e));
+		t.start();
+		Thread.sleep(400);
+		publisher.send(e, secret, algorithm);
+		t.join();
+		assertEquals(1, publisher.getNumberOfWrittenBatches());
+		logger.debug("Finished testBatchedPublish.");
+	}
+
 	class SubscribeHelper implements Runnable {
 
 		private Envelope e = null;
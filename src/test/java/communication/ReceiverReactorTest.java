@@ -0,0 +1,137 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.ZMQ;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import exceptions.FBaseEncryptionException;
+import model.data.KeygroupID;
+import model.messages.Envelope;
+import model.messages.Message;
+
+public class ReceiverReactorTest {
+
+	private static Logger logger = Logger.getLogger(ReceiverReactorTest.class.getName());
+
+	private ReceiverReactor reactor = null;
+	private Publisher publisher = null;
+	private KeygroupID keygroupID1 = new KeygroupID("app", "tenant", "group1");
+	private KeygroupID keygroupID2 = new KeygroupID("app", "tenant", "group2");
+
+	@Before
+	public void setUp() throws Exception {
+		reactor = new ReceiverReactor("TestReactor", 2);
+		publisher = new Publisher("tcp://localhost", 8083);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		publisher.shutdown();
+		reactor.shutdown();
+		logger.debug("\n");
+	}
+
+	@Test
+	public void testReceiveWithReactor() throws InterruptedException, FBaseEncryptionException {
+		logger.debug("-------Starting testReceiveWithReactor-------");
+		Subscriber s1 = new Subscriber("tcp://localhost", 8083, "secret",
+				EncryptionAlgorithm.AES, null, keygroupID1);
+		Subscriber s2 = new Subscriber("tcp://localhost", 8083, "secret",
+				EncryptionAlgorithm.AES, null, keygroupID2);
+		s1.startReceiving(reactor);
+		s2.startReceiving(reactor);
+		Thread.sleep(300);
+		assertEquals(2, reactor.getNumberOfReceivers());
+		assertTrue(s1.isReceiving());
+
+		for (int i = 0; i < 3; i++) {
+			Message m = new Message();
+			m.setContent("Test " + i);
+			publisher.send(new Envelope(keygroupID1, m), "secret", EncryptionAlgorithm.AES);
+		}
+		Message m = new Message();
+		m.setContent("Test");
+		publisher.send(new Envelope(keygroupID2, m), "secret", EncryptionAlgorithm.AES);
+		Thread.sleep(300);
+		assertEquals(3, s1.getNumberOfReceivedMessages());
+		assertEquals(1, s2.getNumberOfReceivedMessages());
+
+		s1.stopReception();
+		assertFalse(s1.isReceiving());
+		assertEquals(1, reactor.getNumberOfReceivers());
+		s2.stopReception();
+		assertEquals(0, reactor.getNumberOfReceivers());
+		logger.debug("Finished testReceiveWithReactor.");
+	}
+
+	@Test
+	public void testShutdown() {
+		logger.debug("-------Starting testShutdown-------");
+		Subscriber s1 = new Subscriber("tcp://localhost", 8083, "secret",
+				EncryptionAlgorithm.AES, null, keygroupID1);
+		s1.startReceiving(reactor);
+		reactor.shutdown();
+		assertTrue(reactor.isShutdown());
+		assertFalse(s1.isReceiving());
+		logger.debug("Finished testShutdown.");
+	}
+
+	@Test
+	public void testConcurrentRequests() throws InterruptedException {
+		logger.debug("-------Starting testConcurrentRequests-------");
+		AbstractEnvelopeReceiver receiver =
+				new AbstractEnvelopeReceiver("tcp://localhost", 8084, ZMQ.ROUTER) {
+					@Override
+					protected void interpreteReceivedEnvelope(Envelope envelope,
+							WireFormat format, ZMQ.Socket responseSocket) {
+						if ("slow".equals(envelope.getMessage().getContent())) {
+							try {
+								Thread.sleep(2000);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+						Message response = new Message();
+						response.setContent("Reply to " + envelope.getMessage().getContent());
+						respond(responseSocket, response, format);
+					}
+				};
+		receiver.startReceiving(reactor);
+		Thread.sleep(300);
+
+		ZMQ.Context context = ZMQ.context(1);
+		ZMQ.Socket slow = context.socket(ZMQ.REQ);
+		ZMQ.Socket fast = context.socket(ZMQ.REQ);
+		slow.setReceiveTimeOut(3000);
+		fast.setReceiveTimeOut(3000);
+		slow.connect("tcp://localhost:8084");
+		fast.connect("tcp://localhost:8084");
+		for (ZMQ.Socket socket : new ZMQ.Socket[] { slow, fast }) {
+			Message m = new Message();
+			m.setContent(socket == slow ? "slow" : "fast");
+			socket.sendMore(keygroupID1.getID());
+			socket.send(MessageCodec.encode(m, WireFormat.JSON));
+			Thread.sleep(50);
+		}
+
+		// the fast request must not wait for the slow one
+		long start = System.currentTimeMillis();
+		assertEquals("Reply to fast", MessageCodec.decode(fast.recv()).getContent());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals("Reply to slow", MessageCodec.decode(slow.recv()).getContent());
+
+		slow.close();
+		fast.close();
+		context.term();
+		receiver.stopReception();
+		logger.debug("Finished testConcurrentRequests.");
+	}
+
+}
@@ -0,0 +1,93 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SerialExecutorTest {
+
+	private static Logger logger = Logger.getLogger(SerialExecutorTest.class.getName());
+
+	private ExecutorService pool = null;
+
+	@Before
+	public void setUp() throws Exception {
+		pool = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdownNow();
+		pool.awaitTermination(5, TimeUnit.SECONDS);
+		logger.debug("\n");
+	}
+
+	@Test
+	public void testOrder() throws InterruptedException {
+		logger.debug("-------Starting testOrder-------");
+		int executors = 8;
+		int tasks = 1000;
+		List<List<Integer>> results = new ArrayList<>();
+		List<SerialExecutor> serialExecutors = new ArrayList<>();
+		for (int i = 0; i < executors; i++) {
+			results.add(Collections.synchronizedList(new ArrayList<>()));
+			serialExecutors.add(new SerialExecutor(pool));
+		}
+		CountDownLatch done = new CountDownLatch(executors * tasks);
+		AtomicInteger[] concurrent = new AtomicInteger[executors];
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		for (int i = 0; i < executors; i++) {
+			concurrent[i] = new AtomicInteger();
+		}
+		for (int t = 0; t < tasks; t++) {
+			for (int i = 0; i < executors; i++) {
+				int task = t;
+				List<Integer> result = results.get(i);
+				AtomicInteger running = concurrent[i];
+				serialExecutors.get(i).execute(() -> {
+					maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+					result.add(task);
+					running.decrementAndGet();
+					done.countDown();
+				});
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (List<Integer> result : results) {
+			assertEquals(tasks, result.size());
+			for (int t = 0; t < tasks; t++) {
+				assertEquals(t, result.get(t).intValue());
+			}
+		}
+		assertEquals(1, maxConcurrent.get());
+		logger.debug("Finished testOrder.");
+	}
+
+	@Test
+	public void testFailingTask() throws InterruptedException {
+		logger.debug("-------Starting testFailingTask-------");
+		SerialExecutor executor = new SerialExecutor(pool);
+		CountDownLatch done = new CountDownLatch(1);
+		executor.execute(() -> {
+			throw new RuntimeException("Expected");
+		});
+		executor.execute(() -> done.countDown());
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(0, executor.getQueueSize());
+		logger.debug("Finished testFailingTask.");
+	}
+
+}
@@ -1,6 +1,8 @@
 package communication;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.apache.log4j.Logger;
 import org.junit.After;
@@ -21,6 +23,7 @@ public class SubscriptionRegistryTest {
 
 	private SubscriptionRegistry subscriptionRegistry = null;
 	private KeygroupID keygroupID1 = new KeygroupID("app", "tenant", "group1");
+	private KeygroupID keygroupID2 = new KeygroupID("app", "tenant", "group2");
 
 	@Before
 	public void setUp() throws Exception {
@@ -63,4 +66,29 @@ public class SubscriptionRegistryTest {
 		logger.debug("Finished testUnSubscribe.");
 	}
 
+	@Test
+	public void testSharedSocket() {
+		logger.debug("-------Starting testSharedSocket-------");
+		Subscriber s1 = subscriptionRegistry.subscribeTo("tcp://localhost", 8081, "secret",
+				EncryptionAlgorithm.AES, keygroupID1);
+		Subscriber s2 = subscriptionRegistry.subscribeTo("tcp://localhost", 8081, "secret",
+				EncryptionAlgorithm.AES, keygroupID2);
+		subscriptionRegistry.subscribeTo("tcp://localhost", 8082, "secret",
+				EncryptionAlgorithm.AES, keygroupID1);
+		assertEquals(3, subscriptionRegistry.getNumberOfActiveSubscriptions());
+		assertEquals(2, subscriptionRegistry.getNumberOfSockets());
+		assertTrue(s1.isReceiving());
+		assertTrue(s2.isReceiving());
+
+		subscriptionRegistry.unsubscribeFromKeygroup(keygroupID1);
+		assertEquals(1, subscriptionRegistry.getNumberOfActiveSubscriptions());
+		assertEquals(1, subscriptionRegistry.getNumberOfSockets());
+		assertFalse(s1.isReceiving());
+		assertTrue(s2.isReceiving());
+
+		subscriptionRegistry.unsubscribeFromKeygroup(keygroupID2);
+		assertEquals(0, subscriptionRegistry.getNumberOfSockets());
+		logger.debug("Finished testSharedSocket.");
+	}
+
 }
@@ -0,0 +1,138 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(2, 0, TimeUnit.MILLISECONDS);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		// a becomes the most recently used entry
+		assertEquals("1", cache.get("a", key -> "loaded"));
+		cache.put("c", "3");
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals("1", cache.get("a", key -> "loaded"));
+		assertEquals("loaded", cache.get("b", key -> "loaded"));
+	}
+
+	@Test
+	public void testNullValuesAreCached() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.MILLISECONDS);
+		AtomicInteger loads = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			assertNull(cache.get("a", key -> {
+				loads.incrementAndGet();
+				return null;
+			}));
+		}
+		assertEquals(1, loads.get());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testEntriesExpire() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 50, TimeUnit.MILLISECONDS);
+		cache.put("a", "1");
+		assertEquals("1", cache.get("a", key -> "loaded"));
+		Thread.sleep(100);
+		assertEquals("loaded", cache.get("a", key -> "loaded"));
+		assertEquals(1, cache.getExpirationCount());
+	}
+
+	@Test
+	public void testInvalidationDuringLoad() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.MILLISECONDS);
+		assertEquals("old", cache.get("a", key -> {
+			cache.invalidate(key);
+			return "old";
+		}));
+		// the outdated value must not have been cached
+		assertEquals("new", cache.get("a", key -> "new"));
+	}
+
+	@Test
+	public void testOverlappingWrites() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.MILLISECONDS);
+		AtomicInteger loads = new AtomicInteger();
+		cache.startWrite("a");
+		cache.completeWrite("a", "1");
+		assertEquals("1", cache.get("a", key -> "loaded"));
+
+		// the second write might reach the storage system before the first one
+		cache.startWrite("a");
+		cache.startWrite("a");
+		assertEquals("stored", cache.get("a", key -> {
+			loads.incrementAndGet();
+			return "stored";
+		}));
+		cache.completeWrite("a", "3");
+		cache.completeWrite("a", "2");
+		assertEquals("stored", cache.get("a", key -> {
+			loads.incrementAndGet();
+			return "stored";
+		}));
+		// neither the written values nor the value loaded during the writes were cached
+		assertEquals(2, loads.get());
+
+		cache.startWrite("a");
+		cache.abortWrite("a");
+		assertEquals("loaded", cache.get("a", key -> "loaded"));
+	}
+
+	@Test
+	public void testLoadDuringOverlappingWrites() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.MILLISECONDS);
+		// the load reads the old value, then two overlapping writes finish before it returns
+		assertEquals("old", cache.get("a", key -> {
+			cache.startWrite("a");
+			cache.startWrite("a");
+			cache.completeWrite("a", "2");
+			cache.completeWrite("a", "3");
+			return "old";
+		}));
+		assertEquals("stored", cache.get("a", key -> "stored"));
+
+		assertEquals("old", cache.getAll(Arrays.asList("a", "b"), keys -> {
+			cache.startWrite("a");
+			cache.startWrite("a");
+			cache.completeWrite("a", "2");
+			cache.completeWrite("a", "3");
+			return Collections.singletonMap("a", "old");
+		}).get("a"));
+		assertEquals("stored", cache.get("a", key -> "stored"));
+	}
+
+	@Test
+	public void testGetAll() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10, 0, TimeUnit.MILLISECONDS);
+		cache.put("a", "1");
+		Map<String, String> values = cache.getAll(Arrays.asList("a", "b", "c"), keys -> {
+			assertEquals(Arrays.asList("b", "c"), keys);
+			return Collections.singletonMap("b", "2");
+		});
+		assertEquals(2, values.size());
+		assertEquals("2", values.get("b"));
+
+		// all keys are cached now, including the missing one
+		values = cache.getAll(Arrays.asList("a", "b", "c"), keys -> {
+			throw new AssertionError("Should not load " + keys);
+		});
+		assertEquals(2, values.size());
+		assertEquals(4, cache.getHitCount());
+	}
+
+}
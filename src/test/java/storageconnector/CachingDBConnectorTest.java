@@ -0,0 +1,149 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hasenburg.fbase.model.CacheStatistics;
+import exceptions.FBaseStorageConnectorException;
+import model.config.KeygroupConfig;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.NodeID;
+
+public class CachingDBConnectorTest {
+
+	/**
+	 * Counts the reads that reach the storage
+	 */
+	private static class CountingConnector extends OnHeapDBConnector {
+
+		private final AtomicInteger recordReads = new AtomicInteger();
+		private final AtomicInteger configReads = new AtomicInteger();
+
+		public CountingConnector() {
+			super(new NodeID("N1"));
+		}
+
+		@Override
+		public DataRecord dataRecords_get(DataIdentifier dataIdentifier)
+				throws FBaseStorageConnectorException {
+			recordReads.incrementAndGet();
+			return super.dataRecords_get(dataIdentifier);
+		}
+
+		@Override
+		public KeygroupConfig keygroupConfig_get(KeygroupID keygroupID)
+				throws FBaseStorageConnectorException {
+			configReads.incrementAndGet();
+			return super.keygroupConfig_get(keygroupID);
+		}
+
+	}
+
+	private CountingConnector storage;
+	private CachingDBConnector connector;
+	private KeygroupID keygroupID;
+
+	@Before
+	public void setUp() throws Exception {
+		storage = new CountingConnector();
+		connector = new CachingDBConnector(storage, 10, 0);
+		connector.dbConnection_initiate();
+		keygroupID = new KeygroupID("smartlight", "h1", "brightness");
+		connector.keygroup_create(keygroupID);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connector.dbConnection_close();
+	}
+
+	private DataRecord createRecord(String dataID, String value) {
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(new DataIdentifier(keygroupID, dataID));
+		record.setValueWithoutKey(value);
+		return record;
+	}
+
+	@Test
+	public void testReadsAreCached() throws Exception {
+		DataRecord record = createRecord("X1", "v1");
+		connector.dataRecords_put(record);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(record, connector.dataRecords_get(record.getDataIdentifier()));
+		}
+		// written records are cached right away
+		assertEquals(0, storage.recordReads.get());
+
+		DataIdentifier unknown = new DataIdentifier(keygroupID, "unknown");
+		assertNull(connector.dataRecords_get(unknown));
+		assertNull(connector.dataRecords_get(unknown));
+		assertEquals(1, storage.recordReads.get());
+
+		connector.dataRecords_delete(record.getDataIdentifier());
+		assertNull(connector.dataRecords_get(record.getDataIdentifier()));
+		assertEquals(1, storage.recordReads.get());
+
+		assertEquals(7, getRecordStatistics().getHits());
+		assertEquals(1, getRecordStatistics().getMisses());
+	}
+
+	@Test
+	public void testCacheIsBounded() throws Exception {
+		for (int i = 0; i < 25; i++) {
+			connector.dataRecords_put(createRecord("X" + i, "v" + i));
+		}
+		assertEquals(10, getRecordStatistics().getSize());
+		assertEquals(15, getRecordStatistics().getEvictions());
+
+		assertEquals(createRecord("X0", "v0"),
+				connector.dataRecords_get(new DataIdentifier(keygroupID, "X0")));
+		assertEquals(1, storage.recordReads.get());
+	}
+
+	@Test
+	public void testRemoteUpdateInvalidates() throws Exception {
+		DataRecord record = createRecord("X1", "v1");
+		connector.dataRecords_put(record);
+		KeygroupConfig config = new KeygroupConfig();
+		config.setKeygroupID(keygroupID);
+		connector.keygroupConfig_put(keygroupID, config);
+
+		// another machine of the node writes directly to the storage
+		DataRecord update = createRecord("X1", "v2");
+		storage.dataRecords_put(update);
+		assertEquals(record, connector.dataRecords_get(record.getDataIdentifier()));
+
+		connector.cache_invalidateDataRecord(record.getDataIdentifier());
+		assertEquals(update, connector.dataRecords_get(record.getDataIdentifier()));
+
+		connector.keygroupConfig_get(keygroupID);
+		assertEquals(0, storage.configReads.get());
+		connector.cache_invalidateKeygroupConfig(keygroupID);
+		connector.keygroupConfig_get(keygroupID);
+		assertEquals(1, storage.configReads.get());
+	}
+
+	@Test
+	public void testKeygroupDeleteInvalidatesRecords() throws Exception {
+		DataRecord record = createRecord("X1", "v1");
+		connector.dataRecords_put(record);
+		assertTrue(connector.keygroup_delete(keygroupID));
+		connector.keygroup_create(keygroupID);
+		assertNull(connector.dataRecords_get(record.getDataIdentifier()));
+	}
+
+	private CacheStatistics getRecordStatistics() {
+		return connector.getStatistics().stream().filter(s -> s.getName().equals("records"))
+				.findFirst().get();
+	}
+
+}
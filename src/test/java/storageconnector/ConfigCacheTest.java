@@ -0,0 +1,143 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseNamingServiceException;
+import model.config.NodeConfig;
+import model.data.NodeID;
+
+public class ConfigCacheTest {
+
+	private static final int THREADS = 8;
+
+	private ConfigCache<NodeID, NodeConfig> cache;
+	private ExecutorService executor;
+	private NodeID nodeID;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new ConfigCache<>(100, 1, 1, TimeUnit.MINUTES);
+		executor = Executors.newFixedThreadPool(THREADS);
+		nodeID = new NodeID("N1");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	private NodeConfig createConfig(int version) {
+		NodeConfig config = new NodeConfig();
+		config.setVersion(version);
+		return config;
+	}
+
+	@Test
+	public void testConcurrentMissesLoadOnce() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		NodeConfig config = createConfig(1);
+
+		List<Future<NodeConfig>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(() -> cache.get(nodeID, id -> {
+				loads.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return config;
+			})));
+		}
+		Thread.sleep(100);
+		release.countDown();
+		for (Future<NodeConfig> future : futures) {
+			assertSame(config, future.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testMissingConfigsAreCached() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		assertNull(cache.get(nodeID, id -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		assertNull(cache.get(nodeID, id -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		assertEquals(1, loads.get());
+
+		NodeID rejectedID = new NodeID("N2");
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get(rejectedID, id -> {
+					loads.incrementAndGet();
+					throw new FBaseNamingServiceException("Unknown node");
+				});
+				fail("Rejection should have been cached");
+			} catch (FBaseNamingServiceException e) {
+				assertEquals("Unknown node", e.getMessage());
+			}
+		}
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testFailuresAreNotCached() throws Exception {
+		try {
+			cache.get(nodeID, id -> {
+				throw new FBaseCommunicationException("Timeout");
+			});
+			fail("Exception should have been thrown");
+		} catch (FBaseCommunicationException e) {
+			// expected
+		}
+		NodeConfig config = createConfig(1);
+		assertSame(config, cache.get(nodeID, id -> config));
+	}
+
+	@Test
+	public void testInvalidationDuringLoad() throws Exception {
+		NodeConfig oldConfig = createConfig(1);
+		assertSame(oldConfig, cache.get(nodeID, id -> {
+			cache.invalidate(id);
+			return oldConfig;
+		}));
+		NodeConfig newConfig = createConfig(2);
+		assertSame(newConfig, cache.get(nodeID, id -> newConfig));
+		assertSame(newConfig, cache.get(nodeID, id -> oldConfig));
+	}
+
+	@Test
+	public void testExpiredConfigIsReloaded() throws Exception {
+		cache = new ConfigCache<>(100, 50, 50, TimeUnit.MILLISECONDS);
+		NodeConfig oldConfig = createConfig(1);
+		NodeConfig newConfig = createConfig(2);
+		assertSame(oldConfig, cache.get(nodeID, id -> oldConfig));
+		Thread.sleep(100);
+		assertSame(newConfig, cache.get(nodeID, id -> newConfig));
+	}
+
+}
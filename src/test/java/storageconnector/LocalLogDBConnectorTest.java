@@ -0,0 +1,341 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hasenburg.fbase.model.DataIdentifierPage;
+import exceptions.FBaseStorageConnectorException;
+import model.config.NodeConfig;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.MessageID;
+import model.data.NodeID;
+
+public class LocalLogDBConnectorTest {
+
+	private Path directory;
+	private NodeID nodeID;
+	private KeygroupID keygroupID;
+	private LocalLogDBConnector connector;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("fbase-local-log");
+		nodeID = new NodeID("N1");
+		keygroupID = new KeygroupID("smartlight", "h1", "brightness");
+		connector = createConnector();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connector.dbConnection_close();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private LocalLogDBConnector createConnector() throws FBaseStorageConnectorException {
+		LocalLogDBConnector connector =
+				new LocalLogDBConnector(nodeID, directory.toAbsolutePath().toString());
+		connector.dbConnection_initiate();
+		return connector;
+	}
+
+	private LocalLogDBConnector restart() throws FBaseStorageConnectorException {
+		connector.dbConnection_close();
+		connector = createConnector();
+		return connector;
+	}
+
+	private DataRecord createRecord(String dataID, String value) {
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(new DataIdentifier(keygroupID, dataID));
+		record.setValueWithoutKey(value);
+		return record;
+	}
+
+	@Test
+	public void testPutGetDelete() throws Exception {
+		connector.keygroup_create(keygroupID);
+		DataRecord record = createRecord("X1", "v1");
+		connector.dataRecords_put(record);
+		assertEquals(record, connector.dataRecords_get(record.getDataIdentifier()));
+		assertEquals(1, connector.dataRecords_list(keygroupID).size());
+
+		connector.dataRecords_delete(record.getDataIdentifier());
+		assertNull(connector.dataRecords_get(record.getDataIdentifier()));
+		assertTrue(connector.dataRecords_list(keygroupID).isEmpty());
+	}
+
+	@Test(expected = FBaseStorageConnectorException.class)
+	public void testPutWithoutKeygroup() throws Exception {
+		connector.dataRecords_put(createRecord("X1", "v1"));
+	}
+
+	@Test
+	public void testRecovery() throws Exception {
+		connector.keygroup_create(keygroupID);
+		DataRecord record1 = createRecord("X1", "v1");
+		DataRecord record2 = createRecord("X2", "v2");
+		connector.dataRecords_put(record1);
+		connector.dataRecords_put(record2);
+		connector.dataRecords_put(createRecord("X1", "v1-updated"));
+		connector.dataRecords_delete(record2.getDataIdentifier());
+		NodeConfig nodeConfig = new NodeConfig();
+		connector.nodeConfig_put(nodeID, nodeConfig);
+		connector.heartbeats_update("M1", "localhost");
+		connector.keyGroupSubscriberMachines_put(keygroupID, "M1");
+		connector.keyGroupSubscriberMachines_put(keygroupID, "M1");
+
+		restart();
+
+		assertEquals(createRecord("X1", "v1-updated"),
+				connector.dataRecords_get(record1.getDataIdentifier()));
+		assertNull(connector.dataRecords_get(record2.getDataIdentifier()));
+		assertEquals(1, connector.nodeConfig_list().size());
+		assertEquals("localhost", connector.heartbeats_listAll().get("M1").getValue0());
+		assertEquals(2, (int) connector.keyGroupSubscriberMachines_listAll().get(keygroupID)
+				.getValue1());
+	}
+
+	@Test
+	public void testTornWriteIsDiscarded() throws Exception {
+		connector.keygroup_create(keygroupID);
+		DataRecord record = createRecord("X1", "v1");
+		connector.dataRecords_put(record);
+		connector.dataRecords_put(createRecord("X2", "v2"));
+		connector.dbConnection_close();
+
+		// cut the last entry in half
+		File logFile = new File(directory.toFile(), nodeID.getID() + ".log");
+		try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+			file.setLength(file.length() - 3);
+		}
+
+		connector = createConnector();
+		assertEquals(record, connector.dataRecords_get(record.getDataIdentifier()));
+		assertEquals(1, connector.dataRecords_list(keygroupID).size());
+
+		// writing continues after the last valid entry
+		connector.dataRecords_put(createRecord("X3", "v3"));
+		restart();
+		assertEquals(2, connector.dataRecords_list(keygroupID).size());
+	}
+
+	@Test
+	public void testCorruptedEntryIsNotDiscarded() throws Exception {
+		connector.keygroup_create(keygroupID);
+		connector.dataRecords_put(createRecord("X1", "v1"));
+		connector.dataRecords_put(createRecord("X2", "v2"));
+		connector.dataRecords_put(createRecord("X3", "v3"));
+		connector.dbConnection_close();
+
+		// corrupt the key of X2, the entry of X3 is still valid
+		File logFile = new File(directory.toFile(), nodeID.getID() + ".log");
+		byte[] content = Files.readAllBytes(logFile.toPath());
+		int position = new String(content, "ISO-8859-1").indexOf("X2");
+		assertTrue(position > 0);
+		content[position] ^= 0x7F;
+		Files.write(logFile.toPath(), content);
+
+		try {
+			createConnector();
+			fail("A log with a corrupted entry followed by valid entries must not be opened");
+		} catch (FBaseStorageConnectorException e) {
+			// expected
+		}
+		// the valid entries after the corrupted one were not cut off
+		assertEquals(content.length, logFile.length());
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		connector.keygroup_create(keygroupID);
+		for (int i = 0; i < 100; i++) {
+			connector.dataRecords_put(createRecord("X" + (i % 10), "v" + i));
+		}
+		KeygroupID deletedKeygroup = new KeygroupID("smartlight", "h1", "deleted");
+		connector.keygroup_create(deletedKeygroup);
+		connector.dataRecords_put(new DataRecord(new DataIdentifier(deletedKeygroup, "Y1"), null));
+		connector.keygroup_delete(deletedKeygroup);
+
+		File logFile = new File(directory.toFile(), nodeID.getID() + ".log");
+		long sizeBefore = logFile.length();
+		connector.compact();
+		assertTrue(logFile.length() < sizeBefore);
+
+		assertEquals(10, connector.dataRecords_list(keygroupID).size());
+		assertEquals(createRecord("X9", "v99"),
+				connector.dataRecords_get(new DataIdentifier(keygroupID, "X9")));
+
+		restart();
+		assertEquals(10, connector.dataRecords_list(keygroupID).size());
+		connector.keygroup_create(deletedKeygroup);
+		assertTrue(connector.dataRecords_list(deletedKeygroup).isEmpty());
+	}
+
+	@Test
+	public void testCompactionDuringWrites() throws Exception {
+		connector.keygroup_create(keygroupID);
+		for (int i = 0; i < 1000; i++) {
+			connector.dataRecords_put(createRecord("X" + (i % 100), "v" + i));
+		}
+		Thread writer = new Thread(() -> {
+			try {
+				for (int i = 0; i < 200; i++) {
+					connector.dataRecords_put(createRecord("X" + (i % 50), "w" + i));
+					connector.dataRecords_put(createRecord("Z" + i, "z" + i));
+				}
+				connector.dataRecords_delete(new DataIdentifier(keygroupID, "X99"));
+			} catch (FBaseStorageConnectorException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		writer.start();
+		connector.compact();
+		writer.join();
+
+		for (int restart = 0; restart < 2; restart++) {
+			assertEquals(299, connector.dataRecords_list(keygroupID).size());
+			assertEquals(createRecord("X49", "w199"),
+					connector.dataRecords_get(new DataIdentifier(keygroupID, "X49")));
+			assertEquals(createRecord("X98", "v998"),
+					connector.dataRecords_get(new DataIdentifier(keygroupID, "X98")));
+			assertEquals(createRecord("Z150", "z150"),
+					connector.dataRecords_get(new DataIdentifier(keygroupID, "Z150")));
+			assertNull(connector.dataRecords_get(new DataIdentifier(keygroupID, "X99")));
+			restart();
+		}
+	}
+
+	@Test
+	public void testMessageHistory() throws Exception {
+		connector.dbConnection_close();
+		connector = new LocalLogDBConnector(nodeID, directory.toAbsolutePath().toString());
+		connector.setMessageHistorySize(5);
+		connector.dbConnection_initiate();
+
+		for (int i = 1; i <= 8; i++) {
+			MessageID messageID = connector.messageHistory_getNextMessageID();
+			assertEquals(i, messageID.getVersion());
+			connector.messageHistory_put(messageID, new DataIdentifier(keygroupID, "X" + i));
+		}
+		assertNull(connector.messageHistory_get(new MessageID(nodeID, "M1", 3)));
+		assertEquals(new DataIdentifier(keygroupID, "X4"),
+				connector.messageHistory_get(new MessageID(nodeID, "M1", 4)));
+
+		connector.dbConnection_close();
+		connector = new LocalLogDBConnector(nodeID, directory.toAbsolutePath().toString());
+		connector.setMessageHistorySize(5);
+		connector.dbConnection_initiate();
+
+		assertEquals(new DataIdentifier(keygroupID, "X8"),
+				connector.messageHistory_get(new MessageID(nodeID, "M1", 8)));
+		assertNull(connector.messageHistory_get(new MessageID(nodeID, "M1", 3)));
+		assertEquals(9, connector.messageHistory_getNextMessageID().getVersion());
+	}
+
+	@Test(expected = IOException.class)
+	public void testForeignFileIsRejected() throws Exception {
+		connector.dbConnection_close();
+		File logFile = new File(directory.toFile(), "N2.log");
+		Files.write(logFile.toPath(), "no log file".getBytes());
+		AppendOnlyLog log = new AppendOnlyLog(logFile);
+		log.open();
+	}
+
+	@Test
+	public void testBatchOperations() throws Exception {
+		connector.keygroup_create(keygroupID);
+		List<DataRecord> records = new ArrayList<>();
+		List<DataIdentifier> identifiers = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			DataRecord record = new DataRecord();
+			record.setDataIdentifier(new DataIdentifier(keygroupID, "B" + i));
+			record.setValueWithoutKey("" + i);
+			records.add(record);
+			identifiers.add(record.getDataIdentifier());
+		}
+		connector.dataRecords_putAll(records);
+		assertEquals(20, connector.dataRecords_list(keygroupID).size());
+
+		identifiers.add(new DataIdentifier(keygroupID, "unknown"));
+		Map<DataIdentifier, DataRecord> found = connector.dataRecords_getAll(identifiers);
+		assertEquals(20, found.size());
+		assertEquals(records.get(7), found.get(records.get(7).getDataIdentifier()));
+
+		assertTrue(connector.dataRecords_deleteAll(identifiers.subList(0, 10)));
+		assertEquals(10, connector.dataRecords_list(keygroupID).size());
+		assertNull(connector.dataRecords_get(identifiers.get(0)));
+	}
+
+	@Test(expected = FBaseStorageConnectorException.class)
+	public void testBatchPutWithUnknownKeygroup() throws Exception {
+		connector.keygroup_create(keygroupID);
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(
+				new DataIdentifier(new KeygroupID("smartlight", "h1", "unknown"), "B1"));
+		connector.dataRecords_putAll(Collections.singletonList(record));
+	}
+
+	@Test
+	public void testListPage() throws Exception {
+		connector.keygroup_create(keygroupID);
+		List<DataRecord> records = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			records.add(new DataRecord(
+					new DataIdentifier(keygroupID, String.format("A%02d", i)), null));
+		}
+		for (int i = 0; i < 5; i++) {
+			records.add(new DataRecord(new DataIdentifier(keygroupID, "B" + i), null));
+		}
+		connector.dataRecords_putAll(records);
+
+		List<String> listed = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			DataIdentifierPage page = connector.dataRecords_listPage(keygroupID, null, cursor, 7);
+			assertTrue(page.getDataIdentifiers().size() <= 7);
+			page.getDataIdentifiers().forEach(i -> listed.add(i.getDataID()));
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+		assertEquals(5, pages);
+		assertEquals(30, listed.size());
+		assertEquals("A00", listed.get(0));
+		assertEquals("B4", listed.get(29));
+
+		DataIdentifierPage page = connector.dataRecords_listPage(keygroupID, "B", null, 10);
+		assertEquals(5, page.getDataIdentifiers().size());
+		assertNull(page.getNextCursor());
+
+		// a cursor before the prefix starts at the prefix
+		page = connector.dataRecords_listPage(keygroupID, "A1", "A", 5);
+		assertEquals(new DataIdentifier(keygroupID, "A10"), page.getDataIdentifiers().get(0));
+		assertEquals("A14", page.getNextCursor());
+		page = connector.dataRecords_listPage(keygroupID, "A1", page.getNextCursor(), 5);
+		assertEquals(5, page.getDataIdentifiers().size());
+		assertNull(page.getNextCursor());
+	}
+
+}
@@ -0,0 +1,69 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import model.data.DataIdentifier;
+import model.data.KeygroupID;
+
+public class MessageHistoryRingTest {
+
+	private final KeygroupID keygroupID = new KeygroupID("smartlight", "h1", "brightness");
+
+	private DataIdentifier id(int i) {
+		return new DataIdentifier(keygroupID, "M" + i);
+	}
+
+	@Test
+	public void testPutAndGet() {
+		MessageHistoryRing ring = new MessageHistoryRing(5);
+		assertEquals(0, ring.getHighestVersion());
+		DataIdentifier first = id(1);
+		ring.put(1, first);
+		assertEquals(first, ring.get(1));
+		assertNull(ring.get(2));
+		assertNull(ring.get(0));
+		assertEquals(1, ring.getHighestVersion());
+	}
+
+	@Test
+	public void testOldVersionsAreOverwritten() {
+		MessageHistoryRing ring = new MessageHistoryRing(5);
+		for (int i = 1; i <= 12; i++) {
+			ring.put(i, id(i));
+		}
+		for (int i = 1; i <= 7; i++) {
+			assertNull(ring.get(i));
+		}
+		for (int i = 8; i <= 12; i++) {
+			assertEquals(id(i), ring.get(i));
+		}
+		assertEquals(12, ring.getHighestVersion());
+
+		// versions that already left the window are ignored
+		ring.put(3, id(3));
+		assertNull(ring.get(3));
+		assertEquals(id(8), ring.get(8));
+	}
+
+	@Test
+	public void testResize() {
+		MessageHistoryRing ring = new MessageHistoryRing(5);
+		for (int i = 1; i <= 5; i++) {
+			ring.put(i, id(i));
+		}
+		MessageHistoryRing smaller = ring.resize(2);
+		assertNull(smaller.get(3));
+		assertEquals(id(4), smaller.get(4));
+		assertEquals(id(5), smaller.get(5));
+		assertEquals(5, smaller.getHighestVersion());
+
+		MessageHistoryRing larger = ring.resize(10);
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(id(i), larger.get(i));
+		}
+	}
+
+}
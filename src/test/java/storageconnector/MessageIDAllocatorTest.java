@@ -0,0 +1,78 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import exceptions.FBaseStorageConnectorException;
+
+public class MessageIDAllocatorTest {
+
+	private InMemoryStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryStore();
+	}
+
+	@Test
+	public void testSequentialVersions() throws FBaseStorageConnectorException {
+		MessageIDAllocator allocator = new MessageIDAllocator(3, store);
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(i, allocator.nextVersion());
+		}
+		// one write per block: 3, 6, 9, 12
+		assertEquals(4, store.writes.size());
+		assertEquals(12, store.upperBound);
+	}
+
+	@Test
+	public void testReleaseAvoidsGap() throws FBaseStorageConnectorException {
+		MessageIDAllocator allocator = new MessageIDAllocator(100, store);
+		allocator.nextVersion();
+		allocator.nextVersion();
+		allocator.release();
+		assertEquals(2, store.upperBound);
+
+		MessageIDAllocator next = new MessageIDAllocator(100, store);
+		assertEquals(3, next.nextVersion());
+	}
+
+	@Test
+	public void testCrashSkipsReservedBlock() throws FBaseStorageConnectorException {
+		MessageIDAllocator allocator = new MessageIDAllocator(100, store);
+		allocator.nextVersion();
+		// no release
+
+		MessageIDAllocator next = new MessageIDAllocator(100, store);
+		assertEquals(101, next.nextVersion());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockSize() {
+		new MessageIDAllocator(0, store);
+	}
+
+	private static class InMemoryStore implements MessageIDAllocator.ReservationStore {
+
+		private int upperBound = 0;
+		private final List<Integer> writes = new ArrayList<>();
+
+		@Override
+		public int readReservedUpperBound() {
+			return upperBound;
+		}
+
+		@Override
+		public void writeReservedUpperBound(int upperBound) {
+			this.upperBound = upperBound;
+			writes.add(upperBound);
+		}
+
+	}
+
+}
@@ -0,0 +1,227 @@
+package storageconnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hasenburg.fbase.model.DataIdentifierPage;
+import exceptions.FBaseStorageConnectorException;
+import model.data.DataIdentifier;
+import model.data.DataRecord;
+import model.data.KeygroupID;
+import model.data.MessageID;
+import model.data.NodeID;
+
+public class OnHeapDBConnectorTest {
+
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 500;
+
+	private OnHeapDBConnector connector;
+	private ExecutorService executor;
+	private KeygroupID keygroupID;
+
+	@Before
+	public void setUp() throws Exception {
+		connector = new OnHeapDBConnector(new NodeID("N1"));
+		connector.dbConnection_initiate();
+		executor = Executors.newFixedThreadPool(THREADS);
+		keygroupID = new KeygroupID("smartlight", "h1", "brightness");
+		connector.keygroup_create(keygroupID);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		connector.dbConnection_close();
+	}
+
+	@Test
+	public void testUnknownKeygroup() {
+		try {
+			connector.dataRecords_list(new KeygroupID("smartlight", "h1", "unknown"));
+			fail("Keygroup should not exist");
+		} catch (FBaseStorageConnectorException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testConcurrentMessageIDs() throws Exception {
+		List<Future<List<Integer>>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit(() -> {
+				List<Integer> versions = new ArrayList<>();
+				for (int i = 0; i < OPERATIONS; i++) {
+					MessageID messageID = connector.messageHistory_getNextMessageID();
+					connector.messageHistory_put(messageID,
+							new DataIdentifier(keygroupID, "" + messageID.getVersion()));
+					versions.add(messageID.getVersion());
+				}
+				return versions;
+			}));
+		}
+		Set<Integer> versions = new HashSet<>();
+		for (Future<List<Integer>> future : futures) {
+			versions.addAll(future.get(10, TimeUnit.SECONDS));
+		}
+		// no version was handed out twice
+		assertEquals(THREADS * OPERATIONS, versions.size());
+		assertEquals(new DataIdentifier(keygroupID, "1"),
+				connector.messageHistory_get(new MessageID(new NodeID("N1"), "M1", 1)));
+	}
+
+	@Test
+	public void testConcurrentPutAndList() throws Exception {
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			futures.add(executor.submit((Callable<Boolean>) () -> {
+				for (int i = 0; i < OPERATIONS; i++) {
+					DataRecord record = new DataRecord();
+					record.setDataIdentifier(new DataIdentifier(keygroupID, thread + "-" + i));
+					record.setValueWithoutKey("" + i);
+					connector.dataRecords_put(record);
+					connector.dataRecords_list(keygroupID);
+				}
+				return true;
+			}));
+		}
+		for (Future<Boolean> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(THREADS * OPERATIONS, connector.dataRecords_list(keygroupID).size());
+	}
+
+	@Test
+	public void testConcurrentSubscriberMachineVersions() throws Exception {
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit((Callable<Boolean>) () -> {
+				for (int i = 0; i < OPERATIONS; i++) {
+					connector.keyGroupSubscriberMachines_put(keygroupID, "M1");
+				}
+				return true;
+			}));
+		}
+		for (Future<Boolean> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(THREADS * OPERATIONS, (int) connector.keyGroupSubscriberMachines_listAll()
+				.get(keygroupID).getValue1());
+	}
+
+	@Test
+	public void testGetReturnsStoredSnapshot() throws Exception {
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(new DataIdentifier(keygroupID, "X1"));
+		record.setValueWithoutKey("first");
+		connector.dataRecords_put(record);
+
+		// changes after the put do not reach the stored snapshot
+		record.setValueWithoutKey("second");
+		DataRecord stored = connector.dataRecords_get(record.getDataIdentifier());
+		assertEquals("first", stored.getValues().values().iterator().next());
+
+		// reads hand out the same snapshot without copying it
+		assertSame(stored, connector.dataRecords_get(record.getDataIdentifier()));
+	}
+
+	@Test
+	public void testNullConfigRemoves() throws Exception {
+		connector.nodeConfig_put(new NodeID("N2"), null);
+		assertNull(connector.nodeConfig_get(new NodeID("N2")));
+	}
+
+	@Test
+	public void testBatchOperations() throws Exception {
+		List<DataRecord> records = new ArrayList<>();
+		List<DataIdentifier> identifiers = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			DataRecord record = new DataRecord();
+			record.setDataIdentifier(new DataIdentifier(keygroupID, "B" + i));
+			record.setValueWithoutKey("" + i);
+			records.add(record);
+			identifiers.add(record.getDataIdentifier());
+		}
+		connector.dataRecords_putAll(records);
+		assertEquals(20, connector.dataRecords_list(keygroupID).size());
+
+		identifiers.add(new DataIdentifier(keygroupID, "unknown"));
+		Map<DataIdentifier, DataRecord> found = connector.dataRecords_getAll(identifiers);
+		assertEquals(20, found.size());
+		assertEquals(records.get(7), found.get(records.get(7).getDataIdentifier()));
+
+		assertTrue(connector.dataRecords_deleteAll(identifiers.subList(0, 10)));
+		assertEquals(10, connector.dataRecords_list(keygroupID).size());
+		assertNull(connector.dataRecords_get(identifiers.get(0)));
+	}
+
+	@Test(expected = FBaseStorageConnectorException.class)
+	public void testBatchPutWithUnknownKeygroup() throws Exception {
+		DataRecord record = new DataRecord();
+		record.setDataIdentifier(
+				new DataIdentifier(new KeygroupID("smartlight", "h1", "unknown"), "B1"));
+		connector.dataRecords_putAll(Collections.singletonList(record));
+	}
+
+	@Test
+	public void testListPage() throws Exception {
+		List<DataRecord> records = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			records.add(new DataRecord(
+					new DataIdentifier(keygroupID, String.format("A%02d", i)), null));
+		}
+		for (int i = 0; i < 5; i++) {
+			records.add(new DataRecord(new DataIdentifier(keygroupID, "B" + i), null));
+		}
+		connector.dataRecords_putAll(records);
+
+		List<String> listed = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			DataIdentifierPage page = connector.dataRecords_listPage(keygroupID, null, cursor, 7);
+			assertTrue(page.getDataIdentifiers().size() <= 7);
+			page.getDataIdentifiers().forEach(i -> listed.add(i.getDataID()));
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+		assertEquals(5, pages);
+		assertEquals(30, listed.size());
+		assertEquals("A00", listed.get(0));
+		assertEquals("B4", listed.get(29));
+
+		DataIdentifierPage page = connector.dataRecords_listPage(keygroupID, "B", null, 10);
+		assertEquals(5, page.getDataIdentifiers().size());
+		assertNull(page.getNextCursor());
+
+		// a cursor before the prefix starts at the prefix
+		page = connector.dataRecords_listPage(keygroupID, "A1", "A", 5);
+		assertEquals(new DataIdentifier(keygroupID, "A10"), page.getDataIdentifiers().get(0));
+		assertEquals("A14", page.getNextCursor());
+		page = connector.dataRecords_listPage(keygroupID, "A1", page.getNextCursor(), 5);
+		assertEquals(5, page.getDataIdentifiers().size());
+		assertNull(page.getNextCursor());
+	}
+
+}
@@ -0,0 +1,164 @@
+package tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.FBase;
+import de.hasenburg.fbase.model.BackgroundJobStatistics;
+import tasks.TaskManager.TaskName;
+import tasks.background.BackgroundTask;
+
+public class BackgroundSchedulerTest {
+
+	private static Logger logger = Logger.getLogger(BackgroundSchedulerTest.class.getName());
+
+	private FBase fBase = null;
+	private BackgroundScheduler scheduler = null;
+
+	private static class CountingTask extends BackgroundTask {
+		private final AtomicInteger rounds = new AtomicInteger();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+		private final long duration;
+
+		private CountingTask(FBase fBase, long interval, long duration) {
+			super(TaskName.B_PUT_HEARTBEAT, fBase, interval);
+			this.duration = duration;
+		}
+
+		@Override
+		public Boolean executeFunctionality() {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(duration);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			rounds.incrementAndGet();
+			return true;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		fBase = new FBase("FBaseFactory_Basic1.properties");
+		fBase.taskmanager = new TaskManager(fBase);
+		scheduler = new BackgroundScheduler(fBase.taskmanager, 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdown();
+		fBase.taskmanager.tearDown();
+		logger.debug("\n");
+	}
+
+	@Test
+	public void testPeriodicRounds() throws InterruptedException {
+		logger.debug("-------Starting testPeriodicRounds-------");
+		CountingTask task = new CountingTask(fBase, 50, 0);
+		Future<Boolean> job = scheduler.schedule(task);
+		Thread.sleep(280);
+		int rounds = task.rounds.get();
+		assertTrue("Only " + rounds + " rounds", rounds >= 4 && rounds <= 7);
+		job.cancel(true);
+		assertTrue(job.isCancelled());
+		// a round might still have been running when the job was cancelled
+		Thread.sleep(50);
+		rounds = task.rounds.get();
+		Thread.sleep(150);
+		assertEquals(rounds, task.rounds.get());
+		assertEquals(0, scheduler.getJobs().size());
+		logger.debug("Finished testPeriodicRounds.");
+	}
+
+	@Test
+	public void testSharedThreadAndOverruns() throws InterruptedException {
+		logger.debug("-------Starting testSharedThreadAndOverruns-------");
+		CountingTask slow = new CountingTask(fBase, 20, 60);
+		CountingTask fast = new CountingTask(fBase, 20, 0);
+		scheduler.schedule(slow);
+		scheduler.schedule(fast);
+		Thread.sleep(400);
+		assertEquals(1, slow.maxRunning.get());
+		assertTrue(fast.rounds.get() > 1);
+		for (BackgroundJobStatistics statistics : scheduler.getStatistics()) {
+			assertTrue(statistics.getRuns() > 1);
+		}
+		assertTrue(scheduler.getStatistics().stream().anyMatch(s -> s.getOverruns() > 0));
+		logger.debug("Finished testSharedThreadAndOverruns.");
+	}
+
+	@Test
+	public void testDedicatedThread() throws InterruptedException {
+		logger.debug("-------Starting testDedicatedThread-------");
+		CountingTask slow = new CountingTask(fBase, 20, 1000);
+		CountingTask dedicated = new CountingTask(fBase, 20, 0);
+		scheduler.schedule(slow);
+		BackgroundScheduler.Job job = scheduler.scheduleDedicated(dedicated);
+		Thread.sleep(300);
+		// the shared thread is still busy with the first round of the slow task
+		assertEquals(0, slow.rounds.get());
+		assertTrue(dedicated.rounds.get() > 3);
+		job.cancel(true);
+		Thread.sleep(50);
+		int rounds = dedicated.rounds.get();
+		Thread.sleep(100);
+		assertEquals(rounds, dedicated.rounds.get());
+		logger.debug("Finished testDedicatedThread.");
+	}
+
+	@Test
+	public void testChangeInterval() throws InterruptedException {
+		logger.debug("-------Starting testChangeInterval-------");
+		CountingTask task = new CountingTask(fBase, 10000, 0);
+		BackgroundScheduler.Job job = scheduler.schedule(task);
+		Thread.sleep(100);
+		assertEquals(1, task.rounds.get());
+		job.setInterval(20);
+		Thread.sleep(200);
+		assertTrue(task.rounds.get() > 3);
+		assertEquals(20, task.getInterval());
+		logger.debug("Finished testChangeInterval.");
+	}
+
+	@Test
+	public void testShutdownInterruptsRound() throws InterruptedException {
+		logger.debug("-------Starting testShutdownInterruptsRound-------");
+		CountDownLatch started = new CountDownLatch(1);
+		BackgroundTask task = new BackgroundTask(TaskName.B_PUT_HEARTBEAT, fBase, 10) {
+			@Override
+			public Boolean executeFunctionality() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return true;
+			}
+		};
+		Future<Boolean> job = scheduler.schedule(task);
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertEquals(1, fBase.taskmanager.getRunningTaskNumbers().get(TaskName.B_PUT_HEARTBEAT)
+				.intValue());
+		scheduler.shutdown();
+		Thread.sleep(100);
+		assertTrue(job.isCancelled());
+		assertEquals(0, fBase.taskmanager.getRunningTaskNumbers().get(TaskName.B_PUT_HEARTBEAT)
+				.intValue());
+		logger.debug("Finished testShutdownInterruptsRound.");
+	}
+
+}
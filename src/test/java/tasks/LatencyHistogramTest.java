@@ -0,0 +1,54 @@
+package tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private LatencyHistogram histogram;
+
+	@Before
+	public void setUp() throws Exception {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		for (int i = 1; i <= 20; i++) {
+			histogram.record(i);
+		}
+		assertEquals(20, histogram.getCount());
+		assertEquals(10, histogram.getMean());
+		assertEquals(10, histogram.getPercentile(50));
+		assertEquals(20, histogram.getPercentile(99));
+		assertEquals(20, histogram.getMax());
+	}
+
+	@Test
+	public void testPercentilePrecision() {
+		for (long i = 1; i <= 100000; i++) {
+			histogram.record(i * 10);
+		}
+		long p50 = histogram.getPercentile(50);
+		long p99 = histogram.getPercentile(99);
+		assertTrue("p50 is " + p50, p50 >= 500000 && p50 <= 500000 * 1.07);
+		assertTrue("p99 is " + p99, p99 >= 990000 && p99 <= 1000000);
+		assertEquals(1000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testLargeAndNegativeValues() {
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-5);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+}
@@ -1,6 +1,7 @@
 package tasks;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -16,6 +17,10 @@ import org.junit.Test;
 import org.zeromq.ZMQ;
 
 import control.FBase;
+import de.hasenburg.fbase.model.TaskStatistics;
+import exceptions.FBaseCommunicationException;
+import exceptions.FBaseException;
+import tasks.TaskManager.TaskCategory;
 import tasks.TaskManager.TaskName;
 
 public class TaskManagerTest {
@@ -82,4 +87,61 @@ public class TaskManagerTest {
 		logger.debug("Finished testMany.");
 	}
 
+	@Test
+	public void testBoundedPool() throws InterruptedException, ExecutionException, TimeoutException {
+		logger.debug("-------Starting testBoundedPool-------");
+		int threads = fBase.configuration.getDataTaskThreads();
+		int tasks = threads + 4;
+		Future<?>[] futures = new Future<?>[tasks];
+		for (int i = 0; i < tasks; i++) {
+			futures[i] = taskmanager.runSleepTask(500);
+		}
+		Thread.sleep(50);
+		assertEquals(threads, taskmanager.getRunningTaskNumbers().get(TaskName.SLEEP).intValue());
+		assertEquals(4, taskmanager.getQueuedTaskNumbers().get(TaskCategory.DATA).intValue());
+		for (int i = 0; i < tasks; i++) {
+			futures[i].get(2000, TimeUnit.MILLISECONDS);
+		}
+		assertEquals(0, taskmanager.getRunningTaskNumbers().get(TaskName.SLEEP).intValue());
+		assertEquals(0, taskmanager.getQueuedTaskNumbers().get(TaskCategory.DATA).intValue());
+		logger.debug("Finished testBoundedPool.");
+	}
+
+	@Test
+	public void testMetrics() throws InterruptedException, ExecutionException, TimeoutException {
+		logger.debug("-------Starting testMetrics-------");
+		int tasks = fBase.configuration.getDataTaskThreads() + 2;
+		Future<?>[] futures = new Future<?>[tasks];
+		for (int i = 0; i < tasks; i++) {
+			futures[i] = taskmanager.runSleepTask(200);
+		}
+		for (int i = 0; i < tasks; i++) {
+			futures[i].get(2000, TimeUnit.MILLISECONDS);
+		}
+		TaskStatistics statistics = getStatistics(TaskName.SLEEP);
+		assertEquals(0, statistics.getRunning());
+		assertEquals(tasks, statistics.getSuccesses());
+		assertEquals(0, statistics.getFailures());
+		assertTrue(statistics.getExecutionTimeP50() >= 200000);
+		// two tasks waited for a thread
+		assertTrue(statistics.getQueueWaitMax() >= 150000);
+		assertEquals(tasks, taskmanager.getQueueWaitHistogram(TaskName.SLEEP).getCount());
+
+		taskmanager.recordTask(TaskName.LOG, 0, 1000, null, new FBaseException(
+				new FBaseCommunicationException(FBaseCommunicationException.NODE_NOT_REACHABLE)));
+		taskmanager.recordTask(TaskName.LOG, 0, 1000, null, new FBaseException("Invalid"));
+		taskmanager.recordTask(TaskName.LOG, 0, 1000, false, null);
+		taskmanager.recordTask(TaskName.LOG, 0, 1000, true, null);
+		statistics = getStatistics(TaskName.LOG);
+		assertEquals(1, statistics.getSuccesses());
+		assertEquals(3, statistics.getFailures());
+		assertEquals(1, statistics.getTimeouts());
+		logger.debug("Finished testMetrics.");
+	}
+
+	private TaskStatistics getStatistics(TaskName name) {
+		return taskmanager.getTaskStatistics().stream()
+				.filter(s -> s.getName().equals(name.toString())).findFirst().get();
+	}
+
 }